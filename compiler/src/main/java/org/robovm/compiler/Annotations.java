@@ -22,6 +22,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.robovm.compiler.clazz.Clazzes;
+
 import soot.SootClass;
 import soot.SootMethod;
 import soot.SootResolver;
@@ -77,8 +79,15 @@ public class Annotations {
     }
 
     public static List<AnnotationTag> getAnnotations(Host host, Visibility visibility) {
-        if (host instanceof SootClass) {
-            SootResolver.v().bringToHierarchy((SootClass) host);
+        if (host instanceof SootClass && ((SootClass) host).resolvingLevel() < SootClass.HIERARCHY) {
+            // Resolving changes Soot state. Callers may only have shared
+            // access to Soot.
+            int sharedHolds = Clazzes.lockSoot();
+            try {
+                SootResolver.v().bringToHierarchy((SootClass) host);
+            } finally {
+                Clazzes.unlockSoot(sharedHolds);
+            }
         }
         List<AnnotationTag> result = new ArrayList<>();
         for (Tag tag : host.getTags()) {
@@ -27,7 +27,9 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -36,11 +38,16 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.exec.ExecuteException;
 import org.apache.commons.io.FileUtils;
@@ -207,12 +214,33 @@ public class AppCompiler {
     };
 
     private final Config config;
-    private final ClassCompiler classCompiler;
+    /**
+     * {@link ClassCompiler}s aren't thread safe. Each front-end thread gets
+     * its own instance.
+     */
+    private final ThreadLocal<ClassCompiler> classCompilers = new ThreadLocal<ClassCompiler>() {
+        @Override
+        protected ClassCompiler initialValue() {
+            return new ClassCompiler(config);
+        }
+    };
     private final Linker linker;
+    /**
+     * {@link Executor} used to generate machine code once the front-end has
+     * produced the LLVM IR of a class. Defaults to generating the machine
+     * code on the front-end thread. {@link #build()} uses an
+     * {@link Executor} shared by all slices when building fat binaries.
+     */
+    private Executor machineCodeExecutor = SAME_THREAD_EXECUTOR;
+    /**
+     * The {@link AppCompiler}s of the slices of the fat binary being built by
+     * {@link #build()} or {@code null}. The front-end of this
+     * {@link AppCompiler} compiles each class for all slices.
+     */
+    private List<AppCompiler> slices = null;
 
     public AppCompiler(Config config) {
         this.config = config;
-        this.classCompiler = new ClassCompiler(config);
         this.linker = new Linker(config);
     }
 
@@ -300,15 +328,43 @@ public class AppCompiler {
         return classes;
     }
 
-    private boolean compile(Executor executor, ClassCompilerListener listener,
-            Clazz clazz, Set<Clazz> compileQueue, Set<Clazz> compiled) throws IOException {
+    /**
+     * Compiles the specified {@link Clazz} for each slice which has changed
+     * since it was last compiled. {@code listeners} holds the
+     * {@link CompileListener} of each slice. Called concurrently from the
+     * front-end threads.
+     */
+    private void compile(List<CompileListener> listeners, Clazz clazz) throws IOException {
+        List<AppCompiler> compilers = slices != null ? slices : Collections.singletonList(this);
+        List<ClassCompiler> classCompilers = new ArrayList<>();
+        List<CompileListener> compileListeners = new ArrayList<>();
+        for (int i = 0; i < compilers.size(); i++) {
+            AppCompiler compiler = compilers.get(i);
+            ClassCompiler classCompiler = compiler.classCompilers.get();
+            if (compiler.config.isClean() || classCompiler.mustCompile(clazz)) {
+                classCompilers.add(classCompiler);
+                compileListeners.add(listeners.get(i));
+            }
+        }
+        if (!classCompilers.isEmpty()) {
+            ClassCompiler.compile(clazz, machineCodeExecutor, classCompilers, compileListeners);
+            for (CompileListener listener : compileListeners) {
+                listener.scheduled();
+            }
+        }
+    }
 
-        boolean result = false;
-        if (config.isClean() || classCompiler.mustCompile(clazz)) {
-            classCompiler.compile(clazz, executor, listener);
-            result = true;
+    /**
+     * Returns the first error reported to any of the specified
+     * {@link CompileListener}s or {@code null}.
+     */
+    private static Throwable getError(List<CompileListener> listeners) {
+        for (CompileListener listener : listeners) {
+            if (listener.t != null) {
+                return listener.t;
+            }
         }
-        return result;
+        return null;
     }
 
     static void addMetaInfImplementations(Clazzes clazzes, Clazz clazz, Set<Clazz> compiled, Set<Clazz> compileQueue)
@@ -340,109 +396,247 @@ public class AppCompiler {
         }
     }
 
+    /**
+     * {@link ClassCompilerListener} which keeps track of the classes for which
+     * machine code generation has been scheduled and saves the first error.
+     */
+    private static class CompileListener implements ClassCompilerListener {
+        private final ClassCompilerListener listener;
+        private final int maxPending;
+        private int scheduled;
+        private int completed;
+        volatile Throwable t;
+
+        CompileListener(ClassCompilerListener listener, int maxPending) {
+            this.listener = listener;
+            this.maxPending = maxPending;
+        }
+
+        @Override
+        public void success(Clazz clazz) {
+            if (listener != null) {
+                listener.success(clazz);
+            }
+            completed();
+        }
+
+        @Override
+        public void failure(Clazz clazz, Throwable t) {
+            // Compilation failed. Save the error. No more classes will be
+            // compiled.
+            if (this.t == null) {
+                this.t = t;
+            }
+            if (listener != null) {
+                listener.failure(clazz, t);
+            }
+            completed();
+        }
+
+        private synchronized void completed() {
+            completed++;
+            notifyAll();
+        }
+
+        /**
+         * Called by a front-end thread once it has compiled a class. Blocks
+         * while too many classes are waiting for their machine code to be
+         * generated to bound the amount of LLVM IR kept in memory.
+         */
+        synchronized void scheduled() {
+            scheduled++;
+            try {
+                while (t == null && scheduled - completed > maxPending) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized int getCompletedCount() {
+            return completed;
+        }
+
+        /**
+         * Waits until machine code has been generated for all scheduled
+         * classes or until a class fails to compile.
+         */
+        synchronized void await() throws InterruptedException {
+            while (t == null && completed < scheduled) {
+                wait();
+            }
+        }
+    }
+
+    private static void rethrow(Throwable t) throws IOException {
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new CompilerException(t);
+    }
+
     public Set<Clazz> compile(Set<Clazz> rootClasses, boolean compileDependencies,
             final ClassCompilerListener listener) throws IOException {
 
+        long start = System.currentTimeMillis();
+        CompileListener compileListener = new CompileListener(listener, config.getThreads() * 4);
+        Set<Clazz> linkClasses = compileFrontEnd(rootClasses, compileDependencies,
+                Collections.singletonList(compileListener));
+        awaitMachineCode(compileListener, start);
+        return linkClasses;
+    }
+
+    /**
+     * Runs the front-end (Soot and LLVM IR generation) for the specified root
+     * classes and, if {@code compileDependencies} is {@code true}, all
+     * classes reachable from them. Machine code generation is scheduled on
+     * {@link #machineCodeExecutor} and may still be running when this method
+     * returns. Use {@link #awaitMachineCode(CompileListener, long)} to wait
+     * for it to complete. {@code listeners} holds one {@link CompileListener}
+     * per slice if {@link #slices} has been set and a single one otherwise.
+     */
+    private Set<Clazz> compileFrontEnd(Set<Clazz> rootClasses, boolean compileDependencies,
+            final List<CompileListener> listeners) throws IOException {
+
         config.getLogger().info("Compiling classes using %d threads", config.getThreads());
 
+        /*
+         * Each class is run through Soot and compiled to LLVM IR on one of
+         * the front-end threads using a ClassCompiler owned by that thread.
+         * Soot isn't thread safe so only one thread at a time loads classes
+         * and builds method bodies. Translating the bodies to LLVM IR runs
+         * concurrently with only shared access to Soot (see
+         * ClassCompiler.compile()). So do up-to-date checks, object cache
+         * lookups and saving the ClazzInfo. Machine code is generated on the
+         * same thread unless a separate machineCodeExecutor has been set.
+         * When building a fat binary the class is run through Soot once and
+         * the LLVM IR of every slice is generated from it. Only the
+         * DependencyGraph is updated by this thread.
+         */
         final Executor executor = (config.getThreads() <= 1)
                 ? SAME_THREAD_EXECUTOR
-                : new ThreadPoolExecutor(config.getThreads() - 1, config.getThreads() - 1,
-                        0L, TimeUnit.MILLISECONDS,
-                        // Use a bounded queue to avoid memory problems if the
-                        // worker threads are slower than the enqueuing thread.
-                        // The optimal thread pool size and queue size have been
-                        // determined by trial and error.
-                        new ArrayBlockingQueue<Runnable>((config.getThreads() - 1) * 20));
-        class HandleFailureListener implements ClassCompilerListener {
-            volatile Throwable t;
-
-            @Override
-            public void success(Clazz clazz) {
-                if (listener != null) {
-                    listener.success(clazz);
-                }
-            }
+                : Executors.newFixedThreadPool(config.getThreads());
+        CompletionService<Clazz> completionService = new ExecutorCompletionService<>(executor);
 
-            @Override
-            public void failure(Clazz clazz, Throwable t) {
-                // Compilation failed. Save the error and stop the executor.
-                this.t = t;
-                if (executor instanceof ExecutorService) {
-                    ((ExecutorService) executor).shutdown();
-                }
-                if (listener != null) {
-                    listener.failure(clazz, t);
-                }
-            }
-        };
-        HandleFailureListener listenerWrapper = new HandleFailureListener();
+        final AtomicBoolean stop = new AtomicBoolean();
 
         DependencyGraph dependencyGraph = config.getDependencyGraph();
 
         TreeSet<Clazz> compileQueue = new TreeSet<>(rootClasses);
-        long start = System.currentTimeMillis();
         Set<Clazz> linkClasses = new HashSet<Clazz>();
-        int compiledCount = 0;
-        outer: while (!compileQueue.isEmpty() && !Thread.currentThread().isInterrupted()) {
-            while (!compileQueue.isEmpty() && !Thread.currentThread().isInterrupted()) {
-                Clazz clazz = compileQueue.pollFirst();
-                if (!linkClasses.contains(clazz)) {
-                    if (compile(executor, listenerWrapper, clazz, compileQueue, linkClasses)) {
-                        compiledCount++;
-                        if (listenerWrapper.t != null) {
-                            // We have a failed compilation. Stop compiling.
-                            break outer;
+        int pending = 0;
+        Throwable t = null;
+        try {
+            while (getError(listeners) == null && !Thread.currentThread().isInterrupted()) {
+                while (!compileQueue.isEmpty()) {
+                    final Clazz clazz = compileQueue.pollFirst();
+                    if (linkClasses.add(clazz)) {
+                        completionService.submit(new Callable<Clazz>() {
+                            @Override
+                            public Clazz call() throws Exception {
+                                if (!stop.get() && getError(listeners) == null) {
+                                    compile(listeners, clazz);
+                                }
+                                return clazz;
+                            }
+                        });
+                        pending++;
+                    }
+                }
+
+                if (pending == 0) {
+                    if (!compileDependencies) {
+                        break;
+                    }
+                    for (String className : dependencyGraph.findReachableClasses()) {
+                        Clazz depClazz = config.getClazzes().load(className);
+                        if (depClazz != null && !linkClasses.contains(depClazz)) {
+                            compileQueue.add(depClazz);
                         }
                     }
+                    if (compileQueue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
 
-                    dependencyGraph.add(clazz, rootClasses.contains(clazz));
-                    linkClasses.add(clazz);
+                Clazz clazz = completionService.take().get();
+                pending--;
+                if (getError(listeners) != null) {
+                    // We have a failed compilation. Stop compiling.
+                    break;
+                }
 
-                    if (compileDependencies) {
-                        addMetaInfImplementations(config.getClazzes(), clazz, linkClasses, compileQueue);
-                    }
+                dependencyGraph.add(clazz, rootClasses.contains(clazz));
+
+                if (compileDependencies) {
+                    addMetaInfImplementations(config.getClazzes(), clazz, linkClasses, compileQueue);
                 }
             }
-
-            if (compileDependencies) {
-                for (String className : dependencyGraph.findReachableClasses()) {
-                    Clazz depClazz = config.getClazzes().load(className);
-                    if (depClazz != null && !linkClasses.contains(depClazz)) {
-                        compileQueue.add(depClazz);
-                    }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            t = e.getCause();
+        } finally {
+            stop.set(true);
+            // Shutdown the executor and wait for running tasks to complete.
+            if (executor instanceof ExecutorService) {
+                ExecutorService executorService = (ExecutorService) executor;
+                executorService.shutdown();
+                try {
+                    executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
                 }
             }
         }
 
-        // Shutdown the executor and wait for running tasks to complete.
-        if (executor instanceof ExecutorService) {
-            ExecutorService executorService = (ExecutorService) executor;
-            executorService.shutdown();
-            try {
-                executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-            } catch (InterruptedException e) {
-            }
+        if (t == null) {
+            t = getError(listeners);
         }
+        if (t != null) {
+            // The compilation failed. Rethrow the exception.
+            rethrow(t);
+        }
+
+        return linkClasses;
+    }
 
+    /**
+     * Waits for the machine code generation scheduled by
+     * {@link #compileFrontEnd(Set, boolean, List)} to complete.
+     * Rethrows the first error reported to the {@link CompileListener}.
+     */
+    private void awaitMachineCode(CompileListener listenerWrapper, long start) throws IOException {
+        try {
+            listenerWrapper.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
         if (listenerWrapper.t != null) {
-            // The compilation failed. Rethrow the exception in the callback.
-            if (listenerWrapper.t instanceof IOException) {
-                throw (IOException) listenerWrapper.t;
-            }
-            if (listenerWrapper.t instanceof RuntimeException) {
-                throw (RuntimeException) listenerWrapper.t;
-            }
-            if (listenerWrapper.t instanceof Error) {
-                throw (Error) listenerWrapper.t;
-            }
-            throw new CompilerException(listenerWrapper.t);
+            // The compilation failed. Rethrow the exception.
+            rethrow(listenerWrapper.t);
         }
 
         long duration = System.currentTimeMillis() - start;
-        config.getLogger().info("Compiled %d classes in %.2f seconds", compiledCount, duration / 1000.0);
+        config.getLogger().info("Compiled %d classes in %.2f seconds", listenerWrapper.getCompletedCount(),
+                duration / 1000.0);
 
-        return linkClasses;
+        if (config.getObjectCache() != null) {
+            try {
+                config.getObjectCache().evict();
+            } catch (IOException e) {
+                config.getLogger().warn("Failed to evict entries from object cache %s: %s",
+                        config.getObjectCache().getDir(), e.getMessage());
+            }
+        }
     }
 
     private void compile() throws IOException {
@@ -454,10 +648,18 @@ public class AppCompiler {
             return;
         }
 
+        link(linkClasses);
+    }
+
+    private void link(Set<Clazz> linkClasses) throws IOException {
         if (linkClasses.contains(config.getClazzes().load(TRUSTED_CERTIFICATE_STORE_CLASS))) {
             if (config.getCacerts() != null) {
-                config.addResourcesPath(config.getClazzes().createResourcesBootclasspathPath(
-                        config.getHome().getCacertsPath(config.getCacerts())));
+                Path cacertsPath = config.getClazzes().createResourcesBootclasspathPath(
+                        config.getHome().getCacertsPath(config.getCacerts()));
+                // The Config may have been reused by the CompilerDaemon
+                if (!config.getResourcesPaths().contains(cacertsPath)) {
+                    config.addResourcesPath(cacertsPath);
+                }
             }
         }
 
@@ -469,6 +671,17 @@ public class AppCompiler {
 
     public static void main(String[] args) throws IOException {
 
+        if (!CompilerDaemon.isServing()) {
+            if (args.length > 0 && "-daemon".equals(args[0])) {
+                CompilerDaemon.start();
+                return;
+            }
+            int status = CompilerDaemon.forward(args);
+            if (status != -1) {
+                System.exit(status);
+            }
+        }
+
         AppCompiler compiler = null;
         Config.Builder builder = null;
 
@@ -500,6 +713,16 @@ public class AppCompiler {
                     builder.installDir(new File(args[++i]));
                 } else if ("-cache".equals(args[i])) {
                     builder.cacheDir(new File(args[++i]));
+                } else if ("-shared-cache".equals(args[i])) {
+                    builder.sharedCacheDir(new File(args[++i]));
+                } else if ("-shared-cache-size".equals(args[i])) {
+                    String s = args[++i];
+                    try {
+                        long n = Long.parseLong(s);
+                        builder.sharedCacheMaxSize(Math.max(n, 1) * 1024 * 1024);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Unparsable shared cache size: " + s);
+                    }
                 } else if ("-home".equals(args[i])) {
                     builder.home(new Config.Home(new File(args[++i])));
                 } else if ("-tmp".equals(args[i])) {
@@ -539,6 +762,10 @@ public class AppCompiler {
                     builder.useDebugLibs(true);
                 } else if ("-dump-intermediates".equals(args[i])) {
                     builder.dumpIntermediates(true);
+                } else if ("-use-digests".equals(args[i])) {
+                    builder.useDigests(true);
+                } else if ("-whole-program".equals(args[i])) {
+                    builder.wholeProgram(true);
                 } else if ("-dynamic-jni".equals(args[i])) {
                     // TODO: Old option not used any longer. We still accept it
                     // for now. Delete it in a future release.
@@ -670,6 +897,9 @@ public class AppCompiler {
 
             builder.archs(archs.toArray(new Arch[archs.size()]));
 
+            List<String> options = new ArrayList<>(Arrays.asList(args).subList(0, i));
+            options.removeAll(runArgs);
+
             while (i < args.length) {
                 runArgs.add(args[i++]);
             }
@@ -695,8 +925,11 @@ public class AppCompiler {
                 return;
             }
 
-            compiler = new AppCompiler(builder.build());
+            compiler = new AppCompiler(CompilerDaemon.isServing() 
+                    ? CompilerDaemon.getConfig(builder, options) : builder.build());
 
+        } catch (CompilerDaemon.ExitException e) {
+            throw e;
         } catch (Throwable t) {
             String message = t.getMessage();
             if (t instanceof ArrayIndexOutOfBoundsException) {
@@ -743,6 +976,8 @@ public class AppCompiler {
                     compiler.config.getTarget().install();
                 }
             }
+        } catch (CompilerDaemon.ExitException e) {
+            throw e;
         } catch (Throwable t) {
             String message = t.getMessage();
             if (verbose && !(t instanceof ExecuteException)) {
@@ -753,7 +988,13 @@ public class AppCompiler {
     }
 
     /**
-     * Builds the binary (possibly a fat binary with multiple archs).
+     * Builds the binary (possibly a fat binary with multiple archs). The
+     * slices of a fat binary share the {@link Clazzes} and
+     * {@link DependencyGraph} of this {@link AppCompiler}'s {@link Config}
+     * (see {@link Config#buildSliceConfig(Arch)}). The front-end of this
+     * {@link AppCompiler} runs the classes through Soot and the tree shaker
+     * once and generates the LLVM IR and machine code of every slice. Each
+     * slice is linked as soon as its machine code is done.
      */
     public void build() throws IOException {
         List<Arch> archs = this.config.getArchs();
@@ -767,22 +1008,70 @@ public class AppCompiler {
             // No need to clone configs for each slice.
             compile();
         } else {
-            Map<Arch, File> slices = new TreeMap<>();
+            updateCheck();
+
+            final List<AppCompiler> sliceCompilers = new ArrayList<>();
+            final List<CompileListener> listeners = new ArrayList<>();
+            TreeSet<Clazz> rootClasses = new TreeSet<>();
             for (Arch arch : archs) {
-                this.config.getLogger().info("Building %s slice", arch);
-                Config sliceConfig = this.config.builder()
-                        .arch(arch)
-                        .tmpDir(new File(this.config.getTmpDir(), arch.toString()))
-                        .build();
-                new AppCompiler(sliceConfig).compile();
-                slices.put(arch, new File(sliceConfig.getTmpDir(), sliceConfig.getExecutableName()));
-                for (Path path : sliceConfig.getResourcesPaths()) {
-                    if (!this.config.getResourcesPaths().contains(path)) {
-                        this.config.addResourcesPath(path);
+                AppCompiler sliceCompiler = new AppCompiler(this.config.buildSliceConfig(arch));
+                sliceCompilers.add(sliceCompiler);
+                listeners.add(new CompileListener(null, config.getThreads() * 4));
+                // The robovm.xml of a slice may force link other classes
+                rootClasses.addAll(sliceCompiler.getRootClasses());
+            }
+
+            this.config.getLogger().info("Building %s slices", archs);
+            ExecutorService sharedMachineCodeExecutor = Executors.newFixedThreadPool(config.getThreads());
+            ExecutorService linkExecutor = Executors.newCachedThreadPool();
+            slices = sliceCompilers;
+            machineCodeExecutor = sharedMachineCodeExecutor;
+            try {
+                final long start = System.currentTimeMillis();
+                final Set<Clazz> linkClasses = compileFrontEnd(rootClasses, true, listeners);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                List<Future<Void>> links = new ArrayList<>();
+                for (int i = 0; i < sliceCompilers.size(); i++) {
+                    final AppCompiler sliceCompiler = sliceCompilers.get(i);
+                    final CompileListener listener = listeners.get(i);
+                    links.add(linkExecutor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            sliceCompiler.awaitMachineCode(listener, start);
+                            if (!Thread.currentThread().isInterrupted()) {
+                                sliceCompiler.link(linkClasses);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+
+                Map<Arch, File> sliceFiles = new TreeMap<>();
+                for (int i = 0; i < sliceCompilers.size(); i++) {
+                    links.get(i).get();
+                    Config sliceConfig = sliceCompilers.get(i).getConfig();
+                    sliceFiles.put(sliceConfig.getArch(),
+                            new File(sliceConfig.getTmpDir(), sliceConfig.getExecutableName()));
+                    for (Path path : sliceConfig.getResourcesPaths()) {
+                        if (!this.config.getResourcesPaths().contains(path)) {
+                            this.config.addResourcesPath(path);
+                        }
                     }
                 }
+                this.config.getTarget().buildFat(sliceFiles);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                rethrow(e.getCause());
+            } finally {
+                slices = null;
+                machineCodeExecutor = SAME_THREAD_EXECUTOR;
+                sharedMachineCodeExecutor.shutdownNow();
+                linkExecutor.shutdownNow();
             }
-            this.config.getTarget().buildFat(slices);
         }
     }
 
@@ -849,12 +1138,12 @@ public class AppCompiler {
         for (DeviceType type : types) {
             System.out.println(type.getSimpleDeviceTypeId());
         }
-        System.exit(0);
+        CompilerDaemon.exit(0);
     }
 
     private static void printVersionAndExit() {
         System.err.println(Version.getVersion());
-        System.exit(0);
+        CompilerDaemon.exit(0);
     }
 
     private static void printUsageAndExit(String errorMessage, List<Plugin> plugins) {
@@ -885,8 +1174,20 @@ public class AppCompiler {
                          + "                        archives to search for class files.");
         System.err.println("  -cache <dir>          Directory where cached compiled class files will be placed.\n" 
                          + "                        Default is ~/.robovm/cache");
+        System.err.println("  -shared-cache <dir>   Directory of a cache of compiled classes which can be \n" 
+                         + "                        shared between projects and machines. Disabled by default.");
+        System.err.println("  -shared-cache-size <n> Max size of the shared cache in MB. The least recently \n" 
+                         + "                        used classes are evicted when exceeded. Default is 4096.");
+        System.err.println("  -daemon               Start a compiler daemon in the current directory which keeps\n" 
+                         + "                        classpath and cache state in memory between builds. Later\n" 
+                         + "                        invocations of robovm in the same directory are run by the\n" 
+                         + "                        daemon. Must be the first option.");
         System.err.println("  -clean                Compile class files even if a compiled version already \n" 
                          + "                        exists in the cache.");
+        System.err.println("  -use-digests          Use content digests of class files instead of file \n" 
+                         + "                        modification times to decide which classes must be \n" 
+                         + "                        recompiled. Classes are only recompiled if their bytes or\n" 
+                         + "                        the signatures of the classes they depend on changed.");
         System.err.println("  -d <dir>              Install the generated executable and other files in <dir>.\n" 
                          + "                        Default is <wd>/<executableName>. Ignored if -run is specified.");
         System.err.println("  -cc <path>            Path to the c compiler binary. gcc and clang are supported.");
@@ -940,6 +1241,9 @@ public class AppCompiler {
                          + "                        install dir specified using -d.");
         System.err.println("  -debug                Generates debug information");
         System.err.println("  -use-debug-libs       Links against debug versions of the RoboVM VM libraries");
+        System.err.println("  -whole-program        Optimizes the reachable code of all classes together when \n" 
+                         + "                        linking to allow inlining across classes. Slower to link.\n" 
+                         + "                        Ignored in debug builds.");
         System.err.println("  -libs <list>          : separated list of static library files (.a), object\n"
                          + "                        files (.o) and system libraries that should be included\n" 
                          + "                        when linking the final executable.");
@@ -1027,7 +1331,7 @@ public class AppCompiler {
                 }
             }
         }
-        System.exit(errorMessage != null ? 1 : 0);
+        CompilerDaemon.exit(errorMessage != null ? 1 : 0);
         // @formatter:on
     }
 
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.Local;
+import soot.PatchingChain;
+import soot.Trap;
+import soot.Unit;
+import soot.UnitBox;
+import soot.jimple.AddExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.BinopExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.LeExpr;
+import soot.jimple.LengthExpr;
+import soot.jimple.LtExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.SubExpr;
+import soot.jimple.toolkits.annotation.tags.ArrayCheckTag;
+
+/**
+ * Range analysis which removes array bounds checks which Soot's
+ * <code>jap.abc</code> phase leaves in place. It's a forward must analysis
+ * tracking three kinds of facts about locals:
+ * <ul>
+ * <li><code>x &gt;= 0</code></li>
+ * <li><code>x &lt; a.length</code></li>
+ * <li><code>x == a.length</code></li>
+ * </ul>
+ * Facts are generated by constants, <code>lengthof</code> expressions,
+ * increments and decrements which cannot overflow, and by the conditions of
+ * <code>if</code> statements on the branch taken and on the fall through
+ * path. This covers induction variables of counted loops like
+ * <code>for (int i = 0; i &lt; a.length; i++)</code> and
+ * <code>for (int i = a.length - 1; i &gt;= 0; i--)</code>.
+ * <p>
+ * Exception handlers start out with no facts since they may be entered from
+ * any statement in the protected range.
+ */
+public class BoundsCheckEliminator {
+    private static final int NON_NEGATIVE = 0;
+    private static final int LESS_THAN_LENGTH = 1;
+    private static final int LENGTH = 2;
+
+    private static final int LT = 0;
+    private static final int LE = 1;
+    private static final int EQ = 2;
+    private static final int NE = 3;
+
+    private static final class Fact {
+        final int kind;
+        final Local x;
+        final Local array;
+
+        Fact(int kind, Local x, Local array) {
+            this.kind = kind;
+            this.x = x;
+            this.array = array;
+        }
+
+        boolean mentions(Local l) {
+            return x == l || array == l;
+        }
+
+        Fact replace(Local from, Local to) {
+            return new Fact(kind, x == from ? to : x, array == from ? to : array);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * kind + x.hashCode()) + (array != null ? array.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Fact)) {
+                return false;
+            }
+            Fact o = (Fact) obj;
+            return kind == o.kind && x == o.x && array == o.array;
+        }
+    }
+
+    private final Body body;
+    private final Set<Unit> handlers = new HashSet<>();
+    private final Map<Unit, Set<Fact>> factsBefore = new HashMap<>();
+
+    private BoundsCheckEliminator(Body body) {
+        this.body = body;
+    }
+
+    /**
+     * Analyzes the specified {@link Body} and updates the
+     * {@link ArrayCheckTag}s of the array accesses which have been proven to
+     * be within bounds.
+     *
+     * @return the number of checks removed.
+     */
+    public static int eliminate(Body body) {
+        BoundsCheckEliminator eliminator = new BoundsCheckEliminator(body);
+        eliminator.analyze();
+        return eliminator.updateTags();
+    }
+
+    private void analyze() {
+        PatchingChain<Unit> units = body.getUnits();
+        if (units.isEmpty()) {
+            return;
+        }
+        Deque<Unit> worklist = new ArrayDeque<>();
+        factsBefore.put(units.getFirst(), new HashSet<Fact>());
+        worklist.add(units.getFirst());
+        for (Trap trap : body.getTraps()) {
+            if (handlers.add(trap.getHandlerUnit())) {
+                factsBefore.put(trap.getHandlerUnit(), new HashSet<Fact>());
+                worklist.add(trap.getHandlerUnit());
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            Unit unit = worklist.removeFirst();
+            Set<Fact> out = flowThrough(factsBefore.get(unit), unit);
+            if (unit instanceof IfStmt) {
+                IfStmt stmt = (IfStmt) unit;
+                ConditionExpr cond = (ConditionExpr) stmt.getCondition();
+                propagate(stmt.getTarget(), refine(out, cond, true), worklist);
+                propagate(units.getSuccOf(unit), refine(out, cond, false), worklist);
+            } else {
+                for (UnitBox box : unit.getUnitBoxes()) {
+                    propagate(box.getUnit(), out, worklist);
+                }
+                if (unit.fallsThrough()) {
+                    propagate(units.getSuccOf(unit), out, worklist);
+                }
+            }
+        }
+    }
+
+    private void propagate(Unit unit, Set<Fact> facts, Deque<Unit> worklist) {
+        if (unit == null || handlers.contains(unit)) {
+            return;
+        }
+        Set<Fact> before = factsBefore.get(unit);
+        if (before == null) {
+            factsBefore.put(unit, new HashSet<>(facts));
+            worklist.add(unit);
+        } else if (before.retainAll(facts)) {
+            worklist.add(unit);
+        }
+    }
+
+    private Set<Fact> flowThrough(Set<Fact> in, Unit unit) {
+        if (!(unit instanceof DefinitionStmt) || !(((DefinitionStmt) unit).getLeftOp() instanceof Local)) {
+            return in;
+        }
+        DefinitionStmt stmt = (DefinitionStmt) unit;
+        Local x = (Local) stmt.getLeftOp();
+        soot.Value rightOp = stmt.getRightOp();
+        Set<Fact> gen = new HashSet<>();
+
+        if (rightOp instanceof IntConstant) {
+            if (((IntConstant) rightOp).value >= 0) {
+                gen.add(new Fact(NON_NEGATIVE, x, null));
+            }
+        } else if (rightOp instanceof Local) {
+            for (Fact f : in) {
+                if (f.mentions((Local) rightOp)) {
+                    gen.add(f.replace((Local) rightOp, x));
+                }
+            }
+        } else if (rightOp instanceof LengthExpr) {
+            soot.Value op = ((LengthExpr) rightOp).getOp();
+            if (op instanceof Local) {
+                gen.add(new Fact(LENGTH, x, (Local) op));
+            }
+            gen.add(new Fact(NON_NEGATIVE, x, null));
+        } else if ((rightOp instanceof AddExpr || rightOp instanceof SubExpr)
+                && ((BinopExpr) rightOp).getOp1() instanceof Local
+                && ((BinopExpr) rightOp).getOp2() instanceof IntConstant) {
+
+            Local y = (Local) ((BinopExpr) rightOp).getOp1();
+            long delta = ((IntConstant) ((BinopExpr) rightOp).getOp2()).value;
+            if (rightOp instanceof SubExpr) {
+                delta = -delta;
+            }
+            boolean yNonNegative = in.contains(new Fact(NON_NEGATIVE, y, null));
+            for (Fact f : in) {
+                if (f.x != y) {
+                    continue;
+                }
+                if (f.kind == LESS_THAN_LENGTH) {
+                    if (delta >= 0 && delta <= 1 && yNonNegative) {
+                        // 0 <= y < a.length so y + 1 cannot overflow
+                        gen.add(new Fact(NON_NEGATIVE, x, null));
+                    }
+                    if (delta <= 0 && yNonNegative) {
+                        // 0 <= y so y - c cannot underflow
+                        gen.add(new Fact(LESS_THAN_LENGTH, x, f.array));
+                    }
+                } else if (f.kind == LENGTH && delta < 0) {
+                    gen.add(new Fact(LESS_THAN_LENGTH, x, f.array));
+                }
+            }
+            if (delta == 0 && yNonNegative) {
+                gen.add(new Fact(NON_NEGATIVE, x, null));
+            }
+        }
+
+        Set<Fact> out = new HashSet<>();
+        for (Fact f : in) {
+            if (!f.mentions(x)) {
+                out.add(f);
+            }
+        }
+        out.addAll(gen);
+        return out;
+    }
+
+    /**
+     * Returns the facts which hold after the specified condition evaluates to
+     * the specified value.
+     */
+    private Set<Fact> refine(Set<Fact> facts, ConditionExpr cond, boolean value) {
+        soot.Value l = cond.getOp1();
+        soot.Value r = cond.getOp2();
+        int op;
+        if (cond instanceof LtExpr) {
+            op = value ? LT : LE;
+            if (!value) {
+                // !(l < r) => r <= l
+                soot.Value t = l; l = r; r = t;
+            }
+        } else if (cond instanceof GeExpr) {
+            op = value ? LE : LT;
+            if (value) {
+                // l >= r => r <= l
+                soot.Value t = l; l = r; r = t;
+            }
+        } else if (cond instanceof GtExpr) {
+            op = value ? LT : LE;
+            if (value) {
+                // l > r => r < l
+                soot.Value t = l; l = r; r = t;
+            }
+        } else if (cond instanceof LeExpr) {
+            op = value ? LE : LT;
+            if (!value) {
+                // !(l <= r) => r < l
+                soot.Value t = l; l = r; r = t;
+            }
+        } else if (cond instanceof EqExpr) {
+            op = value ? EQ : NE;
+        } else if (cond instanceof NeExpr) {
+            op = value ? NE : EQ;
+        } else {
+            return facts;
+        }
+
+        Set<Fact> result = new HashSet<>(facts);
+        switch (op) {
+        case LT:
+        case LE:
+            if (r instanceof Local) {
+                if (isNonNegative(facts, l, op == LT ? -1 : 0)) {
+                    result.add(new Fact(NON_NEGATIVE, (Local) r, null));
+                }
+                if (l instanceof Local) {
+                    for (Fact f : facts) {
+                        if (f.x == r && (f.kind == LESS_THAN_LENGTH || op == LT && f.kind == LENGTH)) {
+                            result.add(new Fact(LESS_THAN_LENGTH, (Local) l, f.array));
+                        }
+                    }
+                }
+            }
+            break;
+        case EQ:
+            if (l instanceof Local && isNonNegative(facts, r, 0)) {
+                result.add(new Fact(NON_NEGATIVE, (Local) l, null));
+            }
+            if (r instanceof Local && isNonNegative(facts, l, 0)) {
+                result.add(new Fact(NON_NEGATIVE, (Local) r, null));
+            }
+            break;
+        }
+        return result;
+    }
+
+    private static boolean isNonNegative(Set<Fact> facts, soot.Value v, int min) {
+        if (v instanceof IntConstant) {
+            return ((IntConstant) v).value >= min;
+        }
+        return v instanceof Local && facts.contains(new Fact(NON_NEGATIVE, (Local) v, null));
+    }
+
+    private int updateTags() {
+        int count = 0;
+        for (Unit unit : body.getUnits()) {
+            Stmt stmt = (Stmt) unit;
+            Set<Fact> facts = factsBefore.get(stmt);
+            if (facts == null || !stmt.containsArrayRef()) {
+                continue;
+            }
+            ArrayRef ref = stmt.getArrayRef();
+            ArrayCheckTag tag = (ArrayCheckTag) stmt.getTag("ArrayCheckTag");
+            boolean checkLower = tag == null || tag.isCheckLower();
+            boolean checkUpper = tag == null || tag.isCheckUpper();
+            if (checkLower && isNonNegative(facts, ref.getIndex(), 0)) {
+                checkLower = false;
+                count++;
+            }
+            if (checkUpper && ref.getIndex() instanceof Local && ref.getBase() instanceof Local
+                    && facts.contains(new Fact(LESS_THAN_LENGTH, (Local) ref.getIndex(), (Local) ref.getBase()))) {
+                checkUpper = false;
+                count++;
+            }
+            if (tag == null || checkLower != tag.isCheckLower() || checkUpper != tag.isCheckUpper()) {
+                stmt.removeTag("ArrayCheckTag");
+                stmt.addTag(new ArrayCheckTag(checkLower, checkUpper));
+            }
+        }
+        return count;
+    }
+}
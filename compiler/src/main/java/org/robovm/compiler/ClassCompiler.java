@@ -21,35 +21,52 @@ import static org.robovm.compiler.Functions.*;
 import static org.robovm.compiler.Types.*;
 import static org.robovm.compiler.llvm.Type.*;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.robovm.compiler.ClinitEvaluator.Instance;
+import org.robovm.compiler.ClinitEvaluator.ObjectArray;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Triple;
 import org.robovm.compiler.clazz.Clazz;
 import org.robovm.compiler.clazz.ClazzInfo;
+import org.robovm.compiler.clazz.Clazzes;
 import org.robovm.compiler.clazz.Dependency;
 import org.robovm.compiler.clazz.MethodInfo;
 import org.robovm.compiler.config.Arch;
@@ -63,7 +80,10 @@ import org.robovm.compiler.llvm.Bitcast;
 import org.robovm.compiler.llvm.Br;
 import org.robovm.compiler.llvm.Constant;
 import org.robovm.compiler.llvm.ConstantBitcast;
+import org.robovm.compiler.llvm.ConstantGetelementptr;
+import org.robovm.compiler.llvm.ConstantInttoptr;
 import org.robovm.compiler.llvm.Fence;
+import org.robovm.compiler.llvm.FloatingPointConstant;
 import org.robovm.compiler.llvm.Function;
 import org.robovm.compiler.llvm.FunctionDeclaration;
 import org.robovm.compiler.llvm.FunctionRef;
@@ -77,6 +97,7 @@ import org.robovm.compiler.llvm.Linkage;
 import org.robovm.compiler.llvm.Load;
 import org.robovm.compiler.llvm.NullConstant;
 import org.robovm.compiler.llvm.Ordering;
+import org.robovm.compiler.llvm.PackedStructureConstant;
 import org.robovm.compiler.llvm.PackedStructureConstantBuilder;
 import org.robovm.compiler.llvm.PointerType;
 import org.robovm.compiler.llvm.Ret;
@@ -84,6 +105,7 @@ import org.robovm.compiler.llvm.Store;
 import org.robovm.compiler.llvm.StructureConstant;
 import org.robovm.compiler.llvm.StructureConstantBuilder;
 import org.robovm.compiler.llvm.StructureType;
+import org.robovm.compiler.llvm.Type;
 import org.robovm.compiler.llvm.Value;
 import org.robovm.compiler.llvm.Variable;
 import org.robovm.compiler.llvm.VariableRef;
@@ -94,6 +116,7 @@ import org.robovm.compiler.trampoline.Invoke;
 import org.robovm.compiler.trampoline.Invokeinterface;
 import org.robovm.compiler.trampoline.Invokevirtual;
 import org.robovm.compiler.trampoline.Trampoline;
+import org.robovm.compiler.util.AntPathMatcher;
 import org.robovm.compiler.util.io.HfsCompressor;
 import org.robovm.llvm.Context;
 import org.robovm.llvm.LineInfo;
@@ -101,6 +124,7 @@ import org.robovm.llvm.Module;
 import org.robovm.llvm.ObjectFile;
 import org.robovm.llvm.PassManager;
 import org.robovm.llvm.PassManagerBuilder;
+import org.robovm.llvm.SectionIterator;
 import org.robovm.llvm.Symbol;
 import org.robovm.llvm.Target;
 import org.robovm.llvm.TargetMachine;
@@ -136,6 +160,8 @@ import soot.tagkit.Tag;
  */
 public class ClassCompiler {
     private static final int DUMMY_METHOD_SIZE = 0x01abcdef;
+    private static final String CLASS_DIGEST_KEY = "class";
+    private static final String DEPENDENCY_DIGEST_KEY_PREFIX = "dep.";
     public static final int CI_PUBLIC = 0x1;
     public static final int CI_FINAL = 0x2;
     public static final int CI_INTERFACE = 0x4;
@@ -147,57 +173,68 @@ public class ClassCompiler {
     public static final int CI_ERROR = 0x100;
     public static final int CI_INITIALIZED = 0x200;
     public static final int CI_FINALIZABLE = 0x400;
+    public static final int CI_BUILD_TIME_INIT = 0x800;
 
     public static final int CI_ERROR_TYPE_NONE = 0x0;
     public static final int CI_ERROR_TYPE_NO_CLASS_DEF_FOUND = 0x1;
     public static final int CI_ERROR_TYPE_ILLEGAL_ACCESS = 0x2;
     public static final int CI_ERROR_TYPE_INCOMPATIBLE_CLASS_CHANGE = 0x3;
     
-    public static final int FI_ACCESS_MASK = 0x3;
-    public static final int FI_PUBLIC = 0x1;
-    public static final int FI_PRIVATE = 0x2;
-    public static final int FI_PROTECTED = 0x3;
-    public static final int FI_STATIC = 0x4;
-    public static final int FI_FINAL = 0x8;
-    public static final int FI_VOLATILE = 0x10;
-    public static final int FI_TRANSIENT = 0x20;
-    public static final int FI_SYNTHETIC = 0x40;
-    public static final int FI_ENUM = 0x80;
-    public static final int FI_ATTRIBUTES = 0x100;
-    
-    public static final int MI_ACCESS_MASK = 0x3;
-    public static final int MI_PUBLIC = 0x1;
-    public static final int MI_PRIVATE = 0x2;
-    public static final int MI_PROTECTED = 0x3;
-    public static final int MI_STATIC = 0x4;
-    public static final int MI_FINAL = 0x8;
-    public static final int MI_SYNCHRONIZED = 0x10;
-    public static final int MI_BRIDGE = 0x20;
-    public static final int MI_VARARGS = 0x40;
-    public static final int MI_NATIVE = 0x80;
-    public static final int MI_ABSTRACT = 0x100;
-    public static final int MI_STRICT = 0x200;
-    public static final int MI_SYNTHETIC = 0x400;
-    public static final int MI_ATTRIBUTES = 0x800;
-    public static final int MI_BRO_BRIDGE = 0x1000;
-    public static final int MI_BRO_CALLBACK = 0x2000;
-    public static final int MI_COMPACT_DESC = 0x4000;
+    private static final int FIELD_ACCESS_MASK = 0x50df;
+    private static final int METHOD_ACCESS_MASK = 0x1cff;
+    private static final int ACC_NATIVE = 0x0100;
+    private static final int METHOD_TYPE_BRIDGE = 0x20000000;
+    private static final int METHOD_TYPE_CALLBACK = 0x40000000;
     
-    public static final int DESC_B = 1;
-    public static final int DESC_C = 2;
-    public static final int DESC_D = 3;
-    public static final int DESC_F = 4;
-    public static final int DESC_I = 5;
-    public static final int DESC_J = 6;
-    public static final int DESC_S = 7;
-    public static final int DESC_Z = 8;
-    public static final int DESC_V = 9;
+    /**
+     * {offset, type, value, data}. Must match StaticValue in bc.c.
+     */
+    private static final StructureType STATIC_VALUE = new StructureType(I32, I32, I64, I8_PTR);
+    /**
+     * {className, length, data}. Must match StaticObject in bc.c.
+     */
+    private static final StructureType STATIC_OBJECT = new StructureType(I8_PTR, I32, I8_PTR);
+    /**
+     * {next, clazz, name, desc, access, attributes}. Must match Field in types.h.
+     */
+    private static final StructureType FIELD_RECORD = new StructureType(I8_PTR, I8_PTR, I8_PTR, I8_PTR, I32, I8_PTR);
+    /**
+     * {field, address}. Must match ClassField in types.h. address holds the 
+     * offset of the field from the start of the Class. The runtime adds the
+     * address of the Class when copying the record.
+     */
+    private static final StructureType CLASS_FIELD_RECORD = new StructureType(FIELD_RECORD, I8_PTR);
+    /**
+     * {field, offset}. Must match InstanceField in types.h.
+     */
+    private static final StructureType INSTANCE_FIELD_RECORD = new StructureType(FIELD_RECORD, I32);
+    /**
+     * {next, clazz, name, desc, vitableIndex, access, size, attributes, impl, 
+     * synchronizedImpl, linetable}. Must match Method in types.h.
+     */
+    private static final StructureType METHOD_RECORD = new StructureType(I8_PTR, I8_PTR, I8_PTR, I8_PTR, 
+            I32, I32, I32, I8_PTR, I8_PTR, I8_PTR, I8_PTR);
+    /**
+     * {method, ptr}. Must match NativeMethod, BridgeMethod and CallbackMethod
+     * in types.h.
+     */
+    private static final StructureType EXTENDED_METHOD_RECORD = new StructureType(METHOD_RECORD, I8_PTR);
     
     private SootClass sootClass;
     
     private ModuleBuilder mb;
     private Map<Trampoline, List<SootMethod>> trampolines;
     private Set<String> catches;
+    /**
+     * The {@link Function}s compiled for the methods of the class being
+     * compiled.
+     */
+    private Map<SootMethod, Function> functions;
+    /**
+     * The Java methods of the class being compiled which have been prepared
+     * by {@link MethodCompiler#prepare(SootMethod)}.
+     */
+    private Set<SootMethod> javaMethods;
     /**
      * Contains the class fields of the class being compiled.
      */
@@ -209,6 +246,12 @@ public class ClassCompiler {
     
     private StructureType classType;
     private StructureType instanceType;
+    /**
+     * The static field values computed by {@link ClinitEvaluator} or 
+     * {@code null} if the {@code <clinit>} of the class being compiled runs
+     * at runtime.
+     */
+    private Map<SootField, Object> buildTimeInitValues;
     
     private final Config config;
     private final MethodCompiler javaMethodCompiler;
@@ -220,8 +263,6 @@ public class ClassCompiler {
     private final AttributesEncoder attributesEncoder;
     private final TrampolineCompiler trampolineResolver;
     
-    private final ByteArrayOutputStream output = new ByteArrayOutputStream(256 * 1024);
-    
     public ClassCompiler(Config config) {
         this.config = config;
         this.javaMethodCompiler = new MethodCompiler(config);
@@ -234,9 +275,23 @@ public class ClassCompiler {
         this.trampolineResolver = new TrampolineCompiler(config);
     }
     
-    public boolean mustCompile(Clazz clazz) {
+    public boolean mustCompile(Clazz clazz) throws IOException {
         File oFile = config.getOFile(clazz);
-        if (!oFile.exists() || oFile.lastModified() < clazz.lastModified() || oFile.length() == 0) {
+        if (!oFile.exists() || oFile.length() == 0) {
+            return true;
+        }
+        if (config.isWholeProgram() && !config.getBcFile(clazz).exists()) {
+            // Compiled without whole program mode
+            return true;
+        }
+
+        Properties digests = null;
+        if (config.isUseDigests()) {
+            digests = loadDigests(clazz);
+            if (digests == null || !clazz.getDigest().equals(digests.getProperty(CLASS_DIGEST_KEY))) {
+                return true;
+            }
+        } else if (oFile.lastModified() < clazz.lastModified()) {
             return true;
         }
         
@@ -244,6 +299,11 @@ public class ClassCompiler {
         if (ci == null) {
             return true;
         }
+        if (ci.isBuildTimeInit() != isBuildTimeInit(config, clazz)) {
+            // The class has been added to or removed from the build time
+            // class initialization patterns
+            return true;
+        }
         
         Set<Dependency> dependencies = ci.getAllDependencies();
         for (Dependency dep : dependencies) {
@@ -266,7 +326,12 @@ public class ClassCompiler {
                     // depClazz has moved to/from the bootclasspath since the last time clazz was built
                     return true;
                 }
-                if (depClazz.lastModified() > oFile.lastModified()) {
+                if (digests != null) {
+                    if (!depClazz.getAbiDigest().equals(digests.getProperty(DEPENDENCY_DIGEST_KEY_PREFIX + dep.getClassName()))) {
+                        // The signature of depClazz has changed since the last time clazz was built
+                        return true;
+                    }
+                } else if (depClazz.lastModified() > oFile.lastModified()) {
                     // depClazz has been changed since the last time clazz was built 
                     return true;
                 }
@@ -279,17 +344,78 @@ public class ClassCompiler {
         // and the dependencies regenerated.
         return dependencies.isEmpty();
     }
+
+    private Properties loadDigests(Clazz clazz) {
+        File digestFile = config.getDigestFile(clazz);
+        if (!digestFile.exists()) {
+            return null;
+        }
+        Properties digests = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(digestFile))) {
+            digests.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+        return digests;
+    }
+
+    /**
+     * Saves the digest of the specified {@link Clazz} and the ABI digests of
+     * all its dependencies. These are used by {@link #mustCompile(Clazz)} when
+     * {@link Config#isUseDigests()} is {@code true}.
+     */
+    private void saveDigests(Clazz clazz, ClazzInfo ci) throws IOException {
+        Properties digests = new Properties();
+        digests.setProperty(CLASS_DIGEST_KEY, clazz.getDigest());
+        for (Dependency dep : ci.getAllDependencies()) {
+            Clazz depClazz = config.getClazzes().load(dep.getClassName());
+            if (depClazz != null) {
+                digests.setProperty(DEPENDENCY_DIGEST_KEY_PREFIX + dep.getClassName(), depClazz.getAbiDigest());
+            }
+        }
+        File digestFile = config.getDigestFile(clazz);
+        digestFile.getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(digestFile))) {
+            digests.store(out, null);
+        }
+    }
     
     public void compile(Clazz clazz, Executor executor, ClassCompilerListener listener) throws IOException {
-        reset();        
-        
-        Arch arch = config.getArch();
-        OS os = config.getOs();
+        compile(clazz, executor, Collections.singletonList(this), Collections.singletonList(listener));
+    }
+
+    /**
+     * Compiles the specified {@link Clazz} for each slice of a fat binary
+     * using the {@link ClassCompiler} of each slice. The {@link Config}s of
+     * the slices must share their {@link Clazzes}. Only the first
+     * {@link ClassCompiler} which cannot restore the class from the object
+     * cache runs the class through Soot and the {@link CompilerPlugin}s and
+     * rebuilds its {@link ClazzInfo}. The other {@link ClassCompiler}s reuse
+     * the prepared {@link SootClass} and method bodies and only generate the
+     * LLVM IR and machine code for their slice.
+     */
+    public static void compile(Clazz clazz, Executor executor, List<ClassCompiler> compilers,
+            List<? extends ClassCompilerListener> listeners) throws IOException {
 
+        List<ClassCompiler> toCompile = new ArrayList<>();
+        List<ClassCompilerListener> toCompileListeners = new ArrayList<>();
+        for (int i = 0; i < compilers.size(); i++) {
+            ClassCompiler compiler = compilers.get(i);
+            if (!compiler.restore(clazz, listeners.get(i))) {
+                compiler.reset();
+                compiler.config.getLogger().info("Compiling %s (%s %s %s)", clazz, compiler.config.getOs(),
+                        compiler.config.getArch(), compiler.config.isDebug() ? "debug" : "release");
+                toCompile.add(compiler);
+                toCompileListeners.add(listeners.get(i));
+            }
+        }
+        if (toCompile.isEmpty()) {
+            return;
+        }
+
+        List<org.robovm.compiler.llvm.Module> modules = null;
         try {
-            config.getLogger().info("Compiling %s (%s %s %s)", clazz, os, arch, config.isDebug() ? "debug" : "release");
-            output.reset();
-            compile(clazz, output);
+            modules = toCompile.get(0).compile(clazz, toCompile.subList(1, toCompile.size()));
         } catch (Throwable t) {
             if (t instanceof IOException) {
                 throw (IOException) t;
@@ -300,21 +426,54 @@ public class ClassCompiler {
             throw new RuntimeException(t);
         }
 
-        List<String> cCode = new ArrayList<>();
-        cCode.addAll(bridgeMethodCompiler.getCWrapperFunctions());
-        cCode.addAll(callbackMethodCompiler.getCWrapperFunctions());
-        
-        scheduleMachineCodeGeneration(executor, listener, config, clazz, output.toByteArray(), cCode);
+        for (int i = 0; i < toCompile.size(); i++) {
+            ClassCompiler compiler = toCompile.get(i);
+            List<String> cCode = new ArrayList<>();
+            cCode.addAll(compiler.bridgeMethodCompiler.getCWrapperFunctions());
+            cCode.addAll(compiler.callbackMethodCompiler.getCWrapperFunctions());
+
+            ObjectCache objectCache = compiler.config.getObjectCache();
+            Properties dependencyDigests = objectCache != null ? objectCache.getDependencyDigests(clazz) : null;
+
+            scheduleMachineCodeGeneration(executor, toCompileListeners.get(i), compiler.config, clazz,
+                    modules.get(i), cCode, dependencyDigests);
+        }
+    }
+
+    /**
+     * Restores the object file of the specified {@link Clazz} from the
+     * object cache if possible.
+     * 
+     * @return {@code true} if the object file was restored.
+     */
+    private boolean restore(Clazz clazz, ClassCompilerListener listener) throws IOException {
+        ObjectCache objectCache = config.getObjectCache();
+        // The object cache doesn't hold the bitcode needed in whole program
+        // mode.
+        if (objectCache != null && !config.isClean() && !config.isWholeProgram() && objectCache.restore(clazz)) {
+            config.getBcFile(clazz).delete();
+            if (config.isUseDigests()) {
+                saveDigests(clazz, clazz.getClazzInfo());
+            }
+            listener.success(clazz);
+            return true;
+        }
+        return false;
     }
 
     private static void scheduleMachineCodeGeneration(Executor executor, final ClassCompilerListener listener,
-            final Config config, final Clazz clazz, final byte[] llData, final List<String> cCode) {
+            final Config config, final Clazz clazz, final org.robovm.compiler.llvm.Module llModule,
+            final List<String> cCode,
+            final Properties dependencyDigests) {
         
         Runnable task = new Runnable() {
             @Override
             public void run() {
                 try {
-                    generateMachineCode(config, clazz, llData, cCode);
+                    generateMachineCode(config, clazz, llModule, cCode);
+                    if (dependencyDigests != null) {
+                        config.getObjectCache().store(clazz, dependencyDigests);
+                    }
                     listener.success(clazz);
                 } catch (Throwable t) {
                     listener.failure(clazz, t);
@@ -332,12 +491,25 @@ public class ClassCompiler {
         }
     }
     
-    private static void generateMachineCode(Config config, Clazz clazz, byte[] llData, List<String> cCode) throws IOException {
+    /**
+     * Generates the object file for the specified {@link Clazz}. The object
+     * file is emitted directly and the method sizes in the info struct are
+     * patched in the object file (see
+     * {@link #patchObjectFileWithFunctionSizes(Config, String, byte[], Collection)}).
+     * When dumping the .s file, or if the object file cannot be patched,
+     * assembly is emitted, patched with the method sizes and then assembled.
+     */
+    private static void generateMachineCode(Config config, Clazz clazz, org.robovm.compiler.llvm.Module llModule,
+            List<String> cCode) throws IOException {
+
+        boolean viaAssembly = config.isDumpIntermediates();
 
         if (config.isDumpIntermediates()) {
             File llFile = config.getLlFile(clazz);
             llFile.getParentFile().mkdirs();
-            FileUtils.writeByteArrayToFile(llFile, llData);
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(llFile), "UTF-8")) {
+                llModule.write(writer, false);
+            }
             File cFile = config.getCFile(clazz);
             if (cCode.isEmpty()) {
                 cFile.delete();
@@ -347,9 +519,9 @@ public class ClassCompiler {
         }
 
         File oFile = config.getOFile(clazz);
-        try (Context context = new Context()) {
-            try (Module module = Module.parseIR(context, llData, clazz.getClassName())) {
-                
+        try (HeaderModules headerModules = HeaderModules.acquire()) {
+            try (Module module = headerModules.build(config.getOs(), config.getArch(), llModule, clazz.getClassName())) {
+
                 if (!cCode.isEmpty()) {
                     int size = 0;
                     for (String s : cCode) {
@@ -359,6 +531,7 @@ public class ClassCompiler {
                     for (String s : cCode) {
                         sb.append(s);
                     }
+                    Context context = headerModules.getContext(config.getOs(), config.getArch());
                     try (Module m2 = Module.parseClangString(context, sb.toString(), clazz.getClassName() + ".c", config.getClangTriple())) {
                         module.link(m2);
                         for (org.robovm.llvm.Function f1 : m2.getFunctions()) {
@@ -381,10 +554,15 @@ public class ClassCompiler {
                     passManager.run(module);
                 }
 
-                if (config.isDumpIntermediates()) {
-                    File bcFile = config.getBcFile(clazz);
+                // The optimized bitcode is also needed when linking in whole
+                // program mode (see WholeProgramOptimizer).
+                File bcFile = config.getBcFile(clazz);
+                if (config.isDumpIntermediates() || config.isWholeProgram()) {
                     bcFile.getParentFile().mkdirs();
                     module.writeBitcode(bcFile);
+                } else if (bcFile.exists()) {
+                    // Make sure there's no stale .bc file lingering
+                    bcFile.delete();
                 }
 
                 String triple = config.getTriple();
@@ -399,24 +577,43 @@ public class ClassCompiler {
                     targetMachine.getOptions().setNoFramePointerElim(true);
                     targetMachine.getOptions().setPositionIndependentExecutable(!config.isDebug()); // NOTE: Doesn't have any effect on x86. See #503.
 
-                    ByteArrayOutputStream output = new ByteArrayOutputStream(256 * 1024);
-                    targetMachine.emit(module, output, CodeGenFileType.AssemblyFile);
+                    byte[] oData = null;
+                    if (!viaAssembly) {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream(256 * 1024);
+                        targetMachine.emit(module, output, CodeGenFileType.ObjectFile);
+                        oData = output.toByteArray();
+                        if (!patchObjectFileWithFunctionSizes(config, clazz.getClassName(), oData, 
+                                Collections.singletonList(clazz))) {
+                            // Shouldn't happen. Emit assembly from the
+                            // already optimized module instead.
+                            config.getLogger().warn("Failed to patch method sizes into the object file "
+                                    + "of %s. Falling back to assembly.", clazz);
+                            oData = null;
+                        }
+                    }
+                    if (oData == null) {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream(256 * 1024);
+                        targetMachine.emit(module, output, CodeGenFileType.AssemblyFile);
+
+                        byte[] asm = output.toByteArray();
+                        output.reset();
+                        patchAsmWithFunctionSizes(config, Collections.singletonList(clazz), 
+                                new ByteArrayInputStream(asm), output);
+                        asm = output.toByteArray();
 
-                    byte[] asm = output.toByteArray();
-                    output.reset();
-                    patchAsmWithFunctionSizes(config, clazz, new ByteArrayInputStream(asm), output);
-                    asm = output.toByteArray();
+                        if (config.isDumpIntermediates()) {
+                            File sFile = config.getSFile(clazz);
+                            sFile.getParentFile().mkdirs();
+                            FileUtils.writeByteArrayToFile(sFile, asm);
+                        }
 
-                    if (config.isDumpIntermediates()) {
-                        File sFile = config.getSFile(clazz);
-                        sFile.getParentFile().mkdirs();
-                        FileUtils.writeByteArrayToFile(sFile, asm);
+                        ByteArrayOutputStream oFileBytes = new ByteArrayOutputStream();
+                        targetMachine.assemble(asm, clazz.getClassName(), oFileBytes);
+                        oData = oFileBytes.toByteArray();
                     }
 
                     oFile.getParentFile().mkdirs();
-                    ByteArrayOutputStream oFileBytes = new ByteArrayOutputStream();
-                    targetMachine.assemble(asm, clazz.getClassName(), oFileBytes);                                                                                               
-                    new HfsCompressor().compress(oFile, oFileBytes.toByteArray(), config);
+                    new HfsCompressor().compress(oFile, oData, config);
                     
                     for (CompilerPlugin plugin : config.getCompilerPlugins()) {
                         plugin.afterObjectFile(config, clazz, oFile);
@@ -426,105 +623,18 @@ public class ClassCompiler {
                      * Read out line number info from the .o file if any and
                      * assemble into a separate .o file.
                      */
-                    String symbolPrefix = config.getOs().getFamily() == OS.Family.darwin ? "_" : "";
-                    symbolPrefix += Symbols.EXTERNAL_SYMBOL_PREFIX;
-                    ModuleBuilder linesMb = null;
+                    org.robovm.compiler.llvm.Module linesLlModule = null;
                     try (ObjectFile objectFile = ObjectFile.load(oFile)) {
-                        for (Symbol symbol : objectFile.getSymbols()) {
-                            if (symbol.getSize() > 0 && symbol.getName().startsWith(symbolPrefix)) {
-                                List<LineInfo> lineInfos = objectFile.getLineInfos(symbol);
-                                if (!lineInfos.isEmpty()) {
-                                    Collections.sort(lineInfos, new Comparator<LineInfo>() {
-                                        public int compare(LineInfo o1, LineInfo o2) {
-                                            return Long.compare(o1.getAddress(), o2.getAddress());
-                                        }
-                                    });
-                                    
-                                    // The base address of the method which will be used to calculate offsets into the method
-                                    long baseAddress = symbol.getAddress();
-                                    // The first line number in the method. All other line numbers in the table will be deltas against this.
-                                    int firstLineNumber = lineInfos.get(0).getLineNumber();
-                                    // Calculate the max address and line number offsets
-                                    long maxAddressOffset = 0;
-                                    long maxLineOffset = 0;
-                                    for (LineInfo lineInfo : lineInfos) {
-                                        maxAddressOffset = Math.max(maxAddressOffset, lineInfo.getAddress() - baseAddress);
-                                        maxLineOffset = Math.max(maxLineOffset, lineInfo.getLineNumber() - firstLineNumber);
-                                    }
-
-                                    // Calculate the number of bytes needed to represent the highest offsets.
-                                    // Either 1, 2 or 4 bytes will be used.
-                                    int addressOffsetSize = (maxAddressOffset & ~0xff) == 0 ? 1 : ((maxAddressOffset & ~0xffff) == 0 ? 2 : 4);
-                                    int lineOffsetSize = (maxLineOffset & ~0xff) == 0 ? 1 : ((maxLineOffset & ~0xffff) == 0 ? 2 : 4);
-                                    
-                                    // The size of the address offsets table. We skip the first LineInfo as its offset is always 0.
-                                    int addressOffsetTableSize = addressOffsetSize * (lineInfos.size() - 1);
-                                    // Pad size of address offset table to make sure line offsets are aligned properly 
-                                    int addressOffsetPadding = (lineOffsetSize - (addressOffsetTableSize & (lineOffsetSize - 1))) & (lineOffsetSize - 1);
-                                    addressOffsetTableSize += addressOffsetPadding;
-                                    
-                                    // The first 32 bits of the line number info contains the number of line numbers
-                                    // minus the first. The 4 most significant bits are used to store the number of
-                                    // bytes needed by each entry in each table.
-                                    int flags = 0;
-                                    flags = addressOffsetSize - 1;
-                                    flags <<= 2;
-                                    flags |= lineOffsetSize - 1;
-                                    flags <<= 28;
-                                    flags |= (lineInfos.size() - 1) & 0x0fffffff;
-
-                                    StructureConstantBuilder builder = new StructureConstantBuilder();
-                                    builder
-                                        .add(new IntegerConstant(flags))
-                                        .add(new IntegerConstant(firstLineNumber));
-                                    
-                                    for (LineInfo lineInfo : lineInfos.subList(1, lineInfos.size())) {
-                                        if (addressOffsetSize == 1) {
-                                            builder.add(new IntegerConstant((byte) (lineInfo.getAddress() - baseAddress)));
-                                        } else if (addressOffsetSize == 2) {
-                                            builder.add(new IntegerConstant((short) (lineInfo.getAddress() - baseAddress)));
-                                        } else {
-                                            builder.add(new IntegerConstant((int) (lineInfo.getAddress() - baseAddress)));
-                                        }
-                                    }
-
-                                    // Padding
-                                    for (int i = 0; i < addressOffsetPadding; i++) {
-                                        builder.add(new IntegerConstant((byte) 0));
-                                    }
-
-                                    for (LineInfo lineInfo : lineInfos.subList(1, lineInfos.size())) {
-                                        if (lineOffsetSize == 1) {
-                                            builder.add(new IntegerConstant((byte) (lineInfo.getLineNumber() - firstLineNumber)));
-                                        } else if (lineOffsetSize == 2) {
-                                            builder.add(new IntegerConstant((short) (lineInfo.getLineNumber() - firstLineNumber)));
-                                        } else {
-                                            builder.add(new IntegerConstant((int) (lineInfo.getLineNumber() - firstLineNumber)));
-                                        }
-                                    }
-
-                                    // Extract the method's name and descriptor from the symbol and
-                                    // build the linetable symbol name.
-                                    String methodName = symbol.getName().substring(symbol.getName().lastIndexOf('.') + 1);
-                                    methodName = methodName.substring(0, methodName.indexOf('('));
-                                    String methodDesc = symbol.getName().substring(symbol.getName().lastIndexOf('('));
-                                    String linetableSymbol = Symbols.linetableSymbol(clazz.getInternalName(), methodName, methodDesc);
-                                    if (linesMb == null) {
-                                        linesMb = new ModuleBuilder();
-                                    }
-                                    linesMb.addGlobal(new Global(linetableSymbol, builder.build(), true));
-                                }
-                            }
-                        }
+                        linesLlModule = buildLineNumberTables(config, objectFile, Collections.singletonList(clazz));
                     }
-                    if (linesMb != null) {
-                        byte[] linesData = linesMb.build().toString().getBytes("UTF-8");
+                    if (linesLlModule != null) {
                         if (config.isDumpIntermediates()) {
                             File linesLlFile = config.getLinesLlFile(clazz);
                             linesLlFile.getParentFile().mkdirs();
-                            FileUtils.writeByteArrayToFile(linesLlFile, linesData);
+                            FileUtils.writeStringToFile(linesLlFile, linesLlModule.toString(), "UTF-8");
                         }
-                        try (Module linesModule = Module.parseIR(context, linesData, clazz.getClassName() + ".lines")) {
+                        try (Module linesModule = headerModules.build(config.getOs(), config.getArch(), 
+                                linesLlModule, clazz.getClassName() + ".lines")) {
                             File linesOFile = config.getLinesOFile(clazz);
                             ByteArrayOutputStream linesOBytes = new ByteArrayOutputStream();
                             targetMachine.emit(linesModule, linesOBytes, CodeGenFileType.ObjectFile);
@@ -556,6 +666,114 @@ public class ClassCompiler {
         }
     }
 
+    /**
+     * Builds a module with the line number tables of the methods of the
+     * specified classes from the debug line info of the specified object
+     * file. The runtime looks up the table of a method using
+     * {@link Symbols#linetableSymbol(String, String, String)}.
+     * 
+     * @return the module or {@code null} if no method has line numbers.
+     */
+    static org.robovm.compiler.llvm.Module buildLineNumberTables(Config config, ObjectFile objectFile,
+            Collection<Clazz> classes) {
+
+        String labelPrefix = config.getOs().getFamily() == OS.Family.darwin ? "_" : "";
+        Map<String, String> linetableSymbols = new HashMap<>();
+        for (Clazz clazz : classes) {
+            ClazzInfo ci = clazz.getClazzInfo();
+            for (MethodInfo mi : ci.getMethods()) {
+                if (!mi.isAbstract()) {
+                    linetableSymbols.put(labelPrefix + Symbols.methodSymbol(ci.getInternalName(), mi.getName(), mi.getDesc()),
+                            Symbols.linetableSymbol(ci.getInternalName(), mi.getName(), mi.getDesc()));
+                }
+            }
+        }
+
+        ModuleBuilder linesMb = null;
+        for (Symbol symbol : objectFile.getSymbols()) {
+            String linetableSymbol = linetableSymbols.get(symbol.getName());
+            if (symbol.getSize() > 0 && linetableSymbol != null) {
+                List<LineInfo> lineInfos = objectFile.getLineInfos(symbol);
+                if (!lineInfos.isEmpty()) {
+                    Collections.sort(lineInfos, new Comparator<LineInfo>() {
+                        public int compare(LineInfo o1, LineInfo o2) {
+                            return Long.compare(o1.getAddress(), o2.getAddress());
+                        }
+                    });
+                    
+                    // The base address of the method which will be used to calculate offsets into the method
+                    long baseAddress = symbol.getAddress();
+                    // The first line number in the method. All other line numbers in the table will be deltas against this.
+                    int firstLineNumber = lineInfos.get(0).getLineNumber();
+                    // Calculate the max address and line number offsets
+                    long maxAddressOffset = 0;
+                    long maxLineOffset = 0;
+                    for (LineInfo lineInfo : lineInfos) {
+                        maxAddressOffset = Math.max(maxAddressOffset, lineInfo.getAddress() - baseAddress);
+                        maxLineOffset = Math.max(maxLineOffset, lineInfo.getLineNumber() - firstLineNumber);
+                    }
+
+                    // Calculate the number of bytes needed to represent the highest offsets.
+                    // Either 1, 2 or 4 bytes will be used.
+                    int addressOffsetSize = (maxAddressOffset & ~0xff) == 0 ? 1 : ((maxAddressOffset & ~0xffff) == 0 ? 2 : 4);
+                    int lineOffsetSize = (maxLineOffset & ~0xff) == 0 ? 1 : ((maxLineOffset & ~0xffff) == 0 ? 2 : 4);
+                    
+                    // The size of the address offsets table. We skip the first LineInfo as its offset is always 0.
+                    int addressOffsetTableSize = addressOffsetSize * (lineInfos.size() - 1);
+                    // Pad size of address offset table to make sure line offsets are aligned properly 
+                    int addressOffsetPadding = (lineOffsetSize - (addressOffsetTableSize & (lineOffsetSize - 1))) & (lineOffsetSize - 1);
+                    addressOffsetTableSize += addressOffsetPadding;
+                    
+                    // The first 32 bits of the line number info contains the number of line numbers
+                    // minus the first. The 4 most significant bits are used to store the number of
+                    // bytes needed by each entry in each table.
+                    int flags = 0;
+                    flags = addressOffsetSize - 1;
+                    flags <<= 2;
+                    flags |= lineOffsetSize - 1;
+                    flags <<= 28;
+                    flags |= (lineInfos.size() - 1) & 0x0fffffff;
+
+                    StructureConstantBuilder builder = new StructureConstantBuilder();
+                    builder
+                        .add(new IntegerConstant(flags))
+                        .add(new IntegerConstant(firstLineNumber));
+                    
+                    for (LineInfo lineInfo : lineInfos.subList(1, lineInfos.size())) {
+                        if (addressOffsetSize == 1) {
+                            builder.add(new IntegerConstant((byte) (lineInfo.getAddress() - baseAddress)));
+                        } else if (addressOffsetSize == 2) {
+                            builder.add(new IntegerConstant((short) (lineInfo.getAddress() - baseAddress)));
+                        } else {
+                            builder.add(new IntegerConstant((int) (lineInfo.getAddress() - baseAddress)));
+                        }
+                    }
+
+                    // Padding
+                    for (int i = 0; i < addressOffsetPadding; i++) {
+                        builder.add(new IntegerConstant((byte) 0));
+                    }
+
+                    for (LineInfo lineInfo : lineInfos.subList(1, lineInfos.size())) {
+                        if (lineOffsetSize == 1) {
+                            builder.add(new IntegerConstant((byte) (lineInfo.getLineNumber() - firstLineNumber)));
+                        } else if (lineOffsetSize == 2) {
+                            builder.add(new IntegerConstant((short) (lineInfo.getLineNumber() - firstLineNumber)));
+                        } else {
+                            builder.add(new IntegerConstant((int) (lineInfo.getLineNumber() - firstLineNumber)));
+                        }
+                    }
+
+                    if (linesMb == null) {
+                        linesMb = new ModuleBuilder();
+                    }
+                    linesMb.addGlobal(new Global(linetableSymbol, builder.build(), true));
+                }
+            }
+        }
+        return linesMb != null ? linesMb.build() : null;
+    }
+
     private static PassManager createPassManager(Config config) {
         PassManager passManager = new PassManager();
         
@@ -574,22 +792,188 @@ public class ClassCompiler {
         return passManager;
     }
     
-    private static void patchAsmWithFunctionSizes(Config config, Clazz clazz, InputStream inStream, OutputStream outStream) throws IOException {
+    /**
+     * Returns the symbols of the implementations of the non-abstract methods
+     * in the specified class in the order their sizes appear in the info
+     * struct of the class.
+     */
+    static List<String> getMethodImplSymbols(ClazzInfo ci) {
+        List<String> result = new ArrayList<>();
+        for (MethodInfo mi : ci.getMethods()) {
+            if (!mi.isAbstract()) {
+                result.add(Symbols.methodSymbol(ci.getInternalName(), mi.getName(), mi.getDesc()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sizes of the symbols in the specified object file keyed by
+     * symbol name. ELF object files record the sizes in the symbol table.
+     * Mach-O object files don't. A symbol is then taken to extend to the next
+     * symbol or the end of its section, whichever comes first. For a function
+     * this includes the alignment padding following it. That is fine for
+     * method sizes since the runtime only uses them to find the method
+     * containing an address and the padding is never executed.
+     */
+    static Map<String, Long> getSymbolSizes(Config config, ObjectFile objectFile, List<Symbol> symbols) {
+        Map<String, Long> sizes = new HashMap<>();
+        if (config.getOs().getFamily() != OS.Family.darwin) {
+            for (Symbol symbol : symbols) {
+                sizes.put(symbol.getName(), symbol.getSize());
+            }
+            return sizes;
+        }
+
+        // Sections don't overlap in Mach-O object files
+        TreeMap<Long, Long> sectionEnds = new TreeMap<>();
+        try (SectionIterator it = objectFile.getSectionIterator()) {
+            while (it.hasNext()) {
+                if (it.getSize() > 0) {
+                    sectionEnds.put(it.getAddress(), it.getAddress() + it.getSize());
+                }
+                it.next();
+            }
+        }
+        TreeSet<Long> addresses = new TreeSet<>();
+        for (Symbol symbol : symbols) {
+            addresses.add(symbol.getAddress());
+        }
+        for (Symbol symbol : symbols) {
+            long address = symbol.getAddress();
+            Map.Entry<Long, Long> section = sectionEnds.floorEntry(address);
+            long size = 0;
+            if (section != null && address < section.getValue()) {
+                Long next = addresses.higher(address);
+                long end = next != null ? Math.min(next, section.getValue()) : section.getValue();
+                size = end - address;
+            }
+            sizes.put(symbol.getName(), size);
+        }
+        return sizes;
+    }
+
+    /**
+     * Replaces the {@link #DUMMY_METHOD_SIZE} values in the Field and Method
+     * records of the specified classes in the specified object file with the
+     * sizes of the corresponding functions. The values are written at the
+     * offset of the records in the file of the section containing them. The
+     * object file is only modified if all values could be located.
+     * 
+     * @return {@code true} if the object file was patched, {@code false}
+     *         otherwise.
+     */
+    static boolean patchObjectFileWithFunctionSizes(Config config, String name, byte[] oData,
+            Collection<Clazz> classes) {
+
+        List<Integer> offsets = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        try (ObjectFile objectFile = ObjectFile.load(oData, name)) {
+            List<Symbol> symbolList = objectFile.getSymbols();
+            Map<String, Symbol> symbols = new HashMap<>();
+            for (Symbol symbol : symbolList) {
+                symbols.put(symbol.getName(), symbol);
+            }
+            Map<String, Long> sizes = getSymbolSizes(config, objectFile, symbolList);
+
+            for (Clazz clazz : classes) {
+                List<String> methodImplSymbols = getMethodImplSymbols(clazz.getClazzInfo());
+                String recordsLabel = Symbols.infoRecordsSymbol(clazz.getInternalName());
+                Symbol recordsSymbol = symbols.get(recordsLabel);
+                SectionIterator section = recordsSymbol != null 
+                        ? objectFile.getContainingSection(recordsLabel) : null;
+                if (section == null) {
+                    if (methodImplSymbols.isEmpty()) {
+                        continue;
+                    }
+                    return false;
+                }
+                long recordsOffset = -1;
+                byte[] records = null;
+                try {
+                    long sectionOffset = section.getFileOffset();
+                    long start = recordsSymbol.getAddress() - section.getAddress();
+                    long size = sizes.get(recordsLabel);
+                    if (sectionOffset < 0 || start < 0 || size <= 0 || start + size > section.getSize()) {
+                        return false;
+                    }
+                    recordsOffset = sectionOffset + start;
+                    if (recordsOffset + size > oData.length) {
+                        return false;
+                    }
+                    records = Arrays.copyOfRange(oData, (int) recordsOffset, (int) (recordsOffset + size));
+                } finally {
+                    section.dispose();
+                }
+
+                // Find the size fields in the records. They are stored in
+                // the same order as the method implementations in
+                // methodImplSymbols.
+                List<Integer> fields = new ArrayList<>();
+                for (int i = 0; i + 4 <= records.length; i++) {
+                    if (getInt(records, i) == DUMMY_METHOD_SIZE) {
+                        fields.add(i);
+                        i += 3;
+                    }
+                }
+                if (fields.size() != methodImplSymbols.size()) {
+                    return false;
+                }
+
+                for (int i = 0; i < fields.size(); i++) {
+                    Long size = sizes.get(methodImplSymbols.get(i));
+                    if (size == null || size <= 0 || size > Integer.MAX_VALUE) {
+                        return false;
+                    }
+                    offsets.add((int) recordsOffset + fields.get(i));
+                    values.add(size.intValue());
+                }
+            }
+        }
+
+        for (int i = 0; i < offsets.size(); i++) {
+            putInt(oData, offsets.get(i), values.get(i));
+        }
+        return true;
+    }
+
+    // All supported archs are little endian
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Replaces the {@link #DUMMY_METHOD_SIZE} values in the Field and Method
+     * records of the specified classes in the specified assembly code with the
+     * difference between labels inserted at the end of the corresponding
+     * functions and the function symbols.
+     */
+    static void patchAsmWithFunctionSizes(Config config, Collection<Clazz> classes, InputStream inStream, 
+            OutputStream outStream) throws IOException {
+
         String labelPrefix = config.getOs().getFamily() == OS.Family.darwin ? "_" : "";
         String localLabelPrefix = config.getOs().getFamily() == OS.Family.darwin ? "L" : ".L";
         
         Set<String> functionNames = new HashSet<String>();
-        for (SootMethod method : clazz.getSootClass().getMethods()) {
-            if (!method.isAbstract()) {
-                String name = labelPrefix + Symbols.methodSymbol(method);
-                functionNames.add(name);
+        Set<String> recordsLabels = new HashSet<String>();
+        for (Clazz clazz : classes) {
+            for (String symbol : getMethodImplSymbols(clazz.getClazzInfo())) {
+                functionNames.add(labelPrefix + symbol);
             }
+            recordsLabels.add(labelPrefix + Symbols.infoRecordsSymbol(clazz.getInternalName()));
         }
         
-        String infoStructLabel = labelPrefix + Symbols.infoStructSymbol(clazz.getInternalName());
-        Pattern methodImplPattern = Pattern.compile("\\s*\\.(?:quad|long)\\s+\"?(" 
-                + Pattern.quote(labelPrefix + Symbols.methodSymbolPrefix(clazz.getInternalName())) 
-                + "[^\\s\"]+)\"?.*");
+        Pattern methodImplPattern = Pattern.compile("\\s*\\.(?:quad|long)\\s+\"?([^\\s\"]+)\"?.*");
+        String dummy = String.valueOf(DUMMY_METHOD_SIZE);
         
         BufferedReader in = null;
         BufferedWriter out = null;
@@ -598,54 +982,80 @@ public class ClassCompiler {
             out = new BufferedWriter(new OutputStreamWriter(outStream, "UTF-8"));
             String line = null;
             String currentFunction = null;
+            boolean inRecords = false;
+            // The size of a method precedes its impl pointer in the Method
+            // record. Hold back the lines following a size until the impl
+            // pointer has been found.
+            List<String> pending = new ArrayList<>();
             while ((line = in.readLine()) != null) {
-                if (currentFunction == null) {
-                    out.write(line);
-                    out.write('\n');
-                    int colon = line.indexOf(':');
-                    if (colon != -1) {
-                        String label = line.substring(0, colon);
-                        if (label.startsWith("\"") && label.endsWith("\"")) {
-                            label = label.substring(1, label.length() - 1);
-                        }
-                        if (functionNames.contains(label)) {
-                            currentFunction = label;
-                        } else if (label.equals(infoStructLabel)) {
-                            break;
-                        }
+                if (currentFunction != null) {
+                    if (line.trim().equals(".cfi_endproc") || line.trim().startsWith(".section") || line.trim().startsWith(".globl")) {
+                        out.write("\"");
+                        out.write(localLabelPrefix);
+                        out.write(currentFunction);
+                        out.write("_end\":\n\n");
+                        currentFunction = null;
                     }
-                } else if (line.trim().equals(".cfi_endproc") || line.trim().startsWith(".section") || line.trim().startsWith(".globl")) {
-                    out.write("\"");
-                    out.write(localLabelPrefix);
-                    out.write(currentFunction);
-                    out.write("_end\":\n\n");
-                    currentFunction = null;
                     out.write(line);
                     out.write('\n');
-                } else {
+                    continue;
+                }
+
+                String label = null;
+                int colon = line.indexOf(':');
+                if (colon > 0 && !Character.isWhitespace(line.charAt(0))) {
+                    label = line.substring(0, colon);
+                    if (label.startsWith("\"") && label.endsWith("\"")) {
+                        label = label.substring(1, label.length() - 1);
+                    }
+                }
+                if (label != null || line.trim().startsWith(".section")) {
+                    // The records end where the next symbol or section
+                    // starts.
+                    for (String l : pending) {
+                        out.write(l);
+                        out.write('\n');
+                    }
+                    pending.clear();
+                    inRecords = label != null && recordsLabels.contains(label);
                     out.write(line);
                     out.write('\n');
+                    if (label != null && functionNames.contains(label)) {
+                        currentFunction = label;
+                    }
+                    continue;
                 }
-            }
-            
-            while ((line = in.readLine()) != null) {
-                out.write(line);
-                out.write('\n');
-                Matcher matcher = methodImplPattern.matcher(line);
-                if (matcher.matches()) {
-                    String functionName = matcher.group(1);
-                    if (functionNames.contains(functionName)) {
-                        line = in.readLine();
-                        if (line.contains(String.valueOf(DUMMY_METHOD_SIZE))) {
+
+                if (inRecords) {
+                    if (pending.isEmpty()) {
+                        if (line.contains(dummy)) {
+                            pending.add(line);
+                            continue;
+                        }
+                    } else {
+                        Matcher matcher = methodImplPattern.matcher(line);
+                        if (matcher.matches() && functionNames.contains(matcher.group(1))) {
+                            String functionName = matcher.group(1);
                             out.write("\t.long\t");
                             out.write("\"" + localLabelPrefix + functionName + "_end\" - \"" + functionName + "\"");
                             out.write('\n');
+                            for (String l : pending.subList(1, pending.size())) {
+                                out.write(l);
+                                out.write('\n');
+                            }
+                            pending.clear();
                         } else {
-                            out.write(line);
-                            out.write('\n');
+                            pending.add(line);
+                            continue;
                         }
                     }
                 }
+                out.write(line);
+                out.write('\n');
+            }
+            for (String l : pending) {
+                out.write(l);
+                out.write('\n');
             }
         } finally {
             IOUtils.closeQuietly(in);
@@ -654,18 +1064,87 @@ public class ClassCompiler {
     }
     
     private void reset() {
-        output.reset();
         sootClass = null;
         mb = null;
         trampolines = null;
         catches = null;
+        functions = null;
+        javaMethods = null;
         classFields = null;
         instanceFields = null;
         classType = null;
         instanceType = null;
+        buildTimeInitValues = null;
     }
     
-    private void compile(Clazz clazz, OutputStream out) throws IOException {
+    /**
+     * Compiles the specified {@link Clazz} using this {@link ClassCompiler}
+     * and the specified {@link ClassCompiler}s of other slices. Returns the
+     * {@link org.robovm.compiler.llvm.Module}s of this and the other
+     * {@link ClassCompiler}s in that order.
+     */
+    private List<org.robovm.compiler.llvm.Module> compile(Clazz clazz, List<ClassCompiler> slices)
+            throws IOException {
+
+        // Soot isn't thread safe. Loading the class, building and
+        // transforming its method bodies and running the compiler plugins
+        // change Soot state and need exclusive access to Soot. Translating
+        // the prepared bodies of the Java methods to LLVM IR only reads Soot
+        // state and runs concurrently with the other front-end threads. The
+        // rest doesn't touch Soot. The module is built in LLVM by
+        // generateMachineCode() without going through IR text.
+        int sharedHolds = Clazzes.lockSoot();
+        try {
+            prepareModule(clazz, null);
+            for (ClassCompiler slice : slices) {
+                slice.prepareModule(clazz, this);
+            }
+        } finally {
+            Clazzes.unlockSoot(sharedHolds);
+        }
+        Clazzes.lockSootShared();
+        try {
+            compileMethods();
+            for (ClassCompiler slice : slices) {
+                slice.compileMethods();
+            }
+        } finally {
+            Clazzes.unlockSootShared();
+        }
+        List<org.robovm.compiler.llvm.Module> modules = new ArrayList<>();
+        sharedHolds = Clazzes.lockSoot();
+        try {
+            modules.add(finishModule(clazz));
+            for (ClassCompiler slice : slices) {
+                modules.add(slice.finishModule(clazz));
+            }
+        } finally {
+            Clazzes.unlockSoot(sharedHolds);
+        }
+
+        clazz.saveClazzInfo();
+        if (config.isUseDigests()) {
+            saveDigests(clazz, clazz.getClazzInfo());
+        }
+        for (ClassCompiler slice : slices) {
+            if (slice.config.isUseDigests()) {
+                slice.saveDigests(clazz, clazz.getClazzInfo());
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Loads the {@link SootClass} of the specified {@link Clazz}, runs the
+     * compiler plugins, compiles the methods which aren't Java methods and
+     * prepares the bodies of the Java methods. If {@code prepared} isn't
+     * {@code null} the class has already been prepared by the specified
+     * {@link ClassCompiler} of another slice. The plugins and the body
+     * transformations aren't run again and the {@link ClazzInfo} is kept.
+     * Callers must have exclusive access to Soot (see
+     * {@link Clazzes#lockSoot()}).
+     */
+    private void prepareModule(Clazz clazz, ClassCompiler prepared) throws IOException {
         javaMethodCompiler.reset(clazz);
         bridgeMethodCompiler.reset(clazz);
         callbackMethodCompiler.reset(clazz);
@@ -673,17 +1152,21 @@ public class ClassCompiler {
         structMemberMethodCompiler.reset(clazz);
         globalValueMethodCompiler.reset(clazz);
         
-        ClazzInfo ci = clazz.resetClazzInfo();
+        ClazzInfo ci = prepared == null ? clazz.resetClazzInfo() : clazz.getClazzInfo();
 
         mb = new ModuleBuilder();
         
-        for (CompilerPlugin compilerPlugin : config.getCompilerPlugins()) {
-            compilerPlugin.beforeClass(config, clazz, mb);
+        if (prepared == null) {
+            for (CompilerPlugin compilerPlugin : config.getCompilerPlugins()) {
+                compilerPlugin.beforeClass(config, clazz, mb);
+            }
         }
         
         sootClass = clazz.getSootClass();
         trampolines = new HashMap<>();
         catches = new HashSet<String>();
+        functions = new HashMap<>();
+        javaMethods = new HashSet<>();
         classFields = getClassFields(config.getOs(), config.getArch(),sootClass);
         instanceFields = getInstanceFields(config.getOs(), config.getArch(),sootClass);
         classType = getClassType(config.getOs(), config.getArch(),sootClass);
@@ -703,15 +1186,30 @@ public class ClassCompiler {
             this.sootClass.addMethod(clinit);
         }
 
-        if (isStruct(sootClass)) {
+        // Evaluate the <clinit> before the method compilers have modified it
+        buildTimeInitValues = null;
+        if (prepared != null) {
+            buildTimeInitValues = prepared.buildTimeInitValues;
+        } else {
+            ci.setBuildTimeInit(isBuildTimeInit(config, clazz));
+            if (ci.isBuildTimeInit()) {
+                buildTimeInitValues = ClinitEvaluator.evaluate(sootClass);
+                if (buildTimeInitValues == null) {
+                    config.getLogger().debug("Static initializer of class %s cannot be evaluated at build time", clazz);
+                }
+            }
+        }
+
+        if (prepared == null && isStruct(sootClass)) {
             SootMethod _sizeOf = new SootMethod("_sizeOf", Collections.EMPTY_LIST, IntType.v(), Modifier.PROTECTED | Modifier.NATIVE);
             sootClass.addMethod(_sizeOf);
             SootMethod sizeOf = new SootMethod("sizeOf", Collections.EMPTY_LIST, IntType.v(), Modifier.PUBLIC | Modifier.STATIC | Modifier.NATIVE);
             sootClass.addMethod(sizeOf);
         }
         
-        mb.addInclude(getClass().getClassLoader().getResource(String.format("header-%s-%s.ll", config.getOs().getFamily(), config.getArch())));
-        mb.addInclude(getClass().getClassLoader().getResource("header.ll"));
+        for (URL header : HeaderModules.getHeaders(config.getOs(), config.getArch())) {
+            mb.addInclude(header);
+        }
 
         mb.addFunction(createLdcClass());
         mb.addFunction(createLdcClassWrapper());
@@ -733,12 +1231,16 @@ public class ClassCompiler {
         }
 
         // After this point no changes to methods/fields may be done by CompilerPlugins.
-        ci.initClassInfo(); 
+        if (prepared == null) {
+            ci.initClassInfo(); 
+        }
 
         for (SootMethod method : sootClass.getMethods()) {
             
-            for (CompilerPlugin compilerPlugin : config.getCompilerPlugins()) {
-                compilerPlugin.beforeMethod(config, clazz, method, mb);
+            if (prepared == null) {
+                for (CompilerPlugin compilerPlugin : config.getCompilerPlugins()) {
+                    compilerPlugin.beforeMethod(config, clazz, method, mb);
+                }
             }
             
             String name = method.getName();
@@ -753,11 +1255,43 @@ public class ClassCompiler {
             } else if (method.isNative()) {
                 function = nativeMethod(method);
             } else if (!method.isAbstract()) {
-                function = method(method);
+                if (prepared == null) {
+                    javaMethodCompiler.prepare(method);
+                } else {
+                    javaMethodCompiler.prepare(method, prepared.javaMethodCompiler);
+                }
+                javaMethods.add(method);
+            }
+            if (function != null) {
+                functions.put(method, function);
             }
             if (hasCallbackAnnotation(method)) {
                 callbackMethod(method);
             }
+        }
+
+        if (!sootClass.isInterface()) {
+            try {
+                // Build the VTable now so that compileMethods() only reads it
+                config.getVTableCache().get(sootClass);
+            } catch (IllegalArgumentException e) {
+                // Handled by createLookupFunction() and finishModule().
+            }
+        }
+    }
+
+    /**
+     * Compiles the Java methods prepared by {@link #prepareModule(Clazz)} and
+     * creates the lookup functions and class initialization wrappers of the
+     * methods. Only reads Soot state. Callers must have at least shared
+     * access to Soot (see {@link Clazzes#lockSootShared()}).
+     */
+    private void compileMethods() {
+        for (SootMethod method : sootClass.getMethods()) {
+            String name = method.getName();
+            if (javaMethods.contains(method)) {
+                functions.put(method, method(method));
+            }
             if (!name.equals("<clinit>") && !name.equals("<init>") 
                     && !method.isPrivate() && !method.isStatic() 
                     && !Modifier.isFinal(method.getModifiers()) 
@@ -772,9 +1306,22 @@ public class ClassCompiler {
                 FunctionRef fn = new FunctionRef(fnName, getFunctionType(method));
                 mb.addFunction(createClassInitWrapperFunction(fn));
             }
-            
-            for (CompilerPlugin compilerPlugin : config.getCompilerPlugins()) {
-                if (function != null) {
+        }
+    }
+
+    /**
+     * Runs the compiler plugins, compiles the trampolines and the info
+     * struct of the class and updates the {@link ClazzInfo} of the class.
+     * Returns the finished {@link org.robovm.compiler.llvm.Module}. Callers
+     * must have exclusive access to Soot (see {@link Clazzes#lockSoot()}).
+     */
+    private org.robovm.compiler.llvm.Module finishModule(Clazz clazz) throws IOException {
+        ClazzInfo ci = clazz.getClazzInfo();
+
+        for (SootMethod method : sootClass.getMethods()) {
+            Function function = functions.get(method);
+            if (function != null) {
+                for (CompilerPlugin compilerPlugin : config.getCompilerPlugins()) {
                     compilerPlugin.afterMethod(config, clazz, method, mb, function);
                 }
             }
@@ -876,13 +1423,12 @@ public class ClassCompiler {
             compilerPlugin.afterClass(config, clazz, mb);
         }
         
-        OutputStreamWriter writer = new OutputStreamWriter(out, "UTF-8");
-        mb.build().write(writer);
-        writer.flush();
+        org.robovm.compiler.llvm.Module module = mb.build();
 
         ci.setCatchNames(catches);
         
         ci.addClassDependency("java/lang/Object", false); // Make sure no class or interface has zero dependencies
+        ci.addClassDependency("java/lang/String", false); // String literals are emitted using the String instance layout
         if (sootClass.hasSuperclass() && !sootClass.isInterface()) {
             ci.addClassDependency(getInternalName(sootClass.getSuperclass()), false);
         }
@@ -903,6 +1449,17 @@ public class ClassCompiler {
         }
         ci.addClassDependencies(attributesEncoder.getDependencies(), false);
         ci.addClassDependencies(catches, false);
+        if (buildTimeInitValues != null) {
+            // The instance layouts of the classes of objects created at
+            // build time are baked into the StaticInit struct
+            for (Object o : getStaticObjects()) {
+                if (o instanceof Instance) {
+                    for (SootClass c = ((Instance) o).getType(); c.hasSuperclass(); c = c.getSuperclass()) {
+                        ci.addClassDependency(getInternalName(c), false);
+                    }
+                }
+            }
+        }
         
         for (Trampoline t : trampolines.keySet()) {
             if (t instanceof Checkcast) {
@@ -913,7 +1470,8 @@ public class ClassCompiler {
                 ci.addInvoke(t.getTarget() + "." + ((Invoke) t).getMethodName() + ((Invoke) t).getMethodDesc());
             }
         }
-        clazz.saveClazzInfo();
+
+        return module;
     }
 
     private static void addClassDependencyIfNeeded(Clazz clazz, soot.Type type, boolean weak) {
@@ -1034,8 +1592,11 @@ public class ClassCompiler {
             args.add(function.getParameterRef(0));
             args.add(getInfoStruct(function, sootClass));
             args.add(function.getParameterRef(1));
+            args.add(new ConstantBitcast(new GlobalRef(Symbols.typeInfoSymbol(
+                    getInternalName(sootClass)), I8_PTR), I8_PTR));
+            args.add(new IntegerConstant(entry.getIMTSlot()));
             args.add(new IntegerConstant(entry.getIndex()));
-            Value fptr = call(function, BC_LOOKUP_INTERFACE_METHOD_IMPL, args);
+            Value fptr = call(function, LOOKUP_INTERFACE_METHOD, args);
             Variable f = function.newVariable(function.getType());
             function.add(new Bitcast(f, fptr, f.getType()));
             Value result = tailcall(function, f.ref(), function.getParameterRefs());
@@ -1070,6 +1631,7 @@ public class ClassCompiler {
             HashSet<SootClass> interfaces = new HashSet<SootClass>();
             collectInterfaces(sootClass, interfaces);
             List<Constant> tables = new ArrayList<Constant>();
+            ITable.IMT imt = new ITable.IMT();
             int i = 0;
             for (SootClass ifs : interfaces) {
                 ITable itable = config.getITableCache().get(ifs);
@@ -1079,6 +1641,7 @@ public class ClassCompiler {
                     if (!mb.hasSymbol(typeInfoName)) {
                         mb.addGlobal(new Global(typeInfoName, Linkage.external, I8_PTR, true));
                     }
+                    itable.addToIMT(imt, mb, sootClass, mb.getGlobalRef(typeInfoName));
                     Global itableStruct = new Global(name, Linkage._private,
                             new StructureConstantBuilder()
                                 .add(mb.getGlobalRef(typeInfoName))
@@ -1095,6 +1658,7 @@ public class ClassCompiler {
                         new StructureConstantBuilder()
                             .add(new IntegerConstant((short) tables.size()))
                             .add(tables.get(0)) // cache value must never be null
+                            .add(imt.getArray())
                             .add(new ArrayConstantBuilder(I8_PTR).add(tables).build())
                             .build());
                 mb.addGlobal(itablesStruct);
@@ -1106,6 +1670,216 @@ public class ClassCompiler {
         }
     }
     
+    /**
+     * Returns the arrays and objects reachable from the static fields
+     * initialized at build time in the order they are numbered in the
+     * StaticInit struct.
+     */
+    private List<Object> getStaticObjects() {
+        Map<Object, Object> seen = new IdentityHashMap<>();
+        List<Object> objects = new ArrayList<>();
+        LinkedList<Object> queue = new LinkedList<>(buildTimeInitValues.values());
+        while (!queue.isEmpty()) {
+            Object value = queue.removeFirst();
+            if (!isStaticObject(value) || seen.put(value, value) != null) {
+                continue;
+            }
+            objects.add(value);
+            if (value instanceof Instance) {
+                queue.addAll(((Instance) value).getFields().values());
+            } else if (value instanceof ObjectArray) {
+                queue.addAll(Arrays.asList(((ObjectArray) value).getValues()));
+            }
+        }
+        return objects;
+    }
+
+    private static boolean isStaticObject(Object value) {
+        return value instanceof Instance || value instanceof ObjectArray
+                || value != null && value.getClass().isArray();
+    }
+
+    /**
+     * Creates the StaticInit struct read by the runtime for classes which
+     * have been initialized at build time. See initializeStaticFields() in
+     * bc.c. Arrays and objects are described by StaticObject structs and
+     * created on the heap by the runtime. They cannot be emitted as static
+     * data since the GC doesn't scan the data sections for roots.
+     */
+    private Constant createStaticInitStruct() {
+        List<Object> objects = getStaticObjects();
+        Map<Object, Integer> indexes = new IdentityHashMap<>();
+        for (Object o : objects) {
+            indexes.put(o, indexes.size());
+        }
+        
+        List<Value> staticObjects = new ArrayList<>();
+        for (Object o : objects) {
+            String className;
+            int length;
+            Constant data = new NullConstant(I8_PTR);
+            if (o instanceof Instance) {
+                Instance instance = (Instance) o;
+                className = getInternalName(instance.getType());
+                length = -1;
+                List<Value> values = new ArrayList<>();
+                for (Map.Entry<SootField, Object> entry : instance.getFields().entrySet()) {
+                    SootField field = entry.getKey();
+                    SootClass declaringClass = field.getDeclaringClass();
+                    List<SootField> fields = getInstanceFields(config.getOs(), config.getArch(), declaringClass);
+                    Constant offset = offsetof(getInstanceType(config.getOs(), config.getArch(), declaringClass), 
+                            1, 1 + fields.indexOf(field), 1);
+                    values.add(createStaticValue(offset, field.getType(), entry.getValue(), indexes));
+                }
+                data = createStaticValuesStruct(values);
+            } else if (o instanceof ObjectArray) {
+                ObjectArray array = (ObjectArray) o;
+                className = getInternalName(array.getType());
+                length = array.getValues().length;
+                // The offset of an array element is its index
+                List<Value> values = new ArrayList<>();
+                for (int i = 0; i < length; i++) {
+                    Object value = array.getValues()[i];
+                    if (value != null) {
+                        values.add(createStaticValue(new IntegerConstant(i), 
+                                array.getType().getElementType(), value, indexes));
+                    }
+                }
+                data = createStaticValuesStruct(values);
+            } else {
+                soot.Type elementType = getSootType(o.getClass().getComponentType());
+                className = "[" + getDescriptor(elementType);
+                length = java.lang.reflect.Array.getLength(o);
+                if (length > 0) {
+                    ArrayConstantBuilder array = new ArrayConstantBuilder(getType(elementType));
+                    for (int i = 0; i < length; i++) {
+                        array.add(getConstant(java.lang.reflect.Array.get(o, i)));
+                    }
+                    data = new ConstantBitcast(mb.newGlobal(array.build(), true).ref(), I8_PTR);
+                }
+            }
+            staticObjects.add(new StructureConstantBuilder()
+                    .add(getString(className))
+                    .add(new IntegerConstant(length))
+                    .add(data)
+                    .build());
+        }
+        
+        List<Value> values = new ArrayList<>();
+        for (Map.Entry<SootField, Object> entry : buildTimeInitValues.entrySet()) {
+            SootField field = entry.getKey();
+            Constant offset = offsetof(classType, 1, classFields.indexOf(field), 1);
+            values.add(createStaticValue(offset, field.getType(), entry.getValue(), indexes));
+        }
+        
+        Constant objectsRef = new NullConstant(I8_PTR);
+        if (!staticObjects.isEmpty()) {
+            objectsRef = new ConstantBitcast(mb.newGlobal(
+                    new ArrayConstantBuilder(STATIC_OBJECT).add(staticObjects).build(), true).ref(), I8_PTR);
+        }
+        Global g = mb.newGlobal(new StructureConstantBuilder()
+                .add(new IntegerConstant(staticObjects.size()))
+                .add(objectsRef)
+                .add(createStaticValuesStruct(values))
+                .build(), true);
+        return new ConstantBitcast(g.ref(), I8_PTR);
+    }
+    
+    /**
+     * Creates the StaticValue struct for a value stored at the specified
+     * offset. Arrays and objects refer to their StaticObject by index.
+     */
+    private Constant createStaticValue(Constant offset, soot.Type type, Object value, 
+            Map<Object, Integer> indexes) {
+        
+        int kind;
+        long bits = 0;
+        Constant data = new NullConstant(I8_PTR);
+        if (value instanceof String) {
+            kind = 'L';
+            bits = ((String) value).length();
+            data = mb.getString((String) value);
+        } else if (isStaticObject(value)) {
+            kind = 'O';
+            bits = indexes.get(value);
+        } else {
+            kind = getDescriptor(type).charAt(0);
+            if (value instanceof Float) {
+                bits = Float.floatToRawIntBits((Float) value);
+            } else if (value instanceof Double) {
+                bits = Double.doubleToRawLongBits((Double) value);
+            } else {
+                bits = ((Number) value).longValue();
+            }
+        }
+        return new StructureConstantBuilder()
+                .add(offset)
+                .add(new IntegerConstant(kind))
+                .add(new IntegerConstant(bits))
+                .add(data)
+                .build();
+    }
+    
+    private Constant createStaticValuesStruct(List<Value> values) {
+        Global g = mb.newGlobal(new StructureConstantBuilder()
+                .add(new IntegerConstant(values.size()))
+                .add(new ArrayConstantBuilder(STATIC_VALUE).add(values).build())
+                .build(), true);
+        return new ConstantBitcast(g.ref(), I8_PTR);
+    }
+
+    private static soot.Type getSootType(Class<?> c) {
+        if (c == boolean.class) {
+            return BooleanType.v();
+        } else if (c == byte.class) {
+            return ByteType.v();
+        } else if (c == char.class) {
+            return CharType.v();
+        } else if (c == short.class) {
+            return ShortType.v();
+        } else if (c == int.class) {
+            return IntType.v();
+        } else if (c == long.class) {
+            return LongType.v();
+        } else if (c == float.class) {
+            return FloatType.v();
+        }
+        return DoubleType.v();
+    }
+
+    private static Constant getConstant(Object value) {
+        if (value instanceof Boolean) {
+            return new IntegerConstant((byte) (((Boolean) value) ? 1 : 0));
+        } else if (value instanceof Byte) {
+            return new IntegerConstant((Byte) value);
+        } else if (value instanceof Character) {
+            return new IntegerConstant((Character) value);
+        } else if (value instanceof Short) {
+            return new IntegerConstant((Short) value);
+        } else if (value instanceof Integer) {
+            return new IntegerConstant((Integer) value);
+        } else if (value instanceof Long) {
+            return new IntegerConstant((Long) value);
+        } else if (value instanceof Float) {
+            return new FloatingPointConstant((Float) value);
+        }
+        return new FloatingPointConstant((Double) value);
+    }
+
+    /**
+     * Returns whether the static initializer of the specified class should be
+     * evaluated at build time according to
+     * {@link Config#getBuildTimeInitClasses()}.
+     */
+    static boolean isBuildTimeInit(Config config, Clazz clazz) {
+        for (String pattern : config.getBuildTimeInitClasses()) {
+            if (new AntPathMatcher(pattern, ".").matches(clazz.getClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private StructureConstant createClassInfoStruct() {
         int flags = 0;
         
@@ -1136,13 +1910,20 @@ public class ClassCompiler {
         if (hasFinalizer(sootClass)) {
             flags |= CI_FINALIZABLE;
         }
+        if (buildTimeInitValues != null) {
+            flags |= CI_BUILD_TIME_INIT;
+        }
         
         // Create the ClassInfoHeader structure.
         StructureConstantBuilder header = new StructureConstantBuilder();
         header.add(new NullConstant(I8_PTR)); // Points to the runtime Class struct
         header.add(new IntegerConstant(flags));
         header.add(getString(getInternalName(sootClass)));
-        if (sootClass.declaresMethod("<clinit>", Collections.emptyList(), VoidType.v())) {
+        if (buildTimeInitValues != null) {
+            // The runtime applies the static field values instead of calling
+            // the <clinit>
+            header.add(createStaticInitStruct());
+        } else if (sootClass.declaresMethod("<clinit>", Collections.emptyList(), VoidType.v())) {
             SootMethod method = sootClass.getMethod("<clinit>", Collections.emptyList(), VoidType.v());
             header.add(new FunctionRef(Symbols.methodSymbol(method), getFunctionType(method)));            
         } else {
@@ -1185,210 +1966,162 @@ public class ClassCompiler {
             body.add(getString(getInternalName(s)));
         }
         
-        for (SootField f : sootClass.getFields()) {
-            flags = 0;
-            soot.Type t = f.getType();
-            if (t instanceof PrimType) {
-                if (t.equals(BooleanType.v())) {
-                    flags |= DESC_Z;
-                } else if (t.equals(ByteType.v())) {
-                    flags |= DESC_B;
-                } else if (t.equals(ShortType.v())) {
-                    flags |= DESC_S;
-                } else if (t.equals(CharType.v())) {
-                    flags |= DESC_C;
-                } else if (t.equals(IntType.v())) {
-                    flags |= DESC_I;
-                } else if (t.equals(LongType.v())) {
-                    flags |= DESC_J;
-                } else if (t.equals(FloatType.v())) {
-                    flags |= DESC_F;
-                } else if (t.equals(DoubleType.v())) {
-                    flags |= DESC_D;
-                }
-                flags <<= 12;
-            }
-            if (Modifier.isPublic(f.getModifiers())) {
-                flags |= FI_PUBLIC;
-            } else if (Modifier.isPrivate(f.getModifiers())) {
-                flags |= FI_PRIVATE;
-            } else if (Modifier.isProtected(f.getModifiers())) {
-                flags |= FI_PROTECTED;
-            }
-            if (Modifier.isStatic(f.getModifiers())) {
-                flags |= FI_STATIC;
-            }
-            if (Modifier.isFinal(f.getModifiers())) {
-                flags |= FI_FINAL;
-            }
-            if (Modifier.isVolatile(f.getModifiers())) {
-                flags |= FI_VOLATILE;
-            }
-            if (Modifier.isTransient(f.getModifiers())) {
-                flags |= FI_TRANSIENT;
-            }
-            if ((f.getModifiers() & 0x1000) > 0) {
-                flags |= FI_SYNTHETIC;
-            }
-            if (Modifier.isEnum(f.getModifiers())) {
-                flags |= FI_ENUM;
-            }
-            if (attributesEncoder.fieldHasAttributes(f)) {
-                flags |= FI_ATTRIBUTES;
-            }
-            body.add(new IntegerConstant((short) flags));
-            body.add(getString(f.getName()));
-            if (!(t instanceof PrimType)) {
-                body.add(getString(getDescriptor(f)));
-            }
+        PackedStructureConstant bodyConstant = body.build();
+
+        // Create the Field and Method records. They are emitted read-only in
+        // a global of their own and copied by the runtime when the class is
+        // loaded. They are linked in reverse order like the runtime used to
+        // link them when allocating them. The header points to the last
+        // Field and Method.
+        List<SootField> fields = new ArrayList<>(sootClass.getFields());
+        List<SootMethod> methods = sootClass.getMethods();
+        Type[] recordTypes = new Type[fields.size() + methods.size()];
+        int[] methodAccess = new int[methods.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            recordTypes[i] = fields.get(i).isStatic() ? CLASS_FIELD_RECORD : INSTANCE_FIELD_RECORD;
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            methodAccess[i] = getMethodAccess(methods.get(i));
+            recordTypes[fields.size() + i] = 
+                    (methodAccess[i] & (ACC_NATIVE | METHOD_TYPE_BRIDGE | METHOD_TYPE_CALLBACK)) != 0 
+                    ? EXTENDED_METHOD_RECORD : METHOD_RECORD;
+        }
+        GlobalRef self = new GlobalRef(Symbols.infoRecordsSymbol(getInternalName(sootClass)), 
+                new StructureType(recordTypes));
+
+        StructureConstantBuilder records = new StructureConstantBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            SootField f = fields.get(i);
+            StructureConstantBuilder record = new StructureConstantBuilder();
+            record.add(i > 0 ? recordRef(self, i - 1) : new NullConstant(I8_PTR)); // next
+            record.add(new NullConstant(I8_PTR)); // clazz
+            record.add(getString(f.getName()));
+            record.add(getString(getDescriptor(f)));
+            record.add(new IntegerConstant(f.getModifiers() & FIELD_ACCESS_MASK));
+            record.add(attributesEncoder.fieldHasAttributes(f) 
+                    ? new ConstantBitcast(attributesEncoder.getFieldAttributes(f).ref(), I8_PTR) 
+                    : new NullConstant(I8_PTR));
             if (f.isStatic()) {
+                // The runtime adds the address of the Class
                 int index = classFields.indexOf(f);
-                body.add(offsetof(classType, 1, index, 1));
+                records.add(new StructureConstantBuilder().add(record.build())
+                        .add(new ConstantInttoptr(offsetof(classType, 1, index, 1), I8_PTR)).build());
             } else {
                 int index = instanceFields.indexOf(f);
-                body.add(offsetof(instanceType, 1, 1 + index, 1));
-            }
-            if (attributesEncoder.fieldHasAttributes(f)) {
-                body.add(new ConstantBitcast(attributesEncoder.getFieldAttributes(f).ref(), I8_PTR));
+                records.add(new StructureConstantBuilder().add(record.build())
+                        .add(offsetof(instanceType, 1, 1 + index, 1)).build());
             }
         }
         
         VTable vtable = !sootClass.isInterface() ? config.getVTableCache().get(sootClass) : null;
-        ITable itable = sootClass.isInterface() ? config.getITableCache().get(sootClass) : null;;
+        ITable itable = sootClass.isInterface() ? config.getITableCache().get(sootClass) : null;
 
-        for (SootMethod m : sootClass.getMethods()) {
-            soot.Type t = m.getReturnType();
-            flags = 0;
-            if (Modifier.isPublic(m.getModifiers())) {
-                flags |= MI_PUBLIC;
-            } else if (Modifier.isPrivate(m.getModifiers())) {
-                flags |= MI_PRIVATE;
-            } else if (Modifier.isProtected(m.getModifiers())) {
-                flags |= MI_PROTECTED;
-            }
-            if (Modifier.isStatic(m.getModifiers())) {
-                flags |= MI_STATIC;
-            }
-            if (Modifier.isFinal(m.getModifiers())) {
-                flags |= MI_FINAL;
-            }
-            if (Modifier.isSynchronized(m.getModifiers())) {
-                flags |= MI_SYNCHRONIZED;
-            }
-            if ((m.getModifiers() & 0x0040) > 0) {
-                flags |= MI_BRIDGE;
-            }
-            if ((m.getModifiers() & 0x0080) > 0) {
-                flags |= MI_VARARGS;
-            }
-            if (Modifier.isNative(m.getModifiers())) {
-                if (!isStruct(sootClass) && !hasStructMemberAnnotation(m)) {
-                    flags |= MI_NATIVE;
-                }
-            }
-            if (Modifier.isAbstract(m.getModifiers())) {
-                flags |= MI_ABSTRACT;
-            }
-            if (Modifier.isStrictFP(m.getModifiers())) {
-                flags |= MI_STRICT;
-            }
-            if ((m.getModifiers() & 0x1000) > 0) {
-                flags |= MI_SYNTHETIC;
-            }
-            if (attributesEncoder.methodHasAttributes(m)) {
-                flags |= MI_ATTRIBUTES;
-            }
-            if (hasBridgeAnnotation(m) || hasGlobalValueAnnotation(m)) {
-                flags |= MI_BRO_BRIDGE;
-            }
-            if (hasCallbackAnnotation(m)) {
-                flags |= MI_BRO_CALLBACK;
-            }
-            if ((t instanceof PrimType || t == VoidType.v()) && m.getParameterCount() == 0) {
-                flags |= MI_COMPACT_DESC;
-            }
-            body.add(new IntegerConstant((short) flags));            
+        for (int i = 0; i < methods.size(); i++) {
+            SootMethod m = methods.get(i);
+            int access = methodAccess[i];
+            int recordIndex = fields.size() + i;
 
-            Constant viTableIndex = new IntegerConstant((short) -1);
+            int viTableIndex = -1;
             if (vtable != null) {
                 VTable.Entry entry = vtable.getEntry(m);
                 if (entry != null) {
-                    viTableIndex = new IntegerConstant((short) entry.getIndex());
+                    viTableIndex = entry.getIndex();
                 }
             } else {
                 ITable.Entry entry = itable.getEntry(m);
                 if (entry != null) {
-                    viTableIndex = new IntegerConstant((short) entry.getIndex());
-                }
-            }
-            body.add(viTableIndex);            
-            
-            body.add(getString(m.getName()));
-            
-            if ((flags & MI_COMPACT_DESC) > 0) {
-                int desc = 0;
-                if (t.equals(BooleanType.v())) {
-                    desc = DESC_Z;
-                } else if (t.equals(ByteType.v())) {
-                    desc = DESC_B;
-                } else if (t.equals(ShortType.v())) {
-                    desc = DESC_S;
-                } else if (t.equals(CharType.v())) {
-                    desc = DESC_C;
-                } else if (t.equals(IntType.v())) {
-                    desc = DESC_I;
-                } else if (t.equals(LongType.v())) {
-                    desc = DESC_J;
-                } else if (t.equals(FloatType.v())) {
-                    desc = DESC_F;
-                } else if (t.equals(DoubleType.v())) {
-                    desc = DESC_D;
-                } else if (t.equals(VoidType.v())) {
-                    desc = DESC_V;
+                    viTableIndex = entry.getIndex();
                 }
-                body.add(new IntegerConstant((byte) desc));            
-            } else {
-                body.add(getString(getDescriptor(m)));
-            }
-            if (attributesEncoder.methodHasAttributes(m)) {
-                body.add(new ConstantBitcast(attributesEncoder.getMethodAttributes(m).ref(), I8_PTR));
             }
+
+            StructureConstantBuilder record = new StructureConstantBuilder();
+            record.add(recordIndex > fields.size() ? recordRef(self, recordIndex - 1) : new NullConstant(I8_PTR)); // next
+            record.add(new NullConstant(I8_PTR)); // clazz
+            record.add(getString(m.getName()));
+            // Methods without parameters share descriptor strings with the
+            // runtime. proxy.c relies on this.
+            record.add(getString(getDescriptor(m)));
+            record.add(new IntegerConstant(viTableIndex));
+            record.add(new IntegerConstant(access));
+            record.add(new IntegerConstant(m.isAbstract() ? 0 : DUMMY_METHOD_SIZE)); // Size of function. This value will be modified later by patching the .o or .s file.
+            record.add(attributesEncoder.methodHasAttributes(m) 
+                    ? new ConstantBitcast(attributesEncoder.getMethodAttributes(m).ref(), I8_PTR) 
+                    : new NullConstant(I8_PTR));
             if (!m.isAbstract()) {
-                body.add(new ConstantBitcast(new FunctionRef(Symbols.methodSymbol(m), getFunctionType(m)), I8_PTR));
-                body.add(new IntegerConstant(DUMMY_METHOD_SIZE)); // Size of function. This value will be modified later by patching the .s file.
+                record.add(new ConstantBitcast(new FunctionRef(Symbols.methodSymbol(m), getFunctionType(m)), I8_PTR));
                 if (m.isSynchronized()) {
-                    body.add(new ConstantBitcast(new FunctionRef(Symbols.synchronizedWrapperSymbol(m), getFunctionType(m)), I8_PTR));
+                    record.add(new ConstantBitcast(new FunctionRef(Symbols.synchronizedWrapperSymbol(m), getFunctionType(m)), I8_PTR));
+                } else {
+                    record.add(new NullConstant(I8_PTR));
                 }
-                if ((flags & MI_NATIVE) == 0) {
+                if ((access & ACC_NATIVE) == 0) {
                     // Cannot use m.isNative() in the condition above since methods which are native in the
                     // Java class file may have been changed to non-native by the RoboVM compiler 
-                    // (e.g. @StructMember methods). The native code which parses the info structs will see 
-                    // the method as non-native.
+                    // (e.g. @StructMember methods).
 
                     // Add a weak linetable pointer which points to a -1 value which will be interpreted as 0 linenumbers in the table
                     Global linetableGlobal = new Global(Symbols.linetableSymbol(m), Linkage.weak, new IntegerConstant(-1));
                     mb.addGlobal(linetableGlobal);
-                    body.add(linetableGlobal.ref());
-                }
-            }
-            if (hasBridgeAnnotation(m)) {
-                if (!readBooleanElem(getAnnotation(m, BRIDGE), "dynamic", false)) {
-                    body.add(new GlobalRef(Symbols.bridgePtrSymbol(m), I8_PTR));
+                    record.add(new ConstantBitcast(linetableGlobal.ref(), I8_PTR));
                 } else {
-                    body.add(new NullConstant(I8_PTR));
+                    record.add(new NullConstant(I8_PTR));
                 }
-            } else if (hasGlobalValueAnnotation(m)) {
-                body.add(new GlobalRef(Symbols.globalValuePtrSymbol(m), I8_PTR));
-            }
-            if (hasCallbackAnnotation(m)) {
-                body.add(new AliasRef(Symbols.callbackPtrSymbol(m), I8_PTR));
+            } else {
+                record.add(new NullConstant(I8_PTR));
+                record.add(new NullConstant(I8_PTR));
+                record.add(new NullConstant(I8_PTR));
+            }
+            if (recordTypes[recordIndex] == EXTENDED_METHOD_RECORD) {
+                // BridgeMethod.targetFnPtr, CallbackMethod.callbackImpl or
+                // NativeMethod.nativeImpl which is resolved at runtime.
+                Constant ext = new NullConstant(I8_PTR);
+                if ((access & METHOD_TYPE_BRIDGE) != 0) {
+                    if (hasBridgeAnnotation(m)) {
+                        ext = new GlobalRef(Symbols.bridgePtrSymbol(m), I8_PTR);
+                    } else {
+                        ext = new GlobalRef(Symbols.globalValuePtrSymbol(m), I8_PTR);
+                    }
+                } else if ((access & METHOD_TYPE_CALLBACK) != 0) {
+                    ext = new AliasRef(Symbols.callbackPtrSymbol(m), I8_PTR);
+                }
+                records.add(new StructureConstantBuilder().add(record.build()).add(ext).build());
+            } else {
+                records.add(record.build());
             }
         }
+
+        if (recordTypes.length > 0) {
+            mb.addGlobal(new Global(self.getName(), Linkage.weak, records.build(), true));
+        }
+        header.add(fields.isEmpty() ? new NullConstant(I8_PTR) : recordRef(self, fields.size() - 1));
+        header.add(methods.isEmpty() ? new NullConstant(I8_PTR) : recordRef(self, recordTypes.length - 1));
         
         // Return the struct {header, body}. To be compatible with the C code in classinfo.c 
         // it is important that the header is padded the same as in C so that the body starts
         // after sizeof(ClassInfoHeader) bytes.
-        return new StructureConstantBuilder().add(header.build()).add(body.build()).build();
+        return new StructureConstantBuilder().add(header.build()).add(bodyConstant).build();
+    }
+
+    private static Constant recordRef(GlobalRef records, int index) {
+        return new ConstantBitcast(new ConstantGetelementptr(records, 0, index), I8_PTR);
+    }
+
+    /**
+     * Returns the access flags of the runtime Method of the specified method
+     * including the flags telling the runtime the type of the Method.
+     */
+    private int getMethodAccess(SootMethod m) {
+        int access = m.getModifiers() & METHOD_ACCESS_MASK;
+        if (Modifier.isNative(m.getModifiers()) && !isStruct(sootClass) && !hasStructMemberAnnotation(m)) {
+            access |= ACC_NATIVE;
+        }
+        if (hasBridgeAnnotation(m) && !readBooleanElem(getAnnotation(m, BRIDGE), "dynamic", false) 
+                || hasGlobalValueAnnotation(m)) {
+            access |= METHOD_TYPE_BRIDGE;
+        } else if (hasCallbackAnnotation(m)) {
+            access |= METHOD_TYPE_CALLBACK;
+        }
+        return access;
     }
 
     private Function compileMethod(AbstractMethodCompiler methodCompiler, SootMethod method) {
@@ -1432,7 +2165,16 @@ public class ClassCompiler {
     private Function createAllocator() {
         Function fn = FunctionBuilder.allocator(sootClass);
         Value info = getInfoStruct(fn, sootClass);        
-        Value result = call(fn, BC_ALLOCATE, fn.getParameterRef(0), info);
+        Value result = null;
+        if (sootClass.isAbstract() || sootClass.isInterface()) {
+            // _bcAllocate() will throw InstantiationException
+            result = call(fn, BC_ALLOCATE, fn.getParameterRef(0), info);
+        } else {
+            // The allocator is only called once the class has been
+            // initialized. Try the thread's allocation cache before calling
+            // _bcAllocate().
+            result = call(fn, ALLOCATE, fn.getParameterRef(0), info, sizeof(instanceType));
+        }
         fn.add(new Ret(result));
         return fn;
     }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.clazz.ClazzInfo;
+import org.robovm.compiler.clazz.MethodInfo;
+
+/**
+ * Class hierarchy analysis over all classes linked into an executable. Since
+ * no classes can be loaded at runtime which haven't been linked in (with the
+ * exception of array classes and proxy classes) the {@link Linker} can use
+ * this to find the implementations a virtual or interface call may end up in.
+ */
+class ClassHierarchy {
+    /**
+     * Types which may have subtypes which aren't known at link time: array
+     * classes and proxy classes generated at runtime.
+     */
+    private static final Set<String> OPEN_TYPES = new HashSet<>(Arrays.asList(
+            "java/lang/Object", "java/lang/Cloneable", "java/io/Serializable",
+            "java/lang/reflect/Proxy"));
+
+    /**
+     * A method implementation and the concrete classes which use it.
+     */
+    static class Implementation {
+        final ClazzInfo owner;
+        final MethodInfo method;
+        final Set<ClazzInfo> receivers = new HashSet<>();
+
+        Implementation(ClazzInfo owner, MethodInfo method) {
+            this.owner = owner;
+            this.method = method;
+        }
+    }
+
+    private final Map<ClazzInfo, List<ClazzInfo>> concreteSubtypes = new HashMap<>();
+    private final Set<ClazzInfo> incomplete = new HashSet<>();
+
+    ClassHierarchy(Collection<Clazz> classes) {
+        for (Clazz clazz : classes) {
+            ClazzInfo ci = clazz.getClazzInfo();
+            if (ci.isInterface() || ci.isAbstract()) {
+                continue;
+            }
+            Set<ClazzInfo> supertypes = new HashSet<>();
+            boolean complete = collectSupertypes(ci, supertypes);
+            for (ClazzInfo supertype : supertypes) {
+                if (!complete) {
+                    // Some supertype of this class is missing. The class
+                    // cannot be loaded at runtime and its supertypes cannot
+                    // be reasoned about.
+                    incomplete.add(supertype);
+                }
+                List<ClazzInfo> l = concreteSubtypes.get(supertype);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    concreteSubtypes.put(supertype, l);
+                }
+                l.add(ci);
+            }
+        }
+    }
+
+    private static boolean collectSupertypes(ClazzInfo ci, Set<ClazzInfo> result) {
+        if (ci.isPhantom()) {
+            return false;
+        }
+        if (!result.add(ci)) {
+            return true;
+        }
+        boolean complete = true;
+        if (ci.hasSuperclass()) {
+            complete &= collectSupertypes(ci.getSuperclass(), result);
+        }
+        for (ClazzInfo ifs : ci.getInterfaces()) {
+            complete &= collectSupertypes(ifs, result);
+        }
+        return complete;
+    }
+
+    /**
+     * Returns {@code true} if the specified class is the same as or a
+     * subclass of the other specified class.
+     */
+    boolean isSubclassOf(ClazzInfo ci, ClazzInfo superclass) {
+        for (ClazzInfo c = ci; c != null && !c.isPhantom(); c = c.hasSuperclass() ? c.getSuperclass() : null) {
+            if (c == superclass) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the implementations of the specified method which may be
+     * invoked when calling the method on an instance of the specified class or
+     * interface. Returns {@code null} if the implementations cannot be
+     * determined or if there are more than <code>max</code> of them. The
+     * result is ordered by the internal names of the receiver classes.
+     */
+    List<Implementation> findImplementations(ClazzInfo ci, MethodInfo mi, int max) {
+        if (OPEN_TYPES.contains(ci.getInternalName()) || incomplete.contains(ci)) {
+            return null;
+        }
+        if (mi.isStatic() || mi.isPrivate() || !(mi.isPublic() || mi.isProtected())) {
+            // Package private methods may or may not be overridden depending
+            // on the packages of the subclasses. Leave them to the VTable.
+            return null;
+        }
+        List<ClazzInfo> receivers = concreteSubtypes.get(ci);
+        if (receivers == null) {
+            return Collections.emptyList();
+        }
+        Set<ClazzInfo> sortedReceivers = new TreeSet<>(new Comparator<ClazzInfo>() {
+            @Override
+            public int compare(ClazzInfo o1, ClazzInfo o2) {
+                return o1.getInternalName().compareTo(o2.getInternalName());
+            }
+        });
+        sortedReceivers.addAll(receivers);
+        Map<MethodInfo, Implementation> result = new LinkedHashMap<>();
+        for (ClazzInfo receiver : sortedReceivers) {
+            Implementation impl = resolve(receiver, mi.getName(), mi.getDesc());
+            if (impl == null) {
+                return null;
+            }
+            Implementation existing = result.get(impl.method);
+            if (existing == null) {
+                if (result.size() == max) {
+                    return null;
+                }
+                result.put(impl.method, impl);
+                existing = impl;
+            }
+            existing.receivers.add(receiver);
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * Resolves the implementation of the specified method in the specified
+     * concrete class. Returns {@code null} for anything but a plain
+     * non-abstract public or protected instance method declared in the class
+     * or one of its superclasses.
+     */
+    private Implementation resolve(ClazzInfo ci, String name, String desc) {
+        for (ClazzInfo c = ci; c != null; c = c.hasSuperclass() ? c.getSuperclass() : null) {
+            if (c.isPhantom()) {
+                return null;
+            }
+            MethodInfo m = c.getMethod(name, desc);
+            if (m != null) {
+                if (m.isStatic() || m.isAbstract() || !(m.isPublic() || m.isProtected())) {
+                    return null;
+                }
+                return new Implementation(c, m);
+            }
+        }
+        // Not found in any superclass. Could be a default method.
+        return null;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.RefType;
+import soot.SootClass;
+import soot.Trap;
+import soot.Unit;
+import soot.UnitBox;
+import soot.jimple.AssignStmt;
+import soot.jimple.NewExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.Stmt;
+
+/**
+ * Finds static field accesses and static method calls in a method body which
+ * don't need to check whether the target class has been initialized.
+ * Accesses to other classes are compiled into calls to {@code GetStatic},
+ * {@code PutStatic} and {@code Invokestatic} trampolines which initialize the
+ * target class on first use. The check is redundant if the class is known to
+ * have been initialized already.
+ * <p>
+ * The class declaring the method and its superclasses are always initialized
+ * when the method runs. A forward must analysis tracks the classes which have
+ * been initialized by static member accesses and allocations executed on all
+ * paths to a statement. Initializing a class also initializes its
+ * superclasses. Exception handlers only start out with the classes which are
+ * always initialized since the statement which threw may have been the one
+ * failing to initialize a class.
+ * <p>
+ * An access inside a loop keeps its check if the class hasn't been
+ * initialized before the loop is entered, e.g. when {@code Foo.X} is read in
+ * the body of a loop and nowhere before it. The loop entry edge doesn't
+ * initialize the class, so the must analysis can't drop the check at the
+ * loop header. The check can't be hoisted out of the loop either because
+ * that would run the static initializer even when the loop body never runs,
+ * and would change the order of initialization relative to other side
+ * effects. Removing these checks would require peeling the first iteration.
+ */
+public class ClassInitCheckEliminator {
+    private final Body body;
+    private final Set<SootClass> alwaysInitialized = new HashSet<>();
+    private final Set<Unit> handlers = new HashSet<>();
+    private final Map<Unit, Set<SootClass>> initialized = new HashMap<>();
+
+    private ClassInitCheckEliminator(Body body) {
+        this.body = body;
+        addWithSuperclasses(alwaysInitialized, body.getMethod().getDeclaringClass());
+    }
+
+    /**
+     * Returns the {@link Unit}s in the specified {@link Body} accessing a
+     * static field or calling a static method of a class which is known to
+     * have been initialized.
+     */
+    public static Set<Unit> eliminate(Body body) {
+        return new ClassInitCheckEliminator(body).eliminate();
+    }
+
+    private Set<Unit> eliminate() {
+        Set<Unit> result = new HashSet<>();
+        if (body.getUnits().isEmpty()) {
+            return result;
+        }
+        analyze();
+        for (Unit unit : body.getUnits()) {
+            SootClass clazz = getAccessedClass(unit);
+            Set<SootClass> in = initialized.get(unit);
+            if (clazz != null && in != null && in.contains(clazz)) {
+                result.add(unit);
+            }
+        }
+        return result;
+    }
+
+    private static void addWithSuperclasses(Set<SootClass> classes, SootClass clazz) {
+        while (clazz != null && classes.add(clazz)) {
+            clazz = clazz.hasSuperclass() ? clazz.getSuperclass() : null;
+        }
+    }
+
+    /**
+     * Returns the class declaring the static member accessed by the
+     * specified {@link Unit} if it's the class referenced by the
+     * {@link Unit}. Returns {@code null} if the {@link Unit} doesn't access a
+     * static member or if the member is inherited. The trampoline of an
+     * inherited member initializes the declaring class and not the
+     * referenced class.
+     */
+    private static SootClass getAccessedClass(Unit unit) {
+        Stmt stmt = (Stmt) unit;
+        try {
+            if (stmt.containsFieldRef() && stmt.getFieldRef() instanceof StaticFieldRef) {
+                StaticFieldRef ref = (StaticFieldRef) stmt.getFieldRef();
+                SootClass clazz = ref.getField().getDeclaringClass();
+                return clazz == ref.getFieldRef().declaringClass() ? clazz : null;
+            }
+            if (stmt.containsInvokeExpr() && stmt.getInvokeExpr() instanceof StaticInvokeExpr) {
+                StaticInvokeExpr expr = (StaticInvokeExpr) stmt.getInvokeExpr();
+                SootClass clazz = expr.getMethod().getDeclaringClass();
+                return clazz == expr.getMethodRef().declaringClass() ? clazz : null;
+            }
+        } catch (RuntimeException e) {
+            // The field or method couldn't be resolved.
+        }
+        return null;
+    }
+
+    /**
+     * Returns the class which has been initialized once the specified
+     * {@link Unit} completes normally or {@code null}.
+     */
+    private static SootClass getInitializedClass(Unit unit) {
+        Stmt stmt = (Stmt) unit;
+        SootClass clazz = null;
+        try {
+            if (stmt.containsFieldRef() && stmt.getFieldRef() instanceof StaticFieldRef) {
+                clazz = stmt.getFieldRef().getField().getDeclaringClass();
+            } else if (stmt.containsInvokeExpr() && stmt.getInvokeExpr() instanceof StaticInvokeExpr) {
+                clazz = stmt.getInvokeExpr().getMethod().getDeclaringClass();
+            } else if (stmt instanceof AssignStmt && ((AssignStmt) stmt).getRightOp() instanceof NewExpr) {
+                RefType type = ((NewExpr) ((AssignStmt) stmt).getRightOp()).getBaseType();
+                clazz = type.getSootClass();
+            }
+        } catch (RuntimeException e) {
+            // The field or method couldn't be resolved.
+        }
+        return clazz != null && !clazz.isPhantom() && !clazz.isInterface() ? clazz : null;
+    }
+
+    private void analyze() {
+        Deque<Unit> worklist = new ArrayDeque<>();
+        Unit first = body.getUnits().getFirst();
+        initialized.put(first, new HashSet<>(alwaysInitialized));
+        worklist.add(first);
+        for (Trap trap : body.getTraps()) {
+            if (handlers.add(trap.getHandlerUnit())) {
+                initialized.put(trap.getHandlerUnit(), new HashSet<>(alwaysInitialized));
+                worklist.add(trap.getHandlerUnit());
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            Unit unit = worklist.removeFirst();
+            Set<SootClass> out = new HashSet<>(initialized.get(unit));
+            SootClass clazz = getInitializedClass(unit);
+            if (clazz != null) {
+                addWithSuperclasses(out, clazz);
+            }
+            for (UnitBox box : unit.getUnitBoxes()) {
+                propagate(box.getUnit(), out, worklist);
+            }
+            if (unit.fallsThrough()) {
+                propagate(body.getUnits().getSuccOf(unit), out, worklist);
+            }
+        }
+    }
+
+    private void propagate(Unit unit, Set<SootClass> facts, Deque<Unit> worklist) {
+        if (unit == null || handlers.contains(unit)) {
+            return;
+        }
+        Set<SootClass> before = initialized.get(unit);
+        if (before == null) {
+            initialized.put(unit, new HashSet<>(facts));
+            worklist.add(unit);
+        } else if (before.retainAll(facts)) {
+            worklist.add(unit);
+        }
+    }
+}
@@ -0,0 +1,803 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.ArrayType;
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.IntType;
+import soot.Local;
+import soot.LongType;
+import soot.PrimType;
+import soot.RefLikeType;
+import soot.RefType;
+import soot.ShortType;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.VoidType;
+import soot.jimple.AddExpr;
+import soot.jimple.AndExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.CastExpr;
+import soot.jimple.DivExpr;
+import soot.jimple.DoubleConstant;
+import soot.jimple.FloatConstant;
+import soot.jimple.IdentityStmt;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+import soot.jimple.LengthExpr;
+import soot.jimple.LongConstant;
+import soot.jimple.MulExpr;
+import soot.jimple.NegExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.NopStmt;
+import soot.jimple.NullConstant;
+import soot.jimple.OrExpr;
+import soot.jimple.ParameterRef;
+import soot.jimple.RemExpr;
+import soot.jimple.ReturnStmt;
+import soot.jimple.ReturnVoidStmt;
+import soot.jimple.ShlExpr;
+import soot.jimple.ShrExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.StringConstant;
+import soot.jimple.SubExpr;
+import soot.jimple.ThisRef;
+import soot.jimple.UshrExpr;
+import soot.jimple.VirtualInvokeExpr;
+import soot.jimple.XorExpr;
+import soot.tagkit.DoubleConstantValueTag;
+import soot.tagkit.FloatConstantValueTag;
+import soot.tagkit.IntegerConstantValueTag;
+import soot.tagkit.LongConstantValueTag;
+import soot.tagkit.StringConstantValueTag;
+import soot.tagkit.Tag;
+
+/**
+ * Evaluates the {@code <clinit>} method of a class at compile time. Only
+ * straight-line code which stores primitive values, {@link String} literals,
+ * arrays and objects into static fields of the class itself is supported.
+ * Objects may be created if the constructors called are straight-line code
+ * too and only store values into the fields of the object being constructed.
+ * This covers the constants of {@code enum}s and their {@code $VALUES} arrays
+ * as well as simple tables of objects. Other methods which may be called are
+ * static methods of the class itself (e.g. the {@code $values()} method
+ * generated for {@code enum}s by newer compilers) and
+ * {@link String#toCharArray()}, {@link String#length()} and
+ * {@link String#charAt(int)} on {@link String} literals. The latter covers
+ * character tables encoded as {@link String}s, e.g. the case mapping tables
+ * in {@code java.lang.CaseMapper}. Anything else, e.g. other method calls,
+ * branches or accesses to static fields of other classes, makes
+ * {@link #evaluate(SootClass)} return {@code null}.
+ */
+public class ClinitEvaluator {
+    /**
+     * The maximum length of arrays created by an evaluated
+     * {@code <clinit>}.
+     */
+    public static final int MAX_ARRAY_LENGTH = 1 << 20;
+    /**
+     * The maximum depth of nested calls, e.g. chained constructors.
+     */
+    public static final int MAX_CALL_DEPTH = 16;
+
+    /**
+     * Instances of these classes and their subclasses are never created at
+     * build time. The runtime treats them specially.
+     */
+    private static final Set<String> UNSUPPORTED_CLASSES = new HashSet<>(Arrays.asList(
+            "java.lang.String",
+            "java.lang.Class",
+            "java.lang.Thread",
+            "java.lang.Throwable",
+            "java.lang.ref.Reference",
+            "org.robovm.rt.bro.NativeObject"));
+
+    private static final Object NULL = new Object();
+    private static final Object VOID = new Object();
+
+    private final SootClass sootClass;
+    private final Map<SootField, Object> fields = new LinkedHashMap<>();
+    private Map<Local, Object> locals = new HashMap<>();
+    private int depth;
+
+    /**
+     * An object created by an evaluated {@code <clinit>}.
+     */
+    public static final class Instance {
+        private final SootClass type;
+        private final Map<SootField, Object> fields = new LinkedHashMap<>();
+
+        Instance(SootClass type) {
+            this.type = type;
+        }
+
+        public SootClass getType() {
+            return type;
+        }
+
+        /**
+         * Returns the values of the instance fields of this object which
+         * don't have their default values. The values are of the same types
+         * as the static field values returned by
+         * {@link ClinitEvaluator#evaluate(SootClass)}.
+         */
+        public Map<SootField, Object> getFields() {
+            return fields;
+        }
+    }
+
+    /**
+     * An array of references created by an evaluated {@code <clinit>}.
+     * {@code null} elements are {@code null}.
+     */
+    public static final class ObjectArray {
+        private final ArrayType type;
+        private final Object[] values;
+
+        ObjectArray(ArrayType type, int length) {
+            this.type = type;
+            this.values = new Object[length];
+        }
+
+        public ArrayType getType() {
+            return type;
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+    }
+
+    private ClinitEvaluator(SootClass sootClass) {
+        this.sootClass = sootClass;
+    }
+
+    /**
+     * Evaluates the {@code <clinit>} of the specified class. The returned
+     * {@link Map} maps static fields to their values after the
+     * {@code <clinit>} has run. Values are {@link Integer}s for
+     * {@code boolean}, {@code byte}, {@code char}, {@code short} and
+     * {@code int} fields, {@link Long}s, {@link Float}s, {@link Double}s,
+     * {@link String}s, Java primitive arrays, {@link Instance}s or
+     * {@link ObjectArray}s. The same array or object may be referenced more
+     * than once. Fields which keep their default value are not included.
+     *
+     * @return the static field values or {@code null} if the
+     *         {@code <clinit>} cannot be evaluated at compile time.
+     */
+    public static Map<SootField, Object> evaluate(SootClass sootClass) {
+        ClinitEvaluator evaluator = new ClinitEvaluator(sootClass);
+        if (!evaluator.run()) {
+            return null;
+        }
+        return evaluator.getResult();
+    }
+
+    private boolean run() {
+        for (SootField f : sootClass.getFields()) {
+            if (f.isStatic()) {
+                for (Tag tag : f.getTags()) {
+                    if (tag instanceof IntegerConstantValueTag) {
+                        fields.put(f, narrow(((IntegerConstantValueTag) tag).getIntValue(), f.getType()));
+                    } else if (tag instanceof LongConstantValueTag) {
+                        fields.put(f, ((LongConstantValueTag) tag).getLongValue());
+                    } else if (tag instanceof FloatConstantValueTag) {
+                        fields.put(f, ((FloatConstantValueTag) tag).getFloatValue());
+                    } else if (tag instanceof DoubleConstantValueTag) {
+                        fields.put(f, ((DoubleConstantValueTag) tag).getDoubleValue());
+                    } else if (tag instanceof StringConstantValueTag) {
+                        fields.put(f, ((StringConstantValueTag) tag).getStringValue());
+                    }
+                }
+            }
+        }
+
+        if (!sootClass.declaresMethod("<clinit>", Collections.<Type> emptyList(), VoidType.v())) {
+            return true;
+        }
+        SootMethod clinit = sootClass.getMethod("<clinit>", Collections.<Type> emptyList(), VoidType.v());
+        return invoke(clinit, null, Collections.emptyList()) == VOID;
+    }
+
+    private Map<SootField, Object> getResult() {
+        Map<SootField, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<SootField, Object> entry : fields.entrySet()) {
+            if (entry.getValue() != NULL) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the body of the specified method. Returns the value returned
+     * by the method, {@link #VOID} if it doesn't return a value or
+     * {@code null} if it cannot be evaluated.
+     */
+    private Object invoke(SootMethod method, Instance thiz, List<Object> args) {
+        if (!method.isConcrete() || depth >= MAX_CALL_DEPTH
+                || !method.hasActiveBody() && method.getSource() == null) {
+            return null;
+        }
+        Map<Local, Object> callerLocals = locals;
+        locals = new HashMap<>();
+        depth++;
+        try {
+            for (Unit unit : method.retrieveActiveBody().getUnits()) {
+                if (unit instanceof NopStmt) {
+                    continue;
+                }
+                if (unit instanceof ReturnVoidStmt) {
+                    return VOID;
+                }
+                if (unit instanceof ReturnStmt) {
+                    return eval(((ReturnStmt) unit).getOp());
+                }
+                if (unit instanceof IdentityStmt) {
+                    IdentityStmt stmt = (IdentityStmt) unit;
+                    Object value = null;
+                    if (stmt.getRightOp() instanceof ThisRef) {
+                        value = thiz;
+                    } else if (stmt.getRightOp() instanceof ParameterRef) {
+                        int index = ((ParameterRef) stmt.getRightOp()).getIndex();
+                        value = index < args.size() ? args.get(index) : null;
+                    }
+                    if (value == null) {
+                        return null;
+                    }
+                    locals.put((Local) stmt.getLeftOp(), value);
+                    continue;
+                }
+                if (unit instanceof InvokeStmt) {
+                    if (eval(((InvokeStmt) unit).getInvokeExpr()) == null) {
+                        return null;
+                    }
+                    continue;
+                }
+                if (!(unit instanceof AssignStmt)) {
+                    return null;
+                }
+                AssignStmt stmt = (AssignStmt) unit;
+                Object value = eval(stmt.getRightOp());
+                if (value == null || value == VOID || !assign(stmt.getLeftOp(), value)) {
+                    return null;
+                }
+            }
+            // Fell off the end of the method without a return
+            return null;
+        } finally {
+            depth--;
+            locals = callerLocals;
+        }
+    }
+
+    private static boolean canInstantiate(SootClass c) {
+        if (c.isPhantom() || c.isInterface() || c.isAbstract()) {
+            return false;
+        }
+        for (SootClass s = c;; s = s.getSuperclass()) {
+            if (UNSUPPORTED_CLASSES.contains(s.getName())) {
+                return false;
+            }
+            if (!s.hasSuperclass()) {
+                return s.getName().equals("java.lang.Object");
+            }
+        }
+    }
+
+    private static boolean isSubclass(SootClass c, SootClass target) {
+        if (c == target) {
+            return true;
+        }
+        for (SootClass i : c.getInterfaces()) {
+            if (isSubclass(i, target)) {
+                return true;
+            }
+        }
+        return c.hasSuperclass() && isSubclass(c.getSuperclass(), target);
+    }
+
+    private static boolean isInstanceField(SootField field, Instance instance) {
+        return !field.isStatic() && isSubclass(instance.getType(), field.getDeclaringClass());
+    }
+
+    private static boolean isReference(Object value) {
+        return value == NULL || value instanceof String || value.getClass().isArray()
+                || value instanceof Instance || value instanceof ObjectArray;
+    }
+
+    /**
+     * Returns whether the specified non-{@code null} reference can be cast
+     * to the specified type. Only exact types and
+     * {@code java.lang.Object} are supported for {@link String}s and arrays.
+     */
+    private static boolean isInstanceOf(Object value, Type type) {
+        if (type instanceof RefType && ((RefType) type).getClassName().equals("java.lang.Object")) {
+            return true;
+        }
+        if (value instanceof Instance) {
+            return type instanceof RefType
+                    && isSubclass(((Instance) value).getType(), ((RefType) type).getSootClass());
+        }
+        if (value instanceof String) {
+            return type instanceof RefType && ((RefType) type).getClassName().equals("java.lang.String");
+        }
+        if (value instanceof ObjectArray) {
+            return type.equals(((ObjectArray) value).getType());
+        }
+        return type instanceof ArrayType && ((ArrayType) type).numDimensions == 1
+                && ((ArrayType) type).baseType instanceof PrimType
+                && getJavaType(((ArrayType) type).baseType) == value.getClass().getComponentType();
+    }
+
+    /**
+     * Converts a value to be stored into a field or array element of the
+     * specified type. Returns {@code null} if the value doesn't match the
+     * type.
+     */
+    private static Object convert(Object value, Type type) {
+        if (type instanceof PrimType) {
+            return value instanceof Number ? narrow(value, type) : null;
+        }
+        return isReference(value) ? value : null;
+    }
+
+    private static Object defaultValue(Type type) {
+        return type instanceof PrimType ? narrow(0, type) : NULL;
+    }
+
+    private boolean isOwnStaticField(StaticFieldRef ref) {
+        SootField field = ref.getField();
+        return field.getDeclaringClass() == sootClass && field.isStatic();
+    }
+
+    private boolean assign(Value left, Object value) {
+        if (left instanceof Local) {
+            locals.put((Local) left, value);
+            return true;
+        }
+        if (left instanceof StaticFieldRef) {
+            StaticFieldRef ref = (StaticFieldRef) left;
+            if (!isOwnStaticField(ref)) {
+                return false;
+            }
+            SootField field = ref.getField();
+            Object v = convert(value, field.getType());
+            if (v == null) {
+                return false;
+            }
+            fields.put(field, v);
+            return true;
+        }
+        if (left instanceof InstanceFieldRef) {
+            InstanceFieldRef ref = (InstanceFieldRef) left;
+            Object base = eval(ref.getBase());
+            SootField field = ref.getField();
+            if (!(base instanceof Instance) || !isInstanceField(field, (Instance) base)) {
+                return false;
+            }
+            Object v = convert(value, field.getType());
+            if (v == null) {
+                return false;
+            }
+            if (v == NULL) {
+                ((Instance) base).fields.remove(field);
+            } else {
+                ((Instance) base).fields.put(field, v);
+            }
+            return true;
+        }
+        if (left instanceof ArrayRef) {
+            ArrayRef ref = (ArrayRef) left;
+            Object array = eval(ref.getBase());
+            int i = getIndex(array, eval(ref.getIndex()));
+            if (i < 0) {
+                return false;
+            }
+            if (array instanceof ObjectArray) {
+                if (!isReference(value)) {
+                    return false;
+                }
+                ((ObjectArray) array).values[i] = value == NULL ? null : value;
+                return true;
+            }
+            Class<?> componentType = array.getClass().getComponentType();
+            if (!(value instanceof Number)) {
+                return false;
+            }
+            Number n = (Number) value;
+            if (componentType == boolean.class) {
+                Array.setBoolean(array, i, (n.intValue() & 1) != 0);
+            } else if (componentType == byte.class) {
+                Array.setByte(array, i, n.byteValue());
+            } else if (componentType == char.class) {
+                Array.setChar(array, i, (char) n.intValue());
+            } else if (componentType == short.class) {
+                Array.setShort(array, i, n.shortValue());
+            } else if (componentType == int.class) {
+                Array.setInt(array, i, n.intValue());
+            } else if (componentType == long.class) {
+                Array.setLong(array, i, n.longValue());
+            } else if (componentType == float.class) {
+                Array.setFloat(array, i, n.floatValue());
+            } else {
+                Array.setDouble(array, i, n.doubleValue());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private Object eval(Value v) {
+        if (v instanceof Local) {
+            return locals.get(v);
+        }
+        if (v instanceof IntConstant) {
+            return ((IntConstant) v).value;
+        }
+        if (v instanceof LongConstant) {
+            return ((LongConstant) v).value;
+        }
+        if (v instanceof FloatConstant) {
+            return ((FloatConstant) v).value;
+        }
+        if (v instanceof DoubleConstant) {
+            return ((DoubleConstant) v).value;
+        }
+        if (v instanceof StringConstant) {
+            return ((StringConstant) v).value;
+        }
+        if (v instanceof NullConstant) {
+            return NULL;
+        }
+        if (v instanceof StaticFieldRef) {
+            StaticFieldRef ref = (StaticFieldRef) v;
+            if (!isOwnStaticField(ref)) {
+                return null;
+            }
+            Object value = fields.get(ref.getField());
+            return value != null ? value : defaultValue(ref.getField().getType());
+        }
+        if (v instanceof InstanceFieldRef) {
+            InstanceFieldRef ref = (InstanceFieldRef) v;
+            Object base = eval(ref.getBase());
+            SootField field = ref.getField();
+            if (!(base instanceof Instance) || !isInstanceField(field, (Instance) base)) {
+                return null;
+            }
+            Object value = ((Instance) base).fields.get(field);
+            return value != null ? value : defaultValue(field.getType());
+        }
+        if (v instanceof ArrayRef) {
+            ArrayRef ref = (ArrayRef) v;
+            Object array = eval(ref.getBase());
+            int i = getIndex(array, eval(ref.getIndex()));
+            if (i < 0) {
+                return null;
+            }
+            if (array instanceof ObjectArray) {
+                Object value = ((ObjectArray) array).values[i];
+                return value != null ? value : NULL;
+            }
+            Object value = Array.get(array, i);
+            if (value instanceof Boolean) {
+                return ((Boolean) value) ? 1 : 0;
+            }
+            if (value instanceof Character) {
+                return (int) ((Character) value).charValue();
+            }
+            if (value instanceof Byte || value instanceof Short) {
+                return ((Number) value).intValue();
+            }
+            return value;
+        }
+        if (v instanceof LengthExpr) {
+            Object array = eval(((LengthExpr) v).getOp());
+            if (array instanceof ObjectArray) {
+                return ((ObjectArray) array).values.length;
+            }
+            if (array == null || !array.getClass().isArray()) {
+                return null;
+            }
+            return Array.getLength(array);
+        }
+        if (v instanceof NewArrayExpr) {
+            NewArrayExpr expr = (NewArrayExpr) v;
+            Object size = eval(expr.getSize());
+            if (!(size instanceof Integer)) {
+                return null;
+            }
+            int length = (Integer) size;
+            if (length < 0 || length > MAX_ARRAY_LENGTH) {
+                return null;
+            }
+            if (expr.getBaseType() instanceof PrimType) {
+                return Array.newInstance(getJavaType(expr.getBaseType()), length);
+            }
+            if (expr.getBaseType() instanceof RefLikeType) {
+                return new ObjectArray(expr.getBaseType().makeArrayType(), length);
+            }
+            return null;
+        }
+        if (v instanceof NewExpr) {
+            SootClass c = ((NewExpr) v).getBaseType().getSootClass();
+            return canInstantiate(c) ? new Instance(c) : null;
+        }
+        if (v instanceof CastExpr) {
+            CastExpr expr = (CastExpr) v;
+            Object op = eval(expr.getOp());
+            if (expr.getCastType() instanceof RefLikeType) {
+                return op != null && (op == NULL || isReference(op) && isInstanceOf(op, expr.getCastType()))
+                        ? op : null;
+            }
+            if (!(op instanceof Number) || !(expr.getCastType() instanceof PrimType)) {
+                return null;
+            }
+            return narrow(op, expr.getCastType());
+        }
+        if (v instanceof NegExpr) {
+            Object op = eval(((NegExpr) v).getOp());
+            if (op instanceof Integer) {
+                return -(Integer) op;
+            } else if (op instanceof Long) {
+                return -(Long) op;
+            } else if (op instanceof Float) {
+                return -(Float) op;
+            } else if (op instanceof Double) {
+                return -(Double) op;
+            }
+            return null;
+        }
+        if (v instanceof VirtualInvokeExpr) {
+            return invokeStringMethod((VirtualInvokeExpr) v);
+        }
+        if (v instanceof SpecialInvokeExpr) {
+            return invokeConstructor((SpecialInvokeExpr) v);
+        }
+        if (v instanceof StaticInvokeExpr) {
+            return invokeStaticMethod((StaticInvokeExpr) v);
+        }
+        if (v instanceof BinopExpr) {
+            BinopExpr expr = (BinopExpr) v;
+            Object op1 = eval(expr.getOp1());
+            Object op2 = eval(expr.getOp2());
+            if (!(op1 instanceof Number) || !(op2 instanceof Number)) {
+                return null;
+            }
+            return binop(expr, (Number) op1, (Number) op2);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index into the specified array or {@code -1} if the array
+     * or index isn't valid.
+     */
+    private static int getIndex(Object array, Object index) {
+        if (array == null || !(array instanceof ObjectArray || array.getClass().isArray())
+                || !(index instanceof Integer)) {
+            return -1;
+        }
+        int length = array instanceof ObjectArray ? ((ObjectArray) array).values.length : Array.getLength(array);
+        int i = (Integer) index;
+        return i >= 0 && i < length ? i : -1;
+    }
+
+    private List<Object> evalArgs(InvokeExpr expr) {
+        List<Object> args = new ArrayList<>();
+        for (Value arg : expr.getArgs()) {
+            Object value = eval(arg);
+            if (value == null || value == VOID) {
+                return null;
+            }
+            args.add(value);
+        }
+        return args;
+    }
+
+    private static SootMethod getMethod(SootMethodRef ref) {
+        SootClass c = ref.declaringClass();
+        if (!c.declaresMethod(ref.name(), ref.parameterTypes(), ref.returnType())) {
+            return null;
+        }
+        return c.getMethod(ref.name(), ref.parameterTypes(), ref.returnType());
+    }
+
+    /**
+     * Evaluates a call to a constructor of an object created by the
+     * {@code <clinit>}, either by the {@code <clinit>} itself or by another
+     * constructor of the same object.
+     */
+    private Object invokeConstructor(SpecialInvokeExpr expr) {
+        SootMethodRef ref = expr.getMethodRef();
+        Object base = eval(expr.getBase());
+        if (!ref.name().equals("<init>") || !(base instanceof Instance)
+                || !isSubclass(((Instance) base).getType(), ref.declaringClass())) {
+            return null;
+        }
+        List<Object> args = evalArgs(expr);
+        if (args == null) {
+            return null;
+        }
+        if (ref.declaringClass().getName().equals("java.lang.Object")) {
+            return VOID;
+        }
+        SootMethod method = getMethod(ref);
+        return method != null ? invoke(method, (Instance) base, args) : null;
+    }
+
+    private Object invokeStaticMethod(StaticInvokeExpr expr) {
+        SootMethodRef ref = expr.getMethodRef();
+        if (ref.declaringClass() != sootClass) {
+            return null;
+        }
+        SootMethod method = getMethod(ref);
+        if (method == null || !method.isStatic()) {
+            return null;
+        }
+        List<Object> args = evalArgs(expr);
+        return args != null ? invoke(method, null, args) : null;
+    }
+
+    private Object invokeStringMethod(VirtualInvokeExpr expr) {
+        SootMethodRef ref = expr.getMethodRef();
+        if (!ref.declaringClass().getName().equals("java.lang.String")) {
+            return null;
+        }
+        Object base = eval(expr.getBase());
+        if (!(base instanceof String)) {
+            return null;
+        }
+        String s = (String) base;
+        if (ref.name().equals("toCharArray") && ref.parameterTypes().isEmpty()) {
+            return s.length() <= MAX_ARRAY_LENGTH ? s.toCharArray() : null;
+        }
+        if (ref.name().equals("length") && ref.parameterTypes().isEmpty()) {
+            return s.length();
+        }
+        if (ref.name().equals("charAt") && ref.parameterTypes().size() == 1) {
+            Object index = eval(expr.getArg(0));
+            if (!(index instanceof Integer)) {
+                return null;
+            }
+            int i = (Integer) index;
+            return i >= 0 && i < s.length() ? (Object) (int) s.charAt(i) : null;
+        }
+        return null;
+    }
+
+    private static Object binop(BinopExpr expr, Number op1, Number op2) {
+        if (op1 instanceof Integer) {
+            int a = op1.intValue();
+            int b = op2.intValue();
+            if (expr instanceof AddExpr) return a + b;
+            if (expr instanceof SubExpr) return a - b;
+            if (expr instanceof MulExpr) return a * b;
+            if (expr instanceof DivExpr) return b != 0 ? (Object) (a / b) : null;
+            if (expr instanceof RemExpr) return b != 0 ? (Object) (a % b) : null;
+            if (expr instanceof AndExpr) return a & b;
+            if (expr instanceof OrExpr) return a | b;
+            if (expr instanceof XorExpr) return a ^ b;
+            if (expr instanceof ShlExpr) return a << b;
+            if (expr instanceof ShrExpr) return a >> b;
+            if (expr instanceof UshrExpr) return a >>> b;
+        } else if (op1 instanceof Long) {
+            long a = op1.longValue();
+            if (expr instanceof ShlExpr) return a << op2.intValue();
+            if (expr instanceof ShrExpr) return a >> op2.intValue();
+            if (expr instanceof UshrExpr) return a >>> op2.intValue();
+            long b = op2.longValue();
+            if (expr instanceof AddExpr) return a + b;
+            if (expr instanceof SubExpr) return a - b;
+            if (expr instanceof MulExpr) return a * b;
+            if (expr instanceof DivExpr) return b != 0 ? (Object) (a / b) : null;
+            if (expr instanceof RemExpr) return b != 0 ? (Object) (a % b) : null;
+            if (expr instanceof AndExpr) return a & b;
+            if (expr instanceof OrExpr) return a | b;
+            if (expr instanceof XorExpr) return a ^ b;
+        } else if (op1 instanceof Float) {
+            float a = op1.floatValue();
+            float b = op2.floatValue();
+            if (expr instanceof AddExpr) return a + b;
+            if (expr instanceof SubExpr) return a - b;
+            if (expr instanceof MulExpr) return a * b;
+            if (expr instanceof DivExpr) return a / b;
+            if (expr instanceof RemExpr) return a % b;
+        } else if (op1 instanceof Double) {
+            double a = op1.doubleValue();
+            double b = op2.doubleValue();
+            if (expr instanceof AddExpr) return a + b;
+            if (expr instanceof SubExpr) return a - b;
+            if (expr instanceof MulExpr) return a * b;
+            if (expr instanceof DivExpr) return a / b;
+            if (expr instanceof RemExpr) return a % b;
+        }
+        return null;
+    }
+
+    private static Object narrow(Object value, Type type) {
+        Number n = (Number) value;
+        if (type == BooleanType.v()) {
+            return n.intValue() & 1;
+        }
+        if (type == ByteType.v()) {
+            return (int) n.byteValue();
+        }
+        if (type == CharType.v()) {
+            return (int) (char) n.intValue();
+        }
+        if (type == ShortType.v()) {
+            return (int) n.shortValue();
+        }
+        if (type == IntType.v()) {
+            return n.intValue();
+        }
+        if (type == LongType.v()) {
+            return n.longValue();
+        }
+        if (type == FloatType.v()) {
+            return n.floatValue();
+        }
+        return n.doubleValue();
+    }
+
+    private static Class<?> getJavaType(Type type) {
+        if (type == BooleanType.v()) {
+            return boolean.class;
+        } else if (type == ByteType.v()) {
+            return byte.class;
+        } else if (type == CharType.v()) {
+            return char.class;
+        } else if (type == ShortType.v()) {
+            return short.class;
+        } else if (type == IntType.v()) {
+            return int.class;
+        } else if (type == LongType.v()) {
+            return long.class;
+        } else if (type == FloatType.v()) {
+            return float.class;
+        }
+        return double.class;
+    }
+}
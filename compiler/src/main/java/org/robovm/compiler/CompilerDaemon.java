@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.clazz.Clazzes;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.util.DigestUtil;
+
+/**
+ * Long-lived compiler process which keeps the {@link Config}s built by
+ * previous builds in memory. A reused {@link Config} keeps its
+ * {@link Clazzes} and the {@code ClazzInfo}s read from the cache. Only
+ * classpath entries which have changed since the previous build are scanned
+ * again. The Soot scene and the {@link DependencyGraph} are kept too. Only the
+ * classes which have changed and the classes depending on them are removed
+ * from them. The Soot scene is initialized again from scratch if the
+ * previous build used another {@link Config}. The {@link #MAX_CONFIGS} most
+ * recently used
+ * {@link Config}s are kept.
+ * <p>
+ * The daemon is started using {@code robovm -daemon} in a project directory.
+ * It listens on a loopback port which is written to a file only readable by
+ * the current user in {@code ~/.robovm/daemon} along with a random token
+ * which clients have to send. Subsequent invocations of {@code robovm} in the
+ * same directory forward their command line to the daemon and print its
+ * output. Builds are run one at a time since Soot keeps its state in global
+ * singletons. Standard input isn't forwarded to the daemon. JVM options
+ * ({@code -D} and {@code -X}) cannot be applied to a running daemon and are
+ * rejected.
+ */
+public class CompilerDaemon {
+    private static final int FRAME_EXIT = 0;
+    private static final int FRAME_STDOUT = 1;
+    private static final int FRAME_STDERR = 2;
+
+    /**
+     * The maximum number of {@link Config}s kept by the daemon.
+     */
+    static final int MAX_CONFIGS = 4;
+
+    /**
+     * The number of milliseconds the daemon waits for a client to send its
+     * request.
+     */
+    static final int REQUEST_TIMEOUT = 10000;
+
+    /**
+     * {@link Config}s built by previous builds keyed by the command line
+     * options and the serialized {@link Config}. Ordered by last use.
+     */
+    private static final Map<String, Config> configs = new LinkedHashMap<String, Config>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Config> eldest) {
+            if (size() > MAX_CONFIGS) {
+                try {
+                    eldest.getValue().getClazzes().close();
+                } catch (IOException e) {
+                    System.err.format("Failed to close evicted config: %s\n", e.getMessage());
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+    private static volatile boolean serving = false;
+
+    /**
+     * Thrown instead of calling {@link System#exit(int)} when a command line
+     * is run by the daemon.
+     */
+    static class ExitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        ExitException(int status) {
+            this.status = status;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current process is a daemon serving a
+     * request.
+     */
+    static boolean isServing() {
+        return serving;
+    }
+
+    /**
+     * Exits the process with the specified status or ends the current
+     * request if the current process is a daemon.
+     */
+    static void exit(int status) {
+        if (serving) {
+            throw new ExitException(status);
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Returns the canonical path of the current directory.
+     */
+    private static String getWorkingDir() throws IOException {
+        return new File(".").getCanonicalPath();
+    }
+
+    /**
+     * Returns the file which holds the port and token of the daemon started
+     * in the specified directory.
+     */
+    private static File getStateFile(String wd) {
+        return new File(new File(System.getProperty("user.home"), ".robovm/daemon"),
+                "daemon-" + DigestUtil.sha1(wd));
+    }
+
+    /**
+     * Writes the port and token of the daemon and the directory it was
+     * started in to the specified file. The file and its parent directory are
+     * made accessible to the current user only. Fails if the permissions
+     * cannot be set.
+     */
+    private static void writeStateFile(File stateFile, int port, String token, String wd) throws IOException {
+        File dir = stateFile.getParentFile();
+        dir.mkdirs();
+        try {
+            Files.setPosixFilePermissions(dir.toPath(), EnumSet.of(PosixFilePermission.OWNER_READ,
+                    PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE));
+            Files.deleteIfExists(stateFile.toPath());
+            Files.createFile(stateFile.toPath(), PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("Cannot restrict the permissions of " + stateFile.getAbsolutePath()
+                    + " to the current user", e);
+        }
+        FileUtils.writeStringToFile(stateFile, port + "\n" + token + "\n" + wd + "\n", "UTF-8");
+    }
+
+    /**
+     * Returns a previously built {@link Config} matching the specified
+     * {@link Config.Builder} and command line options or builds a new one.
+     * The {@link Clazzes} of a reused {@link Config} are refreshed and the
+     * changed classes and the classes depending on them are removed from its
+     * {@link DependencyGraph}.
+     */
+    static Config getConfig(Config.Builder builder, List<String> options) throws IOException {
+        StringWriter writer = new StringWriter();
+        builder.write(writer, new File("."));
+        String key = options + "\n" + writer;
+        Config config = configs.get(key);
+        if (config == null) {
+            config = builder.build();
+            configs.put(key, config);
+        } else {
+            long start = System.currentTimeMillis();
+            Set<String> changed = config.getClazzes().refresh();
+            Set<String> invalidated = changed.isEmpty()
+                    ? changed : config.getDependencyGraph().invalidate(changed);
+            long duration = System.currentTimeMillis() - start;
+            config.getLogger().info("Reusing config from previous build. %d classes changed, %d "
+                    + "classes invalidated. Refreshed classpath in %.2f seconds", changed.size(),
+                    invalidated.size(), duration / 1000.0);
+        }
+        return config;
+    }
+
+    /**
+     * Starts the daemon in the current directory. Never returns unless the
+     * daemon cannot be started.
+     */
+    public static void start() throws IOException {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b & 0xff));
+        }
+
+        String wd = getWorkingDir();
+        File stateFile = getStateFile(wd);
+        try (ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            writeStateFile(stateFile, serverSocket.getLocalPort(), token.toString(), wd);
+            stateFile.deleteOnExit();
+            System.out.format("RoboVM compiler daemon listening on port %d\n", serverSocket.getLocalPort());
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    // Don't let a client which never sends its request block
+                    // the daemon
+                    socket.setSoTimeout(REQUEST_TIMEOUT);
+                    serve(socket, token.toString());
+                } catch (IOException e) {
+                    System.err.format("Failed to serve request: %s\n", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void serve(Socket socket, String token) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (!token.equals(in.readUTF())) {
+            return;
+        }
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        int status = 0;
+        System.setOut(new PrintStream(new FrameOutputStream(out, FRAME_STDOUT), true, "UTF-8"));
+        System.setErr(new PrintStream(new FrameOutputStream(out, FRAME_STDERR), true, "UTF-8"));
+        serving = true;
+        try {
+            AppCompiler.main(args);
+        } catch (ExitException e) {
+            status = e.status;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            status = 1;
+        } finally {
+            serving = false;
+            System.out.flush();
+            System.err.flush();
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        synchronized (out) {
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    /**
+     * Forwards the specified command line to the daemon started in the
+     * current directory if there is one. Copies the output of the daemon to
+     * {@code System.out} and {@code System.err}.
+     *
+     * @return the exit status or {@code -1} if there's no daemon running in
+     *         the current directory.
+     */
+    public static int forward(String[] args) throws IOException {
+        String wd = getWorkingDir();
+        File stateFile = getStateFile(wd);
+        if (!stateFile.exists()) {
+            return -1;
+        }
+        for (String arg : args) {
+            if (arg.startsWith("-D") || arg.startsWith("-X")) {
+                System.err.format("JVM option %s cannot be passed to the compiler daemon running in this "
+                        + "directory. Restart the daemon with the option in JVM_OPTS instead.\n", arg);
+                return 1;
+            }
+        }
+        List<String> lines = FileUtils.readLines(stateFile, "UTF-8");
+        if (lines.size() < 3 || !wd.equals(lines.get(2))) {
+            // Stale state file or one written by a daemon started in another
+            // directory
+            return -1;
+        }
+        Socket socket = null;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(lines.get(0).trim()));
+        } catch (IOException | NumberFormatException e) {
+            // Stale state file
+            return -1;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(lines.get(1).trim());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                int type = in.readByte();
+                if (type == FRAME_EXIT) {
+                    return in.readInt();
+                }
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                PrintStream ps = type == FRAME_STDERR ? System.err : System.out;
+                ps.write(b);
+                ps.flush();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Sends everything written to it as frames of the specified type.
+     * Closing the stream doesn't close the underlying stream since it's
+     * shared by all output of a request.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int type;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.robovm.compiler;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -38,29 +40,82 @@ import org.robovm.compiler.config.Config.TreeShakerMode;
  * traversing this graph the compiler can determine the minimum set of classes
  * that need to be compiled in to the final binary given a specific
  * {@link TreeShakerMode}.
+ * <p>
+ * Nodes are identified by {@code int} ids. The edges of a node are stored in
+ * {@code int} arrays and the reachable nodes in a {@link BitSet}. The set of
+ * reachable nodes is kept up to date as classes are added: edges added from
+ * reachable nodes and nodes added as roots are traversed immediately. Only if
+ * a method which has already been found to be reachable turns out to be
+ * weakly linked, which may make it unreachable, is the set recomputed from
+ * the roots.
+ * <p>
+ * A graph may be kept between builds, e.g. by the {@code CompilerDaemon}.
+ * Classes which have changed are removed using {@link #invalidate(Set)} and
+ * are added again when compiled. A class which is added again with another
+ * {@link ClazzInfo} than last time, e.g. because it has been recompiled, has
+ * its old edges replaced.
+ * <p>
+ * Only {@link #findReachableClasses()} and {@link #findReachableMethods()}
+ * may be called concurrently, e.g. by the linkers of the slices of a fat
+ * binary sharing a graph.
  */
 public class DependencyGraph {
+    private static final int FLAG_CLASS = 1;
+    private static final int FLAG_WEAKLY_LINKED = 2;
+    private static final int FLAG_STRONGLY_LINKED = 4;
+    private static final int FLAG_INIT = 8;
 
     /**
-     * Root {@link Node}s used as starting points when traversing reachable
-     * nodes.
+     * Ids of the nodes for classes keyed by internal name.
      */
-    private final Set<ClassNode> roots = new HashSet<>();
+    private final Map<String, Integer> classIds = new HashMap<>();
     /**
-     * {@link Node}s for classes added using {@link #add(Clazz, boolean)}.
+     * Ids of the nodes for methods keyed by owner, name and descriptor.
      */
-    private final Map<String, ClassNode> classNodes = new HashMap<>();
+    private final Map<String, Integer> methodIds = new HashMap<>();
+
+    private int nodeCount = 0;
+    private byte[] flags = new byte[1024];
     /**
-     * {@link Node}s for methods.
+     * The class name of class nodes and the owner of method nodes.
      */
-    private final Map<String, MethodNode> methodNodes = new HashMap<>();
+    private String[] owners = new String[1024];
+    private String[] names = new String[1024];
+    private String[] descs = new String[1024];
+    private int[][] strongEdges = new int[1024][];
+    private int[] strongEdgeCounts = new int[1024];
+    private int[][] weakEdges = new int[1024][];
+    private int[] weakEdgeCounts = new int[1024];
     /**
-     * Used to cache reachable nodes between calls to
-     * {@link #findReachableClasses(TreeShakerMode)} /
-     * {@link #findReachableMethods(TreeShakerMode)} when no call to
-     * {@link #add(Clazz, boolean)} has been done in between.
+     * The reversed {@link SuperMethodDependency}s of overriding methods.
+     * Traversed like strong edges but stored separately since they belong to
+     * the class of the overriding method rather than to the class of the
+     * node they are stored on.
      */
-    private final Set<Node> reachableNodes = new HashSet<>();
+    private int[][] overrideEdges = new int[1024][];
+    private int[] overrideEdgeCounts = new int[1024];
+
+    /**
+     * The classes which have been added keyed by class node.
+     */
+    private final Map<Integer, AddedClass> addedClasses = new HashMap<>();
+
+    /**
+     * Root nodes used as starting points when traversing reachable nodes.
+     */
+    private final BitSet roots = new BitSet();
+    private final BitSet reachable = new BitSet();
+    /**
+     * Nodes which are the target of a weak edge from a reachable node which
+     * couldn't be traversed given the flags of the target node at the time.
+     * Traversed if the flags of the node change.
+     */
+    private final BitSet pending = new BitSet();
+    /**
+     * Set if {@link #reachable} has to be recomputed from the roots.
+     */
+    private boolean dirty = false;
+    private int[] stack = new int[256];
 
     private final TreeShakerMode treeShakerMode;
 
@@ -74,24 +129,32 @@ public class DependencyGraph {
      * well as its methods will always be reachable.
      */
     public void add(Clazz clazz, boolean root) {
-        reachableNodes.clear();
-
-        ClassNode classNode = getClassNode(clazz.getInternalName());
-        if (root) {
-            roots.add(classNode);
-        }
+        int classNode = getClassNode(clazz.getInternalName());
 
         ClazzInfo ci = clazz.getClazzInfo();
+        AddedClass addedClass = addedClasses.get(classNode);
+        if (addedClass != null && addedClass.clazzInfo == ci) {
+            if (root && !roots.get(classNode)) {
+                roots.set(classNode);
+                visit(classNode);
+            }
+            return;
+        }
+        if (addedClass != null) {
+            remove(classNode, addedClass);
+        }
+        addedClass = new AddedClass(ci);
+        addedClasses.put(classNode, addedClass);
 
         for (Dependency dep : ci.getDependencies()) {
             if (dep instanceof InvokeMethodDependency) {
                 InvokeMethodDependency mdep = (InvokeMethodDependency) dep;
-                classNode.addEgde(getMethodNode(mdep), mdep.isWeak());
+                addEdge(classNode, getMethodNode(mdep), mdep.isWeak());
             } else if (dep instanceof SuperMethodDependency) {
                 SuperMethodDependency mdep = (SuperMethodDependency) dep;
-                classNode.addEgde(getMethodNode(mdep), mdep.isWeak());
+                addEdge(classNode, getMethodNode(mdep), mdep.isWeak());
             } else {
-                classNode.addEgde(getClassNode(dep.getClassName()), dep.isWeak());
+                addEdge(classNode, getClassNode(dep.getClassName()), dep.isWeak());
             }
         }
 
@@ -109,250 +172,343 @@ public class DependencyGraph {
                     // in Struct classes
                     || (ci.isStruct() && mi.isStatic() && "sizeOf".equals(mi.getName()) && "()I".equals(mi.getDesc()));
 
-            MethodNode methodNode = getMethodNode(clazz, mi);
-            classNode.addEgde(methodNode, !strong);
-            methodNode.addEgde(classNode, false);
+            int methodNode = getMethodNode(clazz, mi);
+            addedClass.methodNodes.add(methodNode);
+            addEdge(classNode, methodNode, !strong);
+            addEdge(methodNode, classNode, false);
 
             for (Dependency dep : mi.getDependencies()) {
                 if (dep instanceof InvokeMethodDependency) {
                     InvokeMethodDependency mdep = (InvokeMethodDependency) dep;
-                    methodNode.addEgde(getMethodNode(mdep), mdep.isWeak());
+                    addEdge(methodNode, getMethodNode(mdep), mdep.isWeak());
                 } else if (dep instanceof SuperMethodDependency) {
                     // Reverse the dependency so that the method is strongly
                     // linked if the super method is invoked.
                     SuperMethodDependency mdep = (SuperMethodDependency) dep;
-                    getMethodNode(mdep).addEgde(methodNode, false);
+                    int superMethodNode = getMethodNode(mdep);
+                    addedClass.overriddenNodes.add(superMethodNode);
+                    addOverrideEdge(superMethodNode, methodNode);
                 } else {
-                    methodNode.addEgde(getClassNode(dep.getClassName()), dep.isWeak());
+                    addEdge(methodNode, getClassNode(dep.getClassName()), dep.isWeak());
                 }
             }
         }
+
+        if (root) {
+            roots.set(classNode);
+            visit(classNode);
+        }
+    }
+
+    /**
+     * Removes the specified classes and the classes depending on them
+     * directly from the graph. Used when a graph is reused for another build
+     * after classes have changed. The edges of the removed classes are added
+     * again when the classes are added using {@link #add(Clazz, boolean)}.
+     * 
+     * @param classNames the internal names of the changed classes.
+     * @return the internal names of the removed classes.
+     */
+    public Set<String> invalidate(Set<String> classNames) {
+        Set<String> invalidated = new HashSet<>();
+        for (int node = 0; node < nodeCount; node++) {
+            String owner = owners[node];
+            if (classNames.contains(owner)) {
+                invalidated.add(owner);
+                // Classes overriding methods of the changed class
+                int[] e = overrideEdges[node];
+                for (int i = 0, n = overrideEdgeCounts[node]; i < n; i++) {
+                    invalidated.add(owners[e[i]]);
+                }
+            } else if (!invalidated.contains(owner)
+                    && (hasEdgeTo(strongEdges[node], strongEdgeCounts[node], classNames)
+                            || hasEdgeTo(weakEdges[node], weakEdgeCounts[node], classNames))) {
+                invalidated.add(owner);
+            }
+        }
+        for (String className : invalidated) {
+            Integer classNode = classIds.get(className);
+            AddedClass addedClass = classNode != null ? addedClasses.remove(classNode) : null;
+            if (addedClass != null) {
+                remove(classNode, addedClass);
+            }
+        }
+        return invalidated;
     }
 
-    private ClassNode getClassNode(String className) {
-        ClassNode node = classNodes.get(className);
+    private boolean hasEdgeTo(int[] e, int count, Set<String> classNames) {
+        for (int i = 0; i < count; i++) {
+            if (classNames.contains(owners[e[i]])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the edges, flags and root of a class which has been added.
+     * The nodes are kept since other classes may still refer to them.
+     */
+    private void remove(int classNode, AddedClass addedClass) {
+        clearEdges(classNode);
+        roots.clear(classNode);
+        Set<Integer> methodNodes = addedClass.methodNodes;
+        for (int node : methodNodes) {
+            clearEdges(node);
+            flags[node] = (byte) ("<init>".equals(names[node]) ? FLAG_INIT : 0);
+        }
+        for (int node : addedClass.overriddenNodes) {
+            int[] e = overrideEdges[node];
+            int count = 0;
+            for (int i = 0, n = overrideEdgeCounts[node]; i < n; i++) {
+                if (!methodNodes.contains(e[i])) {
+                    e[count++] = e[i];
+                }
+            }
+            overrideEdgeCounts[node] = count;
+        }
+        // Nodes may have been reachable through the removed edges only
+        dirty = true;
+    }
+
+    private void clearEdges(int node) {
+        strongEdges[node] = null;
+        strongEdgeCounts[node] = 0;
+        weakEdges[node] = null;
+        weakEdgeCounts[node] = 0;
+    }
+
+    private int newNode(int nodeFlags, String owner, String name, String desc) {
+        if (nodeCount == flags.length) {
+            int capacity = nodeCount * 2;
+            flags = Arrays.copyOf(flags, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+            names = Arrays.copyOf(names, capacity);
+            descs = Arrays.copyOf(descs, capacity);
+            strongEdges = Arrays.copyOf(strongEdges, capacity);
+            strongEdgeCounts = Arrays.copyOf(strongEdgeCounts, capacity);
+            weakEdges = Arrays.copyOf(weakEdges, capacity);
+            weakEdgeCounts = Arrays.copyOf(weakEdgeCounts, capacity);
+            overrideEdges = Arrays.copyOf(overrideEdges, capacity);
+            overrideEdgeCounts = Arrays.copyOf(overrideEdgeCounts, capacity);
+        }
+        int node = nodeCount++;
+        flags[node] = (byte) nodeFlags;
+        owners[node] = owner;
+        names[node] = name;
+        descs[node] = desc;
+        return node;
+    }
+
+    private int getClassNode(String className) {
+        Integer node = classIds.get(className);
         if (node == null) {
-            node = new ClassNode(className);
-            classNodes.put(className, node);
+            node = newNode(FLAG_CLASS, className, null, null);
+            classIds.put(className, node);
         }
         return node;
     }
 
-    private MethodNode getMethodNode(String owner, String name, String desc, boolean weaklyLinked,
+    private int getMethodNode(String owner, String name, String desc, boolean weaklyLinked,
             boolean stronglyLinked) {
+        int newFlags = (weaklyLinked ? FLAG_WEAKLY_LINKED : 0) | (stronglyLinked ? FLAG_STRONGLY_LINKED : 0);
         String key = owner + "." + name + desc;
-        MethodNode node = methodNodes.get(key);
+        Integer node = methodIds.get(key);
         if (node == null) {
-            node = new MethodNode(owner, name, desc, weaklyLinked, stronglyLinked);
-            methodNodes.put(key, node);
-        } else {
-            if (weaklyLinked) {
-                node.weaklyLinked = true;
-            }
-            if (stronglyLinked) {
-                node.stronglyLinked = true;
-            }
+            node = newNode(newFlags | ("<init>".equals(name) ? FLAG_INIT : 0), owner, name, desc);
+            methodIds.put(key, node);
+        } else if ((flags[node] | newFlags) != flags[node]) {
+            setFlags(node, newFlags);
         }
         return node;
     }
 
-    private MethodNode getMethodNode(Clazz clazz, MethodInfo mi) {
+    private int getMethodNode(Clazz clazz, MethodInfo mi) {
         return getMethodNode(clazz.getInternalName(), mi.getName(), mi.getDesc(), mi.isWeaklyLinked(),
                 mi.isStronglyLinked());
     }
 
-    private MethodNode getMethodNode(MethodDependency dep) {
+    private int getMethodNode(MethodDependency dep) {
         return getMethodNode(dep.getOwner(), dep.getMethodName(), dep.getMethodDesc(), false, false);
     }
 
     /**
-     * Finds reachable classes given the {@link TreeShakerMode} set when
-     * creating this {@link DependencyGraph}.
+     * Sets the specified flags of a method node which has already been
+     * added. Weak edges to the node which couldn't be traversed before may
+     * now be traversable. If a reachable node becomes weakly linked the
+     * reachable nodes have to be recomputed since the node may have been
+     * reached through a weak edge which can no longer be traversed.
      */
-    public Set<String> findReachableClasses() {
-        if (reachableNodes.isEmpty()) {
-            for (ClassNode node : roots) {
-                visitReachableNodes(node, reachableNodes);
-            }
+    private void setFlags(int node, int newFlags) {
+        if ((newFlags & FLAG_WEAKLY_LINKED) != 0 && (flags[node] & FLAG_WEAKLY_LINKED) == 0
+                && reachable.get(node)) {
+            dirty = true;
         }
-        Set<String> classes = new HashSet<>();
-        for (Node node : reachableNodes) {
-            if (node instanceof ClassNode) {
-                classes.add(((ClassNode) node).className);
-            }
+        flags[node] |= newFlags;
+        if (!dirty && pending.get(node) && isWeakEdgeTraversable(node)) {
+            pending.clear(node);
+            visit(node);
         }
-        return classes;
     }
 
-    /**
-     * Finds reachable methods given {@link TreeShakerMode} set when creating
-     * this {@link DependencyGraph}. The returned {@link Triple}s contain the
-     * method owner, method name and method descriptor.
-     */
-    public Set<Triple<String, String, String>> findReachableMethods() {
-        if (reachableNodes.isEmpty()) {
-            for (ClassNode node : roots) {
-                visitReachableNodes(node, reachableNodes);
-            }
+    private void addEdge(int from, int to, boolean weak) {
+        if (weak) {
+            append(weakEdges, weakEdgeCounts, from, to);
+        } else {
+            append(strongEdges, strongEdgeCounts, from, to);
         }
-        Set<Triple<String, String, String>> methods = new HashSet<>();
-        for (Node node : reachableNodes) {
-            if (node instanceof MethodNode) {
-                MethodNode mnode = (MethodNode) node;
-                methods.add(new ImmutableTriple<String, String, String>(mnode.owner, mnode.name, mnode.desc));
+
+        if (!dirty && reachable.get(from)) {
+            if (!weak || isWeakEdgeTraversable(to)) {
+                visit(to);
+            } else {
+                pending.set(to);
             }
         }
-        return methods;
     }
 
-    private void visitReachableNodes(Node node, Set<Node> visited) {
-        if (!visited.contains(node)) {
-            visited.add(node);
-            for (Node child : node.strongEdges) {
-                visitReachableNodes(child, visited);
-            }
-            for (Node child : node.weakEdges) {
-                if (treeShakerMode == TreeShakerMode.conservative && child instanceof MethodNode) {
-                    MethodNode mnode = (MethodNode) child;
-                    if (!mnode.isWeaklyLinked()) {
-                        visitReachableNodes(child, visited);
-                    }
-                } else if (treeShakerMode == TreeShakerMode.aggressive) {
-                    if (child instanceof MethodNode) {
-                        MethodNode mnode = (MethodNode) child;
-                        if (mnode.isStronglyLinked() || (!mnode.isWeaklyLinked() && "<init>".equals(mnode.name))) {
-                            visitReachableNodes(child, visited);
-                        }
-                }
-                } else {
-                    visitReachableNodes(child, visited);
-                }
-            }
+    private void addOverrideEdge(int from, int to) {
+        append(overrideEdges, overrideEdgeCounts, from, to);
+        if (!dirty && reachable.get(from)) {
+            visit(to);
         }
     }
 
-    public TreeSet<String> getAllClasses() {
-        TreeSet<String> result = new TreeSet<String>();
-        for (ClassNode node : classNodes.values()) {
-            result.add(node.className);
+    private static void append(int[][] edges, int[] counts, int from, int to) {
+        int[] e = edges[from];
+        int count = counts[from];
+        if (e == null) {
+            e = edges[from] = new int[4];
+        } else if (count == e.length) {
+            e = edges[from] = Arrays.copyOf(e, count * 2);
         }
-        return result;
+        e[count] = to;
+        counts[from] = count + 1;
     }
 
-    private static abstract class Node {
-        private final Set<Node> weakEdges = new HashSet<>();
-        private final Set<Node> strongEdges = new HashSet<>();
-
-        public void addEgde(Node to, boolean weak) {
-            (weak ? weakEdges : strongEdges).add(to);
+    /**
+     * Returns {@code true} if a weak edge to the specified node should be
+     * traversed given the {@link TreeShakerMode}.
+     */
+    private boolean isWeakEdgeTraversable(int node) {
+        int f = flags[node];
+        switch (treeShakerMode) {
+        case conservative:
+            return (f & FLAG_CLASS) != 0 || (f & FLAG_WEAKLY_LINKED) == 0;
+        case aggressive:
+            return (f & FLAG_CLASS) == 0 && ((f & FLAG_STRONGLY_LINKED) != 0
+                    || ((f & FLAG_WEAKLY_LINKED) == 0 && (f & FLAG_INIT) != 0));
+        default:
+            return true;
         }
     }
 
-    private static class ClassNode extends Node {
-        private final String className;
-
-        private ClassNode(String className) {
-            this.className = className;
+    /**
+     * Marks the specified node and all nodes reachable from it as reachable.
+     */
+    private void visit(int start) {
+        if (reachable.get(start)) {
+            return;
         }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((className == null) ? 0 : className.hashCode());
-            return result;
+        reachable.set(start);
+        int sp = 0;
+        stack[sp++] = start;
+        while (sp > 0) {
+            int node = stack[--sp];
+            sp = pushStrong(strongEdges[node], strongEdgeCounts[node], sp);
+            sp = pushStrong(overrideEdges[node], overrideEdgeCounts[node], sp);
+            int[] e = weakEdges[node];
+            for (int i = 0, n = weakEdgeCounts[node]; i < n; i++) {
+                int child = e[i];
+                if (!reachable.get(child)) {
+                    if (isWeakEdgeTraversable(child)) {
+                        reachable.set(child);
+                        if (sp == stack.length) {
+                            stack = Arrays.copyOf(stack, sp * 2);
+                        }
+                        stack[sp++] = child;
+                    } else {
+                        pending.set(child);
+                    }
+                }
+            }
         }
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            ClassNode other = (ClassNode) obj;
-            if (className == null) {
-                if (other.className != null) {
-                    return false;
+    private int pushStrong(int[] e, int count, int sp) {
+        for (int i = 0; i < count; i++) {
+            int child = e[i];
+            if (!reachable.get(child)) {
+                reachable.set(child);
+                if (sp == stack.length) {
+                    stack = Arrays.copyOf(stack, sp * 2);
                 }
-            } else if (!className.equals(other.className)) {
-                return false;
+                stack[sp++] = child;
             }
-            return true;
         }
+        return sp;
     }
 
-    private static class MethodNode extends Node {
-        private final String owner;
-        private final String name;
-        private final String desc;
-        private boolean weaklyLinked;
-        private boolean stronglyLinked;
-
-        private MethodNode(String owner, String name, String desc, boolean weaklyLinked, boolean stronglyLinked) {
-            this.owner = owner;
-            this.name = name;
-            this.desc = desc;
-            this.weaklyLinked = weaklyLinked;
-            this.stronglyLinked = stronglyLinked;
+    private void updateReachable() {
+        if (dirty) {
+            dirty = false;
+            reachable.clear();
+            pending.clear();
+            for (int node = roots.nextSetBit(0); node >= 0; node = roots.nextSetBit(node + 1)) {
+                visit(node);
+            }
         }
+    }
 
-        public boolean isWeaklyLinked() {
-            return weaklyLinked;
+    /**
+     * Finds reachable classes given the {@link TreeShakerMode} set when
+     * creating this {@link DependencyGraph}.
+     */
+    public synchronized Set<String> findReachableClasses() {
+        updateReachable();
+        Set<String> classes = new HashSet<>();
+        for (int node = reachable.nextSetBit(0); node >= 0; node = reachable.nextSetBit(node + 1)) {
+            if ((flags[node] & FLAG_CLASS) != 0) {
+                classes.add(owners[node]);
+            }
         }
+        return classes;
+    }
 
-        public boolean isStronglyLinked() {
-            return stronglyLinked;
+    /**
+     * Finds reachable methods given {@link TreeShakerMode} set when creating
+     * this {@link DependencyGraph}. The returned {@link Triple}s contain the
+     * method owner, method name and method descriptor.
+     */
+    public synchronized Set<Triple<String, String, String>> findReachableMethods() {
+        updateReachable();
+        Set<Triple<String, String, String>> methods = new HashSet<>();
+        for (int node = reachable.nextSetBit(0); node >= 0; node = reachable.nextSetBit(node + 1)) {
+            if ((flags[node] & FLAG_CLASS) == 0) {
+                methods.add(new ImmutableTriple<String, String, String>(owners[node], names[node], descs[node]));
+            }
         }
+        return methods;
+    }
 
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((desc == null) ? 0 : desc.hashCode());
-            result = prime * result + ((name == null) ? 0 : name.hashCode());
-            result = prime * result + ((owner == null) ? 0 : owner.hashCode());
-            return result;
-        }
+    public TreeSet<String> getAllClasses() {
+        return new TreeSet<String>(classIds.keySet());
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            MethodNode other = (MethodNode) obj;
-            if (desc == null) {
-                if (other.desc != null) {
-                    return false;
-                }
-            } else if (!desc.equals(other.desc)) {
-                return false;
-            }
-            if (name == null) {
-                if (other.name != null) {
-                    return false;
-                }
-            } else if (!name.equals(other.name)) {
-                return false;
-            }
-            if (owner == null) {
-                if (other.owner != null) {
-                    return false;
-                }
-            } else if (!owner.equals(other.owner)) {
-                return false;
-            }
-            return true;
+    /**
+     * The nodes a class has added edges from when it was added.
+     */
+    private static class AddedClass {
+        final ClazzInfo clazzInfo;
+        final Set<Integer> methodNodes = new HashSet<>();
+        /**
+         * The nodes of super methods overridden by the class. The reversed
+         * dependencies are stored in {@link DependencyGraph#overrideEdges}.
+         */
+        final Set<Integer> overriddenNodes = new HashSet<>();
+
+        AddedClass(ClazzInfo clazzInfo) {
+            this.clazzInfo = clazzInfo;
         }
     }
 }
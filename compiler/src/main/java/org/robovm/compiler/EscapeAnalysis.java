@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.IntType;
+import soot.Local;
+import soot.LongType;
+import soot.ShortType;
+import soot.SootMethodRef;
+import soot.Unit;
+import soot.ValueBox;
+import soot.jimple.AssignStmt;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.LengthExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.Stmt;
+
+/**
+ * Intraprocedural escape analysis used by {@link MethodCompiler} to find
+ * arrays which can be allocated on the stack instead of on the heap.
+ * <p>
+ * Only primitive arrays of a constant and small length are considered. Such
+ * an array is stack allocatable if it is assigned to a local which has no
+ * other definition and if that local is only ever used to load and store
+ * elements, to get the array length or as the source or destination of a
+ * <code>System.arraycopy()</code> call. Any other use (passing it to a
+ * method, storing it in a field or another array, returning, throwing,
+ * copying it to another local, casting it, comparing it, synchronizing on it,
+ * etc) makes the array escape.
+ * <p>
+ * Since the local is the only reference to the array and it is overwritten
+ * each time the allocation is executed an allocation site in a loop can
+ * safely reuse the same stack memory on every iteration. Primitive arrays
+ * hold no references so stack allocated arrays never need to be scanned by
+ * the GC.
+ */
+public class EscapeAnalysis {
+    /**
+     * The max number of bytes of element data of a single stack allocated
+     * array.
+     */
+    public static final int MAX_ARRAY_SIZE = 256;
+    /**
+     * The max number of bytes of element data of all stack allocated arrays
+     * in a single method.
+     */
+    public static final int MAX_TOTAL_SIZE = 1024;
+
+    /**
+     * Returns the statements in the specified {@link Body} allocating arrays
+     * which don't escape the method and can be allocated on the stack. The
+     * result is ordered as the statements in the {@link Body}.
+     */
+    public static Set<DefinitionStmt> findStackAllocatableArrays(Body body) {
+        Map<Local, DefinitionStmt> candidates = new HashMap<>();
+        Map<Local, Integer> defCounts = new HashMap<>();
+        for (Unit unit : body.getUnits()) {
+            if (!(unit instanceof DefinitionStmt)) {
+                continue;
+            }
+            DefinitionStmt stmt = (DefinitionStmt) unit;
+            if (!(stmt.getLeftOp() instanceof Local)) {
+                continue;
+            }
+            Local local = (Local) stmt.getLeftOp();
+            Integer count = defCounts.get(local);
+            defCounts.put(local, count == null ? 1 : count + 1);
+            if (getDataSize(stmt) != -1) {
+                candidates.put(local, stmt);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+
+        for (Unit unit : body.getUnits()) {
+            for (ValueBox box : unit.getUseBoxes()) {
+                if (box.getValue() instanceof Local) {
+                    Local local = (Local) box.getValue();
+                    if (candidates.containsKey(local) && !isNonEscapingUse((Stmt) unit, local)) {
+                        candidates.remove(local);
+                    }
+                }
+            }
+        }
+
+        Set<DefinitionStmt> result = new LinkedHashSet<>();
+        int total = 0;
+        for (Unit unit : body.getUnits()) {
+            if (unit instanceof DefinitionStmt) {
+                DefinitionStmt stmt = (DefinitionStmt) unit;
+                Local local = stmt.getLeftOp() instanceof Local ? (Local) stmt.getLeftOp() : null;
+                if (local != null && candidates.get(local) == stmt && defCounts.get(local) == 1) {
+                    int size = getDataSize(stmt);
+                    if (total + size <= MAX_TOTAL_SIZE) {
+                        result.add(stmt);
+                        total += size;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes of element data allocated by the specified
+     * statement or <code>-1</code> if it isn't an allocation of a primitive
+     * array with a constant length small enough to be stack allocated.
+     */
+    private static int getDataSize(DefinitionStmt stmt) {
+        if (!(stmt.getRightOp() instanceof NewArrayExpr)) {
+            return -1;
+        }
+        NewArrayExpr expr = (NewArrayExpr) stmt.getRightOp();
+        if (!(expr.getSize() instanceof IntConstant)) {
+            return -1;
+        }
+        int elementSize = getElementSize(expr.getBaseType());
+        int length = ((IntConstant) expr.getSize()).value;
+        if (elementSize == -1 || length < 0 || length > MAX_ARRAY_SIZE / elementSize) {
+            return -1;
+        }
+        return length * elementSize;
+    }
+
+    private static int getElementSize(soot.Type type) {
+        if (type == BooleanType.v() || type == ByteType.v()) {
+            return 1;
+        }
+        if (type == CharType.v() || type == ShortType.v()) {
+            return 2;
+        }
+        if (type == IntType.v() || type == FloatType.v()) {
+            return 4;
+        }
+        if (type == LongType.v() || type == DoubleType.v()) {
+            return 8;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns {@code true} if the specified primitive array {@link Local} is
+     * used by the specified statement in a way which doesn't let the array
+     * escape. The other operands of all such statements are primitives so the
+     * {@link Local} cannot appear anywhere else in the statement.
+     */
+    private static boolean isNonEscapingUse(Stmt stmt, Local local) {
+        if (stmt.containsArrayRef() && stmt.getArrayRef().getBase() == local) {
+            // Element load or store. The value stored is a primitive.
+            return true;
+        }
+        if (stmt instanceof AssignStmt) {
+            soot.Value rightOp = ((AssignStmt) stmt).getRightOp();
+            if (rightOp instanceof LengthExpr && ((LengthExpr) rightOp).getOp() == local) {
+                return true;
+            }
+        }
+        if (stmt.containsInvokeExpr()) {
+            InvokeExpr expr = stmt.getInvokeExpr();
+            SootMethodRef ref = expr.getMethodRef();
+            if (expr instanceof StaticInvokeExpr
+                    && "arraycopy".equals(ref.name())
+                    && "java.lang.System".equals(ref.declaringClass().getName())) {
+                // Only the src and dest arguments are references.
+                return true;
+            }
+        }
+        return false;
+    }
+}
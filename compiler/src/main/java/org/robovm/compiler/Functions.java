@@ -78,6 +78,7 @@ public class Functions {
     public static final FunctionRef BC_MONITOR_ENTER = new FunctionRef("_bcMonitorEnter", new FunctionType(VOID, ENV_PTR, OBJECT_PTR));
     public static final FunctionRef BC_MONITOR_EXIT = new FunctionRef("_bcMonitorExit", new FunctionType(VOID, ENV_PTR, OBJECT_PTR));
     public static final FunctionRef BC_LDC_STRING = new FunctionRef("_bcLdcString", new FunctionType(OBJECT_PTR, ENV_PTR, I8_PTR_PTR, I8_PTR));
+    public static final FunctionRef BC_LDC_STATIC_STRING = new FunctionRef("_bcLdcStaticString", new FunctionType(OBJECT_PTR, ENV_PTR, I8_PTR_PTR, I8_PTR, OBJECT_PTR, OBJECT_PTR));
     public static final FunctionRef BC_LOOKUP_VIRTUAL_METHOD = new FunctionRef("_bcLookupVirtualMethod", new FunctionType(I8_PTR, ENV_PTR, OBJECT_PTR, I8_PTR, I8_PTR));
     public static final FunctionRef BC_LOOKUP_INTERFACE_METHOD = new FunctionRef("_bcLookupInterfaceMethod", new FunctionType(I8_PTR, ENV_PTR, I8_PTR_PTR, OBJECT_PTR, I8_PTR, I8_PTR));
     public static final FunctionRef BC_LOOKUP_INTERFACE_METHOD_IMPL = new FunctionRef("_bcLookupInterfaceMethodImpl", new FunctionType(I8_PTR, ENV_PTR, I8_PTR_PTR, OBJECT_PTR, I32));
@@ -103,6 +104,7 @@ public class Functions {
 
     public static final FunctionRef LLVM_FRAMEADDRESS = new FunctionRef("llvm.frameaddress", new FunctionType(I8_PTR, I32));
     public static final FunctionRef LLVM_MEMCPY = new FunctionRef("llvm.memcpy.p0i8.p0i8.i32", new FunctionType(VOID, I8_PTR, I8_PTR, I32, I32, I1));
+    public static final FunctionRef LLVM_MEMSET = new FunctionRef("llvm.memset.p0i8.i32", new FunctionType(VOID, I8_PTR, I8, I32, I32, I1));
 
     public static final FunctionRef REGISTER_FINALIZABLE = new FunctionRef("register_finalizable", new FunctionType(VOID, ENV_PTR, OBJECT_PTR));
     public static final FunctionRef CHECK_NULL = new FunctionRef("checknull", new FunctionType(I8, ENV_PTR, OBJECT_PTR));
@@ -155,6 +157,18 @@ public class Functions {
     public static final FunctionRef CLASS_VITABLE = new FunctionRef("Class_vitable", new FunctionType(VITABLE_PTR, CLASS_PTR));
     public static final FunctionRef MONITORENTER = new FunctionRef("monitorenter", new FunctionType(VOID, ENV_PTR, OBJECT_PTR));
     public static final FunctionRef MONITOREXIT = new FunctionRef("monitorexit", new FunctionType(VOID, ENV_PTR, OBJECT_PTR));
+    public static final FunctionRef LOOKUP_INTERFACE_METHOD = new FunctionRef("lookupInterfaceMethod", new FunctionType(I8_PTR, ENV_PTR, I8_PTR_PTR, OBJECT_PTR, I8_PTR, I32, I32));
+    public static final FunctionRef CALL_SITE_LOOKUP = new FunctionRef("callSiteLookup", new FunctionType(I8_PTR, ENV_PTR, I8_PTR, OBJECT_PTR, I8_PTR));
+    public static final FunctionRef CALL_SITE_LOOKUP_COUNTING = new FunctionRef("callSiteLookupCounting", new FunctionType(I8_PTR, ENV_PTR, I8_PTR, OBJECT_PTR, I8_PTR));
+    public static final FunctionRef ALLOCATE = new FunctionRef("allocate", new FunctionType(OBJECT_PTR, ENV_PTR, I8_PTR_PTR, I32));
+    public static final FunctionRef NEW_BOOLEAN_ARRAY = new FunctionRef("newBooleanArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_BYTE_ARRAY = new FunctionRef("newByteArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_CHAR_ARRAY = new FunctionRef("newCharArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_SHORT_ARRAY = new FunctionRef("newShortArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_INT_ARRAY = new FunctionRef("newIntArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_LONG_ARRAY = new FunctionRef("newLongArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_FLOAT_ARRAY = new FunctionRef("newFloatArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
+    public static final FunctionRef NEW_DOUBLE_ARRAY = new FunctionRef("newDoubleArray", new FunctionType(OBJECT_PTR, ENV_PTR, I32));
     public static final FunctionRef PUSH_NATIVE_FRAME = new FunctionRef("pushNativeFrame", new FunctionType(VOID, ENV_PTR));
     public static final FunctionRef POP_NATIVE_FRAME = new FunctionRef("popNativeFrame", new FunctionType(VOID, ENV_PTR));
     public static final FunctionRef GETPC = new FunctionRef("getpc", new FunctionType(I8_PTR));
@@ -209,21 +223,21 @@ public class Functions {
     
     public static FunctionRef getNewArray(soot.Type sootType) {
         if (sootType.equals(soot.BooleanType.v())) {
-            return BC_NEW_BOOLEAN_ARRAY;
+            return NEW_BOOLEAN_ARRAY;
         } else if (sootType.equals(soot.ByteType.v())) {
-            return BC_NEW_BYTE_ARRAY;
+            return NEW_BYTE_ARRAY;
         } else if (sootType.equals(soot.ShortType.v())) {
-            return BC_NEW_SHORT_ARRAY;
+            return NEW_SHORT_ARRAY;
         } else if (sootType.equals(soot.CharType.v())) {
-            return BC_NEW_CHAR_ARRAY;
+            return NEW_CHAR_ARRAY;
         } else if (sootType.equals(soot.IntType.v())) {
-            return BC_NEW_INT_ARRAY;
+            return NEW_INT_ARRAY;
         } else if (sootType.equals(soot.LongType.v())) {
-            return BC_NEW_LONG_ARRAY;
+            return NEW_LONG_ARRAY;
         } else if (sootType.equals(soot.FloatType.v())) {
-            return BC_NEW_FLOAT_ARRAY;
+            return NEW_FLOAT_ARRAY;
         } else if (sootType.equals(soot.DoubleType.v())) {
-            return BC_NEW_DOUBLE_ARRAY;
+            return NEW_DOUBLE_ARRAY;
         } else {
             throw new IllegalArgumentException("Unknown Type: " + sootType);
         }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.robovm.compiler.config.Arch;
+import org.robovm.compiler.config.OS;
+import org.robovm.compiler.llvm.ModuleTranslator;
+import org.robovm.llvm.Context;
+import org.robovm.llvm.Function;
+import org.robovm.llvm.Module;
+import org.robovm.llvm.binding.Linkage;
+
+/**
+ * Keeps the runtime headers (<code>header.ll</code> and
+ * <code>header-&lt;os&gt;-&lt;arch&gt;.ll</code>) parsed in LLVM
+ * {@link Context}s, one per {@link OS} family and {@link Arch}. Class and
+ * linker modules are built by {@link #build(OS, Arch,
+ * org.robovm.compiler.llvm.Module, String)} directly in the {@link Context}
+ * of their header using {@link ModuleTranslator} without going through IR
+ * text. If a module contains something which can't be built that way it is
+ * written as IR text without the header definitions (see
+ * {@link org.robovm.compiler.llvm.Module#write(java.io.Writer, boolean)}),
+ * parsed and the definitions are linked in from the pre-parsed header.
+ * <p>
+ * Instances aren't thread safe. Use {@link #acquire()} to get an instance for
+ * the current thread and {@link #close()} to return it when done. Idle
+ * instances are reused. The {@link Context}s are recreated every now and then
+ * since every module built in them leaves its types behind.
+ */
+public class HeaderModules implements AutoCloseable {
+    private static final int MAX_MODULES_PER_CONTEXT = 100;
+    private static final Deque<HeaderModules> idle = new ArrayDeque<>();
+
+    private final Map<String, Header> headers = new HashMap<>();
+
+    private static class Header {
+        Context context;
+        Module module;
+        List<String> privateFunctions = new ArrayList<>();
+        int moduleCount = 0;
+
+        void dispose() {
+            module.dispose();
+            context.dispose();
+        }
+    }
+
+    private HeaderModules() {
+    }
+
+    /**
+     * Returns the runtime headers which should be included in all modules
+     * compiled for the specified {@link OS} and {@link Arch}.
+     */
+    public static List<URL> getHeaders(OS os, Arch arch) {
+        ClassLoader loader = HeaderModules.class.getClassLoader();
+        return Arrays.asList(
+                loader.getResource(String.format("header-%s-%s.ll", os.getFamily(), arch)),
+                loader.getResource("header.ll"));
+    }
+
+    /**
+     * Returns an idle {@link HeaderModules} or creates a new one if there is
+     * none.
+     */
+    public static HeaderModules acquire() {
+        HeaderModules result = null;
+        synchronized (idle) {
+            result = idle.pollFirst();
+        }
+        if (result == null) {
+            result = new HeaderModules();
+        }
+        for (Iterator<Header> it = result.headers.values().iterator(); it.hasNext();) {
+            Header header = it.next();
+            if (header.moduleCount >= MAX_MODULES_PER_CONTEXT) {
+                header.dispose();
+                it.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link Context} in which the headers for the specified
+     * {@link OS} and {@link Arch} have been parsed. Modules which are going
+     * to be linked with modules built by {@link #build(OS, Arch,
+     * org.robovm.compiler.llvm.Module, String)} must be created in this
+     * {@link Context}.
+     */
+    public Context getContext(OS os, Arch arch) {
+        Header header = getHeader(os, arch);
+        header.moduleCount++;
+        return header.context;
+    }
+
+    /**
+     * Builds the specified {@link org.robovm.compiler.llvm.Module} in the
+     * {@link Context} returned by {@link #getContext(OS, Arch)}. If the
+     * {@link org.robovm.compiler.llvm.Module} includes the runtime headers
+     * the returned {@link Module} will contain the function definitions of
+     * the headers.
+     */
+    public Module build(OS os, Arch arch, org.robovm.compiler.llvm.Module module, String name) {
+        Header header = getHeader(os, arch);
+        header.moduleCount++;
+        boolean withHeader = !module.getIncludes().isEmpty();
+        if (withHeader && !toStrings(module.getIncludes()).equals(toStrings(getHeaders(os, arch)))) {
+            // Not something we have pre-parsed
+            return parse(header, module, name, false);
+        }
+        Module result = withHeader ? header.module.cloneModule() : Module.create(header.context, name);
+        try {
+            ModuleTranslator.translate(module, result);
+        } catch (UnsupportedOperationException e) {
+            result.dispose();
+            return parse(header, module, name, withHeader);
+        } catch (Throwable t) {
+            result.dispose();
+            throw t;
+        }
+        if (withHeader) {
+            restorePrivateFunctions(header, result);
+        }
+        return result;
+    }
+
+    private Module parse(Header header, org.robovm.compiler.llvm.Module module, String name, boolean linkHeader) {
+        StringWriter writer = new StringWriter();
+        try {
+            module.write(writer, !linkHeader);
+        } catch (IOException e) {
+            // Can't happen with a StringWriter
+            throw new Error(e);
+        }
+        Module result = Module.parseIR(header.context, writer.toString(), name);
+        if (linkHeader) {
+            try {
+                link(header, result);
+            } catch (Throwable t) {
+                result.dispose();
+                throw t;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Links the function definitions in the specified {@link Header} into
+     * the specified {@link Module} which has been parsed from IR written
+     * without definitions.
+     */
+    private void link(Header header, Module module) {
+        Module clone = header.module.cloneModule();
+        try {
+            module.link(clone);
+        } finally {
+            clone.dispose();
+        }
+        restorePrivateFunctions(header, module);
+    }
+
+    private void restorePrivateFunctions(Header header, Module module) {
+        for (String name : header.privateFunctions) {
+            Function f = module.getFunctionByName(name);
+            if (f != null) {
+                f.setLinkage(Linkage.PrivateLinkage);
+            }
+        }
+    }
+
+    private static List<String> toStrings(Collection<URL> urls) {
+        List<String> result = new ArrayList<>();
+        for (URL url : urls) {
+            result.add(url.toString());
+        }
+        return result;
+    }
+
+    private Header getHeader(OS os, Arch arch) {
+        String key = os.getFamily() + "-" + arch;
+        Header header = headers.get(key);
+        if (header == null) {
+            StringBuilder sb = new StringBuilder();
+            for (URL url : getHeaders(os, arch)) {
+                sb.append(org.robovm.compiler.llvm.Module.readInclude(url, true));
+                sb.append('\n');
+            }
+            header = new Header();
+            header.context = new Context();
+            header.module = Module.parseIR(header.context, sb.toString(), key + ".ll");
+            // Private functions cannot be linked against. Make them
+            // linkonce_odr while linking.
+            for (Function f : header.module.getFunctions()) {
+                if (f.getLinkage() == Linkage.PrivateLinkage) {
+                    f.setLinkage(Linkage.LinkOnceODRLinkage);
+                    header.privateFunctions.add(f.getName());
+                }
+            }
+            headers.put(key, header);
+        }
+        return header;
+    }
+
+    /**
+     * Returns this {@link HeaderModules} to the pool of idle instances. All
+     * modules created in the {@link Context}s of this instance must have been
+     * disposed.
+     */
+    @Override
+    public void close() {
+        synchronized (idle) {
+            idle.addFirst(this);
+        }
+    }
+}
@@ -25,13 +25,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.robovm.compiler.llvm.ArrayConstant;
 import org.robovm.compiler.llvm.ArrayConstantBuilder;
+import org.robovm.compiler.llvm.Constant;
 import org.robovm.compiler.llvm.ConstantBitcast;
 import org.robovm.compiler.llvm.FunctionDeclaration;
 import org.robovm.compiler.llvm.FunctionRef;
 import org.robovm.compiler.llvm.IntegerConstant;
+import org.robovm.compiler.llvm.NullConstant;
 import org.robovm.compiler.llvm.StructureConstant;
 import org.robovm.compiler.llvm.StructureConstantBuilder;
+import org.robovm.compiler.llvm.StructureType;
 
 import soot.SootClass;
 import soot.SootMethod;
@@ -40,6 +44,13 @@ import soot.SootMethod;
  * Creates an interface table for a specific interface class.
  */
 public class ITable {
+    /**
+     * The number of slots in the interface method table (IMT) of a class.
+     * Must be a power of 2 and match <code>IMT_SIZE</code> in 
+     * <code>types.h</code>.
+     */
+    public static final int IMT_SIZE = 16;
+    
     private Entry[] entries;
 
     private ITable(SootClass clazz) {
@@ -94,35 +105,7 @@ public class ITable {
         }
         ArrayConstantBuilder table = new ArrayConstantBuilder(I8_PTR);
         for (Entry entry : entries) {
-            ResolvedEntry resolvedEntry = entry.resolve(clazz);
-            if (resolvedEntry == null) {
-                FunctionRef defaultFunctionRef = entry.getFunctionRef();
-                if (defaultFunctionRef != null) {
-                    if (!mb.hasSymbol(defaultFunctionRef.getName())) {
-                        mb.addFunctionDeclaration(new FunctionDeclaration(defaultFunctionRef));
-                    }
-                    table.add(new ConstantBitcast(defaultFunctionRef, I8_PTR));
-                } else {
-                    table.add(new ConstantBitcast(BC_ABSTRACT_METHOD_CALLED, I8_PTR));
-                }
-            } else if (Modifier.isAbstract(resolvedEntry.getModifiers())) {
-                table.add(new ConstantBitcast(BC_ABSTRACT_METHOD_CALLED, I8_PTR));
-            } else if (!Modifier.isPublic(resolvedEntry.getModifiers())) {
-                table.add(new ConstantBitcast(BC_NON_PUBLIC_METHOD_CALLED, I8_PTR));
-            } else {
-                /*
-                 * Found a non-abstract method implementation. Either on the
-                 * class, in one of its super classes or a default method in an
-                 * implemented interface.
-                 */
-                FunctionRef functionRef = resolvedEntry.getFunctionRef();
-                if (!resolvedEntry.declaringClass.equals(clazz.getName())) {
-                    if (!mb.hasSymbol(functionRef.getName())) {
-                        mb.addFunctionDeclaration(new FunctionDeclaration(functionRef));
-                    }
-                }
-                table.add(new ConstantBitcast(functionRef, I8_PTR));
-            }
+            table.add(getImplementation(mb, clazz, entry));
         }
         return new StructureConstantBuilder()
                     .add(new IntegerConstant((short) entries.length))
@@ -130,9 +113,97 @@ public class ITable {
                     .build();
     }
     
+    /**
+     * Adds the methods in this {@link ITable} as implemented by the specified
+     * class to the {@link IMT} of that class.
+     */
+    public void addToIMT(IMT imt, ModuleBuilder mb, SootClass clazz, Constant typeInfo) {
+        if (clazz.isInterface()) {
+            throw new IllegalArgumentException("Expected a class got an interface: " + clazz.getName());
+        }
+        for (Entry entry : entries) {
+            imt.add(entry.getIMTSlot(), typeInfo, getImplementation(mb, clazz, entry));
+        }
+    }
+    
+    private Constant getImplementation(ModuleBuilder mb, SootClass clazz, Entry entry) {
+        ResolvedEntry resolvedEntry = entry.resolve(clazz);
+        if (resolvedEntry == null) {
+            FunctionRef defaultFunctionRef = entry.getFunctionRef();
+            if (defaultFunctionRef != null) {
+                if (!mb.hasSymbol(defaultFunctionRef.getName())) {
+                    mb.addFunctionDeclaration(new FunctionDeclaration(defaultFunctionRef));
+                }
+                return new ConstantBitcast(defaultFunctionRef, I8_PTR);
+            } else {
+                return new ConstantBitcast(BC_ABSTRACT_METHOD_CALLED, I8_PTR);
+            }
+        } else if (Modifier.isAbstract(resolvedEntry.getModifiers())) {
+            return new ConstantBitcast(BC_ABSTRACT_METHOD_CALLED, I8_PTR);
+        } else if (!Modifier.isPublic(resolvedEntry.getModifiers())) {
+            return new ConstantBitcast(BC_NON_PUBLIC_METHOD_CALLED, I8_PTR);
+        } else {
+            /*
+             * Found a non-abstract method implementation. Either on the
+             * class, in one of its super classes or a default method in an
+             * implemented interface.
+             */
+            FunctionRef functionRef = resolvedEntry.getFunctionRef();
+            if (!resolvedEntry.declaringClass.equals(clazz.getName())) {
+                if (!mb.hasSymbol(functionRef.getName())) {
+                    mb.addFunctionDeclaration(new FunctionDeclaration(functionRef));
+                }
+            }
+            return new ConstantBitcast(functionRef, I8_PTR);
+        }
+    }
+    
+    /**
+     * Builds the interface method table (IMT) of a class. Each interface
+     * method is hashed to one of {@link #IMT_SIZE} slots (see
+     * {@link Entry#getIMTSlot()}). A slot which has been assigned a single
+     * method holds the <code>TypeInfo</code> of the interface declaring the
+     * method and the method's implementation. Slots which have been assigned
+     * no methods or more than one method hold <code>null</code> values and
+     * calls to methods hashed to such slots use the slower itable search.
+     */
+    public static class IMT {
+        private static final StructureType ENTRY_TYPE = new StructureType(I8_PTR, I8_PTR);
+        private final Constant[] typeInfos = new Constant[IMT_SIZE];
+        private final Constant[] impls = new Constant[IMT_SIZE];
+        private final boolean[] conflicts = new boolean[IMT_SIZE];
+        
+        void add(int slot, Constant typeInfo, Constant impl) {
+            if (typeInfos[slot] != null || conflicts[slot]) {
+                conflicts[slot] = true;
+                typeInfos[slot] = null;
+                impls[slot] = null;
+            } else {
+                typeInfos[slot] = typeInfo;
+                impls[slot] = impl;
+            }
+        }
+        
+        public ArrayConstant getArray() {
+            ArrayConstantBuilder table = new ArrayConstantBuilder(ENTRY_TYPE);
+            for (int i = 0; i < IMT_SIZE; i++) {
+                if (typeInfos[i] != null) {
+                    table.add(new StructureConstantBuilder()
+                            .add(new ConstantBitcast(typeInfos[i], I8_PTR))
+                            .add(impls[i]).build());
+                } else {
+                    table.add(new StructureConstantBuilder()
+                            .add(new NullConstant(I8_PTR))
+                            .add(new NullConstant(I8_PTR)).build());
+                }
+            }
+            return table.build();
+        }
+    }
+    
     public static class Cache {
         Map<String, ITable> cache = new HashMap<String, ITable>();
-        public ITable get(SootClass clazz) {
+        public synchronized ITable get(SootClass clazz) {
             if (!clazz.isInterface()) {
                 throw new IllegalArgumentException("Not an interface: " + clazz.getName());
             }
@@ -243,6 +314,18 @@ public class ITable {
             return declaringClass;
         }
         
+        /**
+         * Returns the IMT slot of this method. The slot only depends on the
+         * interface declaring the method, the method name and its
+         * descriptor so call sites and the IMTs of implementing classes
+         * agree on it without any global knowledge.
+         */
+        public int getIMTSlot() {
+            int h = (declaringClass + "." + name + desc).hashCode();
+            h ^= (h >>> 16);
+            return h & (IMT_SIZE - 1);
+        }
+        
         public FunctionRef getFunctionRef() {
             if (Modifier.isAbstract(modifiers) || !Modifier.isPublic(modifiers)) {
                 return null;
@@ -24,11 +24,15 @@ import static org.robovm.compiler.llvm.Linkage.*;
 import static org.robovm.compiler.llvm.Type.*;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,7 +44,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Executor;
@@ -62,6 +65,8 @@ import org.robovm.compiler.hash.ModifiedUtf8HashFunction;
 import org.robovm.compiler.llvm.Alias;
 import org.robovm.compiler.llvm.ArrayConstant;
 import org.robovm.compiler.llvm.ArrayConstantBuilder;
+import org.robovm.compiler.llvm.Bitcast;
+import org.robovm.compiler.llvm.Br;
 import org.robovm.compiler.llvm.Constant;
 import org.robovm.compiler.llvm.ConstantBitcast;
 import org.robovm.compiler.llvm.ConstantGetelementptr;
@@ -70,7 +75,9 @@ import org.robovm.compiler.llvm.FunctionDeclaration;
 import org.robovm.compiler.llvm.FunctionRef;
 import org.robovm.compiler.llvm.FunctionType;
 import org.robovm.compiler.llvm.Global;
+import org.robovm.compiler.llvm.Icmp;
 import org.robovm.compiler.llvm.IntegerConstant;
+import org.robovm.compiler.llvm.Label;
 import org.robovm.compiler.llvm.NullConstant;
 import org.robovm.compiler.llvm.Ret;
 import org.robovm.compiler.llvm.StructureConstant;
@@ -78,8 +85,9 @@ import org.robovm.compiler.llvm.StructureConstantBuilder;
 import org.robovm.compiler.llvm.Type;
 import org.robovm.compiler.llvm.Unreachable;
 import org.robovm.compiler.llvm.Value;
+import org.robovm.compiler.llvm.Variable;
 import org.robovm.compiler.plugin.CompilerPlugin;
-import org.robovm.llvm.Context;
+import org.robovm.compiler.util.DigestUtil;
 import org.robovm.llvm.Module;
 import org.robovm.llvm.PassManager;
 import org.robovm.llvm.Target;
@@ -195,8 +203,9 @@ public class Linker {
                 os, arch, config.isDebug() ? "debug" : "release");
 
         ModuleBuilder mb = new ModuleBuilder();
-        mb.addInclude(getClass().getClassLoader().getResource(String.format("header-%s-%s.ll", os.getFamily(), arch)));
-        mb.addInclude(getClass().getClassLoader().getResource("header.ll"));
+        for (URL header : HeaderModules.getHeaders(os, arch)) {
+            mb.addInclude(header);
+        }
 
         mb.addGlobal(new Global("_bcRuntimeData", runtimeDataToBytes()));
 
@@ -283,9 +292,9 @@ public class Linker {
         mbs[0] = mb;
         for (int i = 1; i < mbs.length; i++) {
             mbs[i] = new ModuleBuilder();
-            mbs[i].addInclude(getClass().getClassLoader().getResource(
-                    String.format("header-%s-%s.ll", os.getFamily(), arch)));
-            mbs[i].addInclude(getClass().getClassLoader().getResource("header.ll"));
+            for (URL header : HeaderModules.getHeaders(os, arch)) {
+                mbs[i].addInclude(header);
+            }
 
             Function fn = new FunctionBuilder("_stripped_method" + i, new FunctionType(VOID, ENV_PTR))
                     .linkage(external).build();
@@ -301,9 +310,8 @@ public class Linker {
         
         mb.addGlobal(new Global("_bcStrippedMethodStubs", stubRefsArray.build()));
         
-        Random rnd = new Random();
-
         buildTypeInfos(typeInfos);
+        ClassHierarchy hierarchy = new ClassHierarchy(linkClasses);
         
         Set<String> checkcasts = new HashSet<>();
         Set<String> instanceofs = new HashSet<>();
@@ -322,8 +330,12 @@ public class Linker {
         
         int totalMethodCount = 0;
         int reachableMethodCount = 0;
+        int devirtualizedCount = 0;
         for (Clazz clazz : linkClasses) {
-            int mbIdx = rnd.nextInt(mbs.length - 1) + 1;
+            // Assign classes to modules by name to get the same modules
+            // between builds. Unchanged modules can then be reused from the
+            // linker object cache (see generateMachineCode()).
+            int mbIdx = getModuleIndex(clazz.getInternalName(), mbs.length);
             ClazzInfo ci = clazz.getClazzInfo();
 
             // Create strong stubs for unused methods which override the weak
@@ -372,19 +384,30 @@ public class Linker {
                                 .add(new ArrayConstantBuilder(I32).add(interfaceIds).build())
                                 .build()));
 
-                if (!config.isDebug() && !ci.isInterface() && !ci.isFinal() && typeInfo.children.isEmpty()) {
-                    // Non-final class with 0 children. Override every lookup
-                    // function with one
-                    // which doesn't do any lookup.
+                if (!config.isDebug() && !ci.isFinal()) {
                     for (MethodInfo mi : ci.getMethods()) {
                         String name = mi.getName();
-                        if (!name.equals("<clinit>") && !name.equals("<init>")
-                                && !mi.isPrivate() && !mi.isStatic() && !mi.isFinal() && !mi.isAbstract()) {
-
-                            if (invokes.contains(clazz.getInternalName() + "." + name + mi.getDesc())) {
-                                if (reachableMethods.contains(clazz.getInternalName() + "." + name + mi.getDesc())) {
-                                    mbs[mbIdx].addFunction(createLookup(mbs[mbIdx], ci, mi));
-                                }
+                        String key = clazz.getInternalName() + "." + name + mi.getDesc();
+                        if (name.equals("<clinit>") || name.equals("<init>")
+                                || mi.isPrivate() || mi.isStatic() || mi.isFinal()
+                                || !invokes.contains(key) || !reachableMethods.contains(key)) {
+                            continue;
+                        }
+                        if (!ci.isInterface() && typeInfo.children.isEmpty()) {
+                            // Non-final class with 0 children. Override every
+                            // lookup function with one which doesn't do any
+                            // lookup.
+                            if (!mi.isAbstract()) {
+                                mbs[mbIdx].addFunction(createLookup(mbs[mbIdx], ci, mi));
+                            }
+                        } else {
+                            // Use the class hierarchy to find out if there
+                            // are only one or two implementations which may
+                            // be called and call those directly.
+                            Function fn = createDevirtualizedLookup(mbs[mbIdx], hierarchy, typeInfos, ci, mi);
+                            if (fn != null) {
+                                mbs[mbIdx].addFunction(fn);
+                                devirtualizedCount++;
                             }
                         }
                     }
@@ -399,19 +422,35 @@ public class Linker {
             }
         }
         config.getLogger().info("%d methods out of %d included in the executable", reachableMethodCount, totalMethodCount);
+        if (!config.isDebug()) {
+            config.getLogger().debug("Devirtualized %d lookup functions using the class hierarchy", devirtualizedCount);
+        }
 
         List<File> objectFiles = new ArrayList<File>();
 
         generateMachineCode(config, mbs, objectFiles);
 
+        Set<Clazz> optimizedClasses = Collections.emptySet();
+        if (config.isWholeProgram()) {
+            optimizedClasses = new WholeProgramOptimizer(config).optimize(linkClasses, reachableMethods, objectFiles);
+        }
+
         for (Clazz clazz : linkClasses) {
-            objectFiles.add(config.getOFile(clazz));
+            if (!optimizedClasses.contains(clazz)) {
+                objectFiles.add(config.getOFile(clazz));
+            }
         }
 
         /*
          * Assemble the lines files for all linked classes into the module.
+         * The line numbers of classes optimized together with other classes
+         * are in the lines files of their partitions which have already been
+         * added by the WholeProgramOptimizer.
          */
         for (Clazz clazz : linkClasses) {
+            if (optimizedClasses.contains(clazz)) {
+                continue;
+            }
             File f = config.getLinesOFile(clazz);
             if (f.exists() && f.length() > 0) {
                 objectFiles.add(f);
@@ -433,6 +472,8 @@ public class Linker {
         Executor executor = config.getThreads() <= 1 ? AppCompiler.SAME_THREAD_EXECUTOR
                 : Executors.newFixedThreadPool(config.getThreads());
 
+        final LinkerObjectCache cache = new LinkerObjectCache(LinkerObjectCache.getDir(config.getCacheDir(),
+                config.getExecutableName(), config.getMainClass(), config.getInstallDir()));
         final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
         for (int i = 0; i < mbs.length; i++) {
             final ModuleBuilder mb = mbs[i];
@@ -440,7 +481,7 @@ public class Linker {
             executor.execute(new Runnable() {
                 public void run() {
                     try {
-                        File linkerO = generateMachineCode(config, mb, num);
+                        File linkerO = generateMachineCode(config, mb, num, cache);
                         synchronized (objectFiles) {
                             objectFiles.add(linkerO);
                         }
@@ -471,21 +512,57 @@ public class Linker {
             }
             throw new CompilerException(t);
         }
+
+        // Remove cached linker objects which weren't used by this build
+        cache.purge();
+    }
+
+    /**
+     * Returns a digest of the IR of a linker module, the runtime headers it
+     * will be linked with and the settings used to generate machine code.
+     */
+    private String getLinkerModuleDigest(Config config, byte[] ir) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Version.getVersion()).append(' ').append(config.getTriple());
+        for (URL header : HeaderModules.getHeaders(config.getOs(), config.getArch())) {
+            sb.append(' ').append(DigestUtil.sha1(org.robovm.compiler.llvm.Module.readInclude(header, true)));
+        }
+        sb.append(' ').append(DigestUtil.sha1(ir));
+        return DigestUtil.sha1(sb.toString());
     }
 
     private File generateMachineCode(final Config config, final ModuleBuilder mb,
-            final int num) throws IOException {
+            final int num, LinkerObjectCache cache) throws IOException {
 
         File linkerO = new File(config.getTmpDir(), "linker" + num + ".o");
         linkerO.getParentFile().mkdirs();
 
-        try (Context context = new Context()) {
-            String ir = mb.build().toString();
-            if (config.isDumpIntermediates()) {
-                File linkerLl = new File(config.getTmpDir(), "linker" + num + ".ll");
-                FileUtils.writeStringToFile(linkerLl, ir, "utf-8");
-            }
-            try (Module module = Module.parseIR(context, ir, "linker" + num + ".ll")) {
+        // The IR text is only used to look up the module in the cache. The
+        // module is built in LLVM directly from the model. Write the IR
+        // straight into a byte buffer. Going through a String would create
+        // two more copies of a potentially large module.
+        org.robovm.compiler.llvm.Module llModule = mb.build();
+        ByteArrayOutputStream irOut = new ByteArrayOutputStream(256 * 1024);
+        Writer writer = new OutputStreamWriter(irOut, "UTF-8");
+        llModule.write(writer, false);
+        writer.flush();
+        byte[] ir = irOut.toByteArray();
+        if (config.isDumpIntermediates()) {
+            File linkerLl = new File(config.getTmpDir(), "linker" + num + ".ll");
+            FileUtils.writeByteArrayToFile(linkerLl, ir);
+        }
+
+        String digest = getLinkerModuleDigest(config, ir);
+        // Always regenerate when dumping intermediates to get the .bc and .s
+        // files.
+        if (!config.isClean() && !config.isDumpIntermediates() && cache.get(digest, linkerO)) {
+            config.getLogger().debug("Reusing cached linker module %s for linker%d.o", digest, num);
+            return linkerO;
+        }
+
+        try (HeaderModules headerModules = HeaderModules.acquire()) {
+            try (Module module = headerModules.build(config.getOs(), config.getArch(), llModule, "linker" + num + ".ll")) {
+
                 try (PassManager passManager = new PassManager()) {
                     passManager.addAlwaysInlinerPass();
                     passManager.addPromoteMemoryToRegisterPass();
@@ -519,9 +596,21 @@ public class Linker {
                 }
             }
         }
+
+        cache.put(digest, linkerO);
         return linkerO;
     }
 
+    /**
+     * Returns the index of the linker module the specified class is assigned
+     * to. Module 0 is reserved for the code which isn't specific to a class.
+     * The assignment only depends on the name of the class so that adding or
+     * removing classes doesn't change the contents of the other modules.
+     */
+    static int getModuleIndex(String internalName, int moduleCount) {
+        return (internalName.hashCode() & 0x7fffffff) % (moduleCount - 1) + 1;
+    }
+
     private TypeInfo buildTypeInfo(TypeInfo typeInfo, Map<ClazzInfo, TypeInfo> typeInfos) {
         if (typeInfo.error || typeInfo.classTypes != null) {
             return typeInfo;
@@ -712,19 +801,125 @@ public class Linker {
 
     private Function createLookup(ModuleBuilder mb, ClazzInfo ci, MethodInfo mi) {
         Function function = FunctionBuilder.lookup(ci, mi, false);
+        FunctionRef fn = getMethodRef(mb, ci, mi, function.getType());
+        Value result = tailcall(function, fn, function.getParameterRefs());
+        function.add(new Ret(result));
+        return function;
+    }
+
+    private FunctionRef getMethodRef(ModuleBuilder mb, ClazzInfo ci, MethodInfo mi, FunctionType type) {
         String targetFnName = mi.isSynchronized()
                 ? Symbols.synchronizedWrapperSymbol(ci.getInternalName(), mi.getName(), mi.getDesc())
                 : Symbols.methodSymbol(ci.getInternalName(), mi.getName(), mi.getDesc());
 
-        FunctionRef fn = new FunctionRef(targetFnName, function.getType());
+        FunctionRef fn = new FunctionRef(targetFnName, type);
         if (!mb.hasSymbol(fn.getName())) {
             mb.addFunctionDeclaration(new FunctionDeclaration(fn));
         }
-        Value result = tailcall(function, fn, function.getParameterRefs());
-        function.add(new Ret(result));
+        return fn;
+    }
+
+    /**
+     * Creates a lookup function for the specified method which calls the
+     * implementations found by the {@link ClassHierarchy} directly. Class
+     * methods with a single implementation are called unconditionally. Class
+     * methods with two implementations test the receiver against the class
+     * of one of them. Interface methods may also be implemented by proxy
+     * classes so their one or two implementations are always tested for and
+     * the method is looked up by name if none matches. Returns {@code null}
+     * if the call cannot be devirtualized.
+     */
+    private Function createDevirtualizedLookup(ModuleBuilder mb, ClassHierarchy hierarchy,
+            Map<ClazzInfo, TypeInfo> typeInfos, ClazzInfo ci, MethodInfo mi) {
+
+        List<ClassHierarchy.Implementation> impls = hierarchy.findImplementations(ci, mi, 2);
+        if (impls == null || impls.isEmpty()) {
+            return null;
+        }
+
+        List<ClassHierarchy.Implementation> guarded = new ArrayList<>();
+        ClassHierarchy.Implementation unguarded = null;
+        if (ci.isInterface()) {
+            for (ClassHierarchy.Implementation impl : impls) {
+                if (!isValidGuard(hierarchy, typeInfos, impl, impls)) {
+                    return null;
+                }
+                guarded.add(impl);
+            }
+        } else if (impls.size() == 1) {
+            unguarded = impls.get(0);
+        } else if (isValidGuard(hierarchy, typeInfos, impls.get(0), impls)) {
+            guarded.add(impls.get(0));
+            unguarded = impls.get(1);
+        } else if (isValidGuard(hierarchy, typeInfos, impls.get(1), impls)) {
+            guarded.add(impls.get(1));
+            unguarded = impls.get(0);
+        } else {
+            return null;
+        }
+
+        Function function = FunctionBuilder.lookup(ci, mi, false);
+        Value env = function.getParameterRef(0);
+        Value receiver = function.getParameterRef(1);
+        for (ClassHierarchy.Implementation impl : guarded) {
+            TypeInfo typeInfo = typeInfos.get(impl.owner);
+            Value isInstance = call(function, INSTANCEOF_CLASS, env, 
+                    getInfoStruct(mb, function, impl.owner.getClazz()), receiver,
+                    new IntegerConstant((typeInfo.classTypes.length - 1) * 4 + 5 * 4),
+                    new IntegerConstant(typeInfo.id));
+            Variable cond = function.newVariable(I1);
+            function.add(new Icmp(cond, Icmp.Condition.ne, isInstance, new IntegerConstant(0)));
+            Label trueLabel = new Label();
+            Label falseLabel = new Label();
+            function.add(new Br(cond.ref(), function.newBasicBlockRef(trueLabel), 
+                    function.newBasicBlockRef(falseLabel)));
+            function.newBasicBlock(trueLabel);
+            Value result = tailcall(function, getMethodRef(mb, impl.owner, impl.method, function.getType()), 
+                    function.getParameterRefs());
+            function.add(new Ret(result));
+            function.newBasicBlock(falseLabel);
+        }
+        if (unguarded != null) {
+            Value result = tailcall(function, getMethodRef(mb, unguarded.owner, unguarded.method, function.getType()), 
+                    function.getParameterRefs());
+            function.add(new Ret(result));
+        } else {
+            // Unknown receiver class (e.g. a proxy class). Do a slow lookup by
+            // name.
+            Value fptr = call(function, BC_LOOKUP_INTERFACE_METHOD, env, 
+                    getInfoStruct(mb, function, ci.getClazz()), receiver,
+                    mb.getString(mi.getName()), mb.getString(mi.getDesc()));
+            Variable f = function.newVariable(function.getType());
+            function.add(new Bitcast(f, fptr, f.getType()));
+            Value result = tailcall(function, f.ref(), function.getParameterRefs());
+            function.add(new Ret(result));
+        }
         return function;
     }
 
+    /**
+     * Returns {@code true} if an instanceof test against the class declaring
+     * the specified implementation can be used to select it, i.e. if the
+     * receivers of the implementation are exactly the receivers which are
+     * instances of that class.
+     */
+    private boolean isValidGuard(ClassHierarchy hierarchy, Map<ClazzInfo, TypeInfo> typeInfos,
+            ClassHierarchy.Implementation impl, List<ClassHierarchy.Implementation> impls) {
+
+        TypeInfo typeInfo = typeInfos.get(impl.owner);
+        if (typeInfo == null || typeInfo.error) {
+            return false;
+        }
+        for (ClassHierarchy.Implementation other : impls) {
+            for (ClazzInfo receiver : other.receivers) {
+                if (hierarchy.isSubclassOf(receiver, impl.owner) != (other == impl)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private Value getInfoStruct(ModuleBuilder mb, Function f, Clazz clazz) {
         String symbol = Symbols.infoStructSymbol(clazz.getInternalName());
         if (!mb.hasSymbol(symbol)) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.util.DigestUtil;
+
+/**
+ * Cache of the object files generated for the linker modules of an
+ * executable. Entries are keyed by the digest of the inputs of a module (see
+ * {@link Linker}). Each executable gets its own directory named after the
+ * executable, its main class and its install directory so that projects
+ * producing executables with the same name don't evict each other's entries
+ * when {@link #purge()} is called at the end of a build.
+ */
+class LinkerObjectCache {
+    private final File dir;
+    private final Set<File> used = Collections.synchronizedSet(new HashSet<File>());
+
+    LinkerObjectCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the directory of the cache for the specified executable.
+     */
+    static File getDir(File cacheDir, String executableName, String mainClass, File installDir) {
+        String key = DigestUtil.sha1(String.valueOf(mainClass) + ' ' + installDir.getAbsolutePath());
+        return new File(new File(cacheDir, "linker"), executableName + "-" + key);
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    /**
+     * Copies the object file cached for the specified digest to the specified
+     * file.
+     *
+     * @return {@code true} if the entry was found, {@code false} otherwise.
+     */
+    boolean get(String digest, File oFile) throws IOException {
+        File cachedO = getFile(digest);
+        if (!cachedO.exists()) {
+            return false;
+        }
+        FileUtils.copyFile(cachedO, oFile, false);
+        return true;
+    }
+
+    /**
+     * Stores a copy of the specified object file for the specified digest.
+     */
+    void put(String digest, File oFile) throws IOException {
+        File cachedO = getFile(digest);
+        // Copy to a temporary file first and rename to make sure no partially
+        // written files end up in the cache.
+        dir.mkdirs();
+        File tmpO = new File(dir, "." + UUID.randomUUID());
+        FileUtils.copyFile(oFile, tmpO, false);
+        if (!tmpO.renameTo(cachedO)) {
+            tmpO.delete();
+        }
+    }
+
+    /**
+     * Deletes the entries which haven't been looked up or stored through this
+     * instance.
+     */
+    void purge() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!used.contains(f)) {
+                    FileUtils.deleteQuietly(f);
+                }
+            }
+        }
+    }
+
+    private File getFile(String digest) {
+        File f = new File(dir, digest + ".o");
+        used.add(f);
+        return f;
+    }
+}
@@ -33,16 +33,19 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.robovm.compiler.clazz.Clazz;
 import org.robovm.compiler.config.Config;
 import org.robovm.compiler.llvm.Add;
 import org.robovm.compiler.llvm.AliasRef;
 import org.robovm.compiler.llvm.Alloca;
 import org.robovm.compiler.llvm.And;
+import org.robovm.compiler.llvm.ArrayConstantBuilder;
 import org.robovm.compiler.llvm.ArrayType;
 import org.robovm.compiler.llvm.Ashr;
 import org.robovm.compiler.llvm.BasicBlock;
 import org.robovm.compiler.llvm.BasicBlockRef;
 import org.robovm.compiler.llvm.Bitcast;
+import org.robovm.compiler.llvm.BooleanConstant;
 import org.robovm.compiler.llvm.Br;
 import org.robovm.compiler.llvm.Call;
 import org.robovm.compiler.llvm.Constant;
@@ -80,6 +83,7 @@ import org.robovm.compiler.llvm.Sext;
 import org.robovm.compiler.llvm.Shl;
 import org.robovm.compiler.llvm.Sitofp;
 import org.robovm.compiler.llvm.Store;
+import org.robovm.compiler.llvm.StructureType;
 import org.robovm.compiler.llvm.StructureConstantBuilder;
 import org.robovm.compiler.llvm.Sub;
 import org.robovm.compiler.llvm.Switch;
@@ -90,21 +94,25 @@ import org.robovm.compiler.llvm.Value;
 import org.robovm.compiler.llvm.Variable;
 import org.robovm.compiler.llvm.VariableRef;
 import org.robovm.compiler.llvm.Xor;
+import org.robovm.compiler.llvm.ZeroInitializer;
 import org.robovm.compiler.llvm.Zext;
 import org.robovm.compiler.trampoline.Anewarray;
 import org.robovm.compiler.trampoline.Checkcast;
 import org.robovm.compiler.trampoline.GetField;
 import org.robovm.compiler.trampoline.GetStatic;
+import org.robovm.compiler.trampoline.GetStaticInitialized;
 import org.robovm.compiler.trampoline.Instanceof;
 import org.robovm.compiler.trampoline.Invokeinterface;
 import org.robovm.compiler.trampoline.Invokespecial;
 import org.robovm.compiler.trampoline.Invokestatic;
+import org.robovm.compiler.trampoline.InvokestaticInitialized;
 import org.robovm.compiler.trampoline.Invokevirtual;
 import org.robovm.compiler.trampoline.LdcClass;
 import org.robovm.compiler.trampoline.Multianewarray;
 import org.robovm.compiler.trampoline.New;
 import org.robovm.compiler.trampoline.PutField;
 import org.robovm.compiler.trampoline.PutStatic;
+import org.robovm.compiler.trampoline.PutStaticInitialized;
 import org.robovm.compiler.trampoline.Trampoline;
 
 import soot.Body;
@@ -149,6 +157,7 @@ import soot.jimple.IfStmt;
 import soot.jimple.InstanceFieldRef;
 import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.InstanceOfExpr;
+import soot.jimple.IntConstant;
 import soot.jimple.InterfaceInvokeExpr;
 import soot.jimple.InvokeExpr;
 import soot.jimple.InvokeStmt;
@@ -204,20 +213,35 @@ public class MethodCompiler extends AbstractMethodCompiler {
     private ModuleBuilder moduleBuilder;
     
     private Variable dims;
+    private Map<Unit, Variable> stackArrays;
+    private Set<Unit> initializedAccesses;
+    /**
+     * The static member accesses which don't need class initialization
+     * checks of the methods which have been prepared but not yet compiled.
+     */
+    private Map<SootMethod, Set<Unit>> preparedAccesses;
+    private StructureType staticStringType;
+    private boolean staticStringTypeResolved;
     
     public MethodCompiler(Config config) {
         super(config);
     }
     
-    protected Function doCompile(ModuleBuilder moduleBuilder, SootMethod method) {
-        function = createMethodFunction(method);
-        moduleBuilder.addFunction(function);
-        this.moduleBuilder = moduleBuilder;
-        
-        env = function.getParameterRef(0);
+    @Override
+    public void reset(Clazz clazz) {
+        super.reset(clazz);
+        preparedAccesses = new HashMap<SootMethod, Set<Unit>>();
+    }
 
-        trapsAt = new HashMap<Unit, List<Trap>>();
-        
+    /**
+     * Builds the body of the specified method and runs the Soot packs and the
+     * body transformations on it. This changes Soot state and must be called
+     * with exclusive access to Soot (see
+     * {@link org.robovm.compiler.clazz.Clazzes#lockSoot()}) before the
+     * method is compiled. The method can then be compiled while only holding
+     * shared access.
+     */
+    public void prepare(SootMethod method) {
         Body body = method.retrieveActiveBody();
         
         NopStmt prependedNop = null;
@@ -232,6 +256,9 @@ public class MethodCompiler extends AbstractMethodCompiler {
         }
         
         PackManager.v().getPack("jtp").apply(body);
+        if (!config.isDebug()) {
+            RedundantLoadEliminator.eliminate(body);
+        }
         PackManager.v().getPack("jop").apply(body);
         PackManager.v().getPack("jap").apply(body);
 
@@ -241,6 +268,43 @@ public class MethodCompiler extends AbstractMethodCompiler {
             body.getUnits().getNonPatchingChain().removeFirst();
         }
         
+        // Remove the bounds checks left by jap.abc which can be proven to be
+        // redundant using induction variables and branch conditions.
+        BoundsCheckEliminator.eliminate(body);
+        
+        // Find static member accesses to classes which must have been
+        // initialized already and don't need the initialization check.
+        preparedAccesses.put(method, ClassInitCheckEliminator.eliminate(body));
+    }
+    
+    /**
+     * Prepares the specified method which has already been prepared by the
+     * specified {@link MethodCompiler} of another slice of a fat binary. The
+     * body has already been transformed and is shared by the slices.
+     */
+    public void prepare(SootMethod method, MethodCompiler prepared) {
+        Set<Unit> accesses = prepared.preparedAccesses.get(method);
+        if (accesses == null) {
+            throw new IllegalStateException("Method " + method + " hasn't been prepared");
+        }
+        preparedAccesses.put(method, accesses);
+    }
+
+    protected Function doCompile(ModuleBuilder moduleBuilder, SootMethod method) {
+        if (!preparedAccesses.containsKey(method)) {
+            throw new IllegalStateException("Method " + method + " hasn't been prepared");
+        }
+        function = createMethodFunction(method);
+        moduleBuilder.addFunction(function);
+        this.moduleBuilder = moduleBuilder;
+        
+        env = function.getParameterRef(0);
+
+        trapsAt = new HashMap<Unit, List<Trap>>();
+        
+        Body body = method.getActiveBody();
+        initializedAccesses = preparedAccesses.remove(method);
+        
         PatchingChain<Unit> units = body.getUnits();
         Map<Unit, List<Unit>> branchTargets = getBranchTargets(body);
         Map<Unit, Integer> trapHandlers = getTrapHandlers(body);
@@ -281,6 +345,19 @@ public class MethodCompiler extends AbstractMethodCompiler {
             function.add(new Alloca(dims, new ArrayType(multiANewArrayMaxDims, I32)));
         }
         
+        stackArrays = new HashMap<Unit, Variable>();
+        if (!config.isDebug()) {
+            // The debugger must never get hold of stack allocated arrays
+            for (DefinitionStmt stmt : EscapeAnalysis.findStackAllocatableArrays(body)) {
+                NewArrayExpr expr = (NewArrayExpr) stmt.getRightOp();
+                StructureType type = new StructureType(DATA_OBJECT, I32, 
+                        new ArrayType(((IntConstant) expr.getSize()).value, getType(expr.getBaseType())));
+                Variable array = function.newVariable(new PointerType(type));
+                function.add(new Alloca(array, type));
+                stackArrays.put(stmt, array);
+            }
+        }
+        
         if (emitCheckStackOverflow) {
             call(CHECK_STACK_OVERFLOW);
         }
@@ -601,12 +678,61 @@ public class MethodCompiler extends AbstractMethodCompiler {
         moduleBuilder.addGlobal(g);
         Function f = new FunctionBuilder(fref).linkage(weak).build();
         moduleBuilder.addFunction(f);
-        Value result = Functions.call(f, BC_LDC_STRING, f.getParameterRef(0), g.ref(),
-                moduleBuilder.getString(s), new IntegerConstant(s.length()));
+        StructureType stringType = getStaticStringType();
+        Value result = null;
+        if (stringType != null) {
+            // Emit the String and its chars as weak globals which the linker
+            // merges across classes. The runtime fills in the class pointers
+            // and interns the String the first time the literal is used.
+            // Objects on the heap are 8-byte aligned. The runtime and the GC
+            // may assume that for these objects too.
+            ArrayConstantBuilder chars = new ArrayConstantBuilder(I16);
+            for (int i = 0; i < s.length(); i++) {
+                chars.add(new IntegerConstant((short) s.charAt(i)));
+            }
+            Global charsGlobal = new Global(Symbols.staticStringCharsSymbol(modUtf8), weak,
+                    new StructureConstantBuilder()
+                        .add(new ZeroInitializer(DATA_OBJECT))
+                        .add(new IntegerConstant(s.length()))
+                        .add(chars.build())
+                        .build(), false, null, 8);
+            moduleBuilder.addGlobal(charsGlobal);
+            Global stringGlobal = new Global(Symbols.staticStringSymbol(modUtf8), weak,
+                    new ZeroInitializer(stringType), false, null, 8);
+            moduleBuilder.addGlobal(stringGlobal);
+            result = Functions.call(f, BC_LDC_STATIC_STRING, f.getParameterRef(0), g.ref(),
+                    moduleBuilder.getString(s), 
+                    new ConstantBitcast(stringGlobal.ref(), OBJECT_PTR),
+                    new ConstantBitcast(charsGlobal.ref(), OBJECT_PTR));
+        } else {
+            result = Functions.call(f, BC_LDC_STRING, f.getParameterRef(0), g.ref(),
+                    moduleBuilder.getString(s), new IntegerConstant(s.length()));
+        }
         f.add(new Ret(result));
         return fref;
     }
 
+    /**
+     * Returns the instance type of <code>java.lang.String</code> used to emit
+     * string literals statically or <code>null</code> if the runtime's
+     * <code>String</code> class doesn't have the <code>String(int, int, char[])</code>
+     * constructor used to initialize them. In that case literals are created
+     * on the heap when first used.
+     */
+    private StructureType getStaticStringType() {
+        if (!staticStringTypeResolved) {
+            staticStringTypeResolved = true;
+            Clazz stringClazz = config.getClazzes().load("java/lang/String");
+            if (stringClazz != null) {
+                SootClass stringClass = stringClazz.getSootClass();
+                if (stringClass.declaresMethod("void <init>(int,int,char[])")) {
+                    staticStringType = getInstanceType(config.getOs(), config.getArch(), stringClass);
+                }
+            }
+        }
+        return staticStringType;
+    }
+
     private Value widenToI32Value(Unit unit, Value value, boolean unsigned) {
         Type type = value.getType();
         if (type instanceof IntegerType && ((IntegerType) type).getBits() < 32) {
@@ -751,6 +877,7 @@ public class MethodCompiler extends AbstractMethodCompiler {
             i++;
         }
         Value result = null;
+        Value fn = null;
         FunctionRef functionRef = config.isDebug() ? null : Intrinsics.getIntrinsic(sootMethod, stmt, expr);
         if (functionRef == null) {
             Trampoline trampoline = null;
@@ -762,7 +889,11 @@ public class MethodCompiler extends AbstractMethodCompiler {
                 String runtimeClassName = runtimeType == NullType.v() ? targetClassName : getInternalName(runtimeType);
                 trampoline = new Invokespecial(this.className, targetClassName, methodName, methodDesc, runtimeClassName);
             } else if (expr instanceof StaticInvokeExpr) {
-                trampoline = new Invokestatic(this.className, targetClassName, methodName, methodDesc);
+                if (initializedAccesses.contains(stmt)) {
+                    trampoline = new InvokestaticInitialized(this.className, targetClassName, methodName, methodDesc);
+                } else {
+                    trampoline = new Invokestatic(this.className, targetClassName, methodName, methodDesc);
+                }
             } else if (expr instanceof VirtualInvokeExpr) {
                 soot.Type runtimeType = ((VirtualInvokeExpr) expr).getBase().getType();
                 String runtimeClassName = runtimeType == NullType.v() ? targetClassName : getInternalName(runtimeType);
@@ -782,9 +913,13 @@ public class MethodCompiler extends AbstractMethodCompiler {
                 }
             } else {
                 functionRef = trampoline.getFunctionRef();
+                if (needsCallSiteCache(expr)) {
+                    fn = callSiteLookup(stmt, functionRef, args.get(1), 
+                            targetClassName, methodName, methodDesc);
+                }
             }
         }
-        result = call(stmt, functionRef, args.toArray(new Value[0]));
+        result = call(stmt, fn != null ? fn : functionRef, args.toArray(new Value[0]));
         if (result != null) {
             return widenToI32Value(stmt, result, methodRef.returnType().equals(CharType.v()));
         } else {
@@ -792,6 +927,70 @@ public class MethodCompiler extends AbstractMethodCompiler {
         }
     }
 
+    /**
+     * Returns whether an inline cache should be emitted for the specified
+     * virtual or interface call. Calls to final and private methods and to
+     * methods of final classes always end up in the same method which the
+     * trampoline links to directly so a cache would only add overhead. Calls
+     * to methods which cannot be resolved are left to the trampoline which
+     * throws the appropriate error.
+     */
+    private boolean needsCallSiteCache(InvokeExpr expr) {
+        if (!(expr instanceof VirtualInvokeExpr) && !(expr instanceof InterfaceInvokeExpr)) {
+            return false;
+        }
+        SootMethodRef methodRef = expr.getMethodRef();
+        SootClass owner = methodRef.declaringClass();
+        if (owner.isPhantom()) {
+            return false;
+        }
+        if (expr instanceof InterfaceInvokeExpr) {
+            return true;
+        }
+        if (Modifier.isFinal(owner.getModifiers())) {
+            return false;
+        }
+        SootClass c = owner;
+        while (!c.declaresMethod(methodRef.name(), methodRef.parameterTypes(), methodRef.returnType())) {
+            if (!c.hasSuperclass() || c.getSuperclass().isPhantom()) {
+                return false;
+            }
+            c = c.getSuperclass();
+        }
+        SootMethod method = c.getMethod(methodRef.name(), methodRef.parameterTypes(), methodRef.returnType());
+        return !Modifier.isFinal(method.getModifiers()) && !method.isPrivate()
+                && !Modifier.isFinal(c.getModifiers());
+    }
+
+    /**
+     * Emits an inline cache for a virtual or interface call site. The cache
+     * is a private global holding the last receiver class seen at the call
+     * site and the function it resolved to. Returns the function to call
+     * which is the call site's trampoline if the cache misses and cannot be
+     * updated by the runtime. Cache hits are only counted in debug builds.
+     */
+    private Value callSiteLookup(Stmt stmt, FunctionRef trampoline, Value base, 
+            String owner, String name, String desc) {
+        Global site = moduleBuilder.newGlobal(new StructureConstantBuilder()
+                .add(new NullConstant(I8_PTR))
+                .add(new IntegerConstant(0))
+                .add(new IntegerConstant(0))
+                .add(new IntegerConstant(0))
+                .add(new NullConstant(I8_PTR))
+                .add(new NullConstant(I8_PTR))
+                .add(new AliasRef(Symbols.infoStructSymbol(this.className) + "_i8ptr", I8_PTR))
+                .add(moduleBuilder.getString(owner))
+                .add(moduleBuilder.getString(name))
+                .add(moduleBuilder.getString(desc))
+                .build());
+        FunctionRef lookup = config.isDebug() ? CALL_SITE_LOOKUP_COUNTING : CALL_SITE_LOOKUP;
+        Value fptr = call(stmt, lookup, env, new ConstantBitcast(site.ref(), I8_PTR), 
+                base, new ConstantBitcast(trampoline, I8_PTR));
+        Variable fn = function.newVariable(trampoline.getType());
+        function.add(new Bitcast(fn, fptr, fn.getType())).attach(stmt);
+        return fn.ref();
+    }
+
     private void checkNull(Stmt stmt, Value base) {
         NullCheckTag nullCheckTag = (NullCheckTag) stmt.getTag("NullCheckTag");
         if (nullCheckTag == null || nullCheckTag.needCheck()) {
@@ -834,6 +1033,31 @@ public class MethodCompiler extends AbstractMethodCompiler {
         return result;
     }
     
+    /**
+     * Initializes a primitive array allocated on the stack (see
+     * {@link EscapeAnalysis}). The memory is cleared every time since the
+     * allocation may be executed more than once, e.g. in a loop.
+     */
+    private Value newStackArray(Stmt stmt, Variable array, soot.Type elementType, Value size) {
+        StructureType type = (StructureType) ((PointerType) array.getType()).getBase();
+        Variable bytes = function.newVariable(I8_PTR);
+        function.add(new Bitcast(bytes, array.ref(), I8_PTR)).attach(stmt);
+        function.add(new Call(LLVM_MEMSET, bytes.ref(), new IntegerConstant((byte) 0), 
+                sizeof(type), new IntegerConstant(1), BooleanConstant.FALSE)).attach(stmt);
+        GlobalRef arrayClassPtr = new GlobalRef("array_" + getDescriptor(elementType), CLASS_PTR);
+        Variable arrayClass = function.newVariable(CLASS_PTR);
+        function.add(new Load(arrayClass, arrayClassPtr)).attach(stmt);
+        Variable classPtr = function.newVariable(new PointerType(CLASS_PTR));
+        function.add(new Getelementptr(classPtr, array.ref(), 0, 0, 0, 0)).attach(stmt);
+        function.add(new Store(arrayClass.ref(), classPtr.ref())).attach(stmt);
+        Variable lengthPtr = function.newVariable(new PointerType(I32));
+        function.add(new Getelementptr(lengthPtr, array.ref(), 0, 1)).attach(stmt);
+        function.add(new Store(size, lengthPtr.ref())).attach(stmt);
+        Variable result = function.newVariable(OBJECT_PTR);
+        function.add(new Bitcast(result, array.ref(), OBJECT_PTR)).attach(stmt);
+        return result.ref();
+    }
+
     private void assign(DefinitionStmt stmt) {
         /*
          * leftOp is either a Local, an ArrayRef or a FieldRef
@@ -898,8 +1122,11 @@ public class MethodCompiler extends AbstractMethodCompiler {
                             new FunctionType(getType(ref.getType()), ENV_PTR));
                 } else {
                     String targetClassName = getInternalName(ref.getFieldRef().declaringClass());
-                    Trampoline trampoline = new GetStatic(this.className, targetClassName, 
-                            ref.getFieldRef().name(), getDescriptor(ref.getFieldRef().type()));
+                    String fieldName = ref.getFieldRef().name();
+                    String fieldDesc = getDescriptor(ref.getFieldRef().type());
+                    Trampoline trampoline = initializedAccesses.contains(stmt)
+                            ? new GetStaticInitialized(this.className, targetClassName, fieldName, fieldDesc)
+                            : new GetStatic(this.className, targetClassName, fieldName, fieldDesc);
                     trampolines.add(trampoline);
                     fn = trampoline.getFunctionRef();
                 }
@@ -1097,7 +1324,9 @@ public class MethodCompiler extends AbstractMethodCompiler {
             } else if (rightOp instanceof NewArrayExpr) {
                 NewArrayExpr expr = (NewArrayExpr) rightOp;
                 Value size = immediate(stmt, (Immediate) expr.getSize());
-                if (expr.getBaseType() instanceof PrimType) {
+                if (stackArrays.containsKey(stmt)) {
+                    result = newStackArray(stmt, stackArrays.get(stmt), expr.getBaseType(), size);
+                } else if (expr.getBaseType() instanceof PrimType) {
                     result = call(stmt, getNewArray(expr.getBaseType()), env, size);
                 } else {
                     String targetClassName = getInternalName(expr.getType());
@@ -1196,8 +1425,11 @@ public class MethodCompiler extends AbstractMethodCompiler {
                             new FunctionType(VOID, ENV_PTR, getType(ref.getType())));
                 } else {
                     String targetClassName = getInternalName(ref.getFieldRef().declaringClass());
-                    Trampoline trampoline = new PutStatic(this.className, targetClassName, 
-                            ref.getFieldRef().name(), getDescriptor(ref.getFieldRef().type()));
+                    String fieldName = ref.getFieldRef().name();
+                    String fieldDesc = getDescriptor(ref.getFieldRef().type());
+                    Trampoline trampoline = initializedAccesses.contains(stmt)
+                            ? new PutStaticInitialized(this.className, targetClassName, fieldName, fieldDesc)
+                            : new PutStatic(this.className, targetClassName, fieldName, fieldDesc);
                     trampolines.add(trampoline);
                     fn = trampoline.getFunctionRef();
                 }
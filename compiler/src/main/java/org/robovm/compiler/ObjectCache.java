@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.clazz.ClazzInfo;
+import org.robovm.compiler.clazz.Dependency;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.plugin.CompilerPlugin;
+import org.robovm.compiler.util.DigestUtil;
+
+/**
+ * Content addressed cache of compiled classes which can be shared between
+ * projects, checkouts and concurrently running compilers. An entry holds the
+ * <code>.o</code>, <code>.lines.o</code> and <code>.info</code> files produced
+ * when compiling a class. Entries are keyed by the bytes of the class and the
+ * parts of the {@link Config} which affect the generated code. Since the code
+ * generated for a class also depends on the classes it depends on every entry
+ * records the ABI digests (see {@link Clazz#getAbiDigest()}) of its
+ * dependencies and is only used if they match the current classpath.
+ * <p>
+ * Entries are written to a temporary directory and then renamed into place so
+ * readers never see partially written entries. When the cache grows beyond its
+ * max size the least recently used entries are evicted.
+ */
+public class ObjectCache {
+    private static final String O_FILE = "class.o";
+    private static final String LINES_O_FILE = "class.lines.o";
+    private static final String INFO_FILE = "class.info";
+    private static final String DEPENDENCIES_FILE = "dependencies";
+    private static final String LOCK_FILE = ".lock";
+    private static final String MISSING = "<missing>";
+    /**
+     * Part of the key of every entry. Bumped when the format of the files in
+     * the entries changes.
+     */
+    private static final int FORMAT_VERSION = 3;
+    /**
+     * The cache directories currently being evicted by this process.
+     * {@link FileLock}s are held by the whole JVM so a second
+     * {@link java.nio.channels.FileChannel#tryLock()} on the same file from
+     * another thread throws instead of returning {@code null}.
+     */
+    private static final Set<File> evicting = new HashSet<>();
+
+    private final Config config;
+    private final File dir;
+    private final long maxSize;
+    private final String configDigest;
+
+    public ObjectCache(Config config, File dir, long maxSize) {
+        this.config = config;
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.configDigest = getConfigDigest(config);
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns a digest of everything in the {@link Config} which affects the
+     * code generated for a single class.
+     */
+    private static String getConfigDigest(Config config) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Version.getVersion()).append(' ')
+            .append(config.getOs()).append(' ')
+            .append(config.getArch()).append(' ')
+            .append(config.getTriple()).append(' ')
+            .append(config.getClangTriple()).append(' ')
+            .append(config.getArch().getLlvmCpu()).append(' ')
+            .append(config.isDebug() ? "debug" : "release");
+        for (CompilerPlugin plugin : config.getCompilerPlugins()) {
+            sb.append(' ').append(plugin.getClass().getName());
+        }
+        for (String arg : config.getPluginArguments()) {
+            sb.append(' ').append(arg);
+        }
+        return DigestUtil.sha1(sb.toString());
+    }
+
+    private File getEntriesDir(Clazz clazz) throws IOException {
+        // Whether the static initializer is evaluated at build time depends
+        // on the buildTimeInitClasses patterns in the Config.
+        String key = DigestUtil.sha1(FORMAT_VERSION + " " + configDigest + ' ' + clazz.getInternalName() + ' '
+                + clazz.isInBootClasspath() + ' ' + ClassCompiler.isBuildTimeInit(config, clazz) + ' '
+                + clazz.getDigest());
+        return new File(new File(dir, key.substring(0, 2)), key);
+    }
+
+    /**
+     * Returns the ABI digests of all dependencies of the specified
+     * {@link Clazz} which must have been compiled. The returned
+     * {@link Properties} should be passed to {@link #store(Clazz, Properties)}
+     * once the object files of the class have been generated.
+     */
+    public Properties getDependencyDigests(Clazz clazz) throws IOException {
+        Properties digests = new Properties();
+        for (Dependency dep : clazz.getClazzInfo().getAllDependencies()) {
+            digests.setProperty(dep.getClassName(), getDependencyDigest(dep.getClassName()));
+        }
+        return digests;
+    }
+
+    private String getDependencyDigest(String className) throws IOException {
+        Clazz depClazz = config.getClazzes().load(className);
+        if (depClazz == null) {
+            return MISSING;
+        }
+        return (depClazz.isInBootClasspath() ? "boot:" : "cp:") + depClazz.getAbiDigest();
+    }
+
+    /**
+     * Restores the object files and {@link ClazzInfo} of the specified
+     * {@link Clazz} from this cache into the local cache of the current
+     * {@link Config}.
+     *
+     * @return {@code true} if a matching entry was found and restored,
+     *         {@code false} otherwise.
+     */
+    public boolean restore(Clazz clazz) throws IOException {
+        File[] entries = getEntriesDir(clazz).listFiles();
+        if (entries == null) {
+            return false;
+        }
+        for (File entry : entries) {
+            if (entry.getName().startsWith(".") || !matches(entry)) {
+                continue;
+            }
+            try {
+                File oFile = config.getOFile(clazz);
+                File linesOFile = config.getLinesOFile(clazz);
+                File entryLinesOFile = new File(entry, LINES_O_FILE);
+                FileUtils.copyFile(new File(entry, O_FILE), oFile, false);
+                if (entryLinesOFile.exists()) {
+                    FileUtils.copyFile(entryLinesOFile, linesOFile, false);
+                } else if (linesOFile.exists()) {
+                    linesOFile.delete();
+                }
+                clazz.loadClazzInfo(new File(entry, INFO_FILE));
+                clazz.saveClazzInfo();
+            } catch (IOException e) {
+                // The entry has probably been evicted by another process while
+                // we were reading it. Treat it as a miss.
+                config.getOFile(clazz).delete();
+                continue;
+            }
+            // Mark the entry as recently used.
+            entry.setLastModified(System.currentTimeMillis());
+            config.getLogger().debug("Restored %s from object cache %s", clazz, entry);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean matches(File entry) throws IOException {
+        Properties digests = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(new File(entry, DEPENDENCIES_FILE)))) {
+            digests.load(in);
+        } catch (IOException e) {
+            return false;
+        }
+        for (String className : digests.stringPropertyNames()) {
+            if (!getDependencyDigest(className).equals(digests.getProperty(className))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the object files and {@link ClazzInfo} of the specified
+     * {@link Clazz} in this cache. Failures are logged but otherwise ignored.
+     *
+     * @param dependencyDigests the digests returned by
+     *            {@link #getDependencyDigests(Clazz)} when the class was
+     *            compiled.
+     */
+    public void store(Clazz clazz, Properties dependencyDigests) {
+        File tmpDir = null;
+        try {
+            File entriesDir = getEntriesDir(clazz);
+            // Sort the digests to get a stable entry name
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> e : new TreeMap<String, String>(toMap(dependencyDigests)).entrySet()) {
+                sb.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+            }
+            File entry = new File(entriesDir, DigestUtil.sha1(sb.toString()));
+            if (entry.exists()) {
+                return;
+            }
+            tmpDir = new File(entriesDir, "." + UUID.randomUUID());
+            tmpDir.mkdirs();
+            FileUtils.copyFile(config.getOFile(clazz), new File(tmpDir, O_FILE), false);
+            File linesOFile = config.getLinesOFile(clazz);
+            if (linesOFile.exists()) {
+                FileUtils.copyFile(linesOFile, new File(tmpDir, LINES_O_FILE), false);
+            }
+            clazz.writeClazzInfo(new File(tmpDir, INFO_FILE));
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(tmpDir, DEPENDENCIES_FILE)))) {
+                dependencyDigests.store(out, null);
+            }
+            if (tmpDir.renameTo(entry)) {
+                tmpDir = null;
+            }
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to store %s in object cache %s: %s", clazz, dir, e.getMessage());
+        } finally {
+            if (tmpDir != null) {
+                // Either the rename failed because another process stored the
+                // same entry or something went wrong.
+                FileUtils.deleteQuietly(tmpDir);
+            }
+        }
+    }
+
+    private static Map<String, String> toMap(Properties props) {
+        Map<String, String> map = new TreeMap<String, String>();
+        for (String name : props.stringPropertyNames()) {
+            map.put(name, props.getProperty(name));
+        }
+        return map;
+    }
+
+    /**
+     * Evicts the least recently used entries until the total size of this
+     * cache is below its max size. Does nothing if another process is
+     * currently evicting entries from the same cache.
+     */
+    public void evict() throws IOException {
+        dir.mkdirs();
+        File key = dir.getCanonicalFile();
+        synchronized (evicting) {
+            if (!evicting.add(key)) {
+                return;
+            }
+        }
+        try {
+            evictLocked();
+        } finally {
+            synchronized (evicting) {
+                evicting.remove(key);
+            }
+        }
+    }
+
+    private void evictLocked() throws IOException {
+        try (RandomAccessFile lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+                FileLock lock = lockFile.getChannel().tryLock()) {
+
+            if (lock == null) {
+                return;
+            }
+
+            List<File> entries = new ArrayList<>();
+            long totalSize = 0;
+            File[] buckets = dir.listFiles();
+            if (buckets == null) {
+                return;
+            }
+            for (File bucket : buckets) {
+                File[] entriesDirs = bucket.isDirectory() ? bucket.listFiles() : null;
+                if (entriesDirs == null) {
+                    continue;
+                }
+                for (File entriesDir : entriesDirs) {
+                    File[] files = entriesDir.listFiles();
+                    if (files == null) {
+                        continue;
+                    }
+                    for (File entry : files) {
+                        if (!entry.getName().startsWith(".")) {
+                            entries.add(entry);
+                            totalSize += FileUtils.sizeOfDirectory(entry);
+                        }
+                    }
+                }
+            }
+            if (totalSize <= maxSize) {
+                return;
+            }
+
+            final Map<File, Long> lastModified = new TreeMap<>();
+            for (File entry : entries) {
+                lastModified.put(entry, entry.lastModified());
+            }
+            Collections.sort(entries, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    return Long.compare(lastModified.get(o1), lastModified.get(o2));
+                }
+            });
+
+            int count = 0;
+            for (File entry : entries) {
+                if (totalSize <= maxSize) {
+                    break;
+                }
+                long size = FileUtils.sizeOfDirectory(entry);
+                // Rename before deleting to make the entry disappear
+                // atomically for concurrent readers.
+                File deleted = new File(entry.getParentFile(), "." + UUID.randomUUID());
+                if (entry.renameTo(deleted)) {
+                    FileUtils.deleteQuietly(deleted);
+                    totalSize -= size;
+                    count++;
+                }
+                entry.getParentFile().delete(); // Only succeeds if empty
+            }
+            config.getLogger().info("Evicted %d entries from object cache %s", count, dir);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import soot.Body;
+import soot.Local;
+import soot.PatchingChain;
+import soot.SootField;
+import soot.Trap;
+import soot.Unit;
+import soot.UnitBox;
+import soot.jimple.AssignStmt;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.GotoStmt;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.Jimple;
+import soot.jimple.LengthExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.Stmt;
+
+/**
+ * Removes redundant array length loads and redundant loads of
+ * <code>final</code> instance fields from a method body. Instance field loads
+ * of other classes are compiled into calls to {@link GetField} trampolines and
+ * array length loads are volatile loads so LLVM cannot remove any of them.
+ * <p>
+ * The values of these expressions only depend on the base object. Only
+ * expressions with a base {@link Local} which is assigned once are
+ * considered. A forward must analysis tracks which {@link Local}s hold the
+ * value of each expression and loads of values which are already available
+ * in a {@link Local} are replaced by copies. Since <code>final</code> fields
+ * can be modified using reflection (e.g. during deserialization) field values
+ * are forgotten at statements which may run arbitrary code: invokes,
+ * allocations and static field accesses. Array lengths never change.
+ * <p>
+ * To move loads out of loops the loads at the targets of <code>goto</code>s,
+ * typically the condition at the end of a loop compiled by <code>javac</code>,
+ * are also computed right before the <code>goto</code>s. This doesn't change
+ * when or where exceptions are thrown.
+ */
+public class RedundantLoadEliminator {
+    private static final class Key {
+        final Local base;
+        final SootField field;
+
+        Key(Local base, SootField field) {
+            this.base = base;
+            this.field = field;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * base.hashCode() + (field != null ? field.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key o = (Key) obj;
+            return base == o.base && field == o.field;
+        }
+    }
+
+    private final Body body;
+    private final boolean fields;
+    private final Map<Local, Integer> defCounts = new HashMap<>();
+    private final Set<Unit> handlers = new HashSet<>();
+    private final Map<Unit, Map<Key, Set<Local>>> available = new HashMap<>();
+
+    private RedundantLoadEliminator(Body body) {
+        this.body = body;
+        // Final fields are assigned in constructors
+        String name = body.getMethod().getName();
+        this.fields = !"<init>".equals(name) && !"<clinit>".equals(name);
+    }
+
+    /**
+     * Removes the redundant loads in the specified {@link Body}.
+     *
+     * @return the number of loads removed.
+     */
+    public static int eliminate(Body body) {
+        return new RedundantLoadEliminator(body).eliminate();
+    }
+
+    private int eliminate() {
+        PatchingChain<Unit> units = body.getUnits();
+        if (units.isEmpty()) {
+            return 0;
+        }
+        for (Unit unit : units) {
+            if (unit instanceof DefinitionStmt && ((DefinitionStmt) unit).getLeftOp() instanceof Local) {
+                Local local = (Local) ((DefinitionStmt) unit).getLeftOp();
+                Integer count = defCounts.get(local);
+                defCounts.put(local, count == null ? 1 : count + 1);
+            }
+        }
+
+        Map<Unit, Local> inserted = hoist();
+        analyze();
+
+        int count = 0;
+        Set<Local> used = new HashSet<>();
+        for (Unit unit : units) {
+            Key key = getKey(unit);
+            Map<Key, Set<Local>> avail = available.get(unit);
+            if (key == null || inserted.containsKey(unit) || avail == null || !avail.containsKey(key)) {
+                continue;
+            }
+            // Pick the first holder in declaration order other than the
+            // assigned local itself.
+            Local x = (Local) ((AssignStmt) unit).getLeftOp();
+            Set<Local> holders = avail.get(key);
+            Local holder = holders.contains(x) && holders.size() == 1 ? x : null;
+            for (Local local : body.getLocals()) {
+                if (holder == null && local != x && holders.contains(local)) {
+                    holder = local;
+                }
+            }
+            ((AssignStmt) unit).setRightOp(holder);
+            used.add(holder);
+            count++;
+        }
+
+        for (Entry<Unit, Local> entry : inserted.entrySet()) {
+            if (!used.contains(entry.getValue())) {
+                units.remove(entry.getKey());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the {@link Key} of the expression loaded by the specified
+     * {@link Unit} or {@code null} if it doesn't load a value handled by this
+     * class.
+     */
+    private Key getKey(Unit unit) {
+        if (!(unit instanceof AssignStmt) || !(((AssignStmt) unit).getLeftOp() instanceof Local)) {
+            return null;
+        }
+        Local x = (Local) ((AssignStmt) unit).getLeftOp();
+        soot.Value rightOp = ((AssignStmt) unit).getRightOp();
+        Key key = null;
+        if (rightOp instanceof LengthExpr && ((LengthExpr) rightOp).getOp() instanceof Local) {
+            key = new Key((Local) ((LengthExpr) rightOp).getOp(), null);
+        } else if (fields && rightOp instanceof InstanceFieldRef) {
+            InstanceFieldRef ref = (InstanceFieldRef) rightOp;
+            try {
+                SootField field = ref.getField();
+                if (field.isFinal() && !field.isVolatile() && !field.isStatic()
+                        && !field.getDeclaringClass().isPhantom()) {
+                    key = new Key((Local) ref.getBase(), field);
+                }
+            } catch (RuntimeException e) {
+                // The field couldn't be resolved.
+            }
+        }
+        if (key == null || key.base == x) {
+            return null;
+        }
+        Integer count = defCounts.get(key.base);
+        return count != null && count == 1 ? key : null;
+    }
+
+    /**
+     * Inserts copies of the loads at the targets of <code>goto</code>s before
+     * the <code>goto</code>s. Returns the inserted {@link Unit}s and the
+     * {@link Local}s they assign.
+     */
+    private Map<Unit, Local> hoist() {
+        PatchingChain<Unit> units = body.getUnits();
+        Map<Unit, List<Unit>> gotos = new HashMap<>();
+        for (Unit unit : units) {
+            if (unit instanceof GotoStmt) {
+                Unit target = ((GotoStmt) unit).getTarget();
+                List<Unit> l = gotos.get(target);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    gotos.put(target, l);
+                }
+                l.add(unit);
+            }
+        }
+
+        Map<Unit, Local> inserted = new LinkedHashMap<>();
+        for (Unit target : new ArrayList<>(units)) {
+            Key key = getKey(target);
+            if (key == null || !gotos.containsKey(target)) {
+                continue;
+            }
+            AssignStmt stmt = (AssignStmt) target;
+            Local t = null;
+            for (Unit g : gotos.get(target)) {
+                if (!getTraps(g).equals(getTraps(target))) {
+                    // A NullPointerException would be caught by another
+                    // handler.
+                    continue;
+                }
+                if (t == null) {
+                    t = Jimple.v().newLocal("$rle" + inserted.size(), stmt.getLeftOp().getType());
+                    body.getLocals().add(t);
+                    defCounts.put(t, 0);
+                }
+                Unit copy = Jimple.v().newAssignStmt(t, (soot.Value) stmt.getRightOp().clone());
+                units.insertBefore(copy, g);
+                inserted.put(copy, t);
+                defCounts.put(t, defCounts.get(t) + 1);
+            }
+        }
+        return inserted;
+    }
+
+    private List<Trap> getTraps(Unit unit) {
+        List<Trap> result = new ArrayList<>();
+        PatchingChain<Unit> units = body.getUnits();
+        for (Trap trap : body.getTraps()) {
+            for (Unit u = trap.getBeginUnit(); u != null && u != trap.getEndUnit(); u = units.getSuccOf(u)) {
+                if (u == unit) {
+                    result.add(trap);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void analyze() {
+        PatchingChain<Unit> units = body.getUnits();
+        Deque<Unit> worklist = new ArrayDeque<>();
+        available.put(units.getFirst(), new HashMap<Key, Set<Local>>());
+        worklist.add(units.getFirst());
+        for (Trap trap : body.getTraps()) {
+            if (handlers.add(trap.getHandlerUnit())) {
+                available.put(trap.getHandlerUnit(), new HashMap<Key, Set<Local>>());
+                worklist.add(trap.getHandlerUnit());
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            Unit unit = worklist.removeFirst();
+            Map<Key, Set<Local>> out = flowThrough(available.get(unit), unit);
+            for (UnitBox box : unit.getUnitBoxes()) {
+                propagate(box.getUnit(), out, worklist);
+            }
+            if (unit.fallsThrough()) {
+                propagate(units.getSuccOf(unit), out, worklist);
+            }
+        }
+    }
+
+    private void propagate(Unit unit, Map<Key, Set<Local>> facts, Deque<Unit> worklist) {
+        if (unit == null || handlers.contains(unit)) {
+            return;
+        }
+        Map<Key, Set<Local>> before = available.get(unit);
+        if (before == null) {
+            available.put(unit, copy(facts));
+            worklist.add(unit);
+            return;
+        }
+        boolean changed = false;
+        for (Key key : new ArrayList<>(before.keySet())) {
+            Set<Local> holders = before.get(key);
+            Set<Local> other = facts.get(key);
+            if (other == null) {
+                before.remove(key);
+                changed = true;
+            } else if (holders.retainAll(other)) {
+                if (holders.isEmpty()) {
+                    before.remove(key);
+                }
+                changed = true;
+            }
+        }
+        if (changed) {
+            worklist.add(unit);
+        }
+    }
+
+    private static Map<Key, Set<Local>> copy(Map<Key, Set<Local>> facts) {
+        Map<Key, Set<Local>> result = new HashMap<>();
+        for (Entry<Key, Set<Local>> entry : facts.entrySet()) {
+            result.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        return result;
+    }
+
+    private Map<Key, Set<Local>> flowThrough(Map<Key, Set<Local>> in, Unit unit) {
+        Map<Key, Set<Local>> out = copy(in);
+        Stmt stmt = (Stmt) unit;
+        if (stmt.containsInvokeExpr() || stmt.containsFieldRef() && !(stmt.getFieldRef() instanceof InstanceFieldRef)
+                || stmt instanceof AssignStmt && ((AssignStmt) stmt).getRightOp() instanceof NewExpr) {
+            // May run arbitrary code. Forget all field values.
+            for (Key key : new ArrayList<>(out.keySet())) {
+                if (key.field != null) {
+                    out.remove(key);
+                }
+            }
+        }
+        if (!(unit instanceof DefinitionStmt) || !(((DefinitionStmt) unit).getLeftOp() instanceof Local)) {
+            return out;
+        }
+
+        Local x = (Local) ((DefinitionStmt) unit).getLeftOp();
+        soot.Value rightOp = ((DefinitionStmt) unit).getRightOp();
+        List<Key> gen = new ArrayList<>();
+        Key key = getKey(unit);
+        if (key != null) {
+            gen.add(key);
+        } else if (rightOp instanceof Local) {
+            for (Entry<Key, Set<Local>> entry : out.entrySet()) {
+                if (entry.getValue().contains(rightOp)) {
+                    gen.add(entry.getKey());
+                }
+            }
+        }
+        for (Key k : new ArrayList<>(out.keySet())) {
+            Set<Local> holders = out.get(k);
+            holders.remove(x);
+            if (k.base == x || holders.isEmpty()) {
+                out.remove(k);
+            }
+        }
+        for (Key k : gen) {
+            Set<Local> holders = out.get(k);
+            if (holders == null) {
+                holders = new HashSet<>();
+                out.put(k, holders);
+            }
+            holders.add(x);
+        }
+        return out;
+    }
+}
@@ -285,6 +285,10 @@ public class Symbols {
         return classSymbol(classInternalName, "infostruct");
     }
 
+    public static String infoRecordsSymbol(String classInternalName) {
+        return classSymbol(classInternalName, "inforecords");
+    }
+
     public static String typeInfoSymbol(String classInternalName) {
         return classSymbol(classInternalName, "typeinfo");
     }
@@ -373,4 +377,12 @@ public class Symbols {
     public static String ldcStringSymbol(byte[] modUtf8) {
         return INTERNAL_SYMBOL_PREFIX + Strings.getStringVarName(modUtf8) + "[ldcstring]";
     }
+
+    public static String staticStringSymbol(byte[] modUtf8) {
+        return INTERNAL_SYMBOL_PREFIX + Strings.getStringVarName(modUtf8) + "[string]";
+    }
+
+    public static String staticStringCharsSymbol(byte[] modUtf8) {
+        return INTERNAL_SYMBOL_PREFIX + Strings.getStringVarName(modUtf8) + "[chars]";
+    }
 }
@@ -262,12 +262,23 @@ public class TrampolineCompiler {
     
     private void createTrampolineAliasForField(FieldAccessor t, SootField field) {
         String fnName = t.isGetter() ? Symbols.getterSymbol(field) : Symbols.setterSymbol(field);
-        if (t.isStatic()) {
+        if (t.isStatic() && !isInitialized(t, field.getDeclaringClass())) {
             fnName = Symbols.clinitWrapperSymbol(fnName);
         }
         alias(t, fnName);
     }
 
+    /**
+     * Returns {@code true} if the class initialization check can be skipped
+     * when accessing a static member of the specified class through the
+     * specified {@link Trampoline}. The target class of the trampoline must
+     * be known to be initialized and it must be the class declaring the
+     * member. Otherwise the declaring class may not have been initialized.
+     */
+    private static boolean isInitialized(Trampoline t, SootClass declaringClass) {
+        return t.isTargetInitialized() && t.getTarget().equals(getInternalName(declaringClass));
+    }
+
     private void createInlinedAccessorForInstanceField(FieldAccessor t, SootField field) {
         Function fn = new FunctionBuilder(t).linkage(aliasLinkage()).attribs(shouldInline(), optsize).build();
 
@@ -298,7 +309,7 @@ public class TrampolineCompiler {
         } else {
             fnName = Symbols.methodSymbol(rm);
         }
-        if (t.isStatic()) {
+        if (t.isStatic() && !isInitialized(t, rm.getDeclaringClass())) {
             fnName = Symbols.clinitWrapperSymbol(fnName);
         }
         alias(t, fnName);
@@ -27,6 +27,7 @@ import java.util.List;
 import org.robovm.compiler.config.Arch;
 import org.robovm.compiler.config.OS;
 import org.robovm.compiler.llvm.AggregateType;
+import org.robovm.compiler.llvm.ArrayType;
 import org.robovm.compiler.llvm.Bitcast;
 import org.robovm.compiler.llvm.Constant;
 import org.robovm.compiler.llvm.ConstantGetelementptr;
@@ -76,7 +77,7 @@ public class Types {
     public static final StructureType BC_TRYCATCH_CONTEXT = new StructureType("BcTrycatchContext", TRYCATCH_CONTEXT, I8_PTR);
     public static final Type BC_TRYCATCH_CONTEXT_PTR = new PointerType(BC_TRYCATCH_CONTEXT);
     public static final Type ENV_PTR = new PointerType(new StructureType("Env", I8_PTR, I8_PTR, I8_PTR, 
-            I8_PTR, I8_PTR, I8_PTR, I8_PTR, I8_PTR, I32));
+            I8_PTR, I8_PTR, I8_PTR, I8_PTR, I8_PTR, I32, new ArrayType(16, I8_PTR)));
     // Dummy Class type definition. The real one is in header.ll
     public static final StructureType CLASS = new StructureType("Class", I8_PTR);
     public static final Type CLASS_PTR = new PointerType(CLASS);
@@ -133,7 +133,7 @@ public class VTable {
 
     public static class Cache {
         Map<String, VTable> cache = new HashMap<String, VTable>();
-        public VTable get(SootClass clazz) {
+        public synchronized VTable get(SootClass clazz) {
             if (clazz.isInterface()) {
                 throw new IllegalArgumentException("Expected a class got an interface: " + clazz.getName());
             }
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.clazz.ClazzInfo;
+import org.robovm.compiler.clazz.Dependency;
+import org.robovm.compiler.clazz.MethodDependency;
+import org.robovm.compiler.clazz.MethodInfo;
+import org.robovm.compiler.config.Config;
+import org.robovm.llvm.Context;
+import org.robovm.llvm.Function;
+import org.robovm.llvm.LlvmException;
+import org.robovm.llvm.Module;
+import org.robovm.llvm.ObjectFile;
+import org.robovm.llvm.PassManager;
+import org.robovm.llvm.PassManagerBuilder;
+import org.robovm.llvm.Target;
+import org.robovm.llvm.TargetMachine;
+import org.robovm.llvm.binding.Attribute;
+import org.robovm.llvm.binding.CodeGenFileType;
+import org.robovm.llvm.binding.Linkage;
+import org.robovm.llvm.binding.RelocMode;
+
+/**
+ * Optimizes the code of all classes being linked together when
+ * {@link Config#isWholeProgram()} is enabled. The optimized bitcode written by
+ * {@link ClassCompiler} for each class is merged into a few partitions which
+ * are then optimized using LLVM's link time optimization passes. This allows
+ * calls between classes in the same partition to be inlined.
+ * <p>
+ * Classes are partitioned by package since classes in the same package tend
+ * to call each other. Method functions are weak to allow the {@link Linker}
+ * to strip unreachable methods. Reachable methods are made strong in the
+ * partitions since LLVM never inlines weak functions. Unreachable methods are
+ * left weak and will be overridden by the stubs generated by the
+ * {@link Linker} as usual.
+ * <p>
+ * Method functions are marked {@code noinline} by {@link ClassCompiler}. The
+ * attribute is removed from reachable methods to let LLVM inline them, except
+ * from methods which walk the call stack to find their callers (e.g.
+ * {@code VMStack} and {@code Class.forName()}) and their direct callers in
+ * any class (see {@link #findCallerSensitiveMethods(Collection, Set)}).
+ * Inlining those would remove the frames they skip or report.
+ * <p>
+ * Classes without bitcode (e.g. classes restored from the
+ * {@link ObjectCache}) and classes in partitions which fail to link or
+ * optimize are linked using their ordinary object files.
+ */
+public class WholeProgramOptimizer {
+    /**
+     * Classes and methods which walk the call stack. All methods of a class in
+     * this set are considered to walk the stack.
+     */
+    private static final Set<String> STACK_WALKERS = new HashSet<>(Arrays.asList(
+            "dalvik/system/VMStack",
+            "org/robovm/rt/VM.getStackClasses(II)[Ljava/lang/Class;"));
+
+    private final Config config;
+
+    public WholeProgramOptimizer(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Merges and optimizes the bitcode of the specified classes.
+     *
+     * @param classes the classes being linked.
+     * @param reachableMethods the reachable methods as returned by
+     *            {@link DependencyGraph#findReachableMethods()} formatted as
+     *            <code>owner.namedesc</code>.
+     * @param objectFiles the object files of the generated partitions will be
+     *            added to this {@link List}.
+     * @return the classes which have been compiled into the partitions. The
+     *         object files of these classes must not be linked.
+     */
+    public Set<Clazz> optimize(Collection<Clazz> classes, final Set<String> reachableMethods,
+            final List<File> objectFiles) throws IOException {
+
+        final List<List<Clazz>> partitions = partition(classes);
+        List<ClazzInfo> clazzInfos = new ArrayList<>();
+        for (Clazz clazz : classes) {
+            clazzInfos.add(clazz.getClazzInfo());
+        }
+        final Set<String> callerSensitive = findCallerSensitiveMethods(clazzInfos, STACK_WALKERS);
+        final Set<Clazz> result = Collections.synchronizedSet(new HashSet<Clazz>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        config.getTmpDir().mkdirs();
+        Executor executor = config.getThreads() <= 1 ? AppCompiler.SAME_THREAD_EXECUTOR
+                : Executors.newFixedThreadPool(config.getThreads());
+        for (int i = 0; i < partitions.size(); i++) {
+            final List<Clazz> partition = partitions.get(i);
+            final int num = i;
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        List<File> oFiles = optimize(partition, reachableMethods, callerSensitive, num);
+                        if (oFiles != null) {
+                            synchronized (objectFiles) {
+                                objectFiles.addAll(oFiles);
+                            }
+                            result.addAll(partition);
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            });
+        }
+
+        // Shutdown the executor and wait for running tasks to complete.
+        if (executor instanceof ExecutorService) {
+            ExecutorService executorService = (ExecutorService) executor;
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            Throwable t = errors.get(0);
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new CompilerException(t);
+        }
+
+        config.getLogger().info("Optimized %d out of %d classes in %d partitions",
+                result.size(), classes.size(), partitions.size());
+        return result;
+    }
+
+    /**
+     * Splits the classes which have bitcode into at most
+     * {@link Config#getThreads()} partitions. Whole packages are assigned to
+     * the partition with the smallest total bitcode size, largest packages
+     * first. The result only depends on the classes and their bitcode sizes.
+     */
+    private List<List<Clazz>> partition(Collection<Clazz> classes) {
+        Map<String, List<Clazz>> packages = new TreeMap<>();
+        final Map<String, Long> packageSizes = new TreeMap<>();
+        for (Clazz clazz : classes) {
+            File bcFile = config.getBcFile(clazz);
+            if (!bcFile.exists()) {
+                continue;
+            }
+            String internalName = clazz.getInternalName();
+            String pkg = internalName.lastIndexOf('/') != -1
+                    ? internalName.substring(0, internalName.lastIndexOf('/')) : "";
+            List<Clazz> l = packages.get(pkg);
+            if (l == null) {
+                l = new ArrayList<>();
+                packages.put(pkg, l);
+                packageSizes.put(pkg, 0L);
+            }
+            l.add(clazz);
+            packageSizes.put(pkg, packageSizes.get(pkg) + bcFile.length());
+        }
+
+        List<String> sortedPackages = new ArrayList<>(packages.keySet());
+        Collections.sort(sortedPackages, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                int c = Long.compare(packageSizes.get(o2), packageSizes.get(o1));
+                return c != 0 ? c : o1.compareTo(o2);
+            }
+        });
+
+        int count = Math.max(1, Math.min(config.getThreads(), sortedPackages.size()));
+        List<List<Clazz>> partitions = new ArrayList<>();
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            partitions.add(new ArrayList<Clazz>());
+        }
+        for (String pkg : sortedPackages) {
+            int smallest = 0;
+            for (int i = 1; i < count; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            partitions.get(smallest).addAll(packages.get(pkg));
+            sizes[smallest] += packageSizes.get(pkg);
+        }
+        return partitions;
+    }
+
+    /**
+     * Returns the methods in the specified classes which must not be inlined
+     * since the frames of the methods walking the call stack depend on them.
+     * These are the methods in {@code stackWalkers}, the methods calling them
+     * directly or indirectly through methods in the same class (e.g.
+     * {@code Class.forName()}) and the direct callers of all of those in any
+     * class. The direct callers are the frames reported to the stack walkers.
+     * Calls between classes are inlined too, through the trampolines aliased
+     * to the method functions (see {@link TrampolineCompiler}), so callers in
+     * other classes must be included.
+     */
+    static Set<String> findCallerSensitiveMethods(Collection<ClazzInfo> classes, Set<String> stackWalkers) {
+        Set<String> walking = new HashSet<>();
+        for (ClazzInfo ci : classes) {
+            Set<String> sensitive = new HashSet<>();
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (MethodInfo mi : ci.getMethods()) {
+                    String key = ci.getInternalName() + "." + mi.getName() + mi.getDesc();
+                    if (sensitive.contains(key)) {
+                        continue;
+                    }
+                    boolean isSensitive = stackWalkers.contains(ci.getInternalName())
+                            || stackWalkers.contains(key);
+                    for (Dependency dep : mi.getDependencies()) {
+                        if (isSensitive) {
+                            break;
+                        }
+                        if (dep instanceof MethodDependency) {
+                            MethodDependency mdep = (MethodDependency) dep;
+                            String target = mdep.getOwner() + "." + mdep.getMethodName() + mdep.getMethodDesc();
+                            isSensitive = stackWalkers.contains(mdep.getOwner())
+                                    || stackWalkers.contains(target)
+                                    || sensitive.contains(target);
+                        }
+                    }
+                    if (isSensitive) {
+                        sensitive.add(key);
+                        changed = true;
+                    }
+                }
+            }
+            walking.addAll(sensitive);
+        }
+
+        Set<String> result = new HashSet<>(walking);
+        for (ClazzInfo ci : classes) {
+            for (MethodInfo mi : ci.getMethods()) {
+                for (Dependency dep : mi.getDependencies()) {
+                    if (dep instanceof MethodDependency) {
+                        MethodDependency mdep = (MethodDependency) dep;
+                        String target = mdep.getOwner() + "." + mdep.getMethodName() + mdep.getMethodDesc();
+                        if (walking.contains(target) || stackWalkers.contains(mdep.getOwner())
+                                || stackWalkers.contains(target)) {
+                            result.add(ci.getInternalName() + "." + mi.getName() + mi.getDesc());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Links, optimizes and generates machine code for a single partition.
+     *
+     * @return the generated object files or {@code null} if the partition
+     *         couldn't be optimized.
+     */
+    private List<File> optimize(List<Clazz> partition, Set<String> reachableMethods,
+            Set<String> callerSensitive, int num) throws IOException {
+        if (partition.isEmpty()) {
+            return null;
+        }
+
+        String name = "wholeprogram" + num;
+        byte[] oData = null;
+        byte[] linesOData = null;
+        try (HeaderModules headerModules = HeaderModules.acquire()) {
+            Context context = headerModules.getContext(config.getOs(), config.getArch());
+            Clazz first = partition.get(0);
+            try (Module module = Module.parseIR(context,
+                    FileUtils.readFileToByteArray(config.getBcFile(first)), first.getClassName())) {
+
+                for (Clazz clazz : partition.subList(1, partition.size())) {
+                    try (Module m = Module.parseIR(context,
+                            FileUtils.readFileToByteArray(config.getBcFile(clazz)), clazz.getClassName())) {
+                        module.link(m);
+                    }
+                }
+
+                for (Clazz clazz : partition) {
+                    ClazzInfo ci = clazz.getClazzInfo();
+                    for (MethodInfo mi : ci.getMethods()) {
+                        String key = ci.getInternalName() + "." + mi.getName() + mi.getDesc();
+                        if (mi.isAbstract()) {
+                            continue;
+                        }
+                        Function f = module.getFunctionByName(
+                                Symbols.methodSymbol(ci.getInternalName(), mi.getName(), mi.getDesc()));
+                        if (f == null) {
+                            continue;
+                        }
+                        if (callerSensitive.contains(key)) {
+                            f.removeAttribute(Attribute.AlwaysInlineAttribute);
+                            f.addAttribute(Attribute.NoInlineAttribute);
+                        } else if (reachableMethods.contains(key)) {
+                            f.removeAttribute(Attribute.NoInlineAttribute);
+                        }
+                        if (reachableMethods.contains(key) && f.getLinkage() == Linkage.WeakAnyLinkage) {
+                            f.setLinkage(Linkage.ExternalLinkage);
+                        }
+                    }
+                }
+
+                try (PassManager passManager = new PassManager()) {
+                    try (PassManagerBuilder builder = new PassManagerBuilder()) {
+                        builder.setSetOptLevel(2);
+                        builder.setDisableTailCalls(true);
+                        // Symbols are referenced from outside the partition.
+                        // Don't internalize.
+                        builder.populateLTOPassManager(passManager, false, true);
+                    }
+                    passManager.run(module);
+                }
+
+                if (config.isDumpIntermediates()) {
+                    module.writeBitcode(new File(config.getTmpDir(), name + ".bc"));
+                }
+
+                String triple = config.getTriple();
+                Target target = Target.lookupTarget(triple);
+                try (TargetMachine targetMachine = target.createTargetMachine(triple,
+                        config.getArch().getLlvmCpu(), null, null, RelocMode.RelocPIC, null)) {
+                    targetMachine.setAsmVerbosityDefault(true);
+                    targetMachine.setFunctionSections(true);
+                    targetMachine.setDataSections(true);
+                    targetMachine.getOptions().setNoFramePointerElim(true);
+                    // NOTE: Doesn't have any effect on x86. See #503.
+                    targetMachine.getOptions().setPositionIndependentExecutable(true);
+                    ByteArrayOutputStream output = new ByteArrayOutputStream(1024 * 1024);
+                    targetMachine.emit(module, output, CodeGenFileType.ObjectFile);
+                    oData = output.toByteArray();
+                    if (!ClassCompiler.patchObjectFileWithFunctionSizes(config, name, oData, partition)) {
+                        config.getLogger().warn("Failed to patch method sizes into the object file of "
+                                + "partition %d. Falling back to assembly.", num);
+                        // Patch the sizes into the assembly code instead.
+                        output.reset();
+                        targetMachine.emit(module, output, CodeGenFileType.AssemblyFile);
+                        byte[] asm = output.toByteArray();
+                        output.reset();
+                        ClassCompiler.patchAsmWithFunctionSizes(config, partition, 
+                                new ByteArrayInputStream(asm), output);
+                        asm = output.toByteArray();
+                        output.reset();
+                        targetMachine.assemble(asm, name, output);
+                        oData = output.toByteArray();
+                    }
+
+                    // Inlined code is reported with the line numbers of the
+                    // method it was inlined into.
+                    org.robovm.compiler.llvm.Module linesLlModule = null;
+                    try (ObjectFile objectFile = ObjectFile.load(oData, name)) {
+                        linesLlModule = ClassCompiler.buildLineNumberTables(config, objectFile, partition);
+                    }
+                    if (linesLlModule != null) {
+                        if (config.isDumpIntermediates()) {
+                            FileUtils.writeStringToFile(new File(config.getTmpDir(), name + "-lines.ll"),
+                                    linesLlModule.toString(), "UTF-8");
+                        }
+                        try (Module linesModule = headerModules.build(config.getOs(), config.getArch(),
+                                linesLlModule, name + ".lines")) {
+                            output.reset();
+                            targetMachine.emit(linesModule, output, CodeGenFileType.ObjectFile);
+                            linesOData = output.toByteArray();
+                        }
+                    }
+                }
+            }
+        } catch (LlvmException e) {
+            config.getLogger().warn("Failed to optimize partition %d: %s. Its classes will be linked "
+                    + "without whole program optimization.", num, e.getMessage());
+            return null;
+        }
+
+        List<File> oFiles = new ArrayList<>();
+        File oFile = new File(config.getTmpDir(), name + ".o");
+        FileUtils.writeByteArrayToFile(oFile, oData);
+        oFiles.add(oFile);
+        if (linesOData != null) {
+            File linesOFile = new File(config.getTmpDir(), name + "-lines.o");
+            FileUtils.writeByteArrayToFile(linesOFile, linesOData);
+            oFiles.add(linesOFile);
+        }
+        return oFiles;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * {@link ClassVisitor} which builds a textual signature of everything in a
+ * class file that code in other classes may depend on when compiled: the class
+ * header, all fields, all method declarations and all annotations. Method
+ * bodies and debug information are ignored. Two versions of a class with the
+ * same signature are binary compatible as far as the compiler is concerned.
+ */
+class AbiSignatureVisitor extends ClassVisitor {
+    private final StringBuilder sb = new StringBuilder();
+    private String superName;
+    private final List<String> interfaces = new ArrayList<String>();
+
+    AbiSignatureVisitor() {
+        super(Opcodes.ASM5);
+    }
+
+    /**
+     * Returns the internal name of the superclass of the visited class or
+     * {@code null} if the class has no superclass.
+     */
+    String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * Returns the internal names of the interfaces directly implemented by the
+     * visited class.
+     */
+    List<String> getInterfaces() {
+        return Collections.unmodifiableList(interfaces);
+    }
+
+    /**
+     * Returns the signature built by this visitor.
+     */
+    String getSignature() {
+        return sb.toString();
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+            String[] interfaces) {
+
+        this.superName = superName;
+        if (interfaces != null) {
+            this.interfaces.addAll(Arrays.asList(interfaces));
+        }
+        sb.append("class ").append(access).append(' ').append(name).append(' ').append(signature)
+                .append(" extends ").append(superName);
+        if (interfaces != null) {
+            for (String ifs : interfaces) {
+                sb.append(" implements ").append(ifs);
+            }
+        }
+        sb.append('\n');
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String desc) {
+        sb.append("outer ").append(owner).append(' ').append(name).append(desc).append('\n');
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        sb.append("inner ").append(access).append(' ').append(name).append(' ')
+                .append(outerName).append(' ').append(innerName).append('\n');
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        sb.append("annotation ").append(desc).append(' ').append(visible).append('\n');
+        return new AbiAnnotationVisitor();
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        sb.append("field ").append(access).append(' ').append(name).append(' ').append(desc)
+                .append(' ').append(signature).append(' ');
+        appendValue(value);
+        sb.append('\n');
+        return new FieldVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                sb.append("  annotation ").append(desc).append(' ').append(visible).append('\n');
+                return new AbiAnnotationVisitor();
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+            String[] exceptions) {
+
+        sb.append("method ").append(access).append(' ').append(name).append(desc)
+                .append(' ').append(signature).append('\n');
+        return new MethodVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                sb.append("  annotation ").append(desc).append(' ').append(visible).append('\n');
+                return new AbiAnnotationVisitor();
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+                sb.append("  annotation ").append(parameter).append(' ').append(desc)
+                        .append(' ').append(visible).append('\n');
+                return new AbiAnnotationVisitor();
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotationDefault() {
+                sb.append("  default\n");
+                return new AbiAnnotationVisitor();
+            }
+        };
+    }
+
+    private void appendValue(Object value) {
+        if (value != null && value.getClass().isArray()) {
+            sb.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendValue(Array.get(value, i));
+            }
+            sb.append(']');
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private class AbiAnnotationVisitor extends AnnotationVisitor {
+        AbiAnnotationVisitor() {
+            super(Opcodes.ASM5);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            sb.append("    ").append(name).append('=');
+            appendValue(value);
+            sb.append('\n');
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            sb.append("    ").append(name).append('=').append(desc).append('.').append(value).append('\n');
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            sb.append("    ").append(name).append('=').append(desc).append('\n');
+            return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            sb.append("    ").append(name).append("=[]\n");
+            return this;
+        }
+    }
+}
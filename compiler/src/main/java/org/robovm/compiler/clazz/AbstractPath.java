@@ -17,10 +17,16 @@
 package org.robovm.compiler.clazz;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  *
@@ -31,10 +37,16 @@ public abstract class AbstractPath implements Path {
     protected final Clazzes clazzes;
     protected final int index;
     protected Set<Clazz> clazzSet = null;
+    /**
+     * The {@link Clazz}es created by {@link #loadClass(String)} and
+     * {@link #listClasses()} keyed by internal name.
+     */
+    protected final Map<String, Clazz> loadedClasses = new HashMap<String, Clazz>();
     protected Set<Package> packageSet = null;
     protected boolean inBootclasspath = false;
-    protected Map<String, Clazz> generatedClasses = new HashMap<String, Clazz>();
+    protected ConcurrentMap<String, Clazz> generatedClasses = new ConcurrentHashMap<String, Clazz>();
     protected final File generatedClassDir;
+    private ClazzInfoStore clazzInfoStore;
     
     AbstractPath(File file, Clazzes clazzes, int index, boolean inBootclasspath) {
         this.file = file.getAbsoluteFile();
@@ -56,13 +68,102 @@ public abstract class AbstractPath implements Path {
         return file;
     }
     
-    public Set<Clazz> listClasses() {
+    public synchronized Set<Clazz> listClasses() {
         if (clazzSet == null) {
-            clazzSet = doListClasses();
+            Set<Clazz> s = new TreeSet<Clazz>();
+            for (Clazz clazz : doListClasses()) {
+                Clazz loaded = loadedClasses.get(clazz.getInternalName());
+                if (loaded == null) {
+                    loadedClasses.put(clazz.getInternalName(), clazz);
+                    loaded = clazz;
+                }
+                s.add(loaded);
+            }
+            clazzSet = s;
         }
         return Collections.unmodifiableSet(clazzSet);
     }
+
+    /**
+     * Returns the {@link Clazz} for the class with the specified internal name
+     * in this {@link Path} or {@code null} if not found. Doesn't list all
+     * classes in this {@link Path} unless the subclass has to.
+     */
+    synchronized Clazz loadClass(String internalName) {
+        Clazz clazz = loadedClasses.get(internalName);
+        if (clazz == null && clazzSet == null) {
+            clazz = doLoadClass(internalName);
+            if (clazz != null) {
+                loadedClasses.put(internalName, clazz);
+            }
+        }
+        return clazz;
+    }
+
+    /**
+     * Returns the internal names of all classes in this {@link Path}.
+     */
+    List<String> listClassNames() {
+        List<String> names = new ArrayList<String>();
+        for (Clazz clazz : listClasses()) {
+            names.add(clazz.getInternalName());
+        }
+        return names;
+    }
     
+    /**
+     * Lists the classes of this {@link Path} again. The {@link Clazz}es of
+     * classes which haven't been modified after {@code timestamp} are kept.
+     * Adds the internal names of added, modified and removed classes to
+     * {@code changed}.
+     */
+    synchronized void refresh(long timestamp, Set<String> changed) {
+        Map<String, Clazz> old = new HashMap<String, Clazz>();
+        for (Clazz clazz : listClasses()) {
+            old.put(clazz.getInternalName(), clazz);
+        }
+        Set<Clazz> s = new TreeSet<Clazz>();
+        for (Clazz clazz : doListClasses()) {
+            Clazz oldClazz = old.remove(clazz.getInternalName());
+            if (oldClazz == null || clazz.lastModified() > timestamp) {
+                s.add(clazz);
+                changed.add(clazz.getInternalName());
+            } else {
+                s.add(oldClazz);
+            }
+        }
+        changed.addAll(old.keySet());
+        clazzSet = s;
+        loadedClasses.clear();
+        for (Clazz clazz : s) {
+            loadedClasses.put(clazz.getInternalName(), clazz);
+        }
+        packageSet = null;
+        generatedClasses.clear();
+    }
+
+    /**
+     * Returns the {@link ClazzInfoStore} holding the {@link ClazzInfo}s of the
+     * classes in this {@link Path}.
+     */
+    synchronized ClazzInfoStore getClazzInfoStore() throws IOException {
+        if (clazzInfoStore == null) {
+            clazzInfoStore = ClazzInfoStore.open(clazzes.getConfig().getClazzInfoStoreFile(this));
+        }
+        return clazzInfoStore;
+    }
+
+    /**
+     * Releases the {@link ClazzInfoStore} of this {@link Path} if it has
+     * been opened.
+     */
+    synchronized void close() throws IOException {
+        if (clazzInfoStore != null) {
+            clazzInfoStore.close();
+            clazzInfoStore = null;
+        }
+    }
+
     public File getGeneratedClassFile(String internalName) {
         return new File(generatedClassDir, internalName.replace('/', File.separatorChar) + ".class");
     }
@@ -76,14 +177,27 @@ public abstract class AbstractPath implements Path {
                 clazz = new DirectoryPath.DirectoryPathClazz(clazzes, this, generatedClassDir, classFile);
             }
             if (clazz != null) {
-                // Put the clazz in the cache
-                generatedClasses.put(internalName, clazz);
+                // Put the clazz in the cache. Another thread may have beaten
+                // us to it.
+                Clazz existing = generatedClasses.putIfAbsent(internalName, clazz);
+                if (existing != null) {
+                    clazz = existing;
+                }
             }
         }
         return clazz;
     }
     
     protected abstract Set<Clazz> doListClasses();
+
+    /**
+     * Looks up the class with the specified internal name. The default
+     * implementation lists all classes in this {@link Path}.
+     */
+    protected Clazz doLoadClass(String internalName) {
+        listClasses();
+        return loadedClasses.get(internalName);
+    }
     
     @Override
     public int hashCode() {
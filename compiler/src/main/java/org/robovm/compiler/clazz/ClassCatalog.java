@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Sorted list of the internal names of the classes in an archive. The
+ * catalog of an archive is written to the cache the first time the archive
+ * is used and is memory mapped by subsequent builds. Classes can then be
+ * looked up and listed without enumerating the entries of the archive.
+ * <p>
+ * The catalog is keyed by the size and modification time of the archive
+ * which are stored in its header. Computing a digest of the contents would
+ * require reading the whole archive on every build. A catalog which doesn't
+ * match its archive is written again.
+ * <p>
+ * File format (big endian):
+ * <pre>
+ * int     magic
+ * int     version
+ * long    archive size
+ * long    archive modification time
+ * int     count
+ * int     offset[count + 1]   name offsets relative to the start of the names
+ * byte    names[]             UTF-8 encoded internal names, sorted
+ * </pre>
+ */
+final class ClassCatalog extends AbstractList<String> implements RandomAccess {
+    private static final int MAGIC = 0x52564343; // 'RVCC'
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesStart;
+
+    private ClassCatalog(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(HEADER_SIZE - 4);
+        this.namesStart = HEADER_SIZE + (count + 1) * 4;
+    }
+
+    /**
+     * Opens the catalog of an archive. Writes the catalog to
+     * {@code catalogFile} if it doesn't exist or doesn't match the archive.
+     * {@code archiveSize} and {@code archiveLastModified} must be read before
+     * {@code zipFile} was opened. If the archive is replaced after that the
+     * catalog written for the old {@link ZipFile} then won't match the new
+     * archive.
+     */
+    static ClassCatalog open(File catalogFile, long archiveSize, long archiveLastModified,
+            ZipFile zipFile) throws IOException {
+
+        ByteBuffer buffer = map(catalogFile, archiveSize, archiveLastModified);
+        if (buffer == null) {
+            write(catalogFile, archiveSize, archiveLastModified, zipFile);
+            buffer = map(catalogFile, archiveSize, archiveLastModified);
+            if (buffer == null) {
+                throw new IOException("Failed to read class catalog " + catalogFile);
+            }
+        }
+        return new ClassCatalog(buffer);
+    }
+
+    /**
+     * Maps the specified catalog file. Returns {@code null} if the file
+     * doesn't exist or doesn't match the archive.
+     */
+    private static ByteBuffer map(File catalogFile, long archiveSize, long archiveLastModified)
+            throws IOException {
+
+        if (!catalogFile.isFile() || catalogFile.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(catalogFile, "r")) {
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(8) != archiveSize
+                    || buffer.getLong(16) != archiveLastModified) {
+                return null;
+            }
+            return buffer;
+        }
+    }
+
+    private static void write(File catalogFile, long archiveSize, long archiveLastModified,
+            ZipFile zipFile) throws IOException {
+
+        List<String> names = new ArrayList<String>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory() && name.endsWith(".class")) {
+                names.add(name.substring(0, name.length() - 6));
+            }
+        }
+        Collections.sort(names);
+
+        List<byte[]> bytes = new ArrayList<byte[]>(names.size());
+        for (String name : names) {
+            bytes.add(name.getBytes(UTF8));
+        }
+
+        // Write to a temp file and rename it since other builds may be
+        // reading the catalog concurrently.
+        catalogFile.getParentFile().mkdirs();
+        File tmpFile = File.createTempFile(catalogFile.getName(), ".tmp", catalogFile.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(archiveSize);
+                out.writeLong(archiveLastModified);
+                out.writeInt(bytes.size());
+                int offset = 0;
+                for (byte[] b : bytes) {
+                    out.writeInt(offset);
+                    offset += b.length;
+                }
+                out.writeInt(offset);
+                for (byte[] b : bytes) {
+                    out.write(b);
+                }
+            }
+            catalogFile.delete();
+            if (!tmpFile.renameTo(catalogFile)) {
+                throw new IOException("Failed to write class catalog " + catalogFile);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        int start = buffer.getInt(HEADER_SIZE + index * 4);
+        int end = buffer.getInt(HEADER_SIZE + (index + 1) * 4);
+        byte[] b = new byte[end - start];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = buffer.get(namesStart + start + i);
+        }
+        return new String(b, UTF8);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns {@code true} if the archive contains the class with the
+     * specified internal name.
+     */
+    @Override
+    public boolean contains(Object internalName) {
+        return Collections.binarySearch(this, (String) internalName) >= 0;
+    }
+}
@@ -22,9 +22,24 @@ package org.robovm.compiler.clazz;
  * <code>B</code> was built.
  */
 public class ClassDependency extends Dependency {
-    private static final long serialVersionUID = 1L;
 
     ClassDependency(String className, String path, boolean inBootClasspath, boolean weak) {
         super(className, path, inBootClasspath, weak);
     }
+
+    @Override
+    Dependency relocate(String path, boolean inBootClasspath) {
+        return new ClassDependency(getClassName(), path, inBootClasspath, isWeak());
+    }
+
+    @Override
+    String getKey() {
+        return getClassName();
+    }
+
+    @Override
+    void write(ClazzInfoCodec.Encoder out) {
+        out.writeInt(KIND_CLASS);
+        super.write(out);
+    }
 }
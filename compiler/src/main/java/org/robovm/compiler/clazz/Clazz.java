@@ -16,16 +16,16 @@
  */
 package org.robovm.compiler.clazz;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FileUtils;
+import org.objectweb.asm.ClassReader;
+import org.robovm.compiler.util.DigestUtil;
 
 import soot.SootClass;
 
@@ -40,8 +40,17 @@ public abstract class Clazz implements Comparable<Clazz> {
     private final String internalName;
     private final AbstractPath path;
 
-    private ClazzInfo clazzInfo = null; 
-    private SootClass sootClass = null;
+    /*
+     * Clazzes are shared by the front-end threads of AppCompiler. The lazily
+     * computed values below are idempotent so it doesn't matter if two
+     * threads compute them at the same time but they have to be volatile to
+     * be safely published.
+     */
+    private volatile ClazzInfo clazzInfo = null; 
+    private volatile SootClass sootClass = null;
+    private volatile int sootGeneration = -1;
+    private volatile String digest = null;
+    private volatile String abiDigest = null;
     
     Clazz(Clazzes clazzes, String fileName, AbstractPath path) {
         this.clazzes = clazzes;
@@ -71,27 +80,37 @@ public abstract class Clazz implements Comparable<Clazz> {
         return internalName;
     }
     
-    public ClazzInfo getClazzInfo() {
+    public synchronized ClazzInfo getClazzInfo() {
         if (clazzInfo == null) {
-            File infoFile = clazzes.getConfig().getInfoFile(this);
-            if (infoFile.exists()) {
-                ObjectInputStream ois = null;
-                try {
-                    ois = new ObjectInputStream(
-                            new BufferedInputStream(new FileInputStream(infoFile)));
-                    clazzInfo = (ClazzInfo) ois.readObject();
+            try {
+                clazzInfo = path.getClazzInfoStore().read(internalName);
+                if (clazzInfo != null) {
                     clazzInfo.setClazz(this);
-                } catch (IOException e) {
-                } catch (ClassNotFoundException e) {
-                } finally {
-                    IOUtils.closeQuietly(ois);
                 }
+            } catch (IOException e) {
             }
         }
         return clazzInfo;
     }
 
-    public ClazzInfo resetClazzInfo() {
+    /**
+     * Replaces the {@link ClazzInfo} of this class with one read from the
+     * specified file which may have been written by another build using
+     * {@link #writeClazzInfo(File)}. The paths
+     * of all dependencies are updated to match the current classpath. The
+     * {@link ClazzInfo} isn't saved to the {@link ClazzInfoStore} of this
+     * class' {@link Path} until {@link #saveClazzInfo()} is called.
+     */
+    public synchronized ClazzInfo loadClazzInfo(File infoFile) throws IOException {
+        ClazzInfo ci = ClazzInfoCodec.decode(ByteBuffer.wrap(FileUtils.readFileToByteArray(infoFile)), 
+                new HashMap<String, String>());
+        ci.setClazz(this);
+        ci.relocateDependencies();
+        clazzInfo = ci;
+        return ci;
+    }
+
+    public synchronized ClazzInfo resetClazzInfo() {
         clazzInfo = new ClazzInfo(this, getSootClass());
         return clazzInfo;
     }
@@ -100,23 +119,91 @@ public abstract class Clazz implements Comparable<Clazz> {
         if (clazzInfo == null) {
             throw new IllegalStateException();
         }
-        File infoFile = clazzes.getConfig().getInfoFile(this);
-        infoFile.getParentFile().mkdirs();
-        ObjectOutputStream oos = null;
-        try {
-            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(infoFile)));
-            oos.writeObject(clazzInfo);
-        } finally {
-            IOUtils.closeQuietly(oos);
-        }
+        path.getClazzInfoStore().write(internalName, clazzInfo);
+    }
 
+    /**
+     * Writes the {@link ClazzInfo} of this class to the specified file. Used
+     * by the {@code ObjectCache} to share {@link ClazzInfo}s between builds.
+     */
+    public void writeClazzInfo(File infoFile) throws IOException {
+        if (clazzInfo == null) {
+            throw new IllegalStateException();
+        }
+        FileUtils.writeByteArrayToFile(infoFile, ClazzInfoCodec.encode(clazzInfo));
     }
     
+    /**
+     * Returns the SHA1 digest of the bytes of this class.
+     */
+    public String getDigest() throws IOException {
+        if (digest == null) {
+            digest = DigestUtil.sha1(getBytes());
+        }
+        return digest;
+    }
+
+    /**
+     * Returns a SHA1 digest of the parts of this class which other classes
+     * depend on when compiled, i.e. the class header, fields, method
+     * declarations and annotations but not method bodies. Since the instance
+     * layout and the vtables and itables of a class depend on its superclasses
+     * and interfaces the digests of all of those are included too.
+     */
+    public String getAbiDigest() throws IOException {
+        if (abiDigest == null) {
+            AbiSignatureVisitor visitor = new AbiSignatureVisitor();
+            new ClassReader(getBytes()).accept(visitor, 
+                    ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            StringBuilder sb = new StringBuilder(visitor.getSignature());
+            List<String> supertypes = new ArrayList<String>(visitor.getInterfaces());
+            if (visitor.getSuperName() != null) {
+                supertypes.add(0, visitor.getSuperName());
+            }
+            for (String name : supertypes) {
+                if (!name.equals(internalName)) {
+                    Clazz c = clazzes.load(name);
+                    sb.append("super ").append(name).append(' ')
+                        .append(c != null ? c.getAbiDigest() : "<phantom>").append('\n');
+                }
+            }
+            abiDigest = DigestUtil.sha1(sb.toString());
+        }
+        return abiDigest;
+    }
+
     public SootClass getSootClass() {
-        if (sootClass == null) {
-            sootClass = clazzes.getSootClass(this);
+        SootClass c = sootClass;
+        if (c == null || sootGeneration != Clazzes.getSootGeneration()) {
+            int sharedHolds = Clazzes.lockSoot();
+            try {
+                c = clazzes.getSootClass(this);
+                sootClass = c;
+                sootGeneration = Clazzes.getSootGeneration();
+            } finally {
+                Clazzes.unlockSoot(sharedHolds);
+            }
         }
-        return sootClass;
+        return c;
+    }
+
+    /**
+     * Returns {@code true} if the {@link SootClass} of this class has been
+     * loaded.
+     */
+    boolean hasSootClass() {
+        return sootClass != null;
+    }
+
+    /**
+     * Forgets the {@link SootClass} and ABI digest of this class. Called when
+     * other classes have been modified since their {@link SootClass}es may
+     * then be removed from the Soot scene and the ABI digest includes the
+     * digests of the superclasses.
+     */
+    void reset() {
+        sootClass = null;
+        abiDigest = null;
     }
     
     @Override
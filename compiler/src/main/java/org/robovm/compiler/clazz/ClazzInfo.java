@@ -16,7 +16,7 @@
  */
 package org.robovm.compiler.clazz;
 
-import java.io.Serializable;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,9 +36,7 @@ import soot.SootMethod;
 /**
  *
  */
-public class ClazzInfo implements Serializable {
-    private static final long serialVersionUID = 99L;
-    
+public class ClazzInfo {
     private int modifiers;
     private String name;
     private String internalName;
@@ -52,8 +50,9 @@ public class ClazzInfo implements Serializable {
     private final Set<String> invokes = new HashSet<String>();
     private boolean isStruct;
     private boolean isEnum;
+    private boolean buildTimeInit;
     
-    private transient Clazz clazz;
+    private Clazz clazz;
     
     ClazzInfo() {}
     
@@ -119,6 +118,18 @@ public class ClazzInfo implements Serializable {
         return isEnum;
     }
     
+    /**
+     * Returns {@code true} if this class matched the build time class
+     * initialization patterns of the {@code Config} when it was last compiled.
+     */
+    public boolean isBuildTimeInit() {
+        return buildTimeInit;
+    }
+    
+    public void setBuildTimeInit(boolean buildTimeInit) {
+        this.buildTimeInit = buildTimeInit;
+    }
+    
     public int getModifiers() {
         return modifiers;
     }
@@ -267,6 +278,30 @@ public class ClazzInfo implements Serializable {
         }
     }
     
+    /**
+     * Updates the paths of all class and method dependencies to where the
+     * dependencies are located on the current classpath. Used when this
+     * {@link ClazzInfo} has been produced by another build, e.g. when restored
+     * from a shared cache.
+     */
+    void relocateDependencies() {
+        dependencies = relocateDependencies(clazz.clazzes, dependencies);
+        for (MethodInfo mi : methods) {
+            mi.relocateDependencies();
+        }
+    }
+
+    static Map<String, Dependency> relocateDependencies(Clazzes clazzes, Map<String, Dependency> deps) {
+        Map<String, Dependency> result = new HashMap<String, Dependency>();
+        for (Map.Entry<String, Dependency> entry : deps.entrySet()) {
+            Clazz clazz = clazzes.load(entry.getValue().getClassName());
+            String path = clazz != null ? clazz.getPath().getFile().getAbsolutePath() : null;
+            boolean inBootClasspath = clazz != null ? clazz.isInBootClasspath() : false;
+            result.put(entry.getKey(), entry.getValue().relocate(path, inBootClasspath));
+        }
+        return result;
+    }
+
     public void clearDependencies() {
         dependencies = new HashMap<String, Dependency>();
     }
@@ -307,6 +342,52 @@ public class ClazzInfo implements Serializable {
         invokes.add(className);
     }
 
+    /**
+     * Writes this {@link ClazzInfo} using the format of
+     * {@link ClazzInfoCodec}.
+     */
+    void write(ClazzInfoCodec.Encoder out) {
+        out.writeInt(modifiers);
+        out.writeString(name);
+        out.writeString(internalName);
+        out.writeString(superclassName);
+        out.writeStrings(interfaceNames);
+        out.writeStrings(catchNames);
+        out.writeStrings(checkcasts);
+        out.writeStrings(instanceofs);
+        out.writeStrings(invokes);
+        out.writeBoolean(isStruct);
+        out.writeBoolean(isEnum);
+        out.writeBoolean(buildTimeInit);
+        out.writeDependencies(dependencies.values());
+        out.writeInt(methods.size());
+        for (MethodInfo mi : methods) {
+            mi.write(out);
+        }
+    }
+
+    static ClazzInfo read(ClazzInfoCodec.Decoder in) throws IOException {
+        ClazzInfo ci = new ClazzInfo();
+        ci.modifiers = in.readInt();
+        ci.name = in.readString();
+        ci.internalName = in.readString();
+        ci.superclassName = in.readString();
+        ci.interfaceNames.addAll(in.readStrings());
+        ci.catchNames.addAll(in.readStrings());
+        ci.checkcasts.addAll(in.readStrings());
+        ci.instanceofs.addAll(in.readStrings());
+        ci.invokes.addAll(in.readStrings());
+        ci.isStruct = in.readBoolean();
+        ci.isEnum = in.readBoolean();
+        ci.buildTimeInit = in.readBoolean();
+        ci.dependencies = in.readDependencies();
+        int methodCount = in.readInt();
+        for (int i = 0; i < methodCount; i++) {
+            ci.methods.add(MethodInfo.read(ci, in));
+        }
+        return ci;
+    }
+
     public boolean isPublic() {
         return (modifiers & Modifier.PUBLIC) > 0;
     }
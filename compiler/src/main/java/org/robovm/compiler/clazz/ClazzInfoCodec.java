@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes {@link ClazzInfo}s into a compact binary format and decodes them
+ * again. Each encoded {@link ClazzInfo} starts with a table of the distinct
+ * strings it uses. Names and descriptors are then written as indexes into
+ * the table. All integers are variable length encoded.
+ * <p>
+ * Encoded {@link ClazzInfo}s are stored in {@link ClazzInfoStore}s and in
+ * the entries of the {@code ObjectCache}.
+ */
+final class ClazzInfoCodec {
+    private static final int MAGIC = 0x52564349; // 'RVCI'
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ClazzInfoCodec() {
+    }
+
+    /**
+     * Encodes the specified {@link ClazzInfo}.
+     */
+    static byte[] encode(ClazzInfo ci) {
+        Encoder body = new Encoder();
+        ci.write(body);
+
+        Encoder out = new Encoder();
+        out.writeRawInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(body.strings.size());
+        for (String s : body.strings.keySet()) {
+            byte[] b = s.getBytes(UTF8);
+            out.writeInt(b.length);
+            out.bytes.write(b, 0, b.length);
+        }
+        byte[] b = body.bytes.toByteArray();
+        out.bytes.write(b, 0, b.length);
+        return out.bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a {@link ClazzInfo} from the remaining bytes of the specified
+     * {@link ByteBuffer}. Decoded strings are interned using the specified
+     * {@link Map} to share names between the {@link ClazzInfo}s read from the
+     * same {@link ClazzInfoStore}.
+     */
+    static ClazzInfo decode(ByteBuffer buffer, Map<String, String> interned) throws IOException {
+        try {
+            Decoder in = new Decoder(buffer);
+            if (in.buffer.getInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported ClazzInfo format");
+            }
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > in.buffer.remaining()) {
+                    throw new IOException("Truncated or corrupt ClazzInfo");
+                }
+                byte[] b = new byte[length];
+                in.buffer.get(b);
+                String s = new String(b, UTF8);
+                String existing = interned.get(s);
+                if (existing == null) {
+                    interned.put(s, s);
+                } else {
+                    s = existing;
+                }
+                strings[i] = s;
+            }
+            in.strings = strings;
+            return ClazzInfo.read(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt ClazzInfo", e);
+        }
+    }
+
+    static class Encoder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+        private void writeRawInt(int v) {
+            bytes.write(v >>> 24);
+            bytes.write(v >>> 16);
+            bytes.write(v >>> 8);
+            bytes.write(v);
+        }
+
+        void writeInt(int v) {
+            while ((v & ~0x7f) != 0) {
+                bytes.write((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            bytes.write(v);
+        }
+
+        void writeBoolean(boolean b) {
+            bytes.write(b ? 1 : 0);
+        }
+
+        /**
+         * Writes the index of the specified string in the string table plus
+         * one or {@code 0} if {@code s} is {@code null}.
+         */
+        void writeString(String s) {
+            if (s == null) {
+                writeInt(0);
+                return;
+            }
+            Integer index = strings.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.put(s, index);
+            }
+            writeInt(index + 1);
+        }
+
+        void writeStrings(Collection<String> c) {
+            writeInt(c.size());
+            for (String s : c) {
+                writeString(s);
+            }
+        }
+
+        void writeDependencies(Collection<Dependency> deps) {
+            writeInt(deps.size());
+            for (Dependency dep : deps) {
+                dep.write(this);
+            }
+        }
+    }
+
+    static class Decoder {
+        private final ByteBuffer buffer;
+        private String[] strings;
+
+        private Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readInt() {
+            int v = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get() & 0xff;
+                v |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        String readString() {
+            int index = readInt();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        List<String> readStrings() {
+            int count = readInt();
+            List<String> result = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(readString());
+            }
+            return result;
+        }
+
+        Map<String, Dependency> readDependencies() throws IOException {
+            int count = readInt();
+            Map<String, Dependency> result = new HashMap<String, Dependency>(count * 2);
+            for (int i = 0; i < count; i++) {
+                Dependency dep = Dependency.read(this);
+                result.put(dep.getKey(), dep);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single file holding the encoded {@link ClazzInfo}s of all classes in a
+ * {@link Path} rather than one file per class. Saving a {@link ClazzInfo}
+ * appends a record to the end of the file. The last record for a class
+ * wins. When opened the file is memory mapped and only the record headers
+ * are read. {@link ClazzInfo}s are decoded when first requested.
+ * <p>
+ * Several processes may be building from the same cache. Appends hold a
+ * lock on the file. The file is never truncated or rewritten in place since
+ * other processes may have mapped it. Instead it is compacted by writing
+ * the latest record of each class to a new file which replaces the old one.
+ * This is done when the file is opened and more than half of it is taken up
+ * by superseded records, or when the file is damaged or was written by
+ * another version. A process which finds that the file has been replaced
+ * after it has taken the lock opens the new file and reads its index again.
+ * <p>
+ * File format (big endian):
+ * <pre>
+ * int     magic
+ * int     version
+ * record*
+ *   short   name length
+ *   byte    name[]        UTF-8 encoded internal name of the class
+ *   int     data length
+ *   byte    data[]        the {@link ClazzInfo} encoded by {@link ClazzInfoCodec}
+ * </pre>
+ */
+final class ClazzInfoStore {
+    private static final int MAGIC = 0x52564953; // 'RVIS'
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Open stores keyed by file. Stores are shared by all {@link Clazzes}
+     * in the process so that records are only ever appended through one
+     * {@link FileChannel} per file. A store is removed when it has been
+     * closed as many times as it has been opened.
+     */
+    private static final Map<File, ClazzInfoStore> stores = new HashMap<File, ClazzInfoStore>();
+
+    private final File file;
+    private FileChannel channel;
+    /**
+     * The key of the file {@link #channel} was opened for or {@code null} if
+     * the file system doesn't support file keys.
+     */
+    private Object fileKey;
+    /**
+     * The mapped file. {@code null} if the index has to be read again.
+     */
+    private ByteBuffer mapped;
+    /**
+     * Maps internal names to the offset (upper 40 bits) and length (lower 24
+     * bits) of the latest record's data.
+     */
+    private final Map<String, Long> index = new HashMap<String, Long>();
+    private final Map<String, String> interned = new HashMap<String, String>();
+    private long size;
+    private long liveBytes;
+    /**
+     * {@code true} if the file is damaged or was written by another version
+     * and has to be replaced before records can be appended.
+     */
+    private boolean damaged;
+    private int refCount;
+
+    private ClazzInfoStore(File file) throws IOException {
+        this.file = file;
+        file.getParentFile().mkdirs();
+        openChannel();
+        // Reads the index
+        lock().release();
+    }
+
+    /**
+     * Returns the store for the specified file. Creates the file if it
+     * doesn't exist. Every call must be matched by a call to
+     * {@link #close()}.
+     */
+    static ClazzInfoStore open(File file) throws IOException {
+        file = file.getAbsoluteFile();
+        synchronized (stores) {
+            ClazzInfoStore store = stores.get(file);
+            if (store == null) {
+                store = new ClazzInfoStore(file);
+                try {
+                    synchronized (store) {
+                        if (store.damaged || store.liveBytes < (store.size - HEADER_SIZE) / 2) {
+                            store.compact();
+                        }
+                    }
+                } catch (IOException e) {
+                    store.channel.close();
+                    throw e;
+                }
+                stores.put(file, store);
+            }
+            store.refCount++;
+            return store;
+        }
+    }
+
+    /**
+     * Releases this store. The file is closed and the store is forgotten
+     * when every {@link #open(File)} has been matched by a call to this
+     * method.
+     */
+    void close() throws IOException {
+        synchronized (stores) {
+            if (refCount == 0) {
+                return;
+            }
+            if (--refCount == 0) {
+                stores.remove(file);
+                synchronized (this) {
+                    channel.close();
+                    mapped = null;
+                    index.clear();
+                    interned.clear();
+                }
+            }
+        }
+    }
+
+    private static long pack(long offset, int length) {
+        return (offset << 24) | length;
+    }
+
+    private static Object getFileKey(File f) throws IOException {
+        try {
+            return Files.readAttributes(f.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens {@link #channel} and determines the key of the opened file. The
+     * key is read before and after opening and the file is opened again if
+     * it was replaced in between.
+     */
+    private void openChannel() throws IOException {
+        while (true) {
+            Object key = getFileKey(file);
+            if (key == null && !file.exists()) {
+                file.createNewFile();
+                continue;
+            }
+            FileChannel ch = new RandomAccessFile(file, "rw").getChannel();
+            if (key == null || key.equals(getFileKey(file))) {
+                channel = ch;
+                fileKey = key;
+                mapped = null;
+                return;
+            }
+            ch.close();
+        }
+    }
+
+    /**
+     * Locks the file. If the file has been replaced by another process since
+     * it was opened the new file is opened and locked instead. Reads the
+     * index if the file has been opened since it was last read.
+     */
+    private FileLock lock() throws IOException {
+        while (true) {
+            FileLock lock = channel.lock();
+            if (fileKey == null || fileKey.equals(getFileKey(file))) {
+                if (mapped == null) {
+                    try {
+                        liveBytes = readIndex();
+                    } catch (IOException e) {
+                        lock.release();
+                        throw e;
+                    }
+                }
+                return lock;
+            }
+            lock.release();
+            channel.close();
+            openChannel();
+        }
+    }
+
+    /**
+     * Maps the file and reads the record headers into the index. Must be
+     * called with the file locked. Returns the number of bytes taken up by
+     * the latest record of each class. Sets {@link #damaged} if the file
+     * has to be replaced.
+     */
+    private long readIndex() throws IOException {
+        index.clear();
+        size = channel.size();
+        damaged = false;
+        if (size < HEADER_SIZE) {
+            damaged = true;
+            mapped = ByteBuffer.allocate(0);
+            return 0;
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            // Written by another version. Start over.
+            damaged = true;
+            return 0;
+        }
+
+        Map<String, Integer> recordSizes = new HashMap<String, Integer>();
+        long offset = HEADER_SIZE;
+        while (offset + 2 <= size) {
+            int nameLength = mapped.getShort((int) offset) & 0xffff;
+            long dataOffset = offset + 2 + nameLength + 4;
+            if (dataOffset > size) {
+                break;
+            }
+            int dataLength = mapped.getInt((int) (dataOffset - 4));
+            if (dataLength < 0 || dataOffset + dataLength > size) {
+                break;
+            }
+            String name = readName(offset + 2, nameLength);
+            index.put(name, pack(dataOffset, dataLength));
+            recordSizes.put(name, (int) (dataOffset + dataLength - offset));
+            offset = dataOffset + dataLength;
+        }
+        if (offset < size) {
+            // A partially written record. Records appended after it could
+            // never be read.
+            damaged = true;
+        }
+        long liveBytes = 0;
+        for (int recordSize : recordSizes.values()) {
+            liveBytes += recordSize;
+        }
+        return liveBytes;
+    }
+
+    private String readName(long offset, int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = mapped.get((int) offset + i);
+        }
+        return new String(b, UTF8);
+    }
+
+    /**
+     * Writes the latest record of each class to a new file which replaces
+     * this store's file and opens the new file. The index is read again
+     * while holding the lock so that records appended by other processes
+     * are kept.
+     */
+    private void compact() throws IOException {
+        try (FileLock lock = lock()) {
+            liveBytes = readIndex();
+            File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try {
+                try (FileChannel out = new RandomAccessFile(tmpFile, "rw").getChannel()) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(MAGIC).putInt(VERSION).flip();
+                    out.write(header);
+                    for (Map.Entry<String, Long> entry : index.entrySet()) {
+                        ByteBuffer record = record(entry.getKey(), getData(entry.getValue()));
+                        while (record.hasRemaining()) {
+                            out.write(record);
+                        }
+                    }
+                }
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmpFile.delete();
+            }
+        }
+        channel.close();
+        openChannel();
+        // Reads the index of the new file
+        lock().release();
+    }
+
+    private static ByteBuffer record(String internalName, ByteBuffer data) {
+        byte[] name = internalName.getBytes(UTF8);
+        ByteBuffer record = ByteBuffer.allocate(2 + name.length + 4 + data.remaining());
+        record.putShort((short) name.length).put(name).putInt(data.remaining()).put(data).flip();
+        return record;
+    }
+
+    private ByteBuffer getData(long entry) throws IOException {
+        long offset = entry >>> 24;
+        int length = (int) (entry & 0xffffff);
+        if (offset + length <= mapped.limit()) {
+            ByteBuffer data = mapped.duplicate();
+            data.position((int) offset).limit((int) offset + length);
+            return data.slice();
+        }
+        // Appended after the file was mapped
+        ByteBuffer data = ByteBuffer.allocate(length);
+        while (data.hasRemaining()) {
+            if (channel.read(data, offset + data.position()) < 0) {
+                throw new IOException("Unexpected end of file " + file);
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Returns the {@link ClazzInfo} of the class with the specified internal
+     * name or {@code null} if none has been stored.
+     */
+    synchronized ClazzInfo read(String internalName) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("ClazzInfoStore " + file + " has been closed");
+        }
+        Long entry = index.get(internalName);
+        if (entry == null) {
+            return null;
+        }
+        return ClazzInfoCodec.decode(getData(entry), interned);
+    }
+
+    /**
+     * Appends the specified {@link ClazzInfo} to the file.
+     */
+    synchronized void write(String internalName, ClazzInfo ci) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("ClazzInfoStore " + file + " has been closed");
+        }
+        byte[] data = ClazzInfoCodec.encode(ci);
+        if (data.length > 0xffffff) {
+            throw new IOException("ClazzInfo of " + internalName + " is too large");
+        }
+        ByteBuffer record = record(internalName, ByteBuffer.wrap(data));
+        while (true) {
+            try (FileLock lock = lock()) {
+                if (!damaged) {
+                    long position = channel.size();
+                    while (record.hasRemaining()) {
+                        position += channel.write(record, position);
+                    }
+                    size = position;
+                    index.put(internalName, pack(position - data.length, data.length));
+                    return;
+                }
+            }
+            compact();
+        }
+    }
+}
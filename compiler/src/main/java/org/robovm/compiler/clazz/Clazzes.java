@@ -23,9 +23,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.robovm.compiler.config.Config;
 
@@ -34,18 +36,56 @@ import soot.SootClass;
 import soot.options.Options;
 
 /**
+ * Loads and caches the {@link Clazz}es of the classes in the bootclasspath
+ * and classpath. Instances are thread safe. {@link #load(String)} is called
+ * concurrently from the front-end threads of the {@code AppCompiler}, e.g.
+ * when checking whether a class needs to be recompiled or when computing
+ * dependency digests. Code accessing Soot must in addition hold the Soot
+ * lock, see {@link #lockSoot()} and {@link #lockSootShared()}.
  *
  * @version $Id$
  */
 public class Clazzes {
+    /**
+     * Soot keeps its state in global singletons (e.g. {@link Scene#v()}) which
+     * aren't thread safe. Code which resolves classes, builds or transforms
+     * method bodies or otherwise modifies the Soot scene must hold the write
+     * lock. Code which only reads classes and bodies which have already been
+     * resolved and built must hold the read lock.
+     */
+    private static final ReentrantReadWriteLock sootLock = new ReentrantReadWriteLock();
+    /**
+     * The {@link Clazzes} which Soot has last been initialized for. Guarded
+     * by the write lock of {@code sootLock}.
+     */
+    private static Clazzes sootOwner = null;
+    private static volatile int sootGeneration = 0;
+    /**
+     * Internal names of the classes which have to be removed from the Soot
+     * scene before it is used again by this {@link Clazzes}. Guarded by the
+     * write lock of {@code sootLock}.
+     */
+    private final Set<String> staleSootClasses = new HashSet<String>();
+
     private final Config config;
     private final List<Path> bootclasspathPaths = new ArrayList<Path>();
     private final List<Path> classpathPaths = new ArrayList<Path>();
     private final List<Path> paths = new ArrayList<Path>();
+    /**
+     * The {@link Clazz}es loaded so far keyed by internal name. Maps to
+     * {@code null} if no {@link Path} contains the class. Guarded by
+     * {@code this}.
+     */
     private final Map<String, Clazz> cache = new HashMap<String, Clazz>();
-    private final List<Clazz> allClasses = new ArrayList<Clazz>();
+    /**
+     * All classes in all {@link Path}s. Only listed if needed.
+     */
+    private List<Clazz> allClasses = null;
 
-    private boolean sootInitialized = false;
+    /**
+     * The time when the {@link Path}s were last listed.
+     */
+    private long listTime;
 
     public Clazzes(Config config, List<File> bootclasspath, List<File> classpath) throws IOException {
         this.config = config;
@@ -54,7 +94,7 @@ public class Clazzes {
         addPaths(classpath, classpathPaths, seen, false);
         paths.addAll(bootclasspathPaths);
         paths.addAll(classpathPaths);
-        populateCache();
+        listTime = System.currentTimeMillis();
     }
 
     Config getConfig() {
@@ -88,9 +128,13 @@ public class Clazzes {
     }
 
     private Path createPath(File file, List<Path> cp, boolean inBootclasspath) throws IOException {
+        return createPath(file, cp.size(), inBootclasspath);
+    }
+
+    private Path createPath(File file, int index, boolean inBootclasspath) throws IOException {
         return file.isDirectory()
-                ? new DirectoryPath(file, this, cp.size(), inBootclasspath)
-                : new ZipFilePath(file, this, cp.size(), inBootclasspath);
+                ? new DirectoryPath(file, this, index, inBootclasspath)
+                : new ZipFilePath(file, this, index, inBootclasspath);
     }
 
     public Path createResourcesBootclasspathPath(File file) throws IOException {
@@ -113,19 +157,152 @@ public class Clazzes {
         return true;
     }
 
-    private void populateCache() {
+    private List<Clazz> populateCache() {
+        List<Clazz> result = new ArrayList<Clazz>();
+        Set<String> seen = new HashSet<String>();
         for (Path p : paths) {
             for (Clazz clazz : p.listClasses()) {
-                if (!cache.containsKey(clazz.getInternalName())) {
+                if (seen.add(clazz.getInternalName())) {
                     cache.put(clazz.getInternalName(), clazz);
-                    allClasses.add(clazz);
+                    result.add(clazz);
                 }
             }
         }
+        return result;
     }
 
-    public Clazz load(String internalName) {
+    /**
+     * Lists the classes in the {@link Path}s which have changed since they
+     * were last listed. Used when a {@link Config} is reused for another
+     * build. The {@link Clazz}es of unmodified classes are kept along with
+     * their {@link ClazzInfo}s. If any class has been added, modified or
+     * removed it is removed from the Soot scene the next time a
+     * {@link SootClass} is needed along with the classes depending on it,
+     * since their {@link SootClass}es may refer to the old one. The rest of
+     * the scene is kept.
+     * 
+     * @return the internal names of the added, modified and removed classes.
+     */
+    public synchronized Set<String> refresh() throws IOException {
+        // File timestamps may only have a resolution of one second.
+        long timestamp = listTime - 1000;
+        listTime = System.currentTimeMillis();
+        Set<String> changed = new HashSet<String>();
+        refresh(bootclasspathPaths, true, timestamp, changed);
+        refresh(classpathPaths, false, timestamp, changed);
+        if (!changed.isEmpty()) {
+            paths.clear();
+            paths.addAll(bootclasspathPaths);
+            paths.addAll(classpathPaths);
+            // Unmodified classes keep their Clazz. Forget their SootClass.
+            Set<Clazz> loaded = new HashSet<Clazz>(cache.values());
+            if (allClasses != null) {
+                loaded.addAll(allClasses);
+            }
+            loaded.remove(null);
+            cache.clear();
+            allClasses = null;
+            int sharedHolds = lockSoot();
+            try {
+                if (sootOwner == this) {
+                    staleSootClasses.addAll(getDependents(changed, loaded));
+                }
+                for (Clazz clazz : loaded) {
+                    clazz.reset();
+                }
+            } finally {
+                unlockSoot(sharedHolds);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the specified classes and the {@link Clazz}es in
+     * {@code loaded} which depend on them directly or indirectly. Only
+     * classes which have been loaded into the Soot scene are considered.
+     */
+    private static Set<String> getDependents(Set<String> classNames, Set<Clazz> loaded) {
+        Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+        for (Clazz clazz : loaded) {
+            ClazzInfo ci = clazz.hasSootClass() ? clazz.getClazzInfo() : null;
+            if (ci == null) {
+                continue;
+            }
+            for (Dependency dep : ci.getAllDependencies()) {
+                Set<String> s = dependents.get(dep.getClassName());
+                if (s == null) {
+                    s = new HashSet<String>();
+                    dependents.put(dep.getClassName(), s);
+                }
+                s.add(clazz.getInternalName());
+            }
+        }
+        Set<String> result = new HashSet<String>(classNames);
+        LinkedList<String> queue = new LinkedList<String>(classNames);
+        while (!queue.isEmpty()) {
+            Set<String> s = dependents.get(queue.removeFirst());
+            if (s != null) {
+                for (String className : s) {
+                    if (result.add(className)) {
+                        queue.add(className);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the files held open by the {@link Path}s of this
+     * {@link Clazzes}. Should be called once this {@link Clazzes} won't be
+     * used anymore.
+     */
+    public synchronized void close() throws IOException {
+        for (Path p : paths) {
+            ((AbstractPath) p).close();
+        }
+    }
+
+    private void refresh(List<Path> cp, boolean inBootclasspath, long timestamp, 
+            Set<String> changed) throws IOException {
+
+        for (int i = 0; i < cp.size(); i++) {
+            Path p = cp.get(i);
+            if (!p.getFile().exists() || !p.hasChangedSince(timestamp)) {
+                continue;
+            }
+            if (p instanceof ZipFilePath) {
+                // The archive has to be opened again. All of its classes are
+                // considered to have changed.
+                changed.addAll(((AbstractPath) p).listClassNames());
+                ((AbstractPath) p).close();
+                p = createPath(p.getFile(), p.getIndex(), inBootclasspath);
+                changed.addAll(((AbstractPath) p).listClassNames());
+                cp.set(i, p);
+            } else {
+                ((AbstractPath) p).refresh(timestamp, changed);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link Clazz} for the class with the specified internal name
+     * or {@code null} if not found. The first {@link Path} containing the
+     * class wins. {@link Clazz}es are created when first loaded. May be
+     * called from any thread.
+     */
+    public synchronized Clazz load(String internalName) {
         Clazz clazz = cache.get(internalName);
+        if (clazz == null && !cache.containsKey(internalName)) {
+            for (Path p : paths) {
+                clazz = ((AbstractPath) p).loadClass(internalName);
+                if (clazz != null) {
+                    break;
+                }
+            }
+            cache.put(internalName, clazz);
+        }
         if (clazz == null) {
             // Could be a generated class
             for (Path p : paths) {
@@ -160,16 +337,138 @@ public class Clazzes {
         return Collections.unmodifiableList(paths);
     }
 
-    public List<Clazz> listClasses() {
+    /**
+     * Lists all classes in all {@link Path}s. This has to list the contents
+     * of every {@link Path} so prefer {@link #load(String)} when possible.
+     */
+    public synchronized List<Clazz> listClasses() {
+        if (allClasses == null) {
+            allClasses = populateCache();
+        }
         return Collections.unmodifiableList(allClasses);
     }
 
+    /**
+     * Acquires exclusive access to Soot. Needed to resolve classes, to build
+     * or transform method bodies and to make any other changes to the Soot
+     * scene. Shared access held by the calling thread is given up while the
+     * exclusive access is held. Returns the number of shared holds given up
+     * which must be passed to {@link #unlockSoot(int)}.
+     */
+    public static int lockSoot() {
+        int sharedHolds = sootLock.getReadHoldCount();
+        for (int i = 0; i < sharedHolds; i++) {
+            sootLock.readLock().unlock();
+        }
+        sootLock.writeLock().lock();
+        return sharedHolds;
+    }
+
+    /**
+     * Releases exclusive access to Soot acquired by {@link #lockSoot()} and
+     * restores the shared access given up by it.
+     */
+    public static void unlockSoot(int sharedHolds) {
+        for (int i = 0; i < sharedHolds; i++) {
+            sootLock.readLock().lock();
+        }
+        sootLock.writeLock().unlock();
+    }
+
+    /**
+     * Acquires shared access to Soot. Any number of threads may read classes
+     * which have already been resolved and translate method bodies which have
+     * already been built while holding shared access. Code which needs to
+     * change Soot state while holding shared access must acquire exclusive
+     * access using {@link #lockSoot()}.
+     */
+    public static void lockSootShared() {
+        sootLock.readLock().lock();
+    }
+
+    /**
+     * Releases shared access to Soot acquired by {@link #lockSootShared()}.
+     */
+    public static void unlockSootShared() {
+        sootLock.readLock().unlock();
+    }
+
+    /**
+     * Returns the number of times Soot has been initialized. A
+     * {@link SootClass} loaded before Soot was last initialized belongs to an
+     * old scene and must not be used.
+     */
+    static int getSootGeneration() {
+        return sootGeneration;
+    }
+
     SootClass getSootClass(Clazz clazz) {
-        if (!sootInitialized) {
-            initializeSoot(this);
-            sootInitialized = true;
+        int sharedHolds = lockSoot();
+        try {
+            // Soot is global. Initialize it again if it was last initialized
+            // by another Clazzes, e.g. one of another Config kept by the
+            // CompilerDaemon. If classes have changed only those and the
+            // classes depending on them are removed.
+            if (sootOwner != this) {
+                initializeSoot(this);
+                sootOwner = this;
+                staleSootClasses.clear();
+                sootGeneration++;
+            } else if (!staleSootClasses.isEmpty()) {
+                removeSootClasses(staleSootClasses);
+                staleSootClasses.clear();
+                sootGeneration++;
+            }
+            return Scene.v().loadClassAndSupport(clazz.getClassName());
+        } finally {
+            unlockSoot(sharedHolds);
+        }
+    }
+
+    /**
+     * Removes the classes with the specified internal names from the Soot
+     * scene. Subclasses and implementations are removed too since
+     * {@link SootClass}es refer directly to their superclass and interfaces.
+     * The removed classes are loaded again from the class path when needed.
+     */
+    private static void removeSootClasses(Set<String> internalNames) {
+        Scene scene = Scene.v();
+        Set<SootClass> stale = new HashSet<SootClass>();
+        for (String internalName : internalNames) {
+            String className = internalName.replace('/', '.');
+            if (scene.containsClass(className)) {
+                stale.add(scene.getSootClass(className));
+            }
+        }
+        List<SootClass> classes = new ArrayList<SootClass>(scene.getClasses());
+        boolean changed = !stale.isEmpty();
+        while (changed) {
+            changed = false;
+            for (SootClass c : classes) {
+                if (!stale.contains(c) && c.resolvingLevel() >= SootClass.HIERARCHY
+                        && extendsStale(c, stale)) {
+                    stale.add(c);
+                    changed = true;
+                }
+            }
+        }
+        for (SootClass c : stale) {
+            scene.removeClass(c);
+        }
+        scene.releaseActiveHierarchy();
+        scene.releaseFastHierarchy();
+    }
+
+    private static boolean extendsStale(SootClass c, Set<SootClass> stale) {
+        if (c.hasSuperclass() && stale.contains(c.getSuperclass())) {
+            return true;
+        }
+        for (SootClass i : c.getInterfaces()) {
+            if (stale.contains(i)) {
+                return true;
+            }
         }
-        return Scene.v().loadClassAndSupport(clazz.getClassName());
+        return false;
     }
 
     private static String getSootClasspath(Clazzes clazzes) {
@@ -244,6 +543,19 @@ public class Clazzes {
         Options.v().setPhaseOption("jop.uce2", "enabled:false");
         Options.v().setPhaseOption("jop.ubf2", "enabled:false");
         Options.v().setPhaseOption("jop.ule", "enabled:false");
+        if (!clazzes.config.isDebug()) {
+            /*
+             * Enable copy propagation and constant propagation and folding
+             * in release builds. The resulting dead assignments are left for
+             * LLVM to remove since jop.dae would remove LDC instructions just
+             * like jb.dae. jop.nce must stay disabled since it would remove
+             * the nop inserted by MethodCompiler to work around a bug in
+             * jap.abc. jop.cse, jop.bcm and jop.lcm don't know about volatile
+             * fields and would hoist reads of them out of loops.
+             */
+            Options.v().setPhaseOption("jop.cp", "enabled:true");
+            Options.v().setPhaseOption("jop.cpf", "enabled:true");
+        }
 
         Scene.v().loadNecessaryClasses();
     }
@@ -16,16 +16,18 @@
  */
 package org.robovm.compiler.clazz;
 
-import java.io.Serializable;
+import java.io.IOException;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 /**
  * Abstract base class for dependencies.
  */
-public abstract class Dependency implements Serializable {
-    private static final long serialVersionUID = 1L;
-    
+public abstract class Dependency {
+    static final int KIND_CLASS = 0;
+    static final int KIND_INVOKE_METHOD = 1;
+    static final int KIND_SUPER_METHOD = 2;
+
     private final String className;
     private final String path;
     private final boolean inBootClasspath;
@@ -53,6 +55,45 @@ public abstract class Dependency implements Serializable {
     public boolean isWeak() {
         return weak;
     }
+
+    /**
+     * Returns a copy of this {@link Dependency} with the path and
+     * bootclasspath flag replaced with the specified values.
+     */
+    abstract Dependency relocate(String path, boolean inBootClasspath);
+
+    /**
+     * Returns the key of this {@link Dependency} in the dependency maps of
+     * {@link ClazzInfo} and {@link MethodInfo}.
+     */
+    abstract String getKey();
+
+    void write(ClazzInfoCodec.Encoder out) {
+        out.writeString(className);
+        out.writeString(path);
+        out.writeBoolean(inBootClasspath);
+        out.writeBoolean(weak);
+    }
+
+    static Dependency read(ClazzInfoCodec.Decoder in) throws IOException {
+        int kind = in.readInt();
+        String className = in.readString();
+        String path = in.readString();
+        boolean inBootClasspath = in.readBoolean();
+        boolean weak = in.readBoolean();
+        switch (kind) {
+        case KIND_CLASS:
+            return new ClassDependency(className, path, inBootClasspath, weak);
+        case KIND_INVOKE_METHOD:
+            return new InvokeMethodDependency(className, in.readString(), in.readString(), 
+                    path, inBootClasspath, weak);
+        case KIND_SUPER_METHOD:
+            return new SuperMethodDependency(className, in.readString(), in.readString(), 
+                    path, inBootClasspath, weak);
+        default:
+            throw new IOException("Unknown dependency kind " + kind);
+        }
+    }
     
     @Override
     public int hashCode() {
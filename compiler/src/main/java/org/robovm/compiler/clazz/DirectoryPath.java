@@ -60,6 +60,24 @@ public class DirectoryPath extends AbstractPath {
         return s;
     }
     
+    @Override
+    protected Clazz doLoadClass(String internalName) {
+        File f = new File(file, internalName + ".class");
+        if (!f.isFile()) {
+            return null;
+        }
+        try {
+            // On case insensitive file systems a class could otherwise be
+            // found using a differently cased name.
+            if (!f.getCanonicalFile().getName().equals(f.getName())) {
+                return null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new DirectoryPathClazz(clazzes, this, file, f);
+    }
+    
     @SuppressWarnings("unchecked")
     private List<File> listClassFiles() {
         List<File> files = new ArrayList<File>(
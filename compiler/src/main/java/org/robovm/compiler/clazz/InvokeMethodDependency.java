@@ -20,9 +20,23 @@ package org.robovm.compiler.clazz;
  * Records a dependency between a method and the methods it calls.
  */
 public class InvokeMethodDependency extends MethodDependency {
-    private static final long serialVersionUID = 1L;
-
     InvokeMethodDependency(String owner, String name, String desc, String path, boolean inBootClasspath, boolean weak) {
         super(owner, name, desc, path, inBootClasspath, weak);
     }
+
+    @Override
+    Dependency relocate(String path, boolean inBootClasspath) {
+        return new InvokeMethodDependency(getOwner(), getMethodName(), getMethodDesc(), path, inBootClasspath, isWeak());
+    }
+
+    @Override
+    String getKey() {
+        return "Invoke." + getOwner() + "." + getMethodName() + getMethodDesc();
+    }
+
+    @Override
+    void write(ClazzInfoCodec.Encoder out) {
+        out.writeInt(KIND_INVOKE_METHOD);
+        super.write(out);
+    }
 }
@@ -21,7 +21,6 @@ package org.robovm.compiler.clazz;
  * Records a dependency on a method.
  */
 public abstract class MethodDependency extends Dependency {
-    private static final long serialVersionUID = 1L;
 
     private final String owner;
     private final String name;
@@ -49,6 +48,13 @@ public abstract class MethodDependency extends Dependency {
         return desc;
     }
 
+    @Override
+    void write(ClazzInfoCodec.Encoder out) {
+        super.write(out);
+        out.writeString(name);
+        out.writeString(desc);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
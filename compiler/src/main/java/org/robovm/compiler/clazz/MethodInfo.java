@@ -16,7 +16,7 @@
  */
 package org.robovm.compiler.clazz;
 
-import java.io.Serializable;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.HashMap;
@@ -27,9 +27,7 @@ import java.util.Set;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.tuple.Triple;
 
-public class MethodInfo implements Serializable {
-    private static final long serialVersionUID = 1L;
-    
+public class MethodInfo {
     private final ClazzInfo ci;
     private int modifiers;
     private String name;
@@ -98,10 +96,31 @@ public class MethodInfo implements Serializable {
         }
     }
 
+    void relocateDependencies() {
+        dependencies = ClazzInfo.relocateDependencies(ci.getClazz().clazzes, dependencies);
+    }
+
     public Set<Dependency> getDependencies() {
         return new HashSet<Dependency>(dependencies.values());
     }
 
+    void write(ClazzInfoCodec.Encoder out) {
+        out.writeInt(modifiers);
+        out.writeString(name);
+        out.writeString(desc);
+        out.writeBoolean(callback);
+        out.writeBoolean(weaklyLinked);
+        out.writeBoolean(stronglyLinked);
+        out.writeDependencies(dependencies.values());
+    }
+
+    static MethodInfo read(ClazzInfo ci, ClazzInfoCodec.Decoder in) throws IOException {
+        MethodInfo mi = new MethodInfo(ci, in.readInt(), in.readString(), in.readString(), 
+                in.readBoolean(), in.readBoolean(), in.readBoolean());
+        mi.dependencies = in.readDependencies();
+        return mi;
+    }
+
     public String getName() {
         return name;
     }
@@ -22,9 +22,23 @@ package org.robovm.compiler.clazz;
  * given its interfaces but are actually already implemented by super classes.
  */
 public class SuperMethodDependency extends MethodDependency {
-    private static final long serialVersionUID = 1L;
-
     SuperMethodDependency(String owner, String name, String desc, String path, boolean inBootClasspath, boolean weak) {
         super(owner, name, desc, path, inBootClasspath, weak);
     }
+
+    @Override
+    Dependency relocate(String path, boolean inBootClasspath) {
+        return new SuperMethodDependency(getOwner(), getMethodName(), getMethodDesc(), path, inBootClasspath, isWeak());
+    }
+
+    @Override
+    String getKey() {
+        return "Super." + getOwner() + "." + getMethodName() + getMethodDesc();
+    }
+
+    @Override
+    void write(ClazzInfoCodec.Encoder out) {
+        out.writeInt(KIND_SUPER_METHOD);
+        super.write(out);
+    }
 }
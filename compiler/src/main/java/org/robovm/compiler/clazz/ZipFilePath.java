@@ -19,7 +19,7 @@ package org.robovm.compiler.clazz;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.zip.ZipEntry;
@@ -33,9 +33,17 @@ import org.apache.commons.io.IOUtils;
  */
 public class ZipFilePath extends AbstractPath {
     private final ZipFile zipFile;
+    private final long size;
+    private final long lastModified;
+    private ClassCatalog catalog;
     
     ZipFilePath(File f, Clazzes clazzes, int index, boolean inBootclasspath) throws IOException {
         super(f, clazzes, index, inBootclasspath);
+        // Read these before opening the archive. The archive may be replaced
+        // after it has been opened and the catalog must be stamped with the
+        // state of the archive that is actually listed.
+        this.size = f.length();
+        this.lastModified = f.lastModified();
         this.zipFile = new ZipFile(f);
     }
     
@@ -56,37 +64,57 @@ public class ZipFilePath extends AbstractPath {
     
     
     
+    /**
+     * Returns the {@link ClassCatalog} of this archive. Writes the catalog
+     * to the cache if this is the first time the archive is used.
+     */
+    private ClassCatalog getCatalog() {
+        if (catalog == null) {
+            try {
+                catalog = ClassCatalog.open(clazzes.getConfig().getClassCatalogFile(this),
+                        size, lastModified, zipFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return catalog;
+    }
+
     @Override
     protected Set<Clazz> doListClasses() {
         Set<Clazz> s = new TreeSet<Clazz>();
-        Enumeration<? extends ZipEntry> entries = zipFile.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry entry = entries.nextElement();
-            if (entry.getName().endsWith(".class")) {
-                s.add(new ZipFilePathClazz(entry));
-            }
+        for (String internalName : getCatalog()) {
+            s.add(new ZipFilePathClazz(internalName + ".class"));
         }
         return s;
     }
+
+    @Override
+    protected Clazz doLoadClass(String internalName) {
+        return getCatalog().contains(internalName) ? new ZipFilePathClazz(internalName + ".class") : null;
+    }
+
+    @Override
+    List<String> listClassNames() {
+        return getCatalog();
+    }
     
     public boolean hasChangedSince(long timestamp) {
         return file.lastModified() > timestamp;
     }    
     
     private class ZipFilePathClazz extends Clazz {
-        private final ZipEntry entry;
         private byte[] bytes = null;
         
-        ZipFilePathClazz(ZipEntry entry) {
-            super(ZipFilePath.this.clazzes, entry.getName(), ZipFilePath.this);
-            this.entry = entry;
+        ZipFilePathClazz(String entryName) {
+            super(ZipFilePath.this.clazzes, entryName, ZipFilePath.this);
         }
 
         public byte[] getBytes() throws IOException {
             if (bytes == null) {
                 InputStream in = null;
                 try {
-                    in = zipFile.getInputStream(entry);
+                    in = open(getFileName());
                     bytes = IOUtils.toByteArray(in);
                 } finally {
                     IOUtils.closeQuietly(in);
@@ -51,6 +51,7 @@ import org.apache.commons.io.IOUtils;
 import org.robovm.compiler.DependencyGraph;
 import org.robovm.compiler.ITable;
 import org.robovm.compiler.MarshalerLookup;
+import org.robovm.compiler.ObjectCache;
 import org.robovm.compiler.VTable;
 import org.robovm.compiler.Version;
 import org.robovm.compiler.clazz.Clazz;
@@ -105,6 +106,7 @@ public class Config {
      * very long class names for auto-generated classes. See #955.
      */
     private static final int MAX_FILE_NAME_LENGTH = 255;
+    private static final long DEFAULT_SHARED_CACHE_MAX_SIZE = 4L * 1024 * 1024 * 1024;
 
     public enum Cacerts {
         full
@@ -136,6 +138,8 @@ public class Config {
     private ArrayList<String> roots;
     @ElementList(required = false, entry = "pattern")
     private ArrayList<String> forceLinkClasses;
+    @ElementList(required = false, entry = "pattern")
+    private ArrayList<String> buildTimeInitClasses;
     @ElementList(required = false, entry = "lib")
     private ArrayList<Lib> libs;
     @ElementList(required = false, entry = "symbol")
@@ -186,6 +190,8 @@ public class Config {
     private File tmpDir;
     private File cacheDir = new File(System.getProperty("user.home"), ".robovm/cache");
     private File ccBinPath = null;
+    private File sharedCacheDir = null;
+    private long sharedCacheMaxSize = DEFAULT_SHARED_CACHE_MAX_SIZE;
 
     private boolean clean = false;
     private boolean debug = false;
@@ -193,6 +199,8 @@ public class Config {
     private boolean skipLinking = false;
     private boolean skipInstall = false;
     private boolean dumpIntermediates = false;
+    private boolean useDigests = false;
+    private boolean wholeProgram = false;
     private int threads = Runtime.getRuntime().availableProcessors();
     private Logger logger = Logger.NULL_LOGGER;
 
@@ -215,6 +223,7 @@ public class Config {
     private transient Config configBeforeBuild;
     private transient DependencyGraph dependencyGraph;
     private transient Arch sliceArch;
+    private transient ObjectCache objectCache;
 
     protected Config() throws IOException {
         // Add standard plugins
@@ -265,6 +274,14 @@ public class Config {
         return osArchCacheDir;
     }
 
+    /**
+     * Returns the {@link ObjectCache} shared between projects or {@code null}
+     * if no shared cache has been configured.
+     */
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
     public File getCcBinPath() {
         return ccBinPath;
     }
@@ -310,6 +327,23 @@ public class Config {
         return dumpIntermediates;
     }
 
+    /**
+     * Returns {@code true} if content digests rather than file modification
+     * times should be used to determine whether a class has to be recompiled.
+     */
+    public boolean isUseDigests() {
+        return useDigests;
+    }
+
+    /**
+     * Returns {@code true} if the optimized bitcode of all classes should be
+     * merged into a few partitions and optimized across class boundaries when
+     * linking. Only used in release builds.
+     */
+    public boolean isWholeProgram() {
+        return wholeProgram && !debug;
+    }
+
     public boolean isSkipRuntimeLib() {
         return skipRuntimeLib != null && skipRuntimeLib.booleanValue();
     }
@@ -349,7 +383,25 @@ public class Config {
     public DependencyGraph getDependencyGraph() {
         return dependencyGraph;
     }
-    
+
+    /**
+     * Builds the {@link Config} of the slice for the specified {@link Arch}
+     * of a fat binary. The slice gets its own temporary and cache directories
+     * but shares the {@link Clazzes} and the {@link DependencyGraph} of this
+     * {@link Config}. Classes are run through Soot and the tree shaker once
+     * for all slices.
+     */
+    public Config buildSliceConfig(Arch arch) throws IOException {
+        Config sliceConfig = builder()
+                .arch(arch)
+                .tmpDir(new File(tmpDir, arch.toString()))
+                .build();
+        sliceConfig.clazzes.close();
+        sliceConfig.clazzes = clazzes;
+        sliceConfig.dependencyGraph = dependencyGraph;
+        return sliceConfig;
+    }
+
     public File getTmpDir() {
         if (tmpDir == null) {
             try {
@@ -368,6 +420,15 @@ public class Config {
                 : Collections.unmodifiableList(forceLinkClasses);
     }
 
+    /**
+     * Returns the patterns of the classes whose static initializers should be
+     * evaluated at build time if possible.
+     */
+    public List<String> getBuildTimeInitClasses() {
+        return buildTimeInitClasses == null ? Collections.<String> emptyList()
+                : Collections.unmodifiableList(buildTimeInitClasses);
+    }
+
     public List<String> getExportedSymbols() {
         return exportedSymbols == null ? Collections.<String> emptyList()
                 : Collections.unmodifiableList(exportedSymbols);
@@ -593,8 +654,8 @@ public class Config {
         return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.lines.ll"));
     }
 
-    public File getInfoFile(Clazz clazz) {
-        return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.info"));
+    public File getDigestFile(Clazz clazz) {
+        return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.digest"));
     }
 
     public File getCacheDir(Path path) {
@@ -618,6 +679,28 @@ public class Config {
         return new File(pathCacheDir.getParentFile(), pathCacheDir.getName() + ".generated");
     }
 
+    /**
+     * Returns the file where the {@code ClazzInfo}s of the classes in the
+     * specified {@link Path} are stored. The file is stored in the cache
+     * directory at the same level as the cache dir for the {@link Path} with
+     * <code>.infos</code> appended to the file name.
+     */
+    public File getClazzInfoStoreFile(Path path) {
+        File pathCacheDir = getCacheDir(path);
+        return new File(pathCacheDir.getParentFile(), pathCacheDir.getName() + ".infos");
+    }
+
+    /**
+     * Returns the file where the {@code ClassCatalog} of the specified archive
+     * {@link Path} is stored. The catalog is stored in the cache directory in
+     * a file at the same level as the cache dir for the {@link Path} with
+     * <code>.catalog</code> appended to the file name.
+     */
+    public File getClassCatalogFile(Path path) {
+        File pathCacheDir = getCacheDir(path);
+        return new File(pathCacheDir.getParentFile(), pathCacheDir.getName() + ".catalog");
+    }
+
     private static Map<Object, Object> getManifestAttributes(File jarFile) throws IOException {
         JarFile jf = null;
         try {
@@ -688,6 +771,7 @@ public class Config {
         to.exportedSymbols = mergeLists(from.exportedSymbols, to.exportedSymbols);
         to.unhideSymbols = mergeLists(from.unhideSymbols, to.unhideSymbols);
         to.forceLinkClasses = mergeLists(from.forceLinkClasses, to.forceLinkClasses);
+        to.buildTimeInitClasses = mergeLists(from.buildTimeInitClasses, to.buildTimeInitClasses);
         to.frameworkPaths = mergeLists(from.frameworkPaths, to.frameworkPaths);
         to.frameworks = mergeLists(from.frameworks, to.frameworks);
         to.libs = mergeLists(from.libs, to.libs);
@@ -724,6 +808,7 @@ public class Config {
         this.exportedSymbols = config.exportedSymbols;
         this.unhideSymbols = config.unhideSymbols;
         this.forceLinkClasses = config.forceLinkClasses;
+        this.buildTimeInitClasses = config.buildTimeInitClasses;
         this.frameworkPaths = config.frameworkPaths;
         this.frameworks = config.frameworks;
         this.libs = config.libs;
@@ -872,8 +957,10 @@ public class Config {
         osArchDepLibDir = new File(new File(home.libVmDir, os.toString()),
                 sliceArch.toString());
 
+        // The slices of a fat binary share the DependencyGraph of this Config
         if (treeShakerMode != null && treeShakerMode != TreeShakerMode.none 
-                && os.getFamily() == Family.darwin && sliceArch == Arch.x86) {
+                && os.getFamily() == Family.darwin
+                && (sliceArch == Arch.x86 || getArchs().contains(Arch.x86))) {
 
             logger.warn("Tree shaking is not supported when building "
                     + "for OS X/iOS x86 32-bit due to a bug in Xcode's linker. No tree "
@@ -893,6 +980,10 @@ public class Config {
         osArchCacheDir = new File(archDir, debug ? "debug" : "release");
         osArchCacheDir.mkdirs();
 
+        if (sharedCacheDir != null) {
+            objectCache = new ObjectCache(this, sharedCacheDir, sharedCacheMaxSize);
+        }
+
         this.clazzes = new Clazzes(this, realBootclasspath, classpath);
 
         mergeConfigsFromClasspath();
@@ -1162,6 +1253,16 @@ public class Config {
             return this;
         }
 
+        public Builder sharedCacheDir(File sharedCacheDir) {
+            config.sharedCacheDir = sharedCacheDir;
+            return this;
+        }
+
+        public Builder sharedCacheMaxSize(long sharedCacheMaxSize) {
+            config.sharedCacheMaxSize = sharedCacheMaxSize;
+            return this;
+        }
+
         public Builder clean(boolean b) {
             config.clean = b;
             return this;
@@ -1187,6 +1288,16 @@ public class Config {
             return this;
         }
 
+        public Builder useDigests(boolean b) {
+            config.useDigests = b;
+            return this;
+        }
+
+        public Builder wholeProgram(boolean b) {
+            config.wholeProgram = b;
+            return this;
+        }
+
         public Builder skipRuntimeLib(boolean b) {
             config.skipRuntimeLib = b;
             return this;
@@ -1242,6 +1353,21 @@ public class Config {
             return this;
         }
 
+        public Builder clearBuildTimeInitClasses() {
+            if (config.buildTimeInitClasses != null) {
+                config.buildTimeInitClasses.clear();
+            }
+            return this;
+        }
+
+        public Builder addBuildTimeInitClass(String pattern) {
+            if (config.buildTimeInitClasses == null) {
+                config.buildTimeInitClasses = new ArrayList<String>();
+            }
+            config.buildTimeInitClasses.add(pattern);
+            return this;
+        }
+
         public Builder clearExportedSymbols() {
             if (config.exportedSymbols != null) {
                 config.exportedSymbols.clear();
@@ -48,6 +48,14 @@ public class Alias {
         return value.getType();
     }
     
+    public Linkage getLinkage() {
+        return linkage;
+    }
+
+    public Constant getAliasee() {
+        return value;
+    }
+
     public String getDefinition() {
         StringBuilder sb = new StringBuilder();
         sb.append("@\"");
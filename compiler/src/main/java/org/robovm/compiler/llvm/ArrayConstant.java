@@ -29,6 +29,10 @@ public class ArrayConstant extends Constant {
         this.values = values;
     }
     
+    public Value[] getValues() {
+        return values.clone();
+    }
+
     @Override
     public Type getType() {
         return type;
@@ -16,6 +16,9 @@
  */
 package org.robovm.compiler.llvm;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -100,23 +103,31 @@ public class BasicBlock {
         return instructions.get(instructions.size() - 1);
     }
     
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(getName());
-        sb.append(":\n");
+    public void write(Writer writer) throws IOException {
+        writer.write(getName());
+        writer.write(":\n");
         for (Instruction instruction : instructions) {
-            sb.append("    ");
-            sb.append(instruction.toString());
+            writer.write("    ");
+            writer.write(instruction.toString());
             List<Metadata> metadata = instruction.getMetadata();
             if (!metadata.isEmpty()) {
                 for (Metadata md : metadata) {
-                    sb.append(", ");
-                    sb.append(md.toString());
+                    writer.write(", ");
+                    writer.write(md.toString());
                 }
             }
-            sb.append('\n');
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringWriter sw = new StringWriter();
+        try {
+            write(sw);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return sb.toString();
+        return sw.toString();
     }
 }
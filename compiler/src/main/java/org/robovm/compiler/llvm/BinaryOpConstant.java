@@ -29,4 +29,12 @@ public abstract class BinaryOpConstant extends Constant {
         this.op1 = op1;
         this.op2 = op2;
     }
+
+    public Constant getOp1() {
+        return op1;
+    }
+
+    public Constant getOp2() {
+        return op2;
+    }
 }
@@ -35,6 +35,18 @@ public abstract class BinaryOpInstruction extends Instruction {
         this.op2 = op2;
     }
     
+    public Variable getResult() {
+        return result;
+    }
+
+    public Value getOp1() {
+        return op1;
+    }
+
+    public Value getOp2() {
+        return op2;
+    }
+
     @Override
     public Set<Variable> getWritesTo() {
         return Collections.singleton(result);
@@ -31,6 +31,10 @@ public class BooleanConstant extends Constant {
         this.value = value;
     }
     
+    public boolean getValue() {
+        return value;
+    }
+
     @Override
     public Type getType() {
         return Type.I1;
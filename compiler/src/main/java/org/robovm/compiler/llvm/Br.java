@@ -44,6 +44,18 @@ public class Br extends Instruction {
         this.destFalse = destFalse;
     }
     
+    public Value getCondition() {
+        return cond;
+    }
+
+    public BasicBlockRef getTrueDest() {
+        return destTrue;
+    }
+
+    public BasicBlockRef getFalseDest() {
+        return destFalse;
+    }
+
     @Override
     public Set<VariableRef> getReadsFrom() {
         if (cond instanceof VariableRef) {
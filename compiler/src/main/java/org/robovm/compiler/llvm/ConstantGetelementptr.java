@@ -38,6 +38,14 @@ public class ConstantGetelementptr extends Constant {
         this.idx = idx;
     }
     
+    public Constant getConstant() {
+        return cst;
+    }
+
+    public int[] getIndexes() {
+        return idx.clone();
+    }
+
     @Override
     public Type getType() {
         Type t = (AggregateType) ((PointerType) cst.getType()).getBase();
@@ -31,6 +31,10 @@ public abstract class ConversionConstant extends Constant {
         this.type = type;
     }
     
+    public Constant getConstant() {
+        return cst;
+    }
+
     @Override
     public Type getType() {
         return type;
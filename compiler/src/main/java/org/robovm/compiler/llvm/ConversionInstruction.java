@@ -30,6 +30,10 @@ public abstract class ConversionInstruction extends UnaryOpInstruction {
         this.type = type;
     }
     
+    public Type getType() {
+        return type;
+    }
+
     @Override
     public String toString() {
         return result + " = " + name + " " + op.getType() + " " + op + " to " + type;
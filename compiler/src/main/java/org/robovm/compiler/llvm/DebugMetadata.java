@@ -26,6 +26,10 @@ public class DebugMetadata extends Metadata {
         this.value = value;
     }
 
+    public MetadataNode getValue() {
+        return value;
+    }
+
     @Override
     public String toString() {
         return "!dbg " + value;
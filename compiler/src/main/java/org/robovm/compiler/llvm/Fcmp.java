@@ -41,6 +41,10 @@ public class Fcmp extends BinaryOpInstruction {
         this.cond = cond;
     }
     
+    public Condition getCondition() {
+        return cond;
+    }
+
     @Override
     public String toString() {
         return result + " = fcmp " + cond + " " + op1.getType() + " " + op1 + ", " + op2;
@@ -27,6 +27,10 @@ public class Fence extends Instruction {
         this.ordering = ordering;
     }
     
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
     @Override
     public String toString() {
         return "fence " + ordering;
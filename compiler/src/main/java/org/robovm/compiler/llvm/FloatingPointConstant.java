@@ -42,6 +42,10 @@ public class FloatingPointConstant extends Constant {
         return type;
     }
 
+    public Number getValue() {
+        return (Number) value;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -70,6 +70,18 @@ public class Function {
         return type;
     }
     
+    public Linkage getLinkage() {
+        return linkage;
+    }
+
+    public FunctionAttribute[] getAttributes() {
+        return attributes != null ? attributes.clone() : new FunctionAttribute[0];
+    }
+
+    public String getSection() {
+        return section;
+    }
+
     public VariableRef getParameterRef(int index) {
         return new VariableRef(parameterNames[index], type.getParameterTypes()[index]);
     }
@@ -90,6 +102,11 @@ public class Function {
         parameterAttributes[paramIndex] = attributes.clone();
     }
     
+    public ParameterAttribute[] getParameterAttributes(int paramIndex) {
+        return parameterAttributes[paramIndex] != null
+                ? parameterAttributes[paramIndex].clone() : new ParameterAttribute[0];
+    }
+
     String getLabel(BasicBlock bb) {
         return "label" + basicBlockList.indexOf(bb);
     }
@@ -199,7 +216,7 @@ public class Function {
         }
         writer.write(" {\n");
         for (BasicBlock bb : basicBlockList) {
-            writer.write(bb.toString());
+            bb.write(writer);
         }
         writer.write("}\n");
     }
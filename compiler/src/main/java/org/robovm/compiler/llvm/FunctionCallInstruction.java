@@ -62,6 +62,18 @@ public abstract class FunctionCallInstruction extends Instruction {
         return arguments;
     }
     
+    public Variable getResult() {
+        return result;
+    }
+
+    public Value getFunction() {
+        return function;
+    }
+
+    public Argument[] getArguments() {
+        return args.clone();
+    }
+
     @Override
     public Set<Variable> getWritesTo() {
         if (result != null) {
@@ -61,6 +61,18 @@ public class Getelementptr extends Instruction {
         this.idx = idx;
     }
     
+    public Variable getResult() {
+        return result;
+    }
+
+    public Value getPointer() {
+        return ptr;
+    }
+
+    public Value[] getIndexes() {
+        return idx.clone();
+    }
+
     @Override
     public Set<Variable> getWritesTo() {
         return Collections.singleton(result);
@@ -28,6 +28,7 @@ public class Global {
     private final Type type;
     private final boolean constant;
     private final String section;
+    private final int alignment;
 
     public Global(String name, Type type) {
         this(name, Linkage.external, type, false);
@@ -44,6 +45,7 @@ public class Global {
         this.type = type;
         this.constant = constant;
         this.section = null;
+        this.alignment = 0;
     }
     
     public Global(String name, Constant value) {
@@ -67,12 +69,17 @@ public class Global {
     }
     
     public Global(String name, Linkage linkage, Constant value, boolean constant, String section) {
+        this(name, linkage, value, constant, section, 0);
+    }
+    
+    public Global(String name, Linkage linkage, Constant value, boolean constant, String section, int alignment) {
         this.name = name;
         this.linkage = linkage;
         this.value = value;
         this.type = value.getType();
         this.constant = constant;
         this.section = section;
+        this.alignment = alignment;
     }
     
     public GlobalRef ref() {
@@ -87,6 +94,26 @@ public class Global {
         return new PointerType(type);
     }
     
+    public Linkage getLinkage() {
+        return linkage;
+    }
+
+    public Constant getValue() {
+        return value;
+    }
+
+    public boolean isConstant() {
+        return constant;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public int getAlignment() {
+        return alignment;
+    }
+
     public String getDefinition() {
         StringBuilder sb = new StringBuilder();
         sb.append("@\"");
@@ -111,6 +138,10 @@ public class Global {
             sb.append(section);
             sb.append('"');
         }
+        if (alignment > 0) {
+            sb.append(", align ");
+            sb.append(alignment);
+        }
         return sb.toString();
     }
     
@@ -40,6 +40,10 @@ public class Icmp extends BinaryOpInstruction {
         this.cond = cond;
     }
     
+    public Condition getCondition() {
+        return cond;
+    }
+
     @Override
     public String toString() {
         return result + " = icmp " + cond + " " + op1.getType() + " " + op1 + ", " + op2;
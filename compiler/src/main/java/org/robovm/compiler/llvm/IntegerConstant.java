@@ -58,6 +58,10 @@ public class IntegerConstant extends Constant implements Comparable<IntegerConst
         return type;
     }
 
+    public Number getValue() {
+        return (Number) value;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
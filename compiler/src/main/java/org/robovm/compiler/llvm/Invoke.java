@@ -50,6 +50,14 @@ public class Invoke extends FunctionCallInstruction {
     }
 
     
+    public BasicBlockRef getTo() {
+        return to;
+    }
+
+    public BasicBlockRef getUnwind() {
+        return unwind;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -40,6 +40,22 @@ public class Landingpad extends Instruction {
         System.arraycopy(clauses, 0, this.clauses, 0, clauses.length);
     }
 
+    public Variable getResult() {
+        return result;
+    }
+
+    public Constant getPersonalityFn() {
+        return personalityFn;
+    }
+
+    public boolean isCleanup() {
+        return cleanup;
+    }
+
+    public Clause[] getClauses() {
+        return clauses.clone();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -67,6 +83,11 @@ public class Landingpad extends Instruction {
         public Catch(Value value) {
             this.value = value;
         }
+
+        public Value getValue() {
+            return value;
+        }
+
         @Override
         public String toString() {
             return "catch " + value.getType() + " " + value;
@@ -78,6 +99,11 @@ public class Landingpad extends Instruction {
         public Filter(ArrayConstant value) {
             this.value = value;
         }
+
+        public ArrayConstant getValue() {
+            return value;
+        }
+
         @Override
         public String toString() {
             return "filter " + value.getType() + " " + value;
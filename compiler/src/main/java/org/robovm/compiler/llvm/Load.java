@@ -42,6 +42,18 @@ public class Load extends UnaryOpInstruction {
         this.alignment = alignment;
     }
     
+    public boolean isVolatile() {
+        return _volatile;
+    }
+
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
+    public int getAlignment() {
+        return alignment;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
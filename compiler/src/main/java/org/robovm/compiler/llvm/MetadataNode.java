@@ -33,6 +33,10 @@ public class MetadataNode extends Metadata {
         this.values = values.toArray(new Value[values.size()]);
     }
 
+    public Value[] getValues() {
+        return values.clone();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -37,6 +37,10 @@ public class MetadataString extends Metadata {
         }
     }
 
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
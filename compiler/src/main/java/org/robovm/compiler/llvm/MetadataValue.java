@@ -28,6 +28,10 @@ public class MetadataValue extends Metadata {
         this.value = value;
     }
 
+    public Value getValue() {
+        return value;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
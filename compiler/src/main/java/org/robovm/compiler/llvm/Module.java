@@ -22,6 +22,10 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URL;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 
@@ -30,6 +34,14 @@ import org.apache.commons.io.IOUtils;
  * @version $Id$
  */
 public class Module {
+    /**
+     * Matches the first line of function definitions in include files. The
+     * linkage is dropped since it's not allowed on declarations.
+     */
+    private static final Pattern DEFINE_PATTERN = 
+            Pattern.compile("^define\\s+(?:(?:private|internal|linkonce_odr|linkonce|weak_odr|weak)\\s+)?(.*?)\\s*\\{\\s*$");
+    private static final ConcurrentMap<String, String[]> includeCache = new ConcurrentHashMap<>();
+
     private final Collection<URL> includes;
     private final Collection<Global> globals;
     private final Collection<Alias> aliases;    
@@ -57,17 +69,55 @@ public class Module {
         this.unnamedMetadata = unnamedMetadata;
     }
 
+    public Collection<URL> getIncludes() {
+        return includes;
+    }
+
+    public Collection<UserType> getTypes() {
+        return types;
+    }
+
+    public Collection<Global> getGlobals() {
+        return globals;
+    }
+
+    public Collection<Alias> getAliases() {
+        return aliases;
+    }
+
+    public Collection<FunctionDeclaration> getFunctionDeclarations() {
+        return functionDeclarations;
+    }
+
+    public Collection<String> getAsm() {
+        return asm;
+    }
+
+    public Collection<Function> getFunctions() {
+        return functions;
+    }
+
+    public Collection<NamedMetadata> getNamedMetadata() {
+        return namedMetadata;
+    }
+
+    public Collection<UnnamedMetadata> getUnnamedMetadata() {
+        return unnamedMetadata;
+    }
+
     public void write(Writer writer) throws IOException {
+        write(writer, true);
+    }
+
+    /**
+     * Writes this module as LLVM IR. If {@code includeDefinitions} is
+     * {@code false} the function definitions in the included files will be
+     * replaced by declarations. The definitions then have to be linked in
+     * after the IR has been parsed.
+     */
+    public void write(Writer writer, boolean includeDefinitions) throws IOException {
         for (URL g : includes) {
-            InputStream in = null;
-            try {
-                in = g.openStream();
-                IOUtils.copy(in, writer, "UTF-8");
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            } finally {
-                IOUtils.closeQuietly(in);
-            }
+            writer.write(readInclude(g, includeDefinitions));
             writer.write("\n");
         }
         writer.write("\n");
@@ -100,7 +150,7 @@ public class Module {
         }
         writer.write("\n");
         for (Function f : functions) {
-            writer.write(f.toString());
+            f.write(writer);
             writer.write("\n");
         }
         writer.write("\n");
@@ -115,6 +165,48 @@ public class Module {
         }
     }
 
+    /**
+     * Returns the contents of the specified include file. If
+     * {@code includeDefinitions} is {@code false} all function definitions
+     * (<code>define ... { ... }</code>) will be replaced by declarations.
+     * Include files are only read once.
+     */
+    public static String readInclude(URL url, boolean includeDefinitions) {
+        String[] texts = includeCache.get(url.toString());
+        if (texts == null) {
+            String text = null;
+            try (InputStream in = url.openStream()) {
+                text = IOUtils.toString(in, "UTF-8");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            texts = new String[] {text, stripDefinitions(text)};
+            includeCache.putIfAbsent(url.toString(), texts);
+        }
+        return includeDefinitions ? texts[0] : texts[1];
+    }
+
+    private static String stripDefinitions(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean inBody = false;
+        for (String line : text.split("\n")) {
+            if (inBody) {
+                if (line.startsWith("}")) {
+                    inBody = false;
+                }
+                continue;
+            }
+            Matcher m = DEFINE_PATTERN.matcher(line);
+            if (m.matches()) {
+                sb.append("declare ").append(m.group(1)).append('\n');
+                inBody = true;
+            } else {
+                sb.append(line).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
     @Override
     public String toString() {
         StringWriter sw = new StringWriter();
@@ -0,0 +1,869 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.llvm;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.robovm.llvm.binding.AtomicOrdering;
+import org.robovm.llvm.binding.Attribute;
+import org.robovm.llvm.binding.BasicBlockRefArray;
+import org.robovm.llvm.binding.BuilderRef;
+import org.robovm.llvm.binding.ContextRef;
+import org.robovm.llvm.binding.IntPredicate;
+import org.robovm.llvm.binding.LLVM;
+import org.robovm.llvm.binding.ModuleRef;
+import org.robovm.llvm.binding.RealPredicate;
+import org.robovm.llvm.binding.TypeRef;
+import org.robovm.llvm.binding.TypeRefArray;
+import org.robovm.llvm.binding.ValueRef;
+import org.robovm.llvm.binding.ValueRefArray;
+
+/**
+ * Builds the contents of a {@link Module} directly in an
+ * {@link org.robovm.llvm.Module} using the LLVM C API instead of writing the
+ * {@link Module} as IR text and parsing it back. The include files of the
+ * {@link Module} are not translated. Anything they declare must already be in
+ * the target {@link org.robovm.llvm.Module}, e.g. by starting from a clone of
+ * a module parsed from the includes.
+ * <p>
+ * Throws {@link UnsupportedOperationException} if the {@link Module} contains
+ * something which cannot be built through the C API. The target
+ * {@link org.robovm.llvm.Module} is left in an undefined state in that case
+ * and callers should fall back to the IR text produced by
+ * {@link Module#write(java.io.Writer, boolean)}.
+ */
+public class ModuleTranslator {
+    private static final BigInteger UNSIGNED_64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private final Module source;
+    private final ModuleRef module;
+    private final ContextRef context;
+    private final BuilderRef builder;
+    private final Map<Type, TypeRef> types = new HashMap<>();
+    private final Map<String, TypeRef> namedTypes = new HashMap<>();
+    private final Map<String, ValueRef> globalValues = new HashMap<>();
+    private final Map<Integer, UnnamedMetadata> unnamedMetadata = new HashMap<>();
+    private final Map<Integer, ValueRef> unnamedMetadataRefs = new HashMap<>();
+    private final Set<Integer> unnamedMetadataInProgress = new HashSet<>();
+    private int dbgKind = -1;
+
+    // State of the function currently being built
+    private ValueRef function;
+    private final Map<String, ValueRef> locals = new HashMap<>();
+    private final Map<String, ValueRef> placeholders = new HashMap<>();
+    private final Map<Label, org.robovm.llvm.binding.BasicBlockRef> blocks = new HashMap<>();
+    private org.robovm.llvm.binding.BasicBlockRef placeholderBlock;
+    private org.robovm.llvm.binding.BasicBlockRef currentBlock;
+
+    private ModuleTranslator(Module source, org.robovm.llvm.Module target) {
+        this.source = source;
+        this.module = target.getRef();
+        this.context = LLVM.GetModuleContext(module);
+        this.builder = LLVM.CreateBuilderInContext(context);
+    }
+
+    /**
+     * Builds the types, globals, aliases, functions and metadata of the
+     * specified {@link Module} in the specified
+     * {@link org.robovm.llvm.Module}.
+     *
+     * @throws UnsupportedOperationException if something in the
+     *             {@link Module} can't be built through the C API.
+     */
+    public static void translate(Module source, org.robovm.llvm.Module target) {
+        ModuleTranslator translator = new ModuleTranslator(source, target);
+        try {
+            translator.translate();
+        } finally {
+            LLVM.DisposeBuilder(translator.builder);
+        }
+    }
+
+    private void translate() {
+        for (UnnamedMetadata md : source.getUnnamedMetadata()) {
+            unnamedMetadata.put(md.getIndex(), md);
+        }
+
+        if (!source.getAsm().isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (String s : source.getAsm()) {
+                if (s.indexOf('\\') != -1) {
+                    throw new UnsupportedOperationException("Escapes in module asm");
+                }
+                sb.append(s).append('\n');
+            }
+            LLVM.SetModuleInlineAsm(module, checkName(sb.toString()));
+        }
+
+        // Named types first since everything else may refer to them
+        for (UserType type : source.getTypes()) {
+            if (type.hasAlias() && (type instanceof StructureType || type instanceof OpaqueType)) {
+                String name = typeName(type);
+                namedTypes.put(name, LLVM.StructCreateNamed(context, checkName(name)));
+            }
+        }
+        for (UserType type : source.getTypes()) {
+            if (type.hasAlias() && type instanceof StructureType) {
+                StructureType st = (StructureType) type;
+                TypeRefArray elements = typeArray(st);
+                LLVM.StructSetBody(namedTypes.get(typeName(type)), elements,
+                        st.getTypeCount(), st instanceof PackedStructureType);
+                elements.delete();
+            }
+        }
+
+        // Declare all functions and globals before any initializers or
+        // bodies are built since those may refer to any of them.
+        for (FunctionDeclaration fd : source.getFunctionDeclarations()) {
+            ValueRef fn = LLVM.GetNamedFunction(module, fd.getName());
+            if (fn == null) {
+                fn = LLVM.AddFunction(module, checkName(fd.getName()), functionType(fd.getType()));
+            }
+            globalValues.put(fd.getName(), fn);
+        }
+        for (Function f : source.getFunctions()) {
+            ValueRef fn = LLVM.GetNamedFunction(module, f.getName());
+            if (fn != null && !LLVM.IsDeclaration(fn)) {
+                throw new UnsupportedOperationException("Redefinition of function " + f.getName());
+            }
+            if (fn == null) {
+                fn = LLVM.AddFunction(module, checkName(f.getName()), functionType(f.getType()));
+            }
+            if (f.getLinkage() != null) {
+                LLVM.SetLinkage(fn, linkage(f.getLinkage()));
+            }
+            for (FunctionAttribute attr : f.getAttributes()) {
+                LLVM.AddFunctionAttr(fn, attribute(attr).swigValue());
+            }
+            if (f.getSection() != null) {
+                LLVM.SetSection(fn, checkName(f.getSection()));
+            }
+            String[] parameterNames = f.getParameterNames();
+            for (int i = 0; i < parameterNames.length; i++) {
+                ValueRef param = LLVM.GetParam(fn, i);
+                LLVM.SetValueName(param, checkName(parameterNames[i]));
+                for (ParameterAttribute attr : f.getParameterAttributes(i)) {
+                    LLVM.AddAttribute(param, attribute(attr).swigValue());
+                }
+            }
+            globalValues.put(f.getName(), fn);
+        }
+        for (Global g : source.getGlobals()) {
+            if (globalValues.containsKey(g.getName()) || LLVM.GetNamedGlobal(module, g.getName()) != null) {
+                throw new UnsupportedOperationException("Redefinition of global " + g.getName());
+            }
+            ValueRef gv = LLVM.AddGlobal(module, type(g.getType().getBase()), checkName(g.getName()));
+            if (g.getLinkage() != null) {
+                LLVM.SetLinkage(gv, linkage(g.getLinkage()));
+            }
+            LLVM.SetGlobalConstant(gv, g.isConstant());
+            if (g.getSection() != null) {
+                LLVM.SetSection(gv, checkName(g.getSection()));
+            }
+            if (g.getAlignment() > 0) {
+                LLVM.SetAlignment(gv, g.getAlignment());
+            }
+            globalValues.put(g.getName(), gv);
+        }
+        for (Alias a : source.getAliases()) {
+            ValueRef aliasee = constant(a.getAliasee());
+            ValueRef alias = LLVM.AddAlias(module, type(a.getType()), aliasee, checkName(a.getName()));
+            if (a.getLinkage() != null) {
+                LLVM.SetLinkage(alias, linkage(a.getLinkage()));
+            }
+            globalValues.put(a.getName(), alias);
+        }
+
+        for (Global g : source.getGlobals()) {
+            if (g.getValue() != null) {
+                LLVM.SetInitializer(globalValues.get(g.getName()), constant(g.getValue()));
+            }
+        }
+        for (Function f : source.getFunctions()) {
+            translate(f);
+        }
+
+        for (NamedMetadata md : source.getNamedMetadata()) {
+            for (UnnamedMetadata value : md.getValues()) {
+                LLVM.AddNamedMetadataOperand(module, checkName(md.getName()), metadata(value.ref()));
+            }
+        }
+    }
+
+    private void translate(Function f) {
+        function = globalValues.get(f.getName());
+        locals.clear();
+        placeholders.clear();
+        blocks.clear();
+
+        String[] parameterNames = f.getParameterNames();
+        for (int i = 0; i < parameterNames.length; i++) {
+            locals.put(parameterNames[i], LLVM.GetParam(function, i));
+        }
+
+        List<BasicBlock> basicBlocks = f.getBasicBlocks();
+        List<org.robovm.llvm.binding.BasicBlockRef> llvmBlocks = new ArrayList<>(basicBlocks.size());
+        Map<String, org.robovm.llvm.binding.BasicBlockRef> definedIn = new HashMap<>();
+        for (int i = 0; i < basicBlocks.size(); i++) {
+            BasicBlock bb = basicBlocks.get(i);
+            org.robovm.llvm.binding.BasicBlockRef bbRef = LLVM.AppendBasicBlockInContext(context, function, "label" + i);
+            blocks.put(bb.getLabel(), bbRef);
+            llvmBlocks.add(bbRef);
+            for (Instruction instruction : bb.getInstructions()) {
+                for (Variable v : instruction.getWritesTo()) {
+                    definedIn.put(v.getName(), bbRef);
+                }
+            }
+        }
+        placeholderBlock = LLVM.AppendBasicBlockInContext(context, function, "placeholders");
+
+        Map<ValueRef, Phi> phis = new HashMap<>();
+        for (int i = 0; i < basicBlocks.size(); i++) {
+            currentBlock = llvmBlocks.get(i);
+            LLVM.PositionBuilderAtEnd(builder, currentBlock);
+            for (Instruction instruction : basicBlocks.get(i).getInstructions()) {
+                ValueRef inst = instruction(instruction);
+                if (instruction instanceof Phi) {
+                    phis.put(inst, (Phi) instruction);
+                }
+                for (Metadata md : instruction.getMetadata()) {
+                    if (!(md instanceof DebugMetadata)) {
+                        throw new UnsupportedOperationException("Instruction metadata " + md);
+                    }
+                    if (dbgKind == -1) {
+                        dbgKind = LLVM.GetMDKindIDInContext(context, "dbg");
+                    }
+                    LLVM.SetMetadata(inst, dbgKind, metadata(((DebugMetadata) md).getValue()));
+                }
+            }
+        }
+
+        // Incoming values can be defined after the phi instruction so these
+        // are added once all instructions have been built.
+        for (Entry<ValueRef, Phi> entry : phis.entrySet()) {
+            VariableRef[] vars = entry.getValue().getVariables();
+            ValueRefArray values = new ValueRefArray(vars.length);
+            BasicBlockRefArray incoming = new BasicBlockRefArray(vars.length);
+            for (int i = 0; i < vars.length; i++) {
+                org.robovm.llvm.binding.BasicBlockRef bb = definedIn.get(vars[i].getName());
+                if (bb == null) {
+                    throw new IllegalStateException("Variable " + vars[i] + " not defined");
+                }
+                values.set(i, value(vars[i]));
+                incoming.set(i, bb);
+            }
+            LLVM.AddIncoming(entry.getKey(), values, incoming, vars.length);
+            values.delete();
+            incoming.delete();
+        }
+
+        if (!placeholders.isEmpty()) {
+            throw new IllegalStateException("Variables " + placeholders.keySet()
+                    + " not defined in function " + f.getName());
+        }
+        LLVM.DeleteBasicBlock(placeholderBlock);
+        function = null;
+    }
+
+    private ValueRef instruction(Instruction instruction) {
+        if (instruction instanceof Alloca) {
+            Alloca i = (Alloca) instruction;
+            return define(i.getResult(), LLVM.BuildAlloca(builder, type(i.getType()), name(i.getResult())));
+        } else if (instruction instanceof Load) {
+            Load i = (Load) instruction;
+            ValueRef inst = LLVM.BuildLoad(builder, value(i.getOp()), name(i.getResult()));
+            memoryAccess(inst, i.isVolatile(), i.getOrdering(), i.getAlignment());
+            return define(i.getResult(), inst);
+        } else if (instruction instanceof Store) {
+            Store i = (Store) instruction;
+            ValueRef inst = LLVM.BuildStore(builder, value(i.getValue()), value(i.getPointer()));
+            memoryAccess(inst, i.isVolatile(), i.getOrdering(), i.getAlignment());
+            return inst;
+        } else if (instruction instanceof Getelementptr) {
+            Getelementptr i = (Getelementptr) instruction;
+            Value[] idx = i.getIndexes();
+            ValueRefArray indexes = valueArray(idx);
+            ValueRef inst = LLVM.BuildGEP(builder, value(i.getPointer()), indexes, idx.length, name(i.getResult()));
+            indexes.delete();
+            return define(i.getResult(), inst);
+        } else if (instruction instanceof ConversionInstruction) {
+            return conversion((ConversionInstruction) instruction);
+        } else if (instruction instanceof Icmp) {
+            Icmp i = (Icmp) instruction;
+            return define(i.getResult(), LLVM.BuildICmp(builder, predicate(i.getCondition()),
+                    value(i.getOp1()), value(i.getOp2()), name(i.getResult())));
+        } else if (instruction instanceof Fcmp) {
+            Fcmp i = (Fcmp) instruction;
+            return define(i.getResult(), LLVM.BuildFCmp(builder, predicate(i.getCondition()),
+                    value(i.getOp1()), value(i.getOp2()), name(i.getResult())));
+        } else if (instruction instanceof BinaryOpInstruction) {
+            return binaryOp((BinaryOpInstruction) instruction);
+        } else if (instruction instanceof FunctionCallInstruction) {
+            return call((FunctionCallInstruction) instruction);
+        } else if (instruction instanceof Landingpad) {
+            Landingpad i = (Landingpad) instruction;
+            Landingpad.Clause[] clauses = i.getClauses();
+            ValueRef inst = LLVM.BuildLandingPad(builder, type(i.getResult().getType()),
+                    constant(i.getPersonalityFn()), clauses.length, name(i.getResult()));
+            for (Landingpad.Clause clause : clauses) {
+                if (clause instanceof Landingpad.Catch) {
+                    LLVM.AddClause(inst, value(((Landingpad.Catch) clause).getValue()));
+                } else if (clause instanceof Landingpad.Filter) {
+                    LLVM.AddClause(inst, constant(((Landingpad.Filter) clause).getValue()));
+                } else {
+                    throw new UnsupportedOperationException("Landingpad clause " + clause);
+                }
+            }
+            if (i.isCleanup()) {
+                LLVM.SetCleanup(inst, true);
+            }
+            return define(i.getResult(), inst);
+        } else if (instruction instanceof Phi) {
+            Phi i = (Phi) instruction;
+            return define(i.getResult(), LLVM.BuildPhi(builder, type(i.getResult().getType()), name(i.getResult())));
+        } else if (instruction instanceof Ret) {
+            Ret i = (Ret) instruction;
+            if (i.getValue() == null) {
+                return LLVM.BuildRetVoid(builder);
+            }
+            return LLVM.BuildRet(builder, value(i.getValue()));
+        } else if (instruction instanceof Br) {
+            Br i = (Br) instruction;
+            if (i.getCondition() == null) {
+                return LLVM.BuildBr(builder, block(i.getTrueDest()));
+            }
+            return LLVM.BuildCondBr(builder, value(i.getCondition()),
+                    block(i.getTrueDest()), block(i.getFalseDest()));
+        } else if (instruction instanceof Switch) {
+            Switch i = (Switch) instruction;
+            Map<IntegerConstant, BasicBlockRef> alt = i.getAlternatives();
+            ValueRef inst = LLVM.BuildSwitch(builder, value(i.getValue()), block(i.getDefault()), alt.size());
+            for (Entry<IntegerConstant, BasicBlockRef> entry : alt.entrySet()) {
+                LLVM.AddCase(inst, constant(entry.getKey()), block(entry.getValue()));
+            }
+            return inst;
+        } else if (instruction instanceof Unreachable) {
+            return LLVM.BuildUnreachable(builder);
+        } else if (instruction instanceof Fence) {
+            return LLVM.BuildFence(builder, ordering(((Fence) instruction).getOrdering()), false, "");
+        }
+        throw new UnsupportedOperationException("Instruction " + instruction);
+    }
+
+    private void memoryAccess(ValueRef inst, boolean _volatile, Ordering ordering, int alignment) {
+        if (_volatile) {
+            LLVM.SetVolatile(inst, true);
+        }
+        if (alignment > 0) {
+            LLVM.SetAlignment(inst, alignment);
+        }
+        if (ordering != null) {
+            LLVM.SetOrdering(inst, ordering(ordering));
+        }
+    }
+
+    private ValueRef conversion(ConversionInstruction i) {
+        ValueRef op = value(i.getOp());
+        TypeRef type = type(i.getType());
+        String name = name(i.getResult());
+        ValueRef inst = null;
+        if (i instanceof Bitcast) {
+            inst = LLVM.BuildBitCast(builder, op, type, name);
+        } else if (i instanceof Fpext) {
+            inst = LLVM.BuildFPExt(builder, op, type, name);
+        } else if (i instanceof Fptrunc) {
+            inst = LLVM.BuildFPTrunc(builder, op, type, name);
+        } else if (i instanceof Inttoptr) {
+            inst = LLVM.BuildIntToPtr(builder, op, type, name);
+        } else if (i instanceof Ptrtoint) {
+            inst = LLVM.BuildPtrToInt(builder, op, type, name);
+        } else if (i instanceof Sext) {
+            inst = LLVM.BuildSExt(builder, op, type, name);
+        } else if (i instanceof Sitofp) {
+            inst = LLVM.BuildSIToFP(builder, op, type, name);
+        } else if (i instanceof Trunc) {
+            inst = LLVM.BuildTrunc(builder, op, type, name);
+        } else if (i instanceof Uitofp) {
+            inst = LLVM.BuildUIToFP(builder, op, type, name);
+        } else if (i instanceof Zext) {
+            inst = LLVM.BuildZExt(builder, op, type, name);
+        } else {
+            throw new UnsupportedOperationException("Instruction " + i);
+        }
+        return define(i.getResult(), inst);
+    }
+
+    private ValueRef binaryOp(BinaryOpInstruction i) {
+        ValueRef op1 = value(i.getOp1());
+        ValueRef op2 = value(i.getOp2());
+        String name = name(i.getResult());
+        ValueRef inst = null;
+        if (i instanceof Add) {
+            inst = LLVM.BuildAdd(builder, op1, op2, name);
+        } else if (i instanceof Sub) {
+            inst = LLVM.BuildSub(builder, op1, op2, name);
+        } else if (i instanceof Mul) {
+            inst = LLVM.BuildMul(builder, op1, op2, name);
+        } else if (i instanceof Sdiv) {
+            inst = LLVM.BuildSDiv(builder, op1, op2, name);
+        } else if (i instanceof Srem) {
+            inst = LLVM.BuildSRem(builder, op1, op2, name);
+        } else if (i instanceof Shl) {
+            inst = LLVM.BuildShl(builder, op1, op2, name);
+        } else if (i instanceof Lshr) {
+            inst = LLVM.BuildLShr(builder, op1, op2, name);
+        } else if (i instanceof Ashr) {
+            inst = LLVM.BuildAShr(builder, op1, op2, name);
+        } else if (i instanceof And) {
+            inst = LLVM.BuildAnd(builder, op1, op2, name);
+        } else if (i instanceof Or) {
+            inst = LLVM.BuildOr(builder, op1, op2, name);
+        } else if (i instanceof Xor) {
+            inst = LLVM.BuildXor(builder, op1, op2, name);
+        } else if (i instanceof Fadd) {
+            inst = LLVM.BuildFAdd(builder, op1, op2, name);
+        } else if (i instanceof Fsub) {
+            inst = LLVM.BuildFSub(builder, op1, op2, name);
+        } else if (i instanceof Fmul) {
+            inst = LLVM.BuildFMul(builder, op1, op2, name);
+        } else if (i instanceof Fdiv) {
+            inst = LLVM.BuildFDiv(builder, op1, op2, name);
+        } else if (i instanceof Frem) {
+            inst = LLVM.BuildFRem(builder, op1, op2, name);
+        } else {
+            throw new UnsupportedOperationException("Instruction " + i);
+        }
+        return define(i.getResult(), inst);
+    }
+
+    private ValueRef call(FunctionCallInstruction i) {
+        Argument[] args = i.getArguments();
+        ValueRefArray argValues = new ValueRefArray(args.length);
+        for (int j = 0; j < args.length; j++) {
+            argValues.set(j, value(args[j].getValue()));
+        }
+        ValueRef fn = value(i.getFunction());
+        String name = i.getResult() != null ? name(i.getResult()) : "";
+        ValueRef inst = null;
+        if (i instanceof Invoke) {
+            Invoke invoke = (Invoke) i;
+            inst = LLVM.BuildInvoke(builder, fn, argValues, args.length,
+                    block(invoke.getTo()), block(invoke.getUnwind()), name);
+        } else {
+            inst = LLVM.BuildCall(builder, fn, argValues, args.length, name);
+            if (i instanceof TailCall) {
+                LLVM.SetTailCall(inst, true);
+            }
+        }
+        argValues.delete();
+        for (int j = 0; j < args.length; j++) {
+            for (ParameterAttribute attr : args[j].getAttributes()) {
+                LLVM.AddInstrAttribute(inst, j + 1, attribute(attr).swigValue());
+            }
+        }
+        if (i.getResult() != null) {
+            define(i.getResult(), inst);
+        }
+        return inst;
+    }
+
+    /**
+     * Records the value of a local variable and replaces the placeholder
+     * created if the variable was used before it was defined.
+     */
+    private ValueRef define(Variable var, ValueRef value) {
+        ValueRef placeholder = placeholders.remove(var.getName());
+        if (placeholder != null) {
+            LLVM.ReplaceAllUsesWith(placeholder, value);
+            LLVM.InstructionEraseFromParent(placeholder);
+        }
+        locals.put(var.getName(), value);
+        return value;
+    }
+
+    private String name(Variable var) {
+        return checkName(var.getName());
+    }
+
+    private org.robovm.llvm.binding.BasicBlockRef block(BasicBlockRef ref) {
+        org.robovm.llvm.binding.BasicBlockRef bb = blocks.get(ref.getLabel());
+        if (bb == null) {
+            throw new IllegalStateException("Unknown basic block " + ref.getLabel());
+        }
+        return bb;
+    }
+
+    private ValueRef value(Value v) {
+        if (v instanceof VariableRef) {
+            String name = ((VariableRef) v).getName();
+            ValueRef value = locals.get(name);
+            if (value == null) {
+                value = placeholders.get(name);
+                if (value == null) {
+                    // Used before defined. Use a dummy instruction for now
+                    // and replace it in define().
+                    LLVM.PositionBuilderAtEnd(builder, placeholderBlock);
+                    value = LLVM.BuildPhi(builder, type(v.getType()), "");
+                    LLVM.PositionBuilderAtEnd(builder, currentBlock);
+                    placeholders.put(name, value);
+                }
+            }
+            return value;
+        }
+        if (v instanceof Constant) {
+            return constant((Constant) v);
+        }
+        throw new UnsupportedOperationException("Value " + v);
+    }
+
+    private ValueRefArray valueArray(Value[] values) {
+        ValueRefArray array = new ValueRefArray(values.length);
+        for (int i = 0; i < values.length; i++) {
+            array.set(i, value(values[i]));
+        }
+        return array;
+    }
+
+    private ValueRef constant(Constant c) {
+        if (c instanceof IntegerConstant) {
+            return constInt(c.getType(), ((IntegerConstant) c).getValue().longValue());
+        } else if (c instanceof BooleanConstant) {
+            return constInt(Type.I1, ((BooleanConstant) c).getValue() ? 1 : 0);
+        } else if (c instanceof FloatingPointConstant) {
+            // Same as the IR text: bitcast the raw bits
+            Number value = ((FloatingPointConstant) c).getValue();
+            if (c.getType() == Type.FLOAT) {
+                return LLVM.ConstBitCast(constInt(Type.I32, Float.floatToIntBits(value.floatValue())), type(Type.FLOAT));
+            }
+            return LLVM.ConstBitCast(constInt(Type.I64, Double.doubleToLongBits(value.doubleValue())), type(Type.DOUBLE));
+        } else if (c instanceof NullConstant || c instanceof ZeroInitializer) {
+            return LLVM.ConstNull(type(c.getType()));
+        } else if (c instanceof StringConstant) {
+            byte[] bytes = ((StringConstant) c).getBytes();
+            TypeRef i8 = type(Type.I8);
+            ValueRefArray values = new ValueRefArray(bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                values.set(i, constInt(Type.I8, bytes[i]));
+            }
+            ValueRef result = LLVM.ConstArray(i8, values, bytes.length);
+            values.delete();
+            return result;
+        } else if (c instanceof ArrayConstant) {
+            Value[] values = ((ArrayConstant) c).getValues();
+            ValueRefArray array = valueArray(values);
+            ValueRef result = LLVM.ConstArray(type(((ArrayType) c.getType()).getElementType()), array, values.length);
+            array.delete();
+            return result;
+        } else if (c instanceof StructureConstant) {
+            StructureType type = (StructureType) c.getType();
+            Value[] values = ((StructureConstant) c).getValues();
+            ValueRefArray array = valueArray(values);
+            ValueRef result = null;
+            if (type.hasAlias()) {
+                result = LLVM.ConstNamedStruct(type(type), array, values.length);
+            } else {
+                result = LLVM.ConstStructInContext(context, array, values.length, type instanceof PackedStructureType);
+            }
+            array.delete();
+            return result;
+        } else if (c instanceof BinaryOpConstant) {
+            BinaryOpConstant op = (BinaryOpConstant) c;
+            ValueRef op1 = constant(op.getOp1());
+            ValueRef op2 = constant(op.getOp2());
+            if (c instanceof ConstantAdd) {
+                return LLVM.ConstAdd(op1, op2);
+            } else if (c instanceof ConstantSub) {
+                return LLVM.ConstSub(op1, op2);
+            } else if (c instanceof ConstantAnd) {
+                return LLVM.ConstAnd(op1, op2);
+            } else if (c instanceof ConstantXor) {
+                return LLVM.ConstXor(op1, op2);
+            }
+        } else if (c instanceof ConversionConstant) {
+            ValueRef cst = constant(((ConversionConstant) c).getConstant());
+            TypeRef type = type(c.getType());
+            if (c instanceof ConstantBitcast) {
+                return LLVM.ConstBitCast(cst, type);
+            } else if (c instanceof ConstantInttoptr) {
+                return LLVM.ConstIntToPtr(cst, type);
+            } else if (c instanceof ConstantPtrtoint) {
+                return LLVM.ConstPtrToInt(cst, type);
+            } else if (c instanceof ConstantTrunc) {
+                return LLVM.ConstTrunc(cst, type);
+            }
+        } else if (c instanceof ConstantGetelementptr) {
+            ConstantGetelementptr gep = (ConstantGetelementptr) c;
+            int[] idx = gep.getIndexes();
+            ValueRefArray indexes = new ValueRefArray(idx.length);
+            for (int i = 0; i < idx.length; i++) {
+                indexes.set(i, constInt(Type.I32, idx[i]));
+            }
+            ValueRef result = LLVM.ConstGEP(constant(gep.getConstant()), indexes, idx.length);
+            indexes.delete();
+            return result;
+        } else if (c instanceof FunctionRef) {
+            return globalValue(((FunctionRef) c).getName());
+        } else if (c instanceof GlobalRef) {
+            return globalValue(((GlobalRef) c).getName());
+        } else if (c instanceof AliasRef) {
+            return globalValue(((AliasRef) c).getName());
+        } else if (c instanceof Metadata) {
+            return metadata((Metadata) c);
+        }
+        throw new UnsupportedOperationException("Constant " + c);
+    }
+
+    private ValueRef constInt(Type type, long value) {
+        // The binding takes an unsigned 64-bit value which is truncated to
+        // the width of the type.
+        return LLVM.ConstInt(type(type), BigInteger.valueOf(value).and(UNSIGNED_64), false);
+    }
+
+    private ValueRef globalValue(String name) {
+        ValueRef value = globalValues.get(name);
+        if (value == null) {
+            // Declared in the includes
+            value = LLVM.GetNamedFunction(module, name);
+            if (value == null) {
+                value = LLVM.GetNamedGlobal(module, name);
+            }
+            if (value == null) {
+                throw new UnsupportedOperationException("Unknown global value " + name);
+            }
+            globalValues.put(name, value);
+        }
+        return value;
+    }
+
+    private ValueRef metadata(Metadata md) {
+        if (md instanceof MetadataString) {
+            return LLVM.MDStringInContext(context,
+                    checkName(new String(((MetadataString) md).getBytes(), StandardCharsets.UTF_8)));
+        } else if (md instanceof MetadataNode) {
+            Value[] values = ((MetadataNode) md).getValues();
+            ValueRefArray array = new ValueRefArray(values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    array.set(i, value(values[i]));
+                }
+            }
+            ValueRef result = LLVM.MDNodeInContext(context, array, values.length);
+            array.delete();
+            return result;
+        } else if (md instanceof MetadataValue) {
+            return value(((MetadataValue) md).getValue());
+        } else if (md instanceof UnnamedMetadataRef) {
+            int index = ((UnnamedMetadataRef) md).getIndex();
+            ValueRef result = unnamedMetadataRefs.get(index);
+            if (result == null) {
+                UnnamedMetadata unnamed = unnamedMetadata.get(index);
+                if (unnamed == null) {
+                    throw new IllegalStateException("Unknown metadata !" + index);
+                }
+                if (!unnamedMetadataInProgress.add(index)) {
+                    // MDNodes are uniqued by their operands and can't
+                    // refer to themselves when built through the C API.
+                    throw new UnsupportedOperationException("Cyclic metadata !" + index);
+                }
+                result = metadata(unnamed.getValue());
+                unnamedMetadataInProgress.remove(index);
+                unnamedMetadataRefs.put(index, result);
+            }
+            return result;
+        }
+        throw new UnsupportedOperationException("Metadata " + md);
+    }
+
+    private TypeRef type(Type t) {
+        TypeRef result = types.get(t);
+        if (result == null) {
+            result = createType(t);
+            types.put(t, result);
+        }
+        return result;
+    }
+
+    private TypeRef createType(Type t) {
+        if (t instanceof IntegerType) {
+            return LLVM.IntTypeInContext(context, ((IntegerType) t).getBits());
+        } else if (t == Type.FLOAT) {
+            return LLVM.FloatTypeInContext(context);
+        } else if (t == Type.DOUBLE) {
+            return LLVM.DoubleTypeInContext(context);
+        } else if (t == Type.VOID) {
+            return LLVM.VoidTypeInContext(context);
+        } else if (t instanceof FunctionType) {
+            return LLVM.PointerType(functionType((FunctionType) t), 0);
+        } else if (t instanceof PointerType) {
+            return LLVM.PointerType(type(((PointerType) t).getBase()), 0);
+        } else if (t instanceof ArrayType) {
+            ArrayType at = (ArrayType) t;
+            if (at.getSize() > Integer.MAX_VALUE) {
+                throw new UnsupportedOperationException("Array size " + at.getSize());
+            }
+            return LLVM.ArrayType(type(at.getElementType()), (int) at.getSize());
+        } else if ((t instanceof StructureType || t instanceof OpaqueType) && ((UserType) t).hasAlias()) {
+            String name = typeName((UserType) t);
+            TypeRef result = namedTypes.get(name);
+            if (result == null) {
+                // Declared in the includes
+                result = LLVM.GetTypeByName(module, name);
+                if (result == null) {
+                    throw new UnsupportedOperationException("Unknown type " + t);
+                }
+                namedTypes.put(name, result);
+            }
+            return result;
+        } else if (t instanceof StructureType) {
+            StructureType st = (StructureType) t;
+            TypeRefArray elements = typeArray(st);
+            TypeRef result = LLVM.StructTypeInContext(context, elements, st.getTypeCount(),
+                    st instanceof PackedStructureType);
+            elements.delete();
+            return result;
+        }
+        throw new UnsupportedOperationException("Type " + t);
+    }
+
+    private TypeRef functionType(FunctionType t) {
+        Type[] parameterTypes = t.getParameterTypes();
+        TypeRefArray params = new TypeRefArray(parameterTypes.length);
+        for (int i = 0; i < parameterTypes.length; i++) {
+            params.set(i, type(parameterTypes[i]));
+        }
+        TypeRef result = LLVM.FunctionType(type(t.getReturnType()), params, parameterTypes.length, t.isVarargs());
+        params.delete();
+        return result;
+    }
+
+    private TypeRefArray typeArray(StructureType st) {
+        TypeRefArray elements = new TypeRefArray(st.getTypeCount());
+        for (int i = 0; i < st.getTypeCount(); i++) {
+            elements.set(i, type(st.getTypeAt(i)));
+        }
+        return elements;
+    }
+
+    private static String typeName(UserType t) {
+        String name = t.getAlias().substring(1);
+        if (name.startsWith("\"") && name.endsWith("\"")) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * Strings are passed to the binding as modified UTF-8 which only matches
+     * the UTF-8 written to the IR text if there are no NUL characters or
+     * supplementary characters.
+     */
+    private static String checkName(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == 0 || Character.isSurrogate(c)) {
+                throw new UnsupportedOperationException("Unsupported characters in " + s);
+            }
+        }
+        return s;
+    }
+
+    private static org.robovm.llvm.binding.Linkage linkage(Linkage linkage) {
+        switch (linkage) {
+        case _private: return org.robovm.llvm.binding.Linkage.PrivateLinkage;
+        case linkonce: return org.robovm.llvm.binding.Linkage.LinkOnceAnyLinkage;
+        case linkonce_odr: return org.robovm.llvm.binding.Linkage.LinkOnceODRLinkage;
+        case external: return org.robovm.llvm.binding.Linkage.ExternalLinkage;
+        case internal: return org.robovm.llvm.binding.Linkage.InternalLinkage;
+        case weak: return org.robovm.llvm.binding.Linkage.WeakAnyLinkage;
+        }
+        throw new UnsupportedOperationException("Linkage " + linkage);
+    }
+
+    private static Attribute attribute(FunctionAttribute attr) {
+        switch (attr) {
+        case noinline: return Attribute.NoInlineAttribute;
+        case optsize: return Attribute.OptimizeForSizeAttribute;
+        case alwaysinline: return Attribute.AlwaysInlineAttribute;
+        case nounwind: return Attribute.NoUnwindAttribute;
+        }
+        throw new UnsupportedOperationException("Function attribute " + attr);
+    }
+
+    private static Attribute attribute(ParameterAttribute attr) {
+        switch (attr) {
+        case sret: return Attribute.StructRetAttribute;
+        case byval: return Attribute.ByValAttribute;
+        }
+        throw new UnsupportedOperationException("Parameter attribute " + attr);
+    }
+
+    private static AtomicOrdering ordering(Ordering ordering) {
+        switch (ordering) {
+        case unordered: return AtomicOrdering.AtomicOrderingUnordered;
+        case monotonic: return AtomicOrdering.AtomicOrderingMonotonic;
+        case acquire: return AtomicOrdering.AtomicOrderingAcquire;
+        case release: return AtomicOrdering.AtomicOrderingRelease;
+        case acq_rel: return AtomicOrdering.AtomicOrderingAcquireRelease;
+        case seq_cst: return AtomicOrdering.AtomicOrderingSequentiallyConsistent;
+        }
+        throw new UnsupportedOperationException("Ordering " + ordering);
+    }
+
+    private static IntPredicate predicate(Icmp.Condition cond) {
+        switch (cond) {
+        case eq: return IntPredicate.IntEQ;
+        case ne: return IntPredicate.IntNE;
+        case ugt: return IntPredicate.IntUGT;
+        case uge: return IntPredicate.IntUGE;
+        case ult: return IntPredicate.IntULT;
+        case ule: return IntPredicate.IntULE;
+        case sgt: return IntPredicate.IntSGT;
+        case sge: return IntPredicate.IntSGE;
+        case slt: return IntPredicate.IntSLT;
+        case sle: return IntPredicate.IntSLE;
+        }
+        throw new UnsupportedOperationException("Condition " + cond);
+    }
+
+    private static RealPredicate predicate(Fcmp.Condition cond) {
+        switch (cond) {
+        case oeq: return RealPredicate.RealOEQ;
+        case ogt: return RealPredicate.RealOGT;
+        case oge: return RealPredicate.RealOGE;
+        case olt: return RealPredicate.RealOLT;
+        case ole: return RealPredicate.RealOLE;
+        case one: return RealPredicate.RealONE;
+        case ord: return RealPredicate.RealORD;
+        case ueq: return RealPredicate.RealUEQ;
+        case ugt: return RealPredicate.RealUGT;
+        case uge: return RealPredicate.RealUGE;
+        case ult: return RealPredicate.RealULT;
+        case ule: return RealPredicate.RealULE;
+        case une: return RealPredicate.RealUNE;
+        case uno: return RealPredicate.RealUNO;
+        }
+        throw new UnsupportedOperationException("Condition " + cond);
+    }
+}
@@ -33,6 +33,10 @@ public class NamedMetadata {
         return name;
     }
     
+    public UnnamedMetadata[] getValues() {
+        return values.clone();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -43,6 +43,14 @@ public class Phi extends Instruction {
         this.vars = vars;
     }
     
+    public Variable getResult() {
+        return result;
+    }
+
+    public VariableRef[] getVariables() {
+        return vars.clone();
+    }
+
     @Override
     public Set<Variable> getWritesTo() {
         return Collections.singleton(result);
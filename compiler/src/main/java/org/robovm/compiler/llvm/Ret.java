@@ -34,6 +34,10 @@ public class Ret extends Instruction {
         this.value = value;
     }
     
+    public Value getValue() {
+        return value;
+    }
+
     @Override
     public Set<VariableRef> getReadsFrom() {
         if (value instanceof VariableRef) {
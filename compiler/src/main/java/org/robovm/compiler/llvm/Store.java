@@ -56,6 +56,18 @@ public class Store extends Instruction {
         return pointer;
     }
     
+    public boolean isVolatile() {
+        return _volatile;
+    }
+
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
+    public int getAlignment() {
+        return alignment;
+    }
+
     @Override
     public Set<VariableRef> getReadsFrom() {
         Set<VariableRef> result = new HashSet<VariableRef>();
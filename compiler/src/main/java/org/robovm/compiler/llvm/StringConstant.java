@@ -29,6 +29,10 @@ public class StringConstant extends Constant {
         this.type = new ArrayType(bytes.length, Type.I8);
     }
     
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
     @Override
     public Type getType() {
         return type;
@@ -44,6 +44,18 @@ public class Switch extends Instruction {
         this.alt = alt;
     }
     
+    public Value getValue() {
+        return value;
+    }
+
+    public BasicBlockRef getDefault() {
+        return def;
+    }
+
+    public Map<IntegerConstant, BasicBlockRef> getAlternatives() {
+        return alt;
+    }
+
     @Override
     public Set<VariableRef> getReadsFrom() {
         if (value instanceof VariableRef) {
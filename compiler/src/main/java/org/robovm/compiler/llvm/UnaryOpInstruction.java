@@ -32,6 +32,14 @@ public abstract class UnaryOpInstruction extends Instruction {
         this.op = op;
     }
     
+    public Variable getResult() {
+        return result;
+    }
+
+    public Value getOp() {
+        return op;
+    }
+
     @Override
     public Set<Variable> getWritesTo() {
         return Collections.singleton(result);
@@ -37,6 +37,10 @@ public class UnnamedMetadata {
         this.value = value;
     }
     
+    public Metadata getValue() {
+        return value;
+    }
+
     public UnnamedMetadataRef ref() {
         return new UnnamedMetadataRef(this);
     }
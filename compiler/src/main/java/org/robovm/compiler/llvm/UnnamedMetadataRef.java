@@ -31,6 +31,10 @@ public class UnnamedMetadataRef extends Metadata {
     public UnnamedMetadataRef(int index) {
         this.index = index;
     }
+
+    public int getIndex() {
+        return index;
+    }
     
     @Override
     public int hashCode() {
@@ -51,7 +51,9 @@ public abstract class CompilerPlugin extends Plugin {
     /**
      * Called just before a class is about to be compiled. Modifications to the
      * underlying {@link SootClass} ({@link Clazz#getSootClass()}) should be
-     * done at this stage.
+     * done at this stage. When building a fat binary this is only called for
+     * the first slice which compiles the class. The other slices compile the
+     * modified {@link SootClass}.
      * 
      * @param config the current {@link Config}.
      * @param clazz the {@link Clazz} being compiled.
@@ -63,7 +65,9 @@ public abstract class CompilerPlugin extends Plugin {
 
     /**
      * Called just before a method is about to be compiled. Modifications to the
-     * underlying {@link SootMethod} should be done at this stage.
+     * underlying {@link SootMethod} should be done at this stage. When
+     * building a fat binary this is only called for the first slice which
+     * compiles the class.
      * 
      * @param config the current {@link Config}.
      * @param clazz the {@link Clazz} being compiled.
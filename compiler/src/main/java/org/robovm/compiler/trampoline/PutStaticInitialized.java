@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.trampoline;
+
+/**
+ * {@link PutStatic} trampoline used when the target class is known to have been
+ * initialized already. Resolves to the target without the class
+ * initialization check.
+ */
+public class PutStaticInitialized extends PutStatic {
+    private static final long serialVersionUID = 1L;
+    
+    public PutStaticInitialized(String callingClass, String targetClass, String fieldName, String fieldDesc) {
+        super(callingClass, targetClass, fieldName, fieldDesc);
+    }
+
+    @Override
+    public boolean isTargetInitialized() {
+        return true;
+    }
+}
@@ -56,6 +56,14 @@ public abstract class Trampoline implements Comparable<Trampoline>, Serializable
     
     public abstract FunctionType getFunctionType();
     
+    /**
+     * Returns {@code true} if the target class of this trampoline is known to
+     * have been initialized when the trampoline is called.
+     */
+    public boolean isTargetInitialized() {
+        return false;
+    }
+    
     @Override
     public int hashCode() {
         final int prime = 31;
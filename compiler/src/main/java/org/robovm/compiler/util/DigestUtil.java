@@ -41,6 +41,10 @@ public class DigestUtil {
             throw new Error(e);
         }
     }
+
+    public static String sha1(byte[] bytes) {
+        return encodeHex(digest("SHA1", bytes));
+    }
     
     private static byte[] digest(String algorithm, byte[] bytes) {
         return getDigest(algorithm).digest(bytes);
@@ -1,12 +1,13 @@
 %GatewayFrame = type {i8*, i8*, i8*}
 %StackFrame = type {i8*, i8*}
 %Thread = type {i32} ; Incomplete. Just enough to get threadId
-%Env = type {i8*, i8*, i8*, %Thread*, i8*, i8*, %GatewayFrame*, i8*, i32}
+%Env = type {i8*, i8*, i8*, %Thread*, i8*, i8*, %GatewayFrame*, i8*, i32, [16 x i8*]}
 %DebugEnv = type {%Env, i8*, i8*, i8*, i8*, i8, i8}
 %TypeInfo = type {i32, i32, i32, i32, i32, [0 x i32]}
 %VITable = type {i16, [0 x i8*]}
 %ITable = type {%TypeInfo*, %VITable}
-%ITables = type {i16, %ITable*, [0 x %ITable*]}
+%IMTEntry = type {%TypeInfo*, i8*}
+%ITables = type {i16, %ITable*, [16 x %IMTEntry], [0 x %ITable*]} ; IMT_SIZE = 16
 ; NOTE: The compiler assumes that %Class is a multiple of 8 in size (currently 88 bytes + 0 bytes padding)
 %Class = type {i8*, i8*, i8*, i8*, %TypeInfo*, %VITable*, %ITables*, i8*, i8*, i8*, i8*, i8*, i32, i8*, i8*, i8*, i8*, i8*, i32, i32, i32, i16, i16}
 %Method = type opaque
@@ -24,6 +25,9 @@
 %FloatArray = type {%DataObject, i32, float}
 %DoubleArray = type {%DataObject, i32, double}
 %ObjectArray = type {%DataObject, i32, %Object*}
+%CallSiteEntry = type {%Class*, i8*}
+; Must match CallSite in bc.c
+%CallSite = type {%CallSiteEntry*, i32, i32, i32, i8*, i8*, i8*, i8*, i8*, i8*}
 
 @prim_Z = external global %Class*
 @prim_B = external global %Class*
@@ -58,6 +62,7 @@ declare void @_bcRegisterFinalizer(%Env* %env, %Object* %o)
 declare i8* @_bcLookupVirtualMethod(%Env*, %Object*, i8*, i8*)
 declare i8* @_bcLookupInterfaceMethod(%Env*, i8**, %Object*, i8*, i8*)
 declare i8* @_bcLookupInterfaceMethodImpl(%Env*, i8**, %Object*, i32)
+declare i8* @_bcResolveCallSite(%Env*, %CallSite*, %Object*)
 declare void @_bcAbstractMethodCalled(%Env*, %Object*)
 declare void @_bcNonPublicMethodCalled(%Env*, %Object*)
 declare void @_bcMoveMemory16(i8*, i8*, i64)
@@ -96,6 +101,7 @@ declare %Object* @_bcNewMultiArray(%Env*, i32, i32*, %Object*)
 declare void @_bcSetObjectArrayElement(%Env*, %Object*, i32, %Object*)
 
 declare %Object* @_bcLdcString(%Env*, %Object**, i8*, i32)
+declare %Object* @_bcLdcStaticString(%Env*, %Object**, i8*, %Object*, %Object*)
         
 declare void @_bcMonitorEnter(%Env*, %Object*)
 declare void @_bcMonitorExit(%Env*, %Object*)
@@ -117,6 +123,7 @@ declare void @_bcHookInstrumented(%Env*, i32, i32, i8*, i8*)
 
 declare i8* @llvm.frameaddress(i32) nounwind readnone
 declare void @llvm.memcpy.p0i8.p0i8.i32(i8*, i8*, i32, i32, i1)
+declare void @llvm.memset.p0i8.i32(i8*, i8, i32, i32, i1)
 declare void @llvm.memmove.p0i8.p0i8.i64(i8*, i8*, i64, i32, i1)
 declare double @llvm.sqrt.f64(double)
 declare double @llvm.cos.f64(double)
@@ -898,16 +905,32 @@ define private void @monitorenter(%Env* %env, %Object* %o) alwaysinline {
 yesThin:
     %1 = lshr i32 %thin, 3 ; LW_LOCK_OWNER_SHIFT = 3
     %owner = and i32 %1, 65535 ; LW_LOCK_OWNER_MASK = 0xffff
-    %isUnowned = icmp eq i32 %owner, 0
-    br i1 %isUnowned, label %tryLock, label %callBc
-tryLock:
     %currentThread = call %Thread* @Env_currentThread(%Env* %env)
     %threadId = call i32 @Thread_threadId(%Thread* %currentThread)
+    %lockPtr = call i32* @Object_lockPtr(%Object* %o)
+    %isUnowned = icmp eq i32 %owner, 0
+    br i1 %isUnowned, label %tryLock, label %checkOwner
+tryLock:
     %2 = shl i32 %threadId, 3 ; LW_LOCK_OWNER_SHIFT = 3
     %newThin = or i32 %thin, %2
-    %lockPtr = call i32* @Object_lockPtr(%Object* %o)
     %isSuccess = call i1 @atomic_cas(i32 %thin, i32 %newThin, i32* %lockPtr)
     br i1 %isSuccess, label %success, label %callBc
+checkOwner:
+    ; Recursive acquire. The owner is the only thread allowed to modify the
+    ; lock word of a thin lock so no CAS is needed. Let _bcMonitorEnter
+    ; handle the case where the count would reach LW_LOCK_COUNT_MASK and
+    ; the lock has to be inflated.
+    %isOwner = icmp eq i32 %owner, %threadId
+    br i1 %isOwner, label %checkCount, label %callBc
+checkCount:
+    %3 = lshr i32 %thin, 19 ; LW_LOCK_COUNT_SHIFT = 19
+    %count = and i32 %3, 8191 ; LW_LOCK_COUNT_MASK = 0x1fff
+    %canIncrement = icmp ult i32 %count, 8190 ; LW_LOCK_COUNT_MASK - 1
+    br i1 %canIncrement, label %increment, label %callBc
+increment:
+    %incThin = add i32 %thin, 524288 ; 1 << LW_LOCK_COUNT_SHIFT
+    store volatile i32 %incThin, i32* %lockPtr
+    br label %success
 success:
     ret void
 callBc:
@@ -933,17 +956,223 @@ maybeUnlock:
     %count = and i32 %2, 8191 ; LW_LOCK_COUNT_MASK = 0x1fff
     %lockPtr = call i32* @Object_lockPtr(%Object* %o)
     %isZero = icmp eq i32 %count, 0
-    br i1 %isZero, label %unlock, label %callBc
+    br i1 %isZero, label %unlock, label %decrement
 unlock:
     %newThin = and i32 %thin, 6 ; LW_HASH_STATE_MASK << LW_HASH_STATE_SHIFT (0x3 << 1)
     fence seq_cst
     store volatile i32 %newThin, i32* %lockPtr
     ret void
+decrement:
+    ; Recursive release. Just decrement the count, the lock stays owned.
+    %decThin = sub i32 %thin, 524288 ; 1 << LW_LOCK_COUNT_SHIFT
+    store volatile i32 %decThin, i32* %lockPtr
+    ret void
 callBc:
     tail call void @_bcMonitorExit(%Env* %env, %Object* %o)
     ret void
 }
 
+define private i8* @lookupInterfaceMethod(%Env* %env, i8** %info, %Object* %o, i8* %typeInfo, i32 %slot, i32 %index) alwaysinline {
+    ; Try the IMT of the receiver's class first. The slot only holds the
+    ; implementation we're looking for if its TypeInfo is the TypeInfo of the
+    ; interface declaring the method. Since every method of that interface 
+    ; was added to the IMT when the class was compiled any other method of
+    ; the same interface hashed to the same slot would have made it a
+    ; conflict slot with a null TypeInfo.
+    %clazz = call %Class* @Object_class(%Object* %o)
+    %itables = call %ITables* @Class_itables(%Class* %clazz)
+    %1 = getelementptr %ITables* %itables, i32 0, i32 2, i32 %slot, i32 0
+    %2 = load %TypeInfo** %1
+    %entryTypeInfo = bitcast %TypeInfo* %2 to i8*
+    %isMatch = icmp eq i8* %entryTypeInfo, %typeInfo
+    br i1 %isMatch, label %match, label %callBc
+match:
+    %3 = getelementptr %ITables* %itables, i32 0, i32 2, i32 %slot, i32 1
+    %impl = load i8** %3
+    ret i8* %impl
+callBc:
+    %4 = tail call i8* @_bcLookupInterfaceMethodImpl(%Env* %env, i8** %info, %Object* %o, i32 %index)
+    ret i8* %4
+}
+
+define private i8* @callSiteLookup(%Env* %env, i8* %site, %Object* %o, i8* %fallback) alwaysinline {
+    ; Returns the function cached for the receiver's class by the inline cache
+    ; of the call site or %fallback (the call site's trampoline) if the cache
+    ; doesn't match and can't be updated. The entry of a call site is never
+    ; modified once published so it's enough to load the pointer to it once.
+    ; The fallback counter is updated without synchronization and is only
+    ; approximate. Hits are only counted by callSiteLookupCounting.
+    %cs = bitcast i8* %site to %CallSite*
+    %entryPtr = getelementptr %CallSite* %cs, i32 0, i32 0
+    %entry = load volatile %CallSiteEntry** %entryPtr
+    %isEmpty = icmp eq %CallSiteEntry* %entry, null
+    br i1 %isEmpty, label %miss, label %checkClass
+checkClass:
+    %clazz = call %Class* @Object_class(%Object* %o)
+    %1 = getelementptr %CallSiteEntry* %entry, i32 0, i32 0
+    %entryClazz = load %Class** %1
+    %isHit = icmp eq %Class* %clazz, %entryClazz
+    br i1 %isHit, label %hit, label %miss
+hit:
+    %2 = getelementptr %CallSiteEntry* %entry, i32 0, i32 1
+    %impl = load i8** %2
+    ret i8* %impl
+miss:
+    %missesPtr = getelementptr %CallSite* %cs, i32 0, i32 1
+    %misses = load i32* %missesPtr
+    %isMegamorphic = icmp sge i32 %misses, 8 ; CALL_SITE_MAX_MISSES = 8
+    br i1 %isMegamorphic, label %slow, label %resolve
+resolve:
+    %3 = call i8* @_bcResolveCallSite(%Env* %env, %CallSite* %cs, %Object* %o)
+    %isResolved = icmp ne i8* %3, null
+    br i1 %isResolved, label %resolved, label %slow
+resolved:
+    ret i8* %3
+slow:
+    %fallbacksPtr = getelementptr %CallSite* %cs, i32 0, i32 3
+    %fallbacks = load i32* %fallbacksPtr
+    %newFallbacks = add i32 %fallbacks, 1
+    store i32 %newFallbacks, i32* %fallbacksPtr
+    ret i8* %fallback
+}
+
+define private i8* @callSiteLookupCounting(%Env* %env, i8* %site, %Object* %o, i8* %fallback) alwaysinline {
+    ; Same as callSiteLookup but also counts the hits of the inline cache.
+    ; Only used in debug builds to keep the hit path of release builds free
+    ; of stores. The counter is updated without synchronization.
+    %cs = bitcast i8* %site to %CallSite*
+    %entryPtr = getelementptr %CallSite* %cs, i32 0, i32 0
+    %entry = load volatile %CallSiteEntry** %entryPtr
+    %isEmpty = icmp eq %CallSiteEntry* %entry, null
+    br i1 %isEmpty, label %lookup, label %checkClass
+checkClass:
+    %clazz = call %Class* @Object_class(%Object* %o)
+    %1 = getelementptr %CallSiteEntry* %entry, i32 0, i32 0
+    %entryClazz = load %Class** %1
+    %isHit = icmp eq %Class* %clazz, %entryClazz
+    br i1 %isHit, label %hit, label %lookup
+hit:
+    %hitsPtr = getelementptr %CallSite* %cs, i32 0, i32 2
+    %hits = load i32* %hitsPtr
+    %newHits = add i32 %hits, 1
+    store i32 %newHits, i32* %hitsPtr
+    br label %lookup
+lookup:
+    %2 = call i8* @callSiteLookup(%Env* %env, i8* %site, %Object* %o, i8* %fallback)
+    ret i8* %2
+}
+
+define private %Object* @allocateFromCache(%Env* %env, %Class* %clazz, i32 %size) alwaysinline {
+    ; Pops a free cell off the allocation cache in Env for the size class of
+    ; %size. This is the inline version of allocateCached() in memory.c.
+    ; Returns null if %size is too large to be cached or if the cache is empty.
+    %1 = add i32 %size, 15 ; ALLOC_CACHE_GRANULE - 1
+    %2 = lshr i32 %1, 4 ; ALLOC_CACHE_GRANULE = 16
+    %index = sub i32 %2, 1
+    %isCached = icmp ult i32 %index, 16 ; ALLOC_CACHE_CLASSES = 16
+    br i1 %isCached, label %checkCache, label %miss
+checkCache:
+    %slot = getelementptr %Env* %env, i32 0, i32 9, i32 %index ; Env->allocCache[index]
+    %cell = load i8** %slot
+    %isEmpty = icmp eq i8* %cell, null
+    br i1 %isEmpty, label %miss, label %hit
+hit:
+    ; The lock word of a free cell links to the next free cell
+    %o = bitcast i8* %cell to %Object*
+    %lockPtr = getelementptr %Object* %o, i32 0, i32 1
+    %next = load i8** %lockPtr
+    store i8* %next, i8** %slot
+    store i8* null, i8** %lockPtr
+    %clazzPtr = getelementptr %Object* %o, i32 0, i32 0
+    store %Class* %clazz, %Class** %clazzPtr
+    ret %Object* %o
+miss:
+    ret %Object* null
+}
+
+define private %Object* @allocate(%Env* %env, i8** %info, i32 %size) alwaysinline {
+    ; %info points to the ClassInfoHeader of an already initialized class. 
+    ; The first field is the Class.
+    %1 = bitcast i8** %info to %Class**
+    %clazz = load %Class** %1
+    %o = call %Object* @allocateFromCache(%Env* %env, %Class* %clazz, i32 %size)
+    %isNull = icmp eq %Object* %o, null
+    br i1 %isNull, label %callBc, label %success
+success:
+    ret %Object* %o
+callBc:
+    %2 = tail call %Object* @_bcAllocate(%Env* %env, i8** %info)
+    ret %Object* %2
+}
+
+define private %Object* @newArray(%Env* %env, %Class** %arrayClassPtr, i32 %length, i32 %elementShift, %Object* (%Env*, i32)* %slowFn) alwaysinline {
+    ; Arrays with more than 255 elements are never cached. The unsigned 
+    ; compare also sends negative lengths to %slowFn which throws 
+    ; NegativeArraySizeException.
+    %isSmall = icmp ult i32 %length, 256
+    br i1 %isSmall, label %tryCache, label %callBc
+tryCache:
+    ; Same as rvmGetArraySize() but always use a base size which is a multiple
+    ; of 8 to make sure we never allocate too little for long and double arrays.
+    %arraySize = ptrtoint %Array* getelementptr (%Array* null, i32 1) to i32
+    %1 = add i32 %arraySize, 7
+    %baseSize = and i32 %1, -8
+    %2 = shl i32 %length, %elementShift
+    %size = add i32 %baseSize, %2
+    %arrayClass = load %Class** %arrayClassPtr
+    %o = call %Object* @allocateFromCache(%Env* %env, %Class* %arrayClass, i32 %size)
+    %isNull = icmp eq %Object* %o, null
+    br i1 %isNull, label %callBc, label %success
+success:
+    %array = bitcast %Object* %o to %Array*
+    %lengthPtr = getelementptr %Array* %array, i32 0, i32 1
+    store i32 %length, i32* %lengthPtr
+    ret %Object* %o
+callBc:
+    %3 = tail call %Object* %slowFn(%Env* %env, i32 %length)
+    ret %Object* %3
+}
+
+define private %Object* @newBooleanArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_Z, i32 %length, i32 0, %Object* (%Env*, i32)* @_bcNewBooleanArray)
+    ret %Object* %1
+}
+
+define private %Object* @newByteArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_B, i32 %length, i32 0, %Object* (%Env*, i32)* @_bcNewByteArray)
+    ret %Object* %1
+}
+
+define private %Object* @newCharArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_C, i32 %length, i32 1, %Object* (%Env*, i32)* @_bcNewCharArray)
+    ret %Object* %1
+}
+
+define private %Object* @newShortArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_S, i32 %length, i32 1, %Object* (%Env*, i32)* @_bcNewShortArray)
+    ret %Object* %1
+}
+
+define private %Object* @newIntArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_I, i32 %length, i32 2, %Object* (%Env*, i32)* @_bcNewIntArray)
+    ret %Object* %1
+}
+
+define private %Object* @newLongArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_J, i32 %length, i32 3, %Object* (%Env*, i32)* @_bcNewLongArray)
+    ret %Object* %1
+}
+
+define private %Object* @newFloatArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_F, i32 %length, i32 2, %Object* (%Env*, i32)* @_bcNewFloatArray)
+    ret %Object* %1
+}
+
+define private %Object* @newDoubleArray(%Env* %env, i32 %length) alwaysinline {
+    %1 = call %Object* @newArray(%Env* %env, %Class** @array_D, i32 %length, i32 3, %Object* (%Env*, i32)* @_bcNewDoubleArray)
+    ret %Object* %1
+}
+
 define private void @pushNativeFrame(%Env* %env) alwaysinline {
     ; Create a fake StackFrame
     %sf = alloca %StackFrame
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.Collections;
+
+import org.junit.Before;
+
+import soot.Local;
+import soot.Modifier;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.VoidType;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.Stmt;
+
+/**
+ * Base class for tests which build the {@link JimpleBody} of a static
+ * {@code void} method in a class named {@code Foo} by hand. The Soot
+ * {@link Scene} is reset before each test.
+ */
+public abstract class AbstractJimpleTest {
+    private final String methodName;
+    protected SootClass sootClass;
+    protected SootMethod method;
+    protected JimpleBody body;
+
+    protected AbstractJimpleTest() {
+        this("foo");
+    }
+
+    protected AbstractJimpleTest(String methodName) {
+        this.methodName = methodName;
+    }
+
+    @Before
+    public void setupBody() {
+        soot.G.reset();
+        sootClass = new SootClass("Foo", Modifier.PUBLIC);
+        Scene.v().addClass(sootClass);
+        method = new SootMethod(methodName, Collections.<soot.Type> emptyList(),
+                VoidType.v(), Modifier.STATIC);
+        sootClass.addMethod(method);
+        body = Jimple.v().newBody(method);
+        method.setActiveBody(body);
+    }
+
+    protected Local local(String name, soot.Type type) {
+        Local local = Jimple.v().newLocal(name, type);
+        body.getLocals().add(local);
+        return local;
+    }
+
+    protected <T extends Stmt> T add(T stmt) {
+        body.getUnits().add(stmt);
+        return stmt;
+    }
+}
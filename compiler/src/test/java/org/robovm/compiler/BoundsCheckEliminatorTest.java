@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.ArrayType;
+import soot.IntType;
+import soot.Local;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.annotation.tags.ArrayCheckTag;
+
+/**
+ * Tests {@link BoundsCheckEliminator}.
+ */
+public class BoundsCheckEliminatorTest extends AbstractJimpleTest {
+    private Local a;
+    private Local i;
+    private Local n;
+    private Local v;
+
+    @Before
+    public void setup() {
+        a = local("a", ArrayType.v(IntType.v(), 1));
+        i = local("i", IntType.v());
+        n = local("n", IntType.v());
+        v = local("v", IntType.v());
+    }
+
+    private Stmt load() {
+        return add(Jimple.v().newAssignStmt(v, Jimple.v().newArrayRef(a, i)));
+    }
+
+    private static void assertChecks(boolean lower, boolean upper, Stmt stmt) {
+        ArrayCheckTag tag = (ArrayCheckTag) stmt.getTag("ArrayCheckTag");
+        assertNotNull(tag);
+        assertEquals(lower, tag.isCheckLower());
+        assertEquals(upper, tag.isCheckUpper());
+    }
+
+    /**
+     * <code>for (i = 0; i &lt; a.length; i++) v = a[i];</code>
+     */
+    @Test
+    public void testCountingUpLoop() {
+        add(Jimple.v().newIdentityStmt(a, Jimple.v().newParameterRef(a.getType(), 0)));
+        add(Jimple.v().newAssignStmt(i, IntConstant.v(0)));
+        Stmt exit = Jimple.v().newReturnVoidStmt();
+        Stmt header = add(Jimple.v().newAssignStmt(n, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newIfStmt(Jimple.v().newGeExpr(i, n), exit));
+        Stmt access = load();
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newAddExpr(i, IntConstant.v(1))));
+        add(Jimple.v().newGotoStmt(header));
+        add(exit);
+
+        assertEquals(2, BoundsCheckEliminator.eliminate(body));
+        assertChecks(false, false, access);
+    }
+
+    /**
+     * <code>for (i = a.length - 1; i &gt;= 0; i--) v = a[i];</code>
+     */
+    @Test
+    public void testCountingDownLoop() {
+        add(Jimple.v().newIdentityStmt(a, Jimple.v().newParameterRef(a.getType(), 0)));
+        add(Jimple.v().newAssignStmt(n, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newAddExpr(n, IntConstant.v(-1))));
+        Stmt exit = Jimple.v().newReturnVoidStmt();
+        Stmt header = add(Jimple.v().newIfStmt(Jimple.v().newLtExpr(i, IntConstant.v(0)), exit));
+        Stmt access = load();
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newAddExpr(i, IntConstant.v(-1))));
+        add(Jimple.v().newGotoStmt(header));
+        add(exit);
+
+        assertEquals(2, BoundsCheckEliminator.eliminate(body));
+        assertChecks(false, false, access);
+    }
+
+    /**
+     * <code>for (i = 0; i &lt;= a.length; i++) v = a[i];</code>
+     */
+    @Test
+    public void testOffByOneKeepsChecks() {
+        add(Jimple.v().newIdentityStmt(a, Jimple.v().newParameterRef(a.getType(), 0)));
+        add(Jimple.v().newAssignStmt(i, IntConstant.v(0)));
+        Stmt exit = Jimple.v().newReturnVoidStmt();
+        Stmt header = add(Jimple.v().newAssignStmt(n, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newIfStmt(Jimple.v().newGtExpr(i, n), exit));
+        Stmt access = load();
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newAddExpr(i, IntConstant.v(1))));
+        add(Jimple.v().newGotoStmt(header));
+        add(exit);
+
+        // i++ may overflow unless i < a.length. Neither check can be removed.
+        assertEquals(0, BoundsCheckEliminator.eliminate(body));
+        assertChecks(true, true, access);
+    }
+
+    /**
+     * <code>i = 0; while (i &lt; a.length) { a = b; v = a[i]; i++; }</code>
+     */
+    @Test
+    public void testRedefinedArrayKeepsChecks() {
+        Local b = local("b", a.getType());
+        add(Jimple.v().newIdentityStmt(a, Jimple.v().newParameterRef(a.getType(), 0)));
+        add(Jimple.v().newIdentityStmt(b, Jimple.v().newParameterRef(a.getType(), 1)));
+        add(Jimple.v().newAssignStmt(i, IntConstant.v(0)));
+        Stmt exit = Jimple.v().newReturnVoidStmt();
+        Stmt header = add(Jimple.v().newAssignStmt(n, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newIfStmt(Jimple.v().newGeExpr(i, n), exit));
+        add(Jimple.v().newAssignStmt(a, b));
+        Stmt access = load();
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newAddExpr(i, IntConstant.v(1))));
+        add(Jimple.v().newGotoStmt(header));
+        add(exit);
+
+        // i++ may overflow unless i < a.length. Neither check can be removed.
+        assertEquals(0, BoundsCheckEliminator.eliminate(body));
+        assertChecks(true, true, access);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.IntType;
+import soot.Local;
+import soot.Modifier;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.Unit;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+
+/**
+ * Tests {@link ClassInitCheckEliminator}.
+ */
+public class ClassInitCheckEliminatorTest extends AbstractJimpleTest {
+    private SootClass bar;
+    private SootField x;
+
+    @Before
+    public void setup() {
+        bar = new SootClass("Bar", Modifier.PUBLIC);
+        Scene.v().addClass(bar);
+        x = new SootField("x", IntType.v(), Modifier.STATIC);
+        bar.addField(x);
+    }
+
+    private Stmt getX(Local l) {
+        return Jimple.v().newAssignStmt(l, Jimple.v().newStaticFieldRef(x.makeRef()));
+    }
+
+    @Test
+    public void testRepeatedStaticAccess() {
+        Local l = local("l", IntType.v());
+        Stmt first = add(getX(l));
+        Stmt second = add(getX(l));
+        add(Jimple.v().newReturnVoidStmt());
+
+        Set<Unit> result = ClassInitCheckEliminator.eliminate(body);
+        assertFalse(result.contains(first));
+        assertTrue(result.contains(second));
+    }
+
+    @Test
+    public void testAccessAfterNew() {
+        Local o = local("o", RefType.v(bar));
+        Local l = local("l", IntType.v());
+        add(Jimple.v().newAssignStmt(o, Jimple.v().newNewExpr(RefType.v(bar))));
+        Stmt access = add(getX(l));
+        add(Jimple.v().newReturnVoidStmt());
+
+        assertTrue(ClassInitCheckEliminator.eliminate(body).contains(access));
+    }
+
+    /**
+     * <code>if l == 0 goto join; l = Bar.x; join: l = Bar.x;</code>
+     */
+    @Test
+    public void testAccessOnOnePathOnly() {
+        Local l = local("l", IntType.v());
+        Stmt join = getX(l);
+        add(Jimple.v().newIfStmt(Jimple.v().newEqExpr(l, IntConstant.v(0)), join));
+        add(getX(l));
+        add(join);
+        add(Jimple.v().newReturnVoidStmt());
+
+        assertFalse(ClassInitCheckEliminator.eliminate(body).contains(join));
+    }
+
+    /**
+     * <code>loop: if l == 0 goto exit; l = Bar.x; l = Bar.x; goto loop; exit: return;</code>
+     */
+    @Test
+    public void testAccessInLoop() {
+        Local l = local("l", IntType.v());
+        Stmt exit = Jimple.v().newReturnVoidStmt();
+        Stmt header = add(Jimple.v().newIfStmt(Jimple.v().newEqExpr(l, IntConstant.v(0)), exit));
+        Stmt first = add(getX(l));
+        Stmt second = add(getX(l));
+        add(Jimple.v().newGotoStmt(header));
+        add(exit);
+
+        Set<Unit> result = ClassInitCheckEliminator.eliminate(body);
+        // The first access in the loop body isn't preceded by an access on
+        // the loop entry path and keeps its check. See the class comment.
+        assertFalse(result.contains(first));
+        assertTrue(result.contains(second));
+    }
+
+    /**
+     * <code>l = Bar.x; loop: if l == 0 goto exit; l = Bar.x; goto loop; exit: return;</code>
+     */
+    @Test
+    public void testAccessInLoopAfterAccessBeforeLoop() {
+        Local l = local("l", IntType.v());
+        add(getX(l));
+        Stmt exit = Jimple.v().newReturnVoidStmt();
+        Stmt header = add(Jimple.v().newIfStmt(Jimple.v().newEqExpr(l, IntConstant.v(0)), exit));
+        Stmt access = add(getX(l));
+        add(Jimple.v().newGotoStmt(header));
+        add(exit);
+
+        assertTrue(ClassInitCheckEliminator.eliminate(body).contains(access));
+    }
+
+    @Test
+    public void testAccessInHandler() {
+        Local l = local("l", IntType.v());
+        Local e = local("e", RefType.v("java.lang.Throwable"));
+        Stmt first = add(getX(l));
+        Stmt ret = add(Jimple.v().newReturnVoidStmt());
+        Stmt handler = add(Jimple.v().newIdentityStmt(e, Jimple.v().newCaughtExceptionRef()));
+        Stmt access = add(getX(l));
+        add(Jimple.v().newReturnVoidStmt());
+        body.getTraps().add(Jimple.v().newTrap(Scene.v().getSootClass("java.lang.Throwable"),
+                first, ret, handler));
+
+        assertFalse(ClassInitCheckEliminator.eliminate(body).contains(access));
+    }
+}
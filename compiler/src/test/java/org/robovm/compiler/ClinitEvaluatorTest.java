@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.robovm.compiler.ClinitEvaluator.Instance;
+import org.robovm.compiler.ClinitEvaluator.ObjectArray;
+
+import soot.ArrayType;
+import soot.ByteType;
+import soot.CharType;
+import soot.IntType;
+import soot.Local;
+import soot.Modifier;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Value;
+import soot.VoidType;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.StringConstant;
+import soot.tagkit.IntegerConstantValueTag;
+
+/**
+ * Tests {@link ClinitEvaluator}.
+ */
+public class ClinitEvaluatorTest extends AbstractJimpleTest {
+    public ClinitEvaluatorTest() {
+        super("<clinit>");
+    }
+
+    private SootField field(String name, soot.Type type) {
+        SootField f = new SootField(name, type, Modifier.STATIC);
+        sootClass.addField(f);
+        return f;
+    }
+
+    private void assign(soot.Value left, soot.Value right) {
+        add(Jimple.v().newAssignStmt(left, right));
+    }
+
+    private void ret() {
+        add(Jimple.v().newReturnVoidStmt());
+    }
+
+    private static SootClass newClass(String name, SootClass superclass) {
+        SootClass c = new SootClass(name, Modifier.PUBLIC);
+        if (superclass != null) {
+            c.setSuperclass(superclass);
+        }
+        Scene.v().addClass(c);
+        return c;
+    }
+
+    private static SootField instanceField(SootClass c, String name, soot.Type type) {
+        SootField f = new SootField(name, type);
+        c.addField(f);
+        return f;
+    }
+
+    /**
+     * Adds a constructor which calls the no-args constructor of the
+     * superclass and stores its parameters into the specified fields.
+     */
+    private static void constructor(SootClass c, SootField ... fields) {
+        List<soot.Type> paramTypes = new ArrayList<>();
+        for (SootField f : fields) {
+            paramTypes.add(f.getType());
+        }
+        SootMethod m = new SootMethod("<init>", paramTypes, VoidType.v(), Modifier.PUBLIC);
+        c.addMethod(m);
+        JimpleBody b = Jimple.v().newBody(m);
+        m.setActiveBody(b);
+        Local thiz = Jimple.v().newLocal("this", c.getType());
+        b.getLocals().add(thiz);
+        b.getUnits().add(Jimple.v().newIdentityStmt(thiz, Jimple.v().newThisRef(c.getType())));
+        b.getUnits().add(Jimple.v().newInvokeStmt(Jimple.v().newSpecialInvokeExpr(thiz,
+                Scene.v().makeMethodRef(c.getSuperclass(), "<init>", Collections.<soot.Type> emptyList(),
+                        VoidType.v(), false), Collections.<Value> emptyList())));
+        for (int i = 0; i < fields.length; i++) {
+            Local p = Jimple.v().newLocal("p" + i, fields[i].getType());
+            b.getLocals().add(p);
+            b.getUnits().add(Jimple.v().newIdentityStmt(p, Jimple.v().newParameterRef(fields[i].getType(), i)));
+            b.getUnits().add(Jimple.v().newAssignStmt(
+                    Jimple.v().newInstanceFieldRef(thiz, fields[i].makeRef()), p));
+        }
+        b.getUnits().add(Jimple.v().newReturnVoidStmt());
+    }
+
+    private Local newObject(String name, SootClass c, SootMethod init, Value ... args) {
+        Local l = local(name, c.getType());
+        assign(l, Jimple.v().newNewExpr(c.getType()));
+        add(Jimple.v().newInvokeStmt(Jimple.v().newSpecialInvokeExpr(l, init.makeRef(), Arrays.asList(args))));
+        return l;
+    }
+
+    @Test
+    public void testConstants() {
+        SootField a = field("a", IntType.v());
+        SootField b = field("b", ByteType.v());
+        SootField s = field("s", RefType.v("java.lang.String"));
+        SootField c = field("c", IntType.v());
+        c.addTag(new IntegerConstantValueTag(7));
+        Local l = local("l", IntType.v());
+        assign(l, Jimple.v().newMulExpr(IntConstant.v(6), IntConstant.v(7)));
+        assign(Jimple.v().newStaticFieldRef(a.makeRef()), l);
+        assign(Jimple.v().newStaticFieldRef(b.makeRef()), IntConstant.v(0x1ff));
+        assign(Jimple.v().newStaticFieldRef(s.makeRef()), StringConstant.v("foo"));
+        ret();
+
+        Map<SootField, Object> values = ClinitEvaluator.evaluate(sootClass);
+        assertNotNull(values);
+        assertEquals(42, values.get(a));
+        assertEquals(-1, values.get(b));
+        assertEquals("foo", values.get(s));
+        assertEquals(7, values.get(c));
+    }
+
+    @Test
+    public void testPrimitiveArray() {
+        SootField f = field("table", ArrayType.v(IntType.v(), 1));
+        Local arr = local("arr", ArrayType.v(IntType.v(), 1));
+        assign(arr, Jimple.v().newNewArrayExpr(IntType.v(), IntConstant.v(3)));
+        assign(Jimple.v().newArrayRef(arr, IntConstant.v(0)), IntConstant.v(1));
+        assign(Jimple.v().newArrayRef(arr, IntConstant.v(2)), IntConstant.v(3));
+        assign(Jimple.v().newStaticFieldRef(f.makeRef()), arr);
+        ret();
+
+        Map<SootField, Object> values = ClinitEvaluator.evaluate(sootClass);
+        assertNotNull(values);
+        assertArrayEquals(new int[] {1, 0, 3}, (int[]) values.get(f));
+    }
+
+    @Test
+    public void testStringToCharArray() {
+        SootClass string = new SootClass("java.lang.String", Modifier.PUBLIC);
+        Scene.v().addClass(string);
+        SootField f = field("table", ArrayType.v(CharType.v(), 1));
+        SootField n = field("n", IntType.v());
+        Local s = local("s", RefType.v("java.lang.String"));
+        Local arr = local("arr", ArrayType.v(CharType.v(), 1));
+        Local l = local("l", IntType.v());
+        assign(s, StringConstant.v("ab\u0000c"));
+        assign(arr, Jimple.v().newVirtualInvokeExpr(s, Scene.v().makeMethodRef(string, "toCharArray",
+                Collections.<soot.Type> emptyList(), ArrayType.v(CharType.v(), 1), false)));
+        assign(l, Jimple.v().newVirtualInvokeExpr(s, Scene.v().makeMethodRef(string, "length",
+                Collections.<soot.Type> emptyList(), IntType.v(), false)));
+        assign(Jimple.v().newStaticFieldRef(f.makeRef()), arr);
+        assign(Jimple.v().newStaticFieldRef(n.makeRef()), l);
+        ret();
+
+        Map<SootField, Object> values = ClinitEvaluator.evaluate(sootClass);
+        assertNotNull(values);
+        assertArrayEquals(new char[] {'a', 'b', 0, 'c'}, (char[]) values.get(f));
+        assertEquals(4, values.get(n));
+    }
+
+    @Test
+    public void testSharedArray() {
+        SootField f1 = field("f1", ArrayType.v(IntType.v(), 1));
+        SootField f2 = field("f2", ArrayType.v(IntType.v(), 1));
+        Local arr = local("arr", ArrayType.v(IntType.v(), 1));
+        assign(arr, Jimple.v().newNewArrayExpr(IntType.v(), IntConstant.v(1)));
+        assign(Jimple.v().newStaticFieldRef(f1.makeRef()), arr);
+        assign(Jimple.v().newStaticFieldRef(f2.makeRef()), arr);
+        ret();
+
+        Map<SootField, Object> values = ClinitEvaluator.evaluate(sootClass);
+        assertNotNull(values);
+        assertSame(values.get(f1), values.get(f2));
+    }
+
+    @Test
+    public void testEnumConstants() {
+        // enum Foo { A, B } with the $VALUES array created by $values()
+        SootClass object = newClass("java.lang.Object", null);
+        sootClass.setSuperclass(object);
+        RefType fooType = sootClass.getType();
+        ArrayType fooArrayType = ArrayType.v(fooType, 1);
+        SootField name = instanceField(sootClass, "name", RefType.v("java.lang.String"));
+        SootField ordinal = instanceField(sootClass, "ordinal", IntType.v());
+        constructor(sootClass, name, ordinal);
+        SootMethod init = sootClass.getMethod("<init>", Arrays.<soot.Type> asList(name.getType(), IntType.v()));
+        SootField a = field("A", fooType);
+        SootField b = field("B", fooType);
+        SootField valuesField = field("$VALUES", fooArrayType);
+
+        SootMethod valuesMethod = new SootMethod("$values", Collections.<soot.Type> emptyList(),
+                fooArrayType, Modifier.PRIVATE | Modifier.STATIC);
+        sootClass.addMethod(valuesMethod);
+        JimpleBody b2 = Jimple.v().newBody(valuesMethod);
+        valuesMethod.setActiveBody(b2);
+        Local arr = Jimple.v().newLocal("arr", fooArrayType);
+        Local tmp = Jimple.v().newLocal("tmp", fooType);
+        b2.getLocals().add(arr);
+        b2.getLocals().add(tmp);
+        b2.getUnits().add(Jimple.v().newAssignStmt(arr, Jimple.v().newNewArrayExpr(fooType, IntConstant.v(2))));
+        b2.getUnits().add(Jimple.v().newAssignStmt(tmp, Jimple.v().newStaticFieldRef(a.makeRef())));
+        b2.getUnits().add(Jimple.v().newAssignStmt(Jimple.v().newArrayRef(arr, IntConstant.v(0)), tmp));
+        b2.getUnits().add(Jimple.v().newAssignStmt(tmp, Jimple.v().newStaticFieldRef(b.makeRef())));
+        b2.getUnits().add(Jimple.v().newAssignStmt(Jimple.v().newArrayRef(arr, IntConstant.v(1)), tmp));
+        b2.getUnits().add(Jimple.v().newReturnStmt(arr));
+
+        Local la = newObject("la", sootClass, init, StringConstant.v("A"), IntConstant.v(0));
+        assign(Jimple.v().newStaticFieldRef(a.makeRef()), la);
+        Local lb = newObject("lb", sootClass, init, StringConstant.v("B"), IntConstant.v(1));
+        assign(Jimple.v().newStaticFieldRef(b.makeRef()), lb);
+        Local lv = local("lv", fooArrayType);
+        assign(lv, Jimple.v().newStaticInvokeExpr(valuesMethod.makeRef()));
+        assign(Jimple.v().newStaticFieldRef(valuesField.makeRef()), lv);
+        ret();
+
+        Map<SootField, Object> values = ClinitEvaluator.evaluate(sootClass);
+        assertNotNull(values);
+        Instance instA = (Instance) values.get(a);
+        Instance instB = (Instance) values.get(b);
+        assertSame(sootClass, instA.getType());
+        assertEquals("A", instA.getFields().get(name));
+        assertEquals(0, instA.getFields().get(ordinal));
+        assertEquals("B", instB.getFields().get(name));
+        assertEquals(1, instB.getFields().get(ordinal));
+        ObjectArray array = (ObjectArray) values.get(valuesField);
+        assertEquals(fooArrayType, array.getType());
+        assertEquals(2, array.getValues().length);
+        assertSame(instA, array.getValues()[0]);
+        assertSame(instB, array.getValues()[1]);
+    }
+
+    @Test
+    public void testObjectGraph() {
+        SootClass object = newClass("java.lang.Object", null);
+        sootClass.setSuperclass(object);
+        SootClass node = newClass("Node", object);
+        SootField next = instanceField(node, "next", node.getType());
+        SootField data = instanceField(node, "data", ArrayType.v(IntType.v(), 1));
+        constructor(node);
+        SootMethod init = node.getMethod("<init>", Collections.<soot.Type> emptyList());
+        SootField head = field("head", node.getType());
+        SootField table = field("table", ArrayType.v(IntType.v(), 1));
+
+        Local n1 = newObject("n1", node, init);
+        Local n2 = newObject("n2", node, init);
+        assign(Jimple.v().newInstanceFieldRef(n1, next.makeRef()), n2);
+        assign(Jimple.v().newInstanceFieldRef(n2, next.makeRef()), n1);
+        Local arr = local("arr", ArrayType.v(IntType.v(), 1));
+        assign(arr, Jimple.v().newNewArrayExpr(IntType.v(), IntConstant.v(2)));
+        assign(Jimple.v().newArrayRef(arr, IntConstant.v(1)), IntConstant.v(5));
+        assign(Jimple.v().newInstanceFieldRef(n1, data.makeRef()), arr);
+        assign(Jimple.v().newInstanceFieldRef(n2, data.makeRef()), arr);
+        assign(Jimple.v().newStaticFieldRef(head.makeRef()), n1);
+        assign(Jimple.v().newStaticFieldRef(table.makeRef()), arr);
+        ret();
+
+        Map<SootField, Object> values = ClinitEvaluator.evaluate(sootClass);
+        assertNotNull(values);
+        Instance i1 = (Instance) values.get(head);
+        Instance i2 = (Instance) i1.getFields().get(next);
+        assertSame(node, i2.getType());
+        assertSame(i1, i2.getFields().get(next));
+        assertSame(values.get(table), i1.getFields().get(data));
+        assertSame(values.get(table), i2.getFields().get(data));
+        assertArrayEquals(new int[] {0, 5}, (int[]) values.get(table));
+    }
+
+    @Test
+    public void testUnsupportedClassNotEvaluated() {
+        SootClass object = newClass("java.lang.Object", null);
+        SootClass thread = newClass("java.lang.Thread", object);
+        SootClass myThread = newClass("MyThread", thread);
+        constructor(myThread);
+        SootField f = field("t", myThread.getType());
+        Local t = newObject("t", myThread, myThread.getMethod("<init>", Collections.<soot.Type> emptyList()));
+        assign(Jimple.v().newStaticFieldRef(f.makeRef()), t);
+        ret();
+
+        assertNull(ClinitEvaluator.evaluate(sootClass));
+    }
+
+    @Test
+    public void testOutOfBoundsNotEvaluated() {
+        SootField f = field("f", ArrayType.v(IntType.v(), 1));
+        Local arr = local("arr", ArrayType.v(IntType.v(), 1));
+        assign(arr, Jimple.v().newNewArrayExpr(IntType.v(), IntConstant.v(1)));
+        assign(Jimple.v().newArrayRef(arr, IntConstant.v(1)), IntConstant.v(1));
+        assign(Jimple.v().newStaticFieldRef(f.makeRef()), arr);
+        ret();
+
+        assertNull(ClinitEvaluator.evaluate(sootClass));
+    }
+
+    @Test
+    public void testCallNotEvaluated() {
+        SootMethod m = new SootMethod("m", Collections.<soot.Type> emptyList(),
+                VoidType.v(), Modifier.STATIC);
+        sootClass.addMethod(m);
+        add(Jimple.v().newInvokeStmt(Jimple.v().newStaticInvokeExpr(m.makeRef())));
+        ret();
+
+        assertNull(ClinitEvaluator.evaluate(sootClass));
+    }
+}
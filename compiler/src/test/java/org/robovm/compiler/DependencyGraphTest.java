@@ -20,6 +20,10 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.junit.Before;
@@ -294,4 +298,79 @@ public class DependencyGraphTest {
         assertTrue(graph.findReachableMethods().contains(new ImmutableTriple<>(C.getInternalName(), "a", "()V")));
         assertTrue(graph.findReachableMethods().contains(new ImmutableTriple<>(C.getInternalName(), "b", "()V")));
     }
+
+    private DependencyGraph createGraph(TreeShakerMode mode, Clazz ... clazzes) {
+        DependencyGraph graph = new DependencyGraph(mode);
+        graph.add(Root, true);
+        for (Clazz clazz : clazzes) {
+            graph.add(clazz, false);
+        }
+        return graph;
+    }
+
+    @Test
+    public void testIncrementalReachability() throws Exception {
+        for (TreeShakerMode mode : TreeShakerMode.values()) {
+            DependencyGraph graph = createGraph(mode);
+            assertEquals(createGraph(mode).findReachableMethods(), graph.findReachableMethods());
+            graph.add(A, false);
+            assertEquals(createGraph(mode, A).findReachableClasses(), graph.findReachableClasses());
+            assertEquals(createGraph(mode, A).findReachableMethods(), graph.findReachableMethods());
+            graph.add(B, false);
+            assertEquals(createGraph(mode, A, B).findReachableMethods(), graph.findReachableMethods());
+            graph.add(C, false);
+            assertEquals(createGraph(mode, A, B, C).findReachableClasses(), graph.findReachableClasses());
+            assertEquals(createGraph(mode, A, B, C).findReachableMethods(), graph.findReachableMethods());
+        }
+    }
+
+    @Test
+    public void testIncrementalReachabilityWeaklyLinkedMethodAddedLater() throws Exception {
+        Root.getClazzInfo().addInvokeMethodDependency(A.getInternalName(), "c", "()V", true);
+        ImmutableTriple<String, String, String> c = new ImmutableTriple<>(A.getInternalName(), "c", "()V");
+
+        DependencyGraph graph = new DependencyGraph(TreeShakerMode.conservative);
+        graph.add(Root, true);
+        // A.c() isn't known to be weakly linked until A has been added
+        assertTrue(graph.findReachableMethods().contains(c));
+        graph.add(A, false);
+        assertFalse(graph.findReachableMethods().contains(c));
+        graph.add(B, false);
+        graph.add(C, false);
+        assertEquals(createGraph(TreeShakerMode.conservative, A, B, C).findReachableMethods(),
+                graph.findReachableMethods());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        for (TreeShakerMode mode : TreeShakerMode.values()) {
+            DependencyGraph graph = createGraph(mode, A, B, C);
+            Set<String> invalidated = graph.invalidate(Collections.singleton(A.getInternalName()));
+            // Root depends on A
+            assertEquals(new HashSet<>(Arrays.asList(Root.getInternalName(), A.getInternalName())), invalidated);
+            assertTrue(graph.findReachableClasses().isEmpty());
+
+            graph.add(Root, true);
+            graph.add(A, false);
+            // B and C haven't been invalidated and are skipped
+            graph.add(B, false);
+            graph.add(C, false);
+            assertEquals(createGraph(mode, A, B, C).findReachableClasses(), graph.findReachableClasses());
+            assertEquals(createGraph(mode, A, B, C).findReachableMethods(), graph.findReachableMethods());
+        }
+    }
+
+    @Test
+    public void testAddWithNewClazzInfo() throws Exception {
+        DependencyGraph graph = createGraph(TreeShakerMode.none, A, B, C);
+        assertTrue(graph.findReachableClasses().contains(A.getInternalName()));
+        // Root has been recompiled and no longer depends on A, B and C
+        Root.resetClazzInfo().initClassInfo();
+        graph.add(Root, true);
+        Set<String> classes = graph.findReachableClasses();
+        assertTrue(classes.contains(Root.getInternalName()));
+        assertFalse(classes.contains(A.getInternalName()));
+        assertFalse(classes.contains(B.getInternalName()));
+        assertFalse(classes.contains(C.getInternalName()));
+    }
 }
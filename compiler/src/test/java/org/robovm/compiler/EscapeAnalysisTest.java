@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import soot.ArrayType;
+import soot.ByteType;
+import soot.IntType;
+import soot.Local;
+import soot.LongType;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+
+/**
+ * Tests {@link EscapeAnalysis}.
+ */
+public class EscapeAnalysisTest extends AbstractJimpleTest {
+    private Stmt newArray(Local local, soot.Type elementType, int length) {
+        return add(Jimple.v().newAssignStmt(local,
+                Jimple.v().newNewArrayExpr(elementType, IntConstant.v(length))));
+    }
+
+    private List<DefinitionStmt> analyze() {
+        return new ArrayList<>(EscapeAnalysis.findStackAllocatableArrays(body));
+    }
+
+    @Test
+    public void testNonEscapingArray() {
+        Local a = local("a", ArrayType.v(ByteType.v(), 1));
+        Local i = local("i", IntType.v());
+        Stmt alloc = newArray(a, ByteType.v(), 16);
+        add(Jimple.v().newAssignStmt(Jimple.v().newArrayRef(a, IntConstant.v(0)), IntConstant.v(1)));
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newAssignStmt(i, Jimple.v().newArrayRef(a, i)));
+        add(Jimple.v().newReturnVoidStmt());
+        assertEquals(Arrays.asList(alloc), analyze());
+    }
+
+    @Test
+    public void testReturnedArrayEscapes() {
+        Local a = local("a", ArrayType.v(ByteType.v(), 1));
+        newArray(a, ByteType.v(), 16);
+        add(Jimple.v().newReturnStmt(a));
+        assertTrue(analyze().isEmpty());
+    }
+
+    @Test
+    public void testCopiedArrayEscapes() {
+        Local a = local("a", ArrayType.v(ByteType.v(), 1));
+        Local b = local("b", ArrayType.v(ByteType.v(), 1));
+        newArray(a, ByteType.v(), 16);
+        add(Jimple.v().newAssignStmt(b, a));
+        add(Jimple.v().newReturnVoidStmt());
+        assertTrue(analyze().isEmpty());
+    }
+
+    @Test
+    public void testMultipleDefinitions() {
+        Local a = local("a", ArrayType.v(ByteType.v(), 1));
+        newArray(a, ByteType.v(), 16);
+        newArray(a, ByteType.v(), 16);
+        add(Jimple.v().newReturnVoidStmt());
+        assertTrue(analyze().isEmpty());
+    }
+
+    @Test
+    public void testSizeLimits() {
+        Local a = local("a", ArrayType.v(ByteType.v(), 1));
+        newArray(a, ByteType.v(), EscapeAnalysis.MAX_ARRAY_SIZE + 1);
+        Local b = local("b", ArrayType.v(ByteType.v(), 1));
+        newArray(b, ByteType.v(), -1);
+        List<Stmt> expected = new ArrayList<>();
+        int count = EscapeAnalysis.MAX_TOTAL_SIZE / EscapeAnalysis.MAX_ARRAY_SIZE;
+        for (int i = 0; i <= count; i++) {
+            Local l = local("l" + i, ArrayType.v(LongType.v(), 1));
+            Stmt stmt = newArray(l, LongType.v(), EscapeAnalysis.MAX_ARRAY_SIZE / 8);
+            if (i < count) {
+                expected.add(stmt);
+            }
+        }
+        add(Jimple.v().newReturnVoidStmt());
+        assertEquals(expected, analyze());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+import static org.robovm.compiler.llvm.Type.*;
+
+import java.lang.reflect.Modifier;
+
+import org.junit.Test;
+import org.robovm.compiler.ITable.Entry;
+import org.robovm.compiler.ITable.IMT;
+import org.robovm.compiler.llvm.Constant;
+import org.robovm.compiler.llvm.GlobalRef;
+
+/**
+ * Tests {@link ITable}.
+ */
+public class ITableTest {
+
+    private static Entry entry(String declaringClass, String name, String desc) {
+        return new Entry(0, Modifier.PUBLIC, declaringClass, name, desc);
+    }
+
+    private static Constant ref(String name) {
+        return new GlobalRef(name, I8_PTR);
+    }
+
+    @Test
+    public void testIMTSlot() {
+        Entry e1 = entry("java.util.List", "size", "()I");
+        Entry e2 = entry("java.util.List", "size", "()I");
+        assertEquals(e1.getIMTSlot(), e2.getIMTSlot());
+        for (String name : new String[] {"size", "get", "add", "iterator", "hasNext", "next"}) {
+            int slot = entry("java.util.Collection", name, "()V").getIMTSlot();
+            assertTrue(slot >= 0 && slot < ITable.IMT_SIZE);
+        }
+    }
+
+    @Test
+    public void testIMTConflicts() {
+        IMT imt = new IMT();
+        imt.add(1, ref("ti_A"), ref("impl_A_foo"));
+        imt.add(2, ref("ti_A"), ref("impl_A_bar"));
+        imt.add(2, ref("ti_B"), ref("impl_B_baz"));
+        imt.add(2, ref("ti_C"), ref("impl_C_qux"));
+        String s = imt.getArray().toString();
+        assertTrue(s.contains("@impl_A_foo"));
+        assertFalse(s.contains("@impl_A_bar"));
+        assertFalse(s.contains("@impl_B_baz"));
+        assertFalse(s.contains("@impl_C_qux"));
+        assertFalse(s.contains("@ti_B"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link LinkerObjectCache}.
+ */
+public class LinkerObjectCacheTest {
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(LinkerObjectCacheTest.class.getSimpleName()).toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File file(String name, String contents) throws IOException {
+        File f = new File(dir, name);
+        FileUtils.writeStringToFile(f, contents, "UTF-8");
+        return f;
+    }
+
+    @Test
+    public void testGetDir() {
+        File cacheDir = new File(dir, "cache");
+        File a = LinkerObjectCache.getDir(cacheDir, "Main", "com.example.Main", new File(dir, "a"));
+        assertEquals(a, LinkerObjectCache.getDir(cacheDir, "Main", "com.example.Main", new File(dir, "a")));
+        assertTrue(a.getName().startsWith("Main-"));
+        assertEquals(new File(cacheDir, "linker"), a.getParentFile());
+
+        assertFalse(a.equals(LinkerObjectCache.getDir(cacheDir, "Main", "com.example.Main", new File(dir, "b"))));
+        assertFalse(a.equals(LinkerObjectCache.getDir(cacheDir, "Main", "com.example.Other", new File(dir, "a"))));
+        assertFalse(a.equals(LinkerObjectCache.getDir(cacheDir, "Other", "com.example.Main", new File(dir, "a"))));
+        assertNotNull(LinkerObjectCache.getDir(cacheDir, "Main", null, new File(dir, "a")));
+    }
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        LinkerObjectCache cache = new LinkerObjectCache(new File(dir, "cache"));
+        File o = new File(dir, "linker1.o");
+        assertFalse(cache.get("d1", o));
+        assertFalse(o.exists());
+
+        cache.put("d1", file("built.o", "d1 code"));
+        assertTrue(cache.get("d1", o));
+        assertEquals("d1 code", FileUtils.readFileToString(o, "UTF-8"));
+        assertFalse(cache.get("d2", o));
+
+        // A new build sees the entries stored by the previous one
+        cache = new LinkerObjectCache(new File(dir, "cache"));
+        assertTrue(cache.get("d1", new File(dir, "linker2.o")));
+        assertEquals("d1 code", FileUtils.readFileToString(new File(dir, "linker2.o"), "UTF-8"));
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        File cacheDir = new File(dir, "cache");
+        File o = new File(dir, "linker.o");
+        LinkerObjectCache cache = new LinkerObjectCache(cacheDir);
+        cache.put("d1", file("built1.o", "d1 code"));
+        cache.put("d2", file("built2.o", "d2 code"));
+        cache.put("d3", file("built3.o", "d3 code"));
+        cache.purge();
+        assertEquals(3, cacheDir.list().length);
+
+        cache = new LinkerObjectCache(cacheDir);
+        assertTrue(cache.get("d1", o));
+        cache.put("d4", file("built4.o", "d4 code"));
+        cache.purge();
+        assertEquals(2, cacheDir.list().length);
+
+        cache = new LinkerObjectCache(cacheDir);
+        assertTrue(cache.get("d1", o));
+        assertFalse(cache.get("d2", o));
+        assertFalse(cache.get("d3", o));
+        assertTrue(cache.get("d4", o));
+    }
+
+    @Test
+    public void testPurgeKeepsOtherExecutables() throws Exception {
+        File cacheDir = new File(dir, "cache");
+        LinkerObjectCache a = new LinkerObjectCache(
+                LinkerObjectCache.getDir(cacheDir, "Main", "com.example.Main", new File(dir, "a")));
+        LinkerObjectCache b = new LinkerObjectCache(
+                LinkerObjectCache.getDir(cacheDir, "Main", "com.example.Main", new File(dir, "b")));
+        a.put("d1", file("a.o", "a code"));
+        b.put("d1", file("b.o", "b code"));
+        a.purge();
+        b.purge();
+
+        File o = new File(dir, "linker.o");
+        b = new LinkerObjectCache(b.getDir());
+        b.put("d2", file("b2.o", "b2 code"));
+        b.purge();
+        assertFalse(b.get("d1", o));
+
+        a = new LinkerObjectCache(a.getDir());
+        assertTrue(a.get("d1", o));
+        assertEquals("a code", FileUtils.readFileToString(o, "UTF-8"));
+    }
+
+    @Test
+    public void testModuleIndex() {
+        String[] names = {"java/lang/Object", "java/lang/String", "com/example/Main", "a", ""};
+        for (String name : names) {
+            int idx = Linker.getModuleIndex(name, 8);
+            assertTrue(idx >= 1 && idx < 8);
+            // The index is stable and only depends on the name
+            assertEquals(idx, Linker.getModuleIndex(new String(name), 8));
+        }
+        assertEquals(1, Linker.getModuleIndex("java/lang/Object", 2));
+    }
+}
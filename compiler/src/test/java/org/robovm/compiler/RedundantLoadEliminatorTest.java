@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.ArrayType;
+import soot.IntType;
+import soot.Local;
+import soot.Modifier;
+import soot.RefType;
+import soot.SootField;
+import soot.jimple.AssignStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.LengthExpr;
+import soot.jimple.Stmt;
+
+/**
+ * Tests {@link RedundantLoadEliminator}.
+ */
+public class RedundantLoadEliminatorTest extends AbstractJimpleTest {
+    @Before
+    public void setup() {
+        sootClass.addField(new SootField("f", IntType.v(), Modifier.FINAL));
+        sootClass.addField(new SootField("g", IntType.v(), 0));
+    }
+
+    private Stmt param(Local l, int index) {
+        return add(Jimple.v().newIdentityStmt(l, Jimple.v().newParameterRef(l.getType(), index)));
+    }
+
+    @Test
+    public void testRepeatedLengthLoad() {
+        Local a = local("a", ArrayType.v(IntType.v(), 1));
+        Local n1 = local("n1", IntType.v());
+        Local n2 = local("n2", IntType.v());
+        param(a, 0);
+        add(Jimple.v().newAssignStmt(n1, Jimple.v().newLengthExpr(a)));
+        Stmt second = add(Jimple.v().newAssignStmt(n2, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newReturnVoidStmt());
+
+        assertEquals(1, RedundantLoadEliminator.eliminate(body));
+        assertSame(n1, ((AssignStmt) second).getRightOp());
+    }
+
+    /**
+     * <code>i = 0; goto cond; loop: i++; cond: n = a.length; if i &lt; n goto loop;</code>
+     */
+    @Test
+    public void testLengthLoadHoistedOutOfLoop() {
+        Local a = local("a", ArrayType.v(IntType.v(), 1));
+        Local i = local("i", IntType.v());
+        Local n = local("n", IntType.v());
+        param(a, 0);
+        add(Jimple.v().newAssignStmt(i, IntConstant.v(0)));
+        Stmt loop = Jimple.v().newAssignStmt(i, Jimple.v().newAddExpr(i, IntConstant.v(1)));
+        Stmt cond = Jimple.v().newAssignStmt(n, Jimple.v().newLengthExpr(a));
+        Stmt preheader = add(Jimple.v().newGotoStmt(cond));
+        add(loop);
+        add(cond);
+        add(Jimple.v().newIfStmt(Jimple.v().newLtExpr(i, n), loop));
+        add(Jimple.v().newReturnVoidStmt());
+
+        assertEquals(1, RedundantLoadEliminator.eliminate(body));
+        AssignStmt hoisted = (AssignStmt) body.getUnits().getPredOf(preheader);
+        assertSame(a, ((LengthExpr) hoisted.getRightOp()).getOp());
+        assertSame(hoisted.getLeftOp(), ((AssignStmt) cond).getRightOp());
+    }
+
+    @Test
+    public void testRedefinedArrayNotEliminated() {
+        Local a = local("a", ArrayType.v(IntType.v(), 1));
+        Local n1 = local("n1", IntType.v());
+        Local n2 = local("n2", IntType.v());
+        param(a, 0);
+        add(Jimple.v().newAssignStmt(n1, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newAssignStmt(a, Jimple.v().newNewArrayExpr(IntType.v(), IntConstant.v(1))));
+        add(Jimple.v().newAssignStmt(n2, Jimple.v().newLengthExpr(a)));
+        add(Jimple.v().newReturnVoidStmt());
+
+        assertEquals(0, RedundantLoadEliminator.eliminate(body));
+    }
+
+    @Test
+    public void testFinalFieldLoads() {
+        Local o = local("o", RefType.v(sootClass));
+        Local v1 = local("v1", IntType.v());
+        Local v2 = local("v2", IntType.v());
+        Local v3 = local("v3", IntType.v());
+        Local v4 = local("v4", IntType.v());
+        param(o, 0);
+        add(Jimple.v().newAssignStmt(v1, Jimple.v().newInstanceFieldRef(o,
+                sootClass.getFieldByName("f").makeRef())));
+        Stmt second = add(Jimple.v().newAssignStmt(v2, Jimple.v().newInstanceFieldRef(o,
+                sootClass.getFieldByName("f").makeRef())));
+        // Non-final fields are never eliminated
+        add(Jimple.v().newAssignStmt(v3, Jimple.v().newInstanceFieldRef(o,
+                sootClass.getFieldByName("g").makeRef())));
+        add(Jimple.v().newAssignStmt(v3, Jimple.v().newInstanceFieldRef(o,
+                sootClass.getFieldByName("g").makeRef())));
+        // Calls may modify final fields using reflection
+        add(Jimple.v().newInvokeStmt(Jimple.v().newStaticInvokeExpr(method.makeRef())));
+        add(Jimple.v().newAssignStmt(v4, Jimple.v().newInstanceFieldRef(o,
+                sootClass.getFieldByName("f").makeRef())));
+        add(Jimple.v().newReturnVoidStmt());
+
+        assertEquals(1, RedundantLoadEliminator.eliminate(body));
+        assertSame(v1, ((AssignStmt) second).getRightOp());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.clazz.ClazzInfo;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.config.FakeHome;
+
+import soot.Scene;
+import soot.options.Options;
+
+/**
+ * Tests {@link WholeProgramOptimizer}.
+ */
+public class WholeProgramOptimizerTest {
+
+    Config config;
+
+    @BeforeClass
+    public static void initializeSoot() throws IOException {
+        soot.G.reset();
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_include_all(true);
+        Options.v().set_print_tags_in_output(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_soot_classpath(System.getProperty("sun.boot.class.path") +
+                ":" + System.getProperty("java.class.path"));
+        Scene.v().loadNecessaryClasses();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        Config.Builder builder = new Config.Builder()
+                .home(new FakeHome())
+                .skipRuntimeLib(true)
+                .skipLinking(true);
+        for (String path : System.getProperty("sun.boot.class.path").split(File.pathSeparator)) {
+            builder.addBootClasspathEntry(new File(path));
+        }
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            builder.addClasspathEntry(new File(path));
+        }
+        config = builder.build();
+    }
+
+    private ClazzInfo loadClazzInfo(Class<?> cls) {
+        Clazz clazz = config.getClazzes().load(cls.getName().replace('.', '/'));
+        if (clazz.getClazzInfo() == null) {
+            clazz.resetClazzInfo().initClassInfo();
+        }
+        return clazz.getClazzInfo();
+    }
+
+    private static String key(Class<?> cls, String nameDesc) {
+        return cls.getName().replace('.', '/') + "." + nameDesc;
+    }
+
+    public static class Walker {
+        public static void walk() {}
+    }
+
+    public static class Api {
+        public static void call() {
+            helper();
+        }
+
+        private static void helper() {
+            Walker.walk();
+        }
+
+        public static void unrelated() {}
+    }
+
+    public static class User {
+        public static void use() {
+            Api.call();
+        }
+
+        public static void outer() {
+            use();
+            Api.unrelated();
+        }
+    }
+
+    public static class Other {
+        public static void direct() {
+            Walker.walk();
+        }
+    }
+
+    @Test
+    public void testFindCallerSensitiveMethods() throws Exception {
+        Set<String> result = WholeProgramOptimizer.findCallerSensitiveMethods(
+                Arrays.asList(loadClazzInfo(Walker.class), loadClazzInfo(Api.class),
+                        loadClazzInfo(User.class), loadClazzInfo(Other.class)),
+                Collections.singleton(Walker.class.getName().replace('.', '/')));
+
+        assertTrue(result.contains(key(Walker.class, "walk()V")));
+        // Calls the stack walker through a method in the same class
+        assertTrue(result.contains(key(Api.class, "helper()V")));
+        assertTrue(result.contains(key(Api.class, "call()V")));
+        assertFalse(result.contains(key(Api.class, "unrelated()V")));
+        // Direct callers in other classes
+        assertTrue(result.contains(key(User.class, "use()V")));
+        assertTrue(result.contains(key(Other.class, "direct()V")));
+        // Its frame isn't seen by the stack walker
+        assertFalse(result.contains(key(User.class, "outer()V")));
+    }
+}
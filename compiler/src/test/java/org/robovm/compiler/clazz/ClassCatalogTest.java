@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ClassCatalog}.
+ */
+public class ClassCatalogTest {
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(ClassCatalogTest.class.getSimpleName()).toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File zip(String ... entries) throws IOException {
+        File f = new File(dir, "classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f))) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(new byte[] {(byte) 0xca, (byte) 0xfe});
+                out.closeEntry();
+            }
+        }
+        return f;
+    }
+
+    private ClassCatalog open(File archive, File catalogFile) throws IOException {
+        long size = archive.length();
+        long lastModified = archive.lastModified();
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            return ClassCatalog.open(catalogFile, size, lastModified, zipFile);
+        }
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        File archive = zip("b/B.class", "META-INF/MANIFEST.MF", "a/A.class", "a/", "a/å.class");
+        File catalogFile = new File(dir, "cache/classes.jar.catalog");
+        ClassCatalog catalog = open(archive, catalogFile);
+        assertTrue(catalogFile.isFile());
+        assertEquals(Arrays.asList("a/A", "a/å", "b/B"), catalog);
+        assertTrue(catalog.contains("a/A"));
+        assertTrue(catalog.contains("a/å"));
+        assertFalse(catalog.contains("a/B"));
+        assertFalse(catalog.contains("META-INF/MANIFEST"));
+
+        long lastModified = catalogFile.lastModified() - 10000;
+        catalogFile.setLastModified(lastModified);
+        assertEquals(catalog, open(archive, catalogFile));
+        assertEquals(lastModified, catalogFile.lastModified());
+    }
+
+    @Test
+    public void testArchiveModified() throws Exception {
+        File archive = zip("a/A.class");
+        archive.setLastModified(System.currentTimeMillis() - 60000);
+        File catalogFile = new File(dir, "classes.jar.catalog");
+        assertEquals(Arrays.asList("a/A"), open(archive, catalogFile));
+
+        archive = zip("a/A.class", "b/B.class");
+        assertEquals(Arrays.asList("a/A", "b/B"), open(archive, catalogFile));
+    }
+
+    @Test
+    public void testArchiveReplacedAfterOpen() throws Exception {
+        File replacement = new File(dir, "replacement.jar");
+        assertTrue(zip("a/A.class", "b/B.class").renameTo(replacement));
+        File archive = zip("a/A.class");
+        archive.setLastModified(System.currentTimeMillis() - 60000);
+        long size = archive.length();
+        long lastModified = archive.lastModified();
+        File catalogFile = new File(dir, "classes.jar.catalog");
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            assertTrue(replacement.renameTo(archive));
+            // The catalog of the old archive must not be stamped with the
+            // size and modification time of the new archive.
+            assertEquals(Arrays.asList("a/A"), ClassCatalog.open(catalogFile, size, lastModified, zipFile));
+        }
+        assertEquals(Arrays.asList("a/A", "b/B"), open(archive, catalogFile));
+    }
+}
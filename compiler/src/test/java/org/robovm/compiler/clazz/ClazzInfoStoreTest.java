@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ClazzInfoStore} and {@link ClazzInfoCodec}.
+ */
+public class ClazzInfoStoreTest {
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(ClazzInfoStoreTest.class.getSimpleName()).toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static ClazzInfo clazzInfo(String internalName, String superclassName) {
+        ClazzInfo ci = new ClazzInfo();
+        ci.setModifiers(Modifier.PUBLIC | Modifier.FINAL);
+        ci.setInternalName(internalName);
+        ci.setName(internalName.replace('/', '.'));
+        ci.setSuperclassName(superclassName);
+        ci.setInterfaceNames(Arrays.asList("java/io/Serializable", "java/lang/Comparable"));
+        ci.setCatchNames(Collections.singleton("java/io/IOException"));
+        ci.addCheckcast("java/lang/String");
+        ci.addInvoke(superclassName);
+        ci.setBuildTimeInit(true);
+        return ci;
+    }
+
+    @Test
+    public void testCodec() throws Exception {
+        ClazzInfo ci = ClazzInfoCodec.decode(ByteBuffer.wrap(
+                ClazzInfoCodec.encode(clazzInfo("a/A", "java/lang/Object"))), new HashMap<String, String>());
+        assertEquals("a.A", ci.getName());
+        assertEquals("a/A", ci.getInternalName());
+        assertEquals("java/lang/Object", ci.getSuperclassName());
+        assertTrue(ci.isPublic());
+        assertTrue(ci.isFinal());
+        assertFalse(ci.isInterface());
+        assertEquals(Arrays.asList("java/io/Serializable", "java/lang/Comparable"), ci.getInterfaceNames());
+        assertEquals(Collections.singleton("java/io/IOException"), ci.getCatchNames());
+        assertEquals(Collections.singleton("java/lang/String"), ci.getCheckcasts());
+        assertEquals(Collections.singleton("java/lang/Object"), ci.getInvokes());
+        assertTrue(ci.getInstanceofs().isEmpty());
+        assertTrue(ci.isBuildTimeInit());
+        assertTrue(ci.getMethods().isEmpty());
+        assertTrue(ci.getAllDependencies().isEmpty());
+
+        ci = ClazzInfoCodec.decode(ByteBuffer.wrap(
+                ClazzInfoCodec.encode(clazzInfo("a/B", null))), new HashMap<String, String>());
+        assertNull(ci.getSuperclassName());
+        assertFalse(ci.hasSuperclass());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCodecTruncated() throws Exception {
+        byte[] data = ClazzInfoCodec.encode(clazzInfo("a/A", "java/lang/Object"));
+        ClazzInfoCodec.decode(ByteBuffer.wrap(data, 0, data.length - 4), new HashMap<String, String>());
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        ClazzInfoStore store = ClazzInfoStore.open(new File(dir, "classes.infos"));
+        assertSame(store, ClazzInfoStore.open(new File(dir, "classes.infos")));
+        assertNull(store.read("a/A"));
+
+        store.write("a/A", clazzInfo("a/A", "java/lang/Object"));
+        store.write("a/B", clazzInfo("a/B", "a/A"));
+        store.write("a/A", clazzInfo("a/A", "java/lang/Number"));
+        assertEquals("java/lang/Number", store.read("a/A").getSuperclassName());
+        assertEquals("a/A", store.read("a/B").getSuperclassName());
+        assertNull(store.read("a/C"));
+
+        // Strings are shared between the ClazzInfos read from the same store
+        assertSame(store.read("a/A").getInternalName(), store.read("a/B").getSuperclassName());
+        assertEquals(new HashSet<>(Arrays.asList("java/io/IOException")), store.read("a/B").getCatchNames());
+        store.close();
+        store.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        File file = new File(dir, "classes.infos");
+        ClazzInfoStore store = ClazzInfoStore.open(file);
+        store.write("a/A", clazzInfo("a/A", "java/lang/Object"));
+        assertSame(store, ClazzInfoStore.open(file));
+        store.close();
+        assertSame(store, ClazzInfoStore.open(file));
+        store.close();
+        store.close();
+
+        ClazzInfoStore store2 = ClazzInfoStore.open(file);
+        assertNotSame(store, store2);
+        assertEquals("java/lang/Object", store2.read("a/A").getSuperclassName());
+        store2.close();
+        try {
+            store.read("a/A");
+            fail("Expected IOException");
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testFileReplaced() throws Exception {
+        File file = new File(dir, "classes.infos");
+        ClazzInfoStore store = ClazzInfoStore.open(file);
+        store.write("a/A", clazzInfo("a/A", "java/lang/Object"));
+
+        // Simulates another process replacing the file when compacting it
+        File tmpFile = new File(dir, "classes.infos.tmp");
+        Files.copy(file.toPath(), tmpFile.toPath());
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        store.write("a/B", clazzInfo("a/B", "a/A"));
+        store.close();
+
+        store = ClazzInfoStore.open(file);
+        assertEquals("java/lang/Object", store.read("a/A").getSuperclassName());
+        assertEquals("a/A", store.read("a/B").getSuperclassName());
+        store.close();
+    }
+
+    @Test
+    public void testOtherVersionNotTruncated() throws Exception {
+        File file = new File(dir, "classes.infos");
+        FileUtils.writeByteArrayToFile(file, new byte[] {'R', 'V', 'I', 'S', 0, 0, 0, 0, 1, 2, 3, 4});
+        try (RandomAccessFile old = new RandomAccessFile(file, "r")) {
+            ClazzInfoStore store = ClazzInfoStore.open(file);
+            assertNull(store.read("a/A"));
+            store.write("a/A", clazzInfo("a/A", "java/lang/Object"));
+            store.close();
+            // A process which has the old file open sees it unchanged
+            assertEquals(12, old.length());
+        }
+
+        ClazzInfoStore store = ClazzInfoStore.open(file);
+        assertEquals("java/lang/Object", store.read("a/A").getSuperclassName());
+        store.close();
+    }
+
+    @Test
+    public void testPartialRecordNotTruncated() throws Exception {
+        File file = new File(dir, "classes.infos");
+        ClazzInfoStore store = ClazzInfoStore.open(file);
+        store.write("a/A", clazzInfo("a/A", "java/lang/Object"));
+        store.close();
+        // A record which was cut short
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.writeShort(3);
+            raf.write(new byte[] {'a', '/'});
+        }
+        long length = file.length();
+
+        try (RandomAccessFile old = new RandomAccessFile(file, "r")) {
+            store = ClazzInfoStore.open(file);
+            assertEquals("java/lang/Object", store.read("a/A").getSuperclassName());
+            store.write("a/B", clazzInfo("a/B", "a/A"));
+            store.close();
+            assertEquals(length, old.length());
+        }
+
+        store = ClazzInfoStore.open(file);
+        assertEquals("java/lang/Object", store.read("a/A").getSuperclassName());
+        assertEquals("a/A", store.read("a/B").getSuperclassName());
+        store.close();
+    }
+}
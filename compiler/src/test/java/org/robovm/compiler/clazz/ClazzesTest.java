@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robovm.compiler.config.Config;
+
+/**
+ * Tests {@link Clazzes}.
+ */
+public class ClazzesTest {
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(ClazzesTest.class.getSimpleName()).toFile();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File classFile(String internalName, long lastModified) throws IOException {
+        File f = new File(dir, internalName + ".class");
+        FileUtils.writeByteArrayToFile(f, new byte[] {(byte) 0xca, (byte) 0xfe});
+        f.setLastModified(lastModified);
+        return f;
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        long past = System.currentTimeMillis() - 60000;
+        File a = classFile("a/A", past);
+        File b = classFile("b/B", past);
+        classFile("b/C", past);
+        Clazzes clazzes = new Clazzes(new Config() {}, Collections.<File> emptyList(), 
+                Arrays.asList(dir));
+        Clazz clazzA = clazzes.load("a/A");
+        Clazz clazzC = clazzes.load("b/C");
+        assertNotNull(clazzA);
+        assertNotNull(clazzes.load("b/B"));
+        assertEquals(3, clazzes.listClasses().size());
+
+        assertTrue(clazzes.refresh().isEmpty());
+        assertSame(clazzA, clazzes.load("a/A"));
+
+        a.setLastModified(System.currentTimeMillis() + 60000);
+        b.delete();
+        classFile("b/D", System.currentTimeMillis() + 60000);
+        assertEquals(new HashSet<>(Arrays.asList("a/A", "b/B", "b/D")), clazzes.refresh());
+        assertNotSame(clazzA, clazzes.load("a/A"));
+        assertSame(clazzC, clazzes.load("b/C"));
+        assertNull(clazzes.load("b/B"));
+        assertNotNull(clazzes.load("b/D"));
+        assertEquals(3, clazzes.listClasses().size());
+    }
+
+    @Test
+    public void testLockSootWhileHoldingSharedAccess() throws Exception {
+        final AtomicBoolean acquired = new AtomicBoolean();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                Clazzes.lockSootShared();
+                acquired.set(true);
+                Clazzes.unlockSootShared();
+            }
+        };
+        Clazzes.lockSootShared();
+        try {
+            int sharedHolds = Clazzes.lockSoot();
+            assertEquals(1, sharedHolds);
+            t.start();
+            t.join(200);
+            assertFalse(acquired.get());
+            Clazzes.unlockSoot(sharedHolds);
+            t.join();
+            assertTrue(acquired.get());
+        } finally {
+            // Throws if the shared access wasn't restored
+            Clazzes.unlockSootShared();
+        }
+    }
+}
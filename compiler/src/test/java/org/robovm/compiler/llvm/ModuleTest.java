@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.llvm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URL;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Tests {@link Module}.
+ */
+public class ModuleTest {
+
+    @Test
+    public void testReadIncludeWithoutDefinitions() throws Exception {
+        File f = File.createTempFile(getClass().getSimpleName(), ".ll");
+        f.deleteOnExit();
+        FileUtils.writeStringToFile(f,
+                "%Object = type {i8*, i8*}\n"
+                + "declare void @_bcThrow(%Object*) noreturn\n"
+                + "define private i32 @foo(i32 %a) alwaysinline {\n"
+                + "    ret i32 %a\n"
+                + "}\n"
+                + "define linkonce_odr void @bar() alwaysinline {  \n"
+                + "    ret void\n"
+                + "}\n", "UTF-8");
+        URL url = f.toURI().toURL();
+
+        assertEquals(FileUtils.readFileToString(f, "UTF-8"), Module.readInclude(url, true));
+        assertEquals("%Object = type {i8*, i8*}\n"
+                + "declare void @_bcThrow(%Object*) noreturn\n"
+                + "declare i32 @foo(i32 %a) alwaysinline\n"
+                + "declare void @bar() alwaysinline\n",
+                Module.readInclude(url, false));
+    }
+
+}
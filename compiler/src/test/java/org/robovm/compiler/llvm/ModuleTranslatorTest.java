@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.llvm;
+
+import static org.junit.Assert.*;
+import static org.robovm.compiler.llvm.Type.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.robovm.compiler.ModuleBuilder;
+import org.robovm.llvm.Context;
+import org.robovm.llvm.binding.LLVM;
+
+/**
+ * Tests {@link ModuleTranslator}.
+ */
+public class ModuleTranslatorTest {
+
+    private static String translate(Module module) throws Exception {
+        try (Context context = new Context();
+                org.robovm.llvm.Module m = org.robovm.llvm.Module.create(context, "test")) {
+            ModuleTranslator.translate(module, m);
+            return LLVM.PrintModuleToString(m.getRef());
+        }
+    }
+
+    private static String parse(Module module) throws Exception {
+        StringWriter writer = new StringWriter();
+        module.write(writer);
+        try (Context context = new Context();
+                org.robovm.llvm.Module m = org.robovm.llvm.Module.parseIR(context, writer.toString(), "test")) {
+            return LLVM.PrintModuleToString(m.getRef());
+        }
+    }
+
+    @Test
+    public void testSameAsParsedIR() throws Exception {
+        ModuleBuilder mb = new ModuleBuilder();
+        FunctionDeclaration puts = new FunctionDeclaration("puts", new FunctionType(I32, I8_PTR));
+        mb.addFunctionDeclaration(puts);
+        Global counter = new Global("counter", Linkage._private, new IntegerConstant(-1L), false);
+        mb.addGlobal(counter);
+        mb.addGlobal(new Global("aligned", Linkage.weak, new IntegerConstant((short) 1), false, null, 8));
+
+        Function f = new Function(null, new FunctionAttribute[] {FunctionAttribute.nounwind}, null,
+                "count", new FunctionType(I64, I64), "n");
+        Label loop = new Label();
+        Label exit = new Label();
+        Variable init = f.newVariable(I64);
+        Variable i = f.newVariable(I64);
+        Variable next = f.newVariable(I64);
+        Variable cond = f.newVariable(I1);
+        f.add(new Load(init, counter.ref(), true, Ordering.unordered, 8));
+        f.add(new Br(f.newBasicBlockRef(loop)));
+        f.newBasicBlock(loop);
+        // %next is used by the phi before it has been defined
+        f.add(new Phi(i, init.ref(), next.ref()));
+        f.add(new Add(next, i.ref(), new IntegerConstant(1L)));
+        f.add(new Icmp(cond, Icmp.Condition.slt, next.ref(), f.getParameterRef(0)));
+        f.add(new Br(cond.ref(), f.newBasicBlockRef(loop), f.newBasicBlockRef(exit)));
+        f.newBasicBlock(exit);
+        f.add(new Store(next.ref(), counter.ref(), true, Ordering.unordered, 8));
+        f.add(new Call(puts.ref(), mb.getString("done")));
+        f.add(new Ret(next.ref()));
+        mb.addFunction(f);
+
+        Module module = mb.build();
+        assertEquals(parse(module), translate(module));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnknownTypeIsUnsupported() throws Exception {
+        ModuleBuilder mb = new ModuleBuilder();
+        mb.addGlobal(new Global("g", new NullConstant(new PointerType(new OpaqueType("Unknown")))));
+        translate(mb.build());
+    }
+}
@@ -31,4 +31,10 @@ public class DigestUtilTest {
         assertEquals("8843d7f92416211de9ebb963ff4ce28125932878", DigestUtil.sha1("foobar"));
     }
 
+    @Test
+    public void testSha1Bytes() throws Exception {
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", DigestUtil.sha1(new byte[0]));
+        assertEquals("8843d7f92416211de9ebb963ff4ce28125932878", DigestUtil.sha1("foobar".getBytes("UTF-8")));
+    }
+
 }
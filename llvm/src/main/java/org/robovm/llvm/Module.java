@@ -44,7 +44,12 @@ public class Module implements AutoCloseable {
         }
     }
 
-    protected ModuleRef getRef() {
+    /**
+     * Returns the underlying {@link ModuleRef}. Used by code building the
+     * contents of this {@link Module} directly through the {@link LLVM}
+     * binding.
+     */
+    public ModuleRef getRef() {
         checkDisposed();
         return ref;
     }
@@ -82,6 +87,13 @@ public class Module implements AutoCloseable {
         }
     }
     
+    /**
+     * Returns a copy of this {@link Module} in the same {@link Context}.
+     */
+    public Module cloneModule() {
+        return new Module(LLVM.CloneModule(getRef()));
+    }
+
     public void link(Module other) {
         StringOut errorMessage = new StringOut();
         if (LLVM.LinkModules(getRef(), other.getRef(), 0, errorMessage)) {
@@ -119,6 +131,13 @@ public class Module implements AutoCloseable {
         return true;
     }
 
+    /**
+     * Creates a new empty {@link Module} in the specified {@link Context}.
+     */
+    public static Module create(Context context, String name) {
+        return new Module(LLVM.ModuleCreateWithNameInContext(name, context.getRef()));
+    }
+
     public static Module parseIR(Context context, String ir, String filename) {
         try {
             return parseIR(context, ir.getBytes("utf-8"), filename);
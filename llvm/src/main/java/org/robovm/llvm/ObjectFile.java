@@ -24,8 +24,10 @@ import org.robovm.llvm.binding.IntOut;
 import org.robovm.llvm.binding.LLVM;
 import org.robovm.llvm.binding.LongArray;
 import org.robovm.llvm.binding.LongArrayOut;
+import org.robovm.llvm.binding.MemoryBufferRef;
 import org.robovm.llvm.binding.MemoryBufferRefOut;
 import org.robovm.llvm.binding.ObjectFileRef;
+import org.robovm.llvm.binding.SectionIteratorRef;
 import org.robovm.llvm.binding.StringOut;
 import org.robovm.llvm.binding.SymbolIteratorRef;
 
@@ -70,6 +72,33 @@ public class ObjectFile implements AutoCloseable {
         return new SectionIterator(this, LLVM.GetSections(getRef()));
     }
 
+    /**
+     * Returns a {@link SectionIterator} positioned at the section containing
+     * the symbol with the specified name or {@code null} if no such symbol
+     * exists.
+     */
+    public SectionIterator getContainingSection(String symbolName) {
+        SymbolIteratorRef it = LLVM.GetSymbols(getRef());
+        try {
+            while (!LLVM.IsSymbolIteratorAtEnd(getRef(), it)) {
+                if (symbolName.equals(LLVM.GetSymbolName(it))) {
+                    SectionIteratorRef sectionRef = LLVM.GetSections(getRef());
+                    LLVM.MoveToContainingSection(sectionRef, it);
+                    SectionIterator section = new SectionIterator(this, sectionRef);
+                    if (!section.hasNext()) {
+                        section.dispose();
+                        return null;
+                    }
+                    return section;
+                }
+                LLVM.MoveToNextSymbol(it);
+            }
+            return null;
+        } finally {
+            LLVM.DisposeSymbolIterator(it);
+        }
+    }
+
     public List<LineInfo> getLineInfos(Symbol symbol) {
         List<LineInfo> result = new ArrayList<>();
         IntOut sizeOut = new IntOut();
@@ -156,4 +185,20 @@ public class ObjectFile implements AutoCloseable {
         }
         return new ObjectFile(file, ref);
     }
+
+    /**
+     * Loads an {@link ObjectFile} from the specified bytes. The bytes are
+     * copied.
+     */
+    public static ObjectFile load(byte[] data, String name) {
+        MemoryBufferRef memBuf = LLVM.CreateMemoryBufferWithMemoryRangeCopy(data, name);
+        if (memBuf == null) {
+            throw new LlvmException("Failed to create memory buffer for " + name);
+        }
+        ObjectFileRef ref = LLVM.CreateObjectFile(memBuf);
+        if (ref == null) {
+            throw new LlvmException("Failed to create object file from " + name);
+        }
+        return new ObjectFile(null, ref);
+    }
 }
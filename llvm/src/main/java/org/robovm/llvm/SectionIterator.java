@@ -66,6 +66,14 @@ public class SectionIterator implements AutoCloseable {
     public long copyContents(byte[] dest) {
         return LLVM.CopySectionContents(getRef(), dest);
     }
+
+    /**
+     * Returns the offset of the contents of this section in the object file
+     * or {@code -1} if the contents aren't stored in the file.
+     */
+    public long getFileOffset() {
+        return LLVM.GetSectionFileOffset(objectFile.getRef(), getRef());
+    }
     
     public void next() {
         LLVM.MoveToNextSection(getRef());
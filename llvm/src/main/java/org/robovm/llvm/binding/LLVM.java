@@ -3111,6 +3111,10 @@ public class LLVM implements LLVMConstants {
     LLVMJNI.PassManagerBuilderUseAlwaysInliner(PassManagerBuilderRef.getCPtr(PMB), InsertLifetime);
   }
 
+  public static void SetOrdering(ValueRef MemoryAccessInst, AtomicOrdering Ordering) {
+    LLVMJNI.SetOrdering(ValueRef.getCPtr(MemoryAccessInst), Ordering.swigValue());
+  }
+
   public static boolean ParseIR(MemoryBufferRef MemBuf, ModuleRefOut OutModule, StringOut OutMessage) {
     return LLVMJNI.ParseIR(MemoryBufferRef.getCPtr(MemBuf), ModuleRefOut.getCPtr(OutModule), OutModule, StringOut.getCPtr(OutMessage), OutMessage);
   }
@@ -3321,6 +3325,10 @@ public class LLVM implements LLVMConstants {
     return LLVMJNI.CopySectionContents(SectionIteratorRef.getCPtr(SI), Dest);
   }
 
+  public static long GetSectionFileOffset(ObjectFileRef O, SectionIteratorRef SI) {
+    return LLVMJNI.GetSectionFileOffset(ObjectFileRef.getCPtr(O), SectionIteratorRef.getCPtr(SI));
+  }
+
   public static ModuleRef ClangCompileFile(ContextRef Context, String Data, String FileName, String Triple, StringOut ErrorMessage) {
     long cPtr = LLVMJNI.ClangCompileFile(ContextRef.getCPtr(Context), Data, FileName, Triple, StringOut.getCPtr(ErrorMessage), ErrorMessage);
     return (cPtr == 0) ? null : new ModuleRef(cPtr, false);
@@ -744,6 +744,7 @@ public class LLVMJNI {
   public final static native String llvmHostTriple_get();
   public final static native void PassManagerBuilderSetDisableTailCalls(long jarg1, boolean jarg2);
   public final static native void PassManagerBuilderUseAlwaysInliner(long jarg1, boolean jarg2);
+  public final static native void SetOrdering(long jarg1, int jarg2);
   public final static native boolean ParseIR(long jarg1, long jarg2, ModuleRefOut jarg2_, long jarg3, StringOut jarg3_);
   public final static native boolean ParseIRInContext(long jarg1, long jarg2, long jarg3, ModuleRefOut jarg3_, long jarg4, StringOut jarg4_);
   public final static native long LookupTarget(String jarg1, long jarg2, StringOut jarg2_);
@@ -796,6 +797,7 @@ public class LLVMJNI {
   public final static native boolean TargetMachineEmitToOutputStream(long jarg1, long jarg2, java.io.OutputStream jarg3, int jarg4, long jarg5, StringOut jarg5_);
   public final static native void GetLineInfoForAddressRange(long jarg1, long jarg2, long jarg3, long jarg4, IntOut jarg4_, long jarg5, LongArrayOut jarg5_);
   public final static native long CopySectionContents(long jarg1, byte[] jarg2);
+  public final static native long GetSectionFileOffset(long jarg1, long jarg2);
   public final static native long ClangCompileFile(long jarg1, String jarg2, String jarg3, String jarg4, long jarg5, StringOut jarg5_);
 
   static {
@@ -6,6 +6,7 @@
 #include <llvm/IR/LLVMContext.h>
 #include <llvm/IR/Module.h>
 #include <llvm/IR/DataLayout.h>
+#include <llvm/IR/Instructions.h>
 #include <llvm/MC/MCAsmBackend.h>
 #include <llvm/MC/MCAsmInfo.h>
 #include <llvm/MC/MCContext.h>
@@ -123,6 +124,16 @@ void LLVMPassManagerBuilderUseAlwaysInliner(LLVMPassManagerBuilderRef PMB, LLVMB
   Builder->Inliner = createAlwaysInlinerPass(InsertLifetime);
 }
 
+void LLVMSetOrdering(LLVMValueRef MemoryAccessInst, LLVMAtomicOrdering Ordering) {
+  Value *P = unwrap<Value>(MemoryAccessInst);
+  AtomicOrdering O = (AtomicOrdering) Ordering;
+  if (LoadInst *LI = dyn_cast<LoadInst>(P)) {
+    LI->setOrdering(O);
+  } else {
+    cast<StoreInst>(P)->setOrdering(O);
+  }
+}
+
 LLVMBool LLVMParseIR(LLVMMemoryBufferRef MemBuf,
                           LLVMModuleRef *OutModule, char **OutMessage) {
   return LLVMParseIRInContext(wrap(&getGlobalContext()), MemBuf, OutModule, OutMessage);
@@ -389,3 +400,15 @@ size_t LLVMCopySectionContents(LLVMSectionIteratorRef SI, char* Dest, size_t Des
   memcpy(Dest, Contents, (size_t) Size);
   return Size;
 }
+
+int64_t LLVMGetSectionFileOffset(LLVMObjectFileRef O, LLVMSectionIteratorRef SI) {
+  // The contents of sections which are stored in the file point into the
+  // buffer of the object file. Zero-fill sections have no contents there.
+  StringRef Data = unwrap(O)->getBinary()->getData();
+  const char* Contents = LLVMGetSectionContents(SI);
+  uint64_t Size = LLVMGetSectionSize(SI);
+  if (Contents < Data.begin() || Contents > Data.end() || Size > (uint64_t) (Data.end() - Contents)) {
+    return -1;
+  }
+  return Contents - Data.begin();
+}
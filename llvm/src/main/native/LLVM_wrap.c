@@ -11834,6 +11834,18 @@ SWIGEXPORT void JNICALL Java_org_robovm_llvm_binding_LLVMJNI_PassManagerBuilderU
 }
 
 
+SWIGEXPORT void JNICALL Java_org_robovm_llvm_binding_LLVMJNI_SetOrdering(JNIEnv *jenv, jclass jcls, jlong jarg1, jint jarg2) {
+  LLVMValueRef arg1 = (LLVMValueRef) 0 ;
+  LLVMAtomicOrdering arg2 ;
+  
+  (void)jenv;
+  (void)jcls;
+  arg1 = *(LLVMValueRef *)&jarg1; 
+  arg2 = (LLVMAtomicOrdering)jarg2; 
+  LLVMSetOrdering(arg1,arg2);
+}
+
+
 SWIGEXPORT jboolean JNICALL Java_org_robovm_llvm_binding_LLVMJNI_ParseIR(JNIEnv *jenv, jclass jcls, jlong jarg1, jlong jarg2, jobject jarg2_, jlong jarg3, jobject jarg3_) {
   jboolean jresult = 0 ;
   LLVMMemoryBufferRef arg1 = (LLVMMemoryBufferRef) 0 ;
@@ -12600,6 +12612,22 @@ SWIGEXPORT jlong JNICALL Java_org_robovm_llvm_binding_LLVMJNI_CopySectionContent
 }
 
 
+SWIGEXPORT jlong JNICALL Java_org_robovm_llvm_binding_LLVMJNI_GetSectionFileOffset(JNIEnv *jenv, jclass jcls, jlong jarg1, jlong jarg2) {
+  jlong jresult = 0 ;
+  LLVMObjectFileRef arg1 = (LLVMObjectFileRef) 0 ;
+  LLVMSectionIteratorRef arg2 = (LLVMSectionIteratorRef) 0 ;
+  int64_t result;
+  
+  (void)jenv;
+  (void)jcls;
+  arg1 = *(LLVMObjectFileRef *)&jarg1; 
+  arg2 = *(LLVMSectionIteratorRef *)&jarg2; 
+  result = (int64_t)LLVMGetSectionFileOffset(arg1,arg2);
+  jresult = result; 
+  return jresult;
+}
+
+
 SWIGEXPORT jlong JNICALL Java_org_robovm_llvm_binding_LLVMJNI_ClangCompileFile(JNIEnv *jenv, jclass jcls, jlong jarg1, jstring jarg2, jstring jarg3, jstring jarg4, jlong jarg5, jobject jarg5_) {
   jlong jresult = 0 ;
   LLVMContextRef arg1 = (LLVMContextRef) 0 ;
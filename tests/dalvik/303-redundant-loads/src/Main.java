@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Field;
+
+/**
+ * Test array length, final field and bounds check optimizations.
+ */
+public class Main {
+    private final int[] values;
+    private final int count;
+
+    Main(int[] values, int count) {
+        this.values = values;
+        this.count = count;
+    }
+
+    static int sum(int[] a) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    static int reverseSum(int[] a) {
+        int sum = 0;
+        for (int i = a.length - 1; i >= 0; i--) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    static int sumUpToAndIncluding(int[] a) {
+        int sum = 0;
+        for (int i = 0; i <= a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    static int countCalls = 0;
+
+    static int sumWithCounter(int[] a) {
+        int sum = 0;
+        countCalls = 0;
+        for (int i = 0; i < a.length; i++) {
+            countCalls++;
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    int sumFields() {
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    int countBeforeAndAfter(Field f) throws Exception {
+        int before = count;
+        f.setInt(this, before + 1);
+        int after = count;
+        return after - before;
+    }
+
+    static byte[] fill(int n) {
+        byte[] tmp = new byte[4];
+        byte[] result = new byte[n * 4];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < tmp.length; j++) {
+                tmp[j] += (byte) (i + j);
+            }
+            System.arraycopy(tmp, 0, result, i * 4, tmp.length);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] a = new int[] {1, 2, 3, 4, 5};
+        System.out.println("sum: " + sum(a));
+        System.out.println("reverseSum: " + reverseSum(a));
+        System.out.println("sumWithCounter: " + sumWithCounter(a) + " " + countCalls);
+
+        try {
+            sumUpToAndIncluding(a);
+            System.out.println("sumUpToAndIncluding: no exception");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("sumUpToAndIncluding: ArrayIndexOutOfBoundsException");
+        }
+
+        try {
+            sum(null);
+            System.out.println("sum(null): no exception");
+        } catch (NullPointerException e) {
+            System.out.println("sum(null): NullPointerException");
+        }
+
+        System.out.println("sum(empty): " + sum(new int[0]));
+
+        Main m = new Main(a, 3);
+        System.out.println("sumFields: " + m.sumFields());
+        try {
+            new Main(a, 6).sumFields();
+            System.out.println("sumFields(6): no exception");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("sumFields(6): ArrayIndexOutOfBoundsException");
+        }
+
+        Field f = Main.class.getDeclaredField("count");
+        f.setAccessible(true);
+        System.out.println("countBeforeAndAfter: " + m.countBeforeAndAfter(f));
+
+        byte[] filled = fill(3);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < filled.length; i++) {
+            sb.append(filled[i]).append(' ');
+        }
+        System.out.println("fill: " + sb.toString().trim());
+    }
+}
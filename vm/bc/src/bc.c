@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 #include <robovm.h>
+#include <string.h>
 #include "uthash.h"
 #include "utlist.h"
 #include "MurmurHash3.h"
@@ -39,6 +40,89 @@ typedef struct {
     LandingPad** landingPads;
 } BcTrycatchContext;
 
+/*
+ * A value evaluated at build time and stored into a static field, an
+ * instance field of a StaticObject or an element of a StaticObject array.
+ * offset is the offset of the field or the index of the array element. type
+ * is the descriptor char of the field for primitive values. 'L' is used for
+ * String literals (data points to the modified UTF-8 chars and value is the
+ * length of the string) and 'O' for arrays and objects (value is the index
+ * of the StaticObject). Must match STATIC_VALUE in ClassCompiler.java.
+ */
+typedef struct {
+    jint offset;
+    jint type;
+    jlong value;
+    void* data;
+} StaticValue;
+
+typedef struct {
+    jint count;
+    StaticValue values[0];
+} StaticValues;
+
+/*
+ * An array or object created at build time. className is the internal name
+ * of the class or the descriptor of the array class. length is -1 for
+ * objects. data points to the elements of primitive arrays and to the
+ * StaticValues of the fields or elements of objects and object arrays. Must
+ * match STATIC_OBJECT in ClassCompiler.java.
+ */
+typedef struct {
+    const char* className;
+    jint length;
+    void* data;
+} StaticObject;
+
+/*
+ * Pointed to by ClassInfoHeader->initializer for classes with the 
+ * CI_BUILD_TIME_INIT flag set. The objects are created on the heap when
+ * the class is initialized. They can't be emitted as static data since the
+ * GC doesn't scan the data sections for roots.
+ */
+typedef struct {
+    jint objectCount;
+    StaticObject* objects;
+    StaticValues* staticValues;
+} StaticInit;
+
+/*
+ * The number of misses after which an inline cache stops being updated and
+ * the call site always goes through its trampoline.
+ */
+#define CALL_SITE_MAX_MISSES 8
+
+/*
+ * A resolved receiver class and the function to call for it. Entries are
+ * never modified once published so the compiled code always sees a
+ * matching clazz and impl pair.
+ */
+typedef struct {
+    Class* clazz;
+    void* impl;
+} CallSiteEntry;
+
+/*
+ * Inline cache for an invokevirtual or invokeinterface call site. Emitted
+ * by MethodCompiler as a private global. Must match %CallSite in header.ll.
+ * fallbacks (calls which went through the trampoline) are counted by the
+ * compiled code. hits are only counted by code compiled in debug mode to
+ * keep the hit path free of stores. Sites are linked into callSites when
+ * -rvm:PrintCallSiteStats has been specified.
+ */
+typedef struct CallSite {
+    CallSiteEntry* entry;
+    jint misses;
+    jint hits;
+    jint fallbacks;
+    struct CallSite* next;
+    Method* method;
+    ClassInfoHeader* caller;
+    const char* owner;
+    const char* name;
+    const char* desc;
+} CallSite;
+
 const char* __attribute__ ((weak)) _bcMainClass = NULL;
 extern char** _bcStaticLibs;
 extern char** _bcBootclasspath;
@@ -49,7 +133,7 @@ extern void* _bcStrippedMethodStubs;
 extern void* _bcRuntimeData;
 static Class* loadBootClass(Env*, const char*, Object*);
 static Class* loadUserClass(Env*, const char*, Object*);
-static void classInitialized(Env*, Class*);
+static jboolean classInitialized(Env*, Class*);
 static Interface* loadInterfaces(Env*, Class*);
 static Field* loadFields(Env*, Class*);
 static Method* loadMethods(Env*, Class*);
@@ -61,6 +145,9 @@ static ObjectArray* listUserClasses(Env*, Class*);
 static Options options = {0};
 static VM* vm = NULL;
 static jint addressClassLookupsCount = 0;
+static Mutex callSitesLock;
+static CallSite callSitesEnd = {0};
+static CallSite* callSites = &callSitesEnd;
 static AddressClassLookup* addressClassLookups = NULL;
 
 static void initOptions() {
@@ -81,6 +168,30 @@ static void initOptions() {
     options.listUserClasses = listUserClasses;
 }
 
+static void printCallSiteStats(void) {
+    jint sites = 0;
+    jint megamorphic = 0;
+    jlong hits = 0;
+    jlong misses = 0;
+    jlong fallbacks = 0;
+    rvmLockMutex(&callSitesLock);
+    CallSite* site;
+    for (site = callSites; site != &callSitesEnd; site = site->next) {
+        jboolean disabled = site->misses >= CALL_SITE_MAX_MISSES;
+        fprintf(stderr, "[DEBUG] %s: call site %s.%s%s in %s: hits=%d misses=%d fallbacks=%d%s\n", LOG_TAG,
+            site->owner, site->name, site->desc, site->caller->className,
+            site->hits, site->misses, site->fallbacks, disabled ? " (megamorphic)" : "");
+        sites++;
+        if (disabled) megamorphic++;
+        hits += site->hits;
+        misses += site->misses;
+        fallbacks += site->fallbacks;
+    }
+    rvmUnlockMutex(&callSitesLock);
+    fprintf(stderr, "[DEBUG] %s: %d call sites (%d megamorphic): hits=%lld misses=%lld fallbacks=%lld\n", LOG_TAG,
+        sites, megamorphic, (long long) hits, (long long) misses, (long long) fallbacks);
+}
+
 static int bcmain(int argc, char* argv[]) {
     initOptions();
 
@@ -94,6 +205,13 @@ static int bcmain(int argc, char* argv[]) {
         return 1;
     }
     vm = env->vm;
+    if (options.printCallSiteStats) {
+        if (rvmInitMutex(&callSitesLock) != 0) {
+            fprintf(stderr, "rvmInitMutex(...) failed!\n");
+            return 1;
+        }
+        atexit(printCallSiteStats);
+    }
     jint result = rvmRun(env) ? 0 : 1;
     rvmShutdown(env, result);
     return result;
@@ -142,23 +260,16 @@ static ClassInfoHeader* lookupClassInfo(Env* env, const char* className, void* h
     return NULL;
 }
 
-static void iterateClassInfos(Env* env, jboolean (*callback)(Env*, ClassInfoHeader*, MethodInfo*, void*), void* hash, void* data) {
+static void iterateClassInfos(Env* env, jboolean (*callback)(Env*, ClassInfoHeader*, const Method*, void*), void* hash, void* data) {
     ClassInfoHeader** base = getClassInfosBase(hash);
     uint32_t count = getClassInfosCount(hash);
     uint32_t i = 0;
     for (i = 0; i < count; i++) {
         ClassInfoHeader* header = base[i];
         if ((header->flags & CI_ERROR) == 0) {
-            ClassInfo ci;
-            void* p = base[i];
-            readClassInfo(&p, &ci);
-            skipInterfaceNames(&p, &ci);
-            skipFieldInfos(&p, &ci);
-            jint j;
-            for (j = 0; j < ci.methodCount; j++) {
-                MethodInfo mi;
-                readMethodInfo(&p, &mi);
-                if (!callback(env, base[i], &mi, data)) {
+            const Method* m;
+            for (m = header->methods; m; m = m->next) {
+                if (!callback(env, header, m, data)) {
                     break;
                 }
             }
@@ -287,9 +398,12 @@ static Class* createClass(Env* env, ClassInfoHeader* header, Object* classLoader
 
     rvmObtainClassLock(env);
 
+    // The <clinit> of classes initialized at build time never runs. The
+    // static field values are set by classInitialized() instead.
+    void* initializer = (header->flags & CI_BUILD_TIME_INIT) ? NULL : header->initializer;
     Class* clazz = rvmAllocateClass(env, header->className, superclass, classLoader, ci.access, header->typeInfo, header->vitable, header->itables,
             header->classDataSize, header->instanceDataSize, header->instanceDataOffset, header->classRefCount, 
-            header->instanceRefCount, ci.attributes, header->initializer);
+            header->instanceRefCount, ci.attributes, initializer);
 
     if (clazz) {
         if (!rvmRegisterClass(env, clazz)) {
@@ -305,11 +419,115 @@ static Class* createClass(Env* env, ClassInfoHeader* header, Object* classLoader
     return clazz;
 }
 
-static void classInitialized(Env* env, Class* clazz) {
+#define NEW_STATIC_ARRAY(T, N) { \
+        N ## Array* a = rvmNew ## N ## Array(env, length); \
+        if (a && length > 0) memcpy(a->values, data, (size_t) length * sizeof(T)); \
+        return (Array*) a; \
+    }
+static Array* newStaticArray(Env* env, char elementType, jint length, void* data) {
+    switch (elementType) {
+    case 'Z': NEW_STATIC_ARRAY(jboolean, Boolean)
+    case 'B': NEW_STATIC_ARRAY(jbyte, Byte)
+    case 'C': NEW_STATIC_ARRAY(jchar, Char)
+    case 'S': NEW_STATIC_ARRAY(jshort, Short)
+    case 'I': NEW_STATIC_ARRAY(jint, Int)
+    case 'J': NEW_STATIC_ARRAY(jlong, Long)
+    case 'F': NEW_STATIC_ARRAY(jfloat, Float)
+    case 'D': NEW_STATIC_ARRAY(jdouble, Double)
+    }
+    return NULL;
+}
+#undef NEW_STATIC_ARRAY
+
+static jboolean storeStaticValue(Env* env, void* p, StaticValue* v, Object** objects) {
+    switch (v->type) {
+    case 'Z':
+    case 'B': *((jbyte*) p) = (jbyte) v->value; break;
+    case 'C':
+    case 'S': *((jshort*) p) = (jshort) v->value; break;
+    case 'I':
+    case 'F': *((jint*) p) = (jint) v->value; break;
+    case 'J':
+    case 'D': *((jlong*) p) = v->value; break;
+    case 'L': {
+        Object* s = rvmNewInternedStringUTF(env, v->data, (jint) v->value);
+        if (!s) return FALSE;
+        *((Object**) p) = s;
+        break;
+    }
+    case 'O': *((Object**) p) = objects[v->value]; break;
+    }
+    return TRUE;
+}
+
+/*
+ * Creates the arrays and objects described by the specified StaticInit.
+ * All of them are allocated before any references between them are stored
+ * since the object graph may contain cycles. Returns NULL with an exception
+ * pending if an allocation failed.
+ */
+static Object** createStaticObjects(Env* env, Class* clazz, StaticInit* init) {
+    Object** objects = rvmAllocateMemory(env, sizeof(Object*) * (init->objectCount > 0 ? init->objectCount : 1));
+    if (!objects) return NULL;
+    jint i, j;
+    for (i = 0; i < init->objectCount; i++) {
+        StaticObject* o = &init->objects[i];
+        const char* name = o->className;
+        if (name[0] == '[' && name[1] != 'L' && name[1] != '[') {
+            objects[i] = (Object*) newStaticArray(env, name[1], o->length, o->data);
+        } else {
+            Class* c = rvmFindClassUsingLoader(env, name, clazz->classLoader);
+            if (!c) return NULL;
+            objects[i] = o->length < 0 ? rvmAllocateObject(env, c)
+                : (Object*) rvmNewObjectArray(env, o->length, c->componentType, c, NULL);
+        }
+        if (!objects[i]) return NULL;
+    }
+    for (i = 0; i < init->objectCount; i++) {
+        StaticObject* o = &init->objects[i];
+        if (o->className[0] == '[' && o->className[1] != 'L' && o->className[1] != '[') {
+            continue;
+        }
+        StaticValues* values = (StaticValues*) o->data;
+        for (j = 0; j < values->count; j++) {
+            StaticValue* v = &values->values[j];
+            void* p = o->length < 0 ? ((char*) objects[i]) + v->offset 
+                : (void*) &((ObjectArray*) objects[i])->values[v->offset];
+            if (!storeStaticValue(env, p, v, objects)) return NULL;
+        }
+    }
+    return objects;
+}
+
+/*
+ * Stores the static field values evaluated at build time into the static
+ * fields of the specified class. Returns FALSE with an exception pending if
+ * a String, array or object couldn't be allocated.
+ */
+static jboolean initializeStaticFields(Env* env, Class* clazz, StaticInit* init) {
+    Object** objects = createStaticObjects(env, clazz, init);
+    if (!objects) return FALSE;
+    jint i;
+    for (i = 0; i < init->staticValues->count; i++) {
+        StaticValue* v = &init->staticValues->values[i];
+        if (!storeStaticValue(env, ((char*) clazz) + v->offset, v, objects)) return FALSE;
+    }
+    return TRUE;
+}
+
+static jboolean classInitialized(Env* env, Class* clazz) {
     ClassInfoHeader* header = lookupClassInfo(env, clazz->name, 
         !clazz->classLoader || !rvmGetParentClassLoader(env, clazz->classLoader) ? _bcBootClassesHash : _bcClassesHash);
-    if (!header) return;
+    if (!header) return TRUE;
+    if ((header->flags & CI_BUILD_TIME_INIT) && !(header->flags & CI_INITIALIZED)) {
+        if (!initializeStaticFields(env, clazz, (StaticInit*) header->initializer)) {
+            // Leave CI_INITIALIZED unset. The class is in error state and 
+            // must never be treated as initialized by the compiled code.
+            return FALSE;
+        }
+    }
     rvmAtomicStoreInt(&header->flags, header->flags | CI_INITIALIZED);
+    return TRUE;
 }
 
 static Interface* loadInterfaces(Env* env, Class* clazz) {
@@ -346,35 +564,43 @@ static Field* loadFields(Env* env, Class* clazz) {
         !clazz->classLoader || !rvmGetParentClassLoader(env, clazz->classLoader) ? _bcBootClassesHash : _bcClassesHash);
     if (!header) return NULL;
 
-    ClassInfo ci;
-    jint i;
-    void* p = header;
-    readClassInfo(&p, &ci);
-
-    skipInterfaceNames(&p, &ci);
-
+    // The Field records emitted by the compiler are read-only templates.
+    // They are copied into a single block together with the clazz pointers
+    // and the addresses of static fields, which the compiler emits as
+    // offsets relative to the Class. The copies are linked in the same
+    // order as the templates.
+    size_t size = 0;
+    const Field* f;
+    for (f = header->fields; f; f = f->next) {
+        size += IS_STATIC(f->access) ? sizeof(ClassField) : sizeof(InstanceField);
+    }
+    if (size == 0) return NULL;
+    jbyte* block = rvmAllocateMemoryAtomicUncollectable(env, size);
+    if (!block) return NULL;
     Field* first = NULL;
-    for (i = 0; i < ci.fieldCount; i++) {
-        FieldInfo fi;
-        readFieldInfo(&p, &fi);
-        Field* f = rvmAllocateField(env, clazz, fi.name, fi.desc, fi.access, fi.offset, fi.attributes);
-        if (!f) goto error;
-        LL_PREPEND(first, f);
+    Field** next = &first;
+    for (f = header->fields; f; f = f->next) {
+        Field* copy = (Field*) block;
+        if (IS_STATIC(f->access)) {
+            memcpy(copy, f, sizeof(ClassField));
+            ((ClassField*) copy)->address = ((jbyte*) clazz) + (intptr_t) ((ClassField*) f)->address;
+            block += sizeof(ClassField);
+        } else {
+            memcpy(copy, f, sizeof(InstanceField));
+            block += sizeof(InstanceField);
+        }
+        copy->clazz = clazz;
+        copy->next = NULL;
+        *next = copy;
+        next = &copy->next;
     }
     return first;
-error:
-    while (first) {
-        Field* next = first->next;
-        rvmFreeMemoryUncollectable(env, first);
-        first = next;
-    }
-    return NULL;
 }
 
-static inline jboolean isStrippedMethod(MethodInfo* mi) {
-    if (mi->impl) {
+static inline jboolean isStrippedMethod(const Method* m) {
+    if (m->impl) {
         for (void** p = &_bcStrippedMethodStubs; *p; p++) {
-            if (mi->impl == *p) {
+            if (m->impl == *p) {
                 return TRUE;
             }
         }
@@ -382,55 +608,59 @@ static inline jboolean isStrippedMethod(MethodInfo* mi) {
     return FALSE;
 }
 
+static inline size_t methodRecordSize(const Method* m) {
+    if (IS_NATIVE(m->access)) return sizeof(NativeMethod);
+    if (m->access & METHOD_TYPE_BRIDGE) return sizeof(BridgeMethod);
+    if (m->access & METHOD_TYPE_CALLBACK) return sizeof(CallbackMethod);
+    return sizeof(Method);
+}
+
 static Method* loadMethods(Env* env, Class* clazz) {
     ClassInfoHeader* header = lookupClassInfo(env, clazz->name, 
         !clazz->classLoader || !rvmGetParentClassLoader(env, clazz->classLoader) ? _bcBootClassesHash : _bcClassesHash);
     if (!header) return NULL;
 
-    ClassInfo ci;
-    jint i;
-    void* p = header;
-    readClassInfo(&p, &ci);
-    
-    skipInterfaceNames(&p, &ci);
-    skipFieldInfos(&p, &ci);
-
+    // The Method records emitted by the compiler are read-only templates.
+    // Methods which haven't been stripped by the linker are copied into a
+    // single block where the clazz pointers and the native method
+    // implementations resolved at runtime can be stored. The copies are
+    // linked in the same order as the templates.
+    size_t size = 0;
+    const Method* m;
+    for (m = header->methods; m; m = m->next) {
+        if (!isStrippedMethod(m)) {
+            size += methodRecordSize(m);
+        }
+    }
+    if (size == 0) return NULL;
+    jbyte* block = rvmAllocateMemoryAtomicUncollectable(env, size);
+    if (!block) return NULL;
     Method* first = NULL;
-    for (i = 0; i < ci.methodCount; i++) {
-        MethodInfo mi;
-        readMethodInfo(&p, &mi);
-        if (!isStrippedMethod(&mi)) {
-            Method* m = NULL;
-            if (mi.targetFnPtr) {
-                m = (Method*) rvmAllocateBridgeMethod(env, clazz, mi.name, mi.desc, mi.vtableIndex, mi.access, mi.size, mi.impl, mi.synchronizedImpl, mi.targetFnPtr, mi.attributes);
-            } else if (mi.callbackImpl) {
-                m = (Method*) rvmAllocateCallbackMethod(env, clazz, mi.name, mi.desc, mi.vtableIndex, mi.access, mi.size, mi.impl, mi.synchronizedImpl, mi.linetable, mi.callbackImpl, mi.attributes);
-            } else {
-                m = rvmAllocateMethod(env, clazz, mi.name, mi.desc, mi.vtableIndex, mi.access, mi.size, mi.impl, mi.synchronizedImpl, mi.linetable, mi.attributes);
-            }
-            if (!m) goto error;
-            LL_PREPEND(first, m);
+    Method** next = &first;
+    for (m = header->methods; m; m = m->next) {
+        if (isStrippedMethod(m)) {
+            continue;
         }
+        Method* copy = (Method*) block;
+        memcpy(copy, m, methodRecordSize(m));
+        block += methodRecordSize(m);
+        copy->clazz = clazz;
+        copy->next = NULL;
+        *next = copy;
+        next = &copy->next;
     }
     return first;
-error:
-    while (first) {
-        Method* next = first->next;
-        rvmFreeMemoryUncollectable(env, first);
-        first = next;
-    }
-    return NULL;
 }
 
-static inline jboolean hasImpl(MethodInfo* mi) {
-    if (!mi->impl) {
+static inline jboolean hasImpl(const Method* m) {
+    if (!m->impl) {
         return FALSE;
     }
-    return !isStrippedMethod(mi);
+    return !isStrippedMethod(m);
 }
 
-static jboolean countClassesWithConcreteMethodsCallback(Env* env, ClassInfoHeader* header, MethodInfo* mi, void* d) {
-    if (hasImpl(mi)) {
+static jboolean countClassesWithConcreteMethodsCallback(Env* env, ClassInfoHeader* header, const Method* m, void* d) {
+    if (hasImpl(m)) {
         jint* count = (jint*) d;
         *count = *count + 1;
         return FALSE;
@@ -438,8 +668,8 @@ static jboolean countClassesWithConcreteMethodsCallback(Env* env, ClassInfoHeade
     return TRUE;
 }
 
-static jboolean initAddressClassLookupsCallback(Env* env, ClassInfoHeader* header, MethodInfo* mi, void* d) {
-    if (hasImpl(mi)) {
+static jboolean initAddressClassLookupsCallback(Env* env, ClassInfoHeader* header, const Method* m, void* d) {
+    if (hasImpl(m)) {
         AddressClassLookup** lookupPtr = (AddressClassLookup**) d;
         AddressClassLookup* lookup = *lookupPtr;
         if (lookup->classInfoHeader != header) {
@@ -448,12 +678,12 @@ static jboolean initAddressClassLookupsCallback(Env* env, ClassInfoHeader* heade
                 lookup = *lookupPtr;
             }
             lookup->classInfoHeader = header;
-            lookup->start = mi->impl;
-            lookup->end = mi->impl + mi->size;
-        } else if (lookup->start > mi->impl) {
-            lookup->start = mi->impl;
-        } else if (lookup->end <= mi->impl) {
-            lookup->end = mi->impl + mi->size;
+            lookup->start = m->impl;
+            lookup->end = m->impl + m->size;
+        } else if (lookup->start > m->impl) {
+            lookup->start = m->impl;
+        } else if (lookup->end <= m->impl) {
+            lookup->end = m->impl + m->size;
         }
     }
     return TRUE;
@@ -671,6 +901,98 @@ void _bcNonPublicMethodCalled(Env* env, Object* thiz) {
     LEAVEV;
 }
 
+static Method* resolveCallSiteMethod(Env* env, CallSite* site) {
+    Method* method = site->method;
+    if (!method) {
+        Class* caller = ldcClass(env, site->caller);
+        if (!caller) return NULL;
+        Class* owner = rvmFindClassUsingLoader(env, site->owner, caller->classLoader);
+        if (!owner) return NULL;
+        method = rvmGetMethod(env, owner, site->name, site->desc);
+        if (!method) return NULL;
+        if (METHOD_IS_STATIC(method)) return NULL;
+        // Only cache methods which the trampoline of this call site would
+        // have linked to. Everything else is left to the trampoline which
+        // throws the appropriate error.
+        if (!METHOD_IS_PUBLIC(method) && method->clazz != caller) {
+            if (METHOD_IS_PRIVATE(method)) return NULL;
+            if (!rvmIsSamePackage(method->clazz, caller) 
+                    && !(METHOD_IS_PROTECTED(method) && rvmIsSubClass(method->clazz, caller))) {
+                return NULL;
+            }
+        }
+        site->method = method;
+    }
+    return method;
+}
+static void* resolveCallSite(Env* env, CallSite* site, Object* thiz) {
+    Class* clazz = thiz->clazz;
+    if (CLASS_IS_PROXY(clazz)) {
+        // Proxy methods need the name and descriptor set by the lookup 
+        // function
+        return NULL;
+    }
+    Method* method = resolveCallSiteMethod(env, site);
+    if (!method) return NULL;
+    void* impl = NULL;
+    if (CLASS_IS_INTERFACE(method->clazz)) {
+        TypeInfo* typeInfo = method->clazz->typeInfo;
+        ITables* itables = clazz->itables;
+        uint32_t i;
+        for (i = 0; i < itables->count; i++) {
+            if (itables->table[i]->typeInfo == typeInfo) {
+                impl = itables->table[i]->table.table[method->vitableIndex];
+                break;
+            }
+        }
+    } else if (method->vitableIndex >= 0) {
+        impl = clazz->vitable->table[method->vitableIndex];
+    } else {
+        impl = method->synchronizedImpl ? method->synchronizedImpl : method->impl;
+    }
+    if (!impl || impl == (void*) _bcAbstractMethodCalled || impl == (void*) _bcNonPublicMethodCalled) {
+        return NULL;
+    }
+    return impl;
+}
+/*
+ * Called by the callSiteLookup function in header.ll when the receiver class
+ * doesn't match the class cached for the call site. Returns the function to
+ * call or NULL if the call site's trampoline should be called instead.
+ */
+void* _bcResolveCallSite(Env* env, CallSite* site, Object* thiz) {
+    ENTER;
+    if (options.printCallSiteStats) {
+        rvmLockMutex(&callSitesLock);
+        if (!site->next) {
+            site->next = callSites;
+            callSites = site;
+        }
+        rvmUnlockMutex(&callSitesLock);
+    }
+    void* impl = resolveCallSite(env, site, thiz);
+    jint misses = ++site->misses;
+    if (impl) {
+        CallSiteEntry* entry = rvmAllocateMemoryAtomicUncollectable(env, sizeof(CallSiteEntry));
+        if (entry) {
+            entry->clazz = thiz->clazz;
+            entry->impl = impl;
+            rvmAtomicStorePtr((void**) &site->entry, entry);
+        }
+    } else {
+        // Never try to resolve this call site again
+        site->misses = misses = CALL_SITE_MAX_MISSES;
+    }
+    if (misses == CALL_SITE_MAX_MISSES) {
+        DEBUGF("Inline cache disabled for call to %s.%s%s in %s after %d misses (last receiver %s)", 
+            site->owner, site->name, site->desc, site->caller->className, misses, thiz->clazz->name);
+    }
+    // Failing to resolve the call site is not an error. The trampoline will
+    // throw any exception.
+    rvmExceptionClear(env);
+    LEAVE(impl);
+}
+
 void _bcMoveMemory16(void* dest, const void* src, jlong n) {
     rvmMoveMemory16(dest, src, n);
 }
@@ -893,6 +1215,22 @@ Object* _bcLdcString(Env* env, Object** ptr, char* s, jint length) {
     LEAVE(o);
 }
 
+Object* _bcLdcStaticString(Env* env, Object** ptr, char* s, Object* str, CharArray* value) {
+    Object* o = *ptr;
+    if (o) return o;
+    ENTER;
+    o = rvmInternStaticString(env, s, str, value);
+    if (!rvmExceptionCheck(env)) {
+        *ptr = o;
+        if (o != str) {
+            // Another equal String was interned before the literal was first
+            // used. The static String is never collected but that one may be.
+            rvmRegisterDisappearingLink(env, (void**) ptr, o);
+        }
+    }
+    LEAVE(o);
+}
+
 Object* _bcLdcArrayBootClass(Env* env, Class** arrayClassPtr, char* name) {
     Class* arrayClass = *arrayClassPtr;
     if (arrayClass) return (Object*) arrayClass;
@@ -29,6 +29,7 @@
 #define CI_ERROR 0x100
 #define CI_INITIALIZED 0x200
 #define CI_FINALIZABLE 0x400
+#define CI_BUILD_TIME_INIT 0x800
 
 #define CI_ERROR_TYPE_NONE 0x0
 #define CI_ERROR_TYPE_NO_CLASS_DEF_FOUND 0x1
@@ -48,6 +49,8 @@ typedef struct {
     jint instanceDataOffset;
     unsigned short classRefCount;
     unsigned short instanceRefCount;
+    const Field* fields;   // Read-only Field records emitted by the compiler. Copied when loaded.
+    const Method* methods; // Read-only Method records emitted by the compiler. Copied when loaded.
 } ClassInfoHeader;
 
 typedef struct {
@@ -68,34 +71,8 @@ typedef struct {
     void* attributes;
 } ClassInfo;
 
-typedef struct {
-    jint flags;
-    jint access;
-    const char* name;
-    const char* desc;
-    void* attributes;
-    jint offset;
-} FieldInfo;
-
-typedef struct {
-    jint flags;
-    jint vtableIndex;
-    jint access;
-    const char* name;
-    const char* desc;
-    void* attributes;
-    jint size;
-    void* impl;
-    void* synchronizedImpl;
-    void* linetable;
-    void** targetFnPtr;
-    void* callbackImpl;
-} MethodInfo;
-
 extern void readClassInfo(void** p, ClassInfo* result);
 extern const char* readInterfaceName(void** p);
-extern void readFieldInfo(void** p, FieldInfo* result);
-extern void readMethodInfo(void** p, MethodInfo* result);
 
 static inline void skipInterfaceNames(void** p, ClassInfo* ci) {
     jint i;
@@ -104,11 +81,4 @@ static inline void skipInterfaceNames(void** p, ClassInfo* ci) {
     }
 }
 
-static inline void skipFieldInfos(void** p, ClassInfo* ci) {
-    jint i;
-    for (i = 0; i < ci->fieldCount; i++) {
-        readFieldInfo(p, NULL);
-    }
-}
-
 #endif
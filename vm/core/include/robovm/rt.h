@@ -44,6 +44,14 @@ extern jboolean rvmRTInit(Env* env);
  */
 extern Object* rvmRTNewString(Env* env, CharArray* value, jint offset, jint length);
 
+/**
+ * Initializes a java.lang.String instance which has not been allocated on
+ * the heap, e.g. a string literal emitted statically by the compiler, to use
+ * the characters at the specified offset and length in the specified char
+ * array.
+ */
+extern void rvmRTInitString(Env* env, Object* str, CharArray* value, jint offset, jint length);
+
 /**
  * Returns the length of the specified java.lang.String instance
  */
@@ -23,6 +23,7 @@ extern Object* rvmNewStringUTF(Env* env, const char* s, jint length);
 extern Object* rvmNewStringAscii(Env* env, const char* s, jint length);
 extern Object* rvmNewInternedStringUTF(Env* env, const char* s, jint length);
 extern Object* rvmInternString(Env* env, Object* str);
+extern Object* rvmInternStaticString(Env* env, const char* s, Object* str, CharArray* value);
 extern jint rvmGetStringLength(Env* env, Object* str);
 extern jchar* rvmGetStringChars(Env* env, Object* str);
 extern jint rvmGetStringUTFLength(Env* env, Object* str);
@@ -139,9 +139,29 @@ struct ITable {
   VITable table;
 };
 
+/*
+ * The number of slots in the interface method table (IMT) of a class. Must
+ * match ITable.IMT_SIZE in the compiler and the %ITables type in header.ll.
+ */
+#define IMT_SIZE 16
+
+/*
+ * An IMT slot. Each interface method is hashed to a slot at compile time.
+ * typeInfo is the TypeInfo of the interface declaring the method which has
+ * been assigned the slot in this class and impl is the implementation of that
+ * method. typeInfo is NULL if no method or more than one method was assigned
+ * the slot. Calls which don't find their interface in the slot fall back to
+ * _bcLookupInterfaceMethodImpl().
+ */
+typedef struct IMTEntry {
+  TypeInfo* typeInfo;
+  void* impl;
+} IMTEntry;
+
 struct ITables {
   uint16_t count;
   ITable* cache;
+  IMTEntry imt[IMT_SIZE];
   ITable* table[0];
 };
 
@@ -327,6 +347,7 @@ typedef struct Options {
     jlong maxHeapSize;
     jlong initialHeapSize;
     jboolean enableGCHeapStats;
+    jboolean printCallSiteStats;
     jboolean enableHooks;
     jboolean waitForResume;
     jboolean printPID;
@@ -344,7 +365,7 @@ typedef struct Options {
     void* runtimeData;
     Class* (*loadBootClass)(Env*, const char*, Object*);
     Class* (*loadUserClass)(Env*, const char*, Object*);
-    void (*classInitialized)(Env*, Class*);
+    jboolean (*classInitialized)(Env*, Class*);
     Interface* (*loadInterfaces)(Env*, Class*);
     Field* (*loadFields)(Env*, Class*);
     Method* (*loadMethods)(Env*, Class*);
@@ -466,6 +487,17 @@ struct TrycatchContext {
 #endif
 };
 
+/*
+ * Objects and primitive arrays of up to ALLOC_CACHE_CLASSES * ALLOC_CACHE_GRANULE
+ * bytes are allocated from per thread free lists in Env, one list per
+ * ALLOC_CACHE_GRANULE sized size class. Compiled code pops from these lists
+ * inline and only calls into the runtime when the list is empty.
+ * NOTE: If these values or the layout of Env change the %Env type in
+ * header.ll and the allocation fast paths in the compiler must be updated.
+ */
+#define ALLOC_CACHE_GRANULE 16
+#define ALLOC_CACHE_CLASSES 16
+
 struct Env {
     JNIEnv jni;
     VM* vm;
@@ -476,6 +508,7 @@ struct Env {
     GatewayFrame* gatewayFrames;
     TrycatchContext* trycatchContext;
     jint attachCount;
+    void* allocCache[ALLOC_CACHE_CLASSES];
 };
 
 typedef struct DebugGcRoot {
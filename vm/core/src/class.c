@@ -1190,7 +1190,15 @@ void rvmInitialize(Env* env, Class* clazz) {
     if (!initializer) {
         // No <clinit> in class
         if (!CLASS_IS_ARRAY(clazz) && !CLASS_IS_PROXY(clazz) && !CLASS_IS_PRIMITIVE(clazz)) {
-            env->vm->options->classInitialized(env, clazz);
+            if (!env->vm->options->classInitialized(env, clazz)) {
+                // Static field values evaluated at build time couldn't be
+                // set. The exception is left pending.
+                rvmLockObject(env, (Object*) clazz);
+                clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | CLASS_STATE_ERROR;
+                rvmObjectNotifyAll(env, (Object*) clazz);
+                rvmUnlockObject(env, (Object*) clazz);
+                return;
+            }
         }
         rvmLockObject(env, (Object*) clazz);
         clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | CLASS_STATE_INITIALIZED;
@@ -1215,7 +1223,13 @@ void rvmInitialize(Env* env, Class* clazz) {
     if (!exception) {
         // Successful initialization
         if (!CLASS_IS_ARRAY(clazz) && !CLASS_IS_PROXY(clazz) && !CLASS_IS_PRIMITIVE(clazz)) {
-            env->vm->options->classInitialized(env, clazz);
+            if (!env->vm->options->classInitialized(env, clazz)) {
+                rvmLockObject(env, (Object*) clazz);
+                clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | CLASS_STATE_ERROR;
+                rvmObjectNotifyAll(env, (Object*) clazz);
+                rvmUnlockObject(env, (Object*) clazz);
+                return;
+            }
         }
         rvmLockObject(env, (Object*) clazz);
         clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | CLASS_STATE_INITIALIZED;
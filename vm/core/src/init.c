@@ -151,6 +151,8 @@ void rvmParseOption(char* arg, Options* options) {
         }
     } else if (startsWith(arg, "EnableGCHeapStats")) {
         options->enableGCHeapStats = TRUE;
+    } else if (startsWith(arg, "PrintCallSiteStats")) {
+        options->printCallSiteStats = TRUE;
     } else if (startsWith(arg, "EnableHooks")) {
         options->enableHooks = TRUE;
     } else if (startsWith(arg, "WaitForResume")) {
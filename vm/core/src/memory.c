@@ -106,6 +106,13 @@ static uint32_t objectArrayGCKind;
 static void* markObjectGcDescriptor = NULL;
 // A fake Class used as clazz pointer before java_lang_Class has been loaded.
 static Class fakeClass;
+// The Class used as clazz pointer of the free cells in the per thread 
+// allocation caches (Env->allocCache). The lock word of a free cell links to
+// the next cell in the list. The GC scans both words of a free cell so the
+// cells in a list stay reachable through the Env.
+static Class freeCellClass;
+// The number of cells allocated at a time when an allocation cache is empty.
+#define ALLOC_CACHE_REFILL 16
 
 static inline struct GC_ms_entry* markRegion(void** start, void** end, struct GC_ms_entry* mark_stack_ptr, struct GC_ms_entry* mark_stack_limit) {
     void** p = start;
@@ -482,6 +489,10 @@ jboolean initGC(Options* options) {
     memset(&fakeClass, 0, sizeof(Class));
     fakeClass.gcDescriptor = (void*) ((sizeof(Class) << GC_DS_TAG_BITS) | GC_DS_LENGTH);
 
+    memset(&freeCellClass, 0, sizeof(Class));
+    freeCellClass.name = "<free cell>";
+    freeCellClass.gcDescriptor = (void*) ((2 * sizeof(void*)) | GC_DS_LENGTH);
+
     if (rvmInitMutex(&referentsLock) != 0) {
         return FALSE;
     }
@@ -977,6 +988,40 @@ void rvmSetupGcDescriptor(Env* env, Class* clazz) {
     }
 }
 
+/**
+ * Allocates memory for an instance of the specified class from the 
+ * allocation cache of the current thread. The cache is refilled if empty.
+ * Compiled code does the same thing inline (see allocateFromCache in 
+ * header.ll) and only calls into the runtime when the cache is empty.
+ * Returns NULL if size is too large to be cached or the cache couldn't be
+ * refilled.
+ */
+static inline Object* allocateCached(Env* env, size_t size, Class* clazz) {
+    size_t index = (size + ALLOC_CACHE_GRANULE - 1) / ALLOC_CACHE_GRANULE;
+    if (index == 0 || index > ALLOC_CACHE_CLASSES) {
+        return NULL;
+    }
+    void** head = &env->allocCache[index - 1];
+    if (!*head) {
+        for (jint i = 0; i < ALLOC_CACHE_REFILL; i++) {
+            Object* cell = (Object*) GC_gcj_malloc(index * ALLOC_CACHE_GRANULE, &freeCellClass);
+            if (!cell) {
+                break;
+            }
+            cell->lock = (size_t) *head;
+            *head = cell;
+        }
+        if (!*head) {
+            return NULL;
+        }
+    }
+    Object* m = (Object*) *head;
+    *head = (void*) (size_t) m->lock;
+    m->lock = 0;
+    m->clazz = clazz;
+    return m;
+}
+
 Class* rvmAllocateMemoryForClass(Env* env, jint classDataSize) {
     Class* m = (Class*) gcAllocateObject(classDataSize, &fakeClass);
     if (!m) {
@@ -987,7 +1032,10 @@ Class* rvmAllocateMemoryForClass(Env* env, jint classDataSize) {
 }
 
 Object* rvmAllocateMemoryForObject(Env* env, Class* clazz) {
-    Object* m = (Object*) gcAllocateObject(clazz->instanceDataSize, clazz);
+    Object* m = allocateCached(env, clazz->instanceDataSize, clazz);
+    if (!m) {
+        m = (Object*) gcAllocateObject(clazz->instanceDataSize, clazz);
+    }
     if (!m) {
         if (clazz == java_lang_OutOfMemoryError) {
             // We can't even allocate an OutOfMemoryError object. Prevent
@@ -1009,7 +1057,10 @@ Array* rvmAllocateMemoryForArray(Env* env, Class* arrayClass, jint length) {
     }
     Array* m = NULL;
     if (CLASS_IS_PRIMITIVE(arrayClass->componentType)) {
-        m = (Array*) gcAllocateObject((size_t) size, arrayClass);
+        m = (Array*) allocateCached(env, (size_t) size, arrayClass);
+        if (!m) {
+            m = (Array*) gcAllocateObject((size_t) size, arrayClass);
+        }
     } else {
         // Object array. Conservatively scanned. Only the lock (if thin) 
         // and the length fields could become a problem if they look like 
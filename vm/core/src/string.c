@@ -298,6 +298,43 @@ Object* rvmInternString(Env* env, Object* str) {
     return string;
 }
 
+/**
+ * Interns a string literal emitted statically by the compiler. The compiler
+ * emits the String and its char array without class pointers since classes
+ * are created at runtime. They are filled in the first time the literal is
+ * interned. Returns the already interned String if there is one.
+ *
+ * The String constructor is run without holding the interned strings lock.
+ * Threads racing to intern the same literal may both run it. That is
+ * harmless since it stores the same values every time, and the String is
+ * only published once the constructor has completed on the thread adding
+ * it.
+ */
+Object* rvmInternStaticString(Env* env, const char* s, Object* str, CharArray* value) {
+    obtainInternedStringsLock();
+    Object* string = findInternedString(env, s);
+    releaseInternedStringsLock();
+    if (string) {
+        return string;
+    }
+
+    value->object.clazz = array_C;
+    str->clazz = java_lang_String;
+    rvmRTInitString(env, str, value, 0, value->length);
+    if (rvmExceptionCheck(env)) {
+        return NULL;
+    }
+
+    obtainInternedStringsLock();
+    string = findInternedString(env, s);
+    if (!string && addInternedString(env, s, str)) {
+        string = str;
+    }
+    releaseInternedStringsLock();
+
+    return string;
+}
+
 jint rvmGetStringLength(Env* env, Object* str) {
     return rvmRTGetStringLength(env, str);
 }
@@ -72,6 +72,14 @@ Object* rvmRTNewString(Env* env, CharArray* value, jint offset, jint length) {
     return rvmNewObjectA(env, class_java_lang_String(env), method_java_lang_String_init(env), args);
 }
 
+void rvmRTInitString(Env* env, Object* str, CharArray* value, jint offset, jint length) {
+    jvalue args[3];
+    args[0].i = offset;
+    args[1].i = length;
+    args[2].l = (jobject) value;
+    rvmCallNonvirtualVoidInstanceMethodA(env, str, method_java_lang_String_init(env), args);
+}
+
 jint rvmRTGetStringLength(Env* env, Object* str) {
     return rvmGetIntInstanceFieldValue(env, str, field_java_lang_String_count(env));
 }